@@ -0,0 +1,108 @@
+package mcmaplib;
+
+public class BlockChangeBatch {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    private int[] widths, heights, depths;
+    private byte[] types;
+    private int size;
+
+    public BlockChangeBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public BlockChangeBatch(int capacity) {
+        if(capacity <= 0)
+            throw new IllegalArgumentException("Capacity must be positive");
+
+        widths = new int[capacity];
+        heights = new int[capacity];
+        depths = new int[capacity];
+        types = new byte[capacity];
+    }
+
+    public BlockChangeBatch add(int width, int height, int depth, byte type) {
+        if(size == types.length)
+            grow();
+
+        widths[size] = width;
+        heights[size] = height;
+        depths[size] = depth;
+        types[size] = type;
+        size++;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int getWidth(int index) {
+        checkIndex(index);
+        return widths[index];
+    }
+
+    public int getHeight(int index) {
+        checkIndex(index);
+        return heights[index];
+    }
+
+    public int getDepth(int index) {
+        checkIndex(index);
+        return depths[index];
+    }
+
+    public byte getType(int index) {
+        checkIndex(index);
+        return types[index];
+    }
+
+    int[] getWidths() {
+        return widths;
+    }
+
+    int[] getHeights() {
+        return heights;
+    }
+
+    int[] getDepths() {
+        return depths;
+    }
+
+    byte[] getTypes() {
+        return types;
+    }
+
+    private void checkIndex(int index) {
+        if(index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Batch index out of range");
+    }
+
+    private void grow() {
+        int capacity;
+        int[] newWidths, newHeights, newDepths;
+        byte[] newTypes;
+
+        capacity = types.length * 2;
+        newWidths = new int[capacity];
+        newHeights = new int[capacity];
+        newDepths = new int[capacity];
+        newTypes = new byte[capacity];
+        System.arraycopy(widths, 0, newWidths, 0, size);
+        System.arraycopy(heights, 0, newHeights, 0, size);
+        System.arraycopy(depths, 0, newDepths, 0, size);
+        System.arraycopy(types, 0, newTypes, 0, size);
+        widths = newWidths;
+        heights = newHeights;
+        depths = newDepths;
+        types = newTypes;
+    }
+}
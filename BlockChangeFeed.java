@@ -0,0 +1,229 @@
+package mcmaplib;
+
+import java.util.Arrays;
+
+public class BlockChangeFeed implements MapChangeListener {
+    public static final int DEFAULT_CAPACITY = 65536;
+
+    private static final byte BLOCK = 0,
+                              REGION = 1,
+                              REGION_SIZE = 2,
+                              SKIP = 3;
+
+    public static interface Handler {
+        public void blockChanged(int width, int height, int depth,
+                                 byte oldType, byte newType, byte flags);
+        public void regionChanged(int width, int height, int depth,
+                                  int sizeWidth, int sizeHeight, int sizeDepth);
+        public void overflowed();
+    }
+
+    private final int capacity, mask;
+    private final long[] changes;
+    private final byte[] flags, kinds;
+    private final Object drainLock = new Object();
+    private long head, tail, dropped;
+
+    private long[] coalesceKeys;
+    private int[] coalesceSlots, coalesceStamps;
+    private int coalesceGeneration;
+
+    public BlockChangeFeed() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public BlockChangeFeed(int capacity) {
+        if(capacity <= 0 || capacity > 1 << 28)
+            throw new IllegalArgumentException("Invalid capacity");
+
+        this.capacity = capacity == 1 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.changes = new long[this.capacity];
+        this.flags = new byte[this.capacity];
+        this.kinds = new byte[this.capacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return (int)(tail - head);
+    }
+
+    public synchronized long getDroppedChanges() {
+        return dropped;
+    }
+
+    private static long pack(int width, int height, int depth, int low) {
+        return ((long)width << 48) | ((long)(height & 0xFFFF) << 32)
+                   | ((long)(depth & 0xFFFF) << 16) | (low & 0xFFFF);
+    }
+
+    public void blockChanged(MinecraftMap map, int width, int height, int depth,
+                             byte oldType, byte newType, byte flags) {
+        synchronized(this) {
+            int slot;
+
+            if(tail - head == capacity) {
+                dropped++;
+                return;
+            }
+            slot = (int)tail & mask;
+            changes[slot] = pack(width, height, depth, (oldType & 0xFF) << 8 | (newType & 0xFF));
+            this.flags[slot] = flags;
+            kinds[slot] = BLOCK;
+            tail++;
+        }
+    }
+
+    public void regionChanged(MinecraftMap map, int width, int height, int depth,
+                              int sizeWidth, int sizeHeight, int sizeDepth) {
+        synchronized(this) {
+            int slot;
+
+            if(tail - head > capacity - 2) {
+                dropped++;
+                return;
+            }
+            slot = (int)tail & mask;
+            changes[slot] = pack(width, height, depth, 0);
+            kinds[slot] = REGION;
+            slot = (int)(tail + 1) & mask;
+            changes[slot] = pack(sizeWidth, sizeHeight, sizeDepth, 0);
+            kinds[slot] = REGION_SIZE;
+            tail += 2;
+        }
+    }
+
+    public void spawnChanged(MinecraftMap map) {
+    }
+
+    public void attributeChanged(MinecraftMap map, String name) {
+    }
+
+    public int drain(Handler handler) {
+        return drain(handler, false);
+    }
+
+    public int drain(Handler handler, boolean coalesce) {
+        synchronized(drainLock) {
+            long start, end, lost;
+            int count;
+
+            synchronized(this) {
+                start = head;
+                end = tail;
+                lost = dropped;
+                dropped = 0;
+            }
+
+            if(coalesce)
+                coalesce(start, end);
+
+            count = 0;
+            try {
+                for(long i = start;i < end;i++) {
+                    long change;
+                    int slot;
+
+                    slot = (int)i & mask;
+                    change = changes[slot];
+                    switch(kinds[slot]) {
+                        case BLOCK:
+                            handler.blockChanged(
+                                (int)(change >>> 48),
+                                (int)(change >>> 32) & 0xFFFF,
+                                (int)(change >>> 16) & 0xFFFF,
+                                (byte)(change >>> 8),
+                                (byte)change,
+                                flags[slot]
+                            );
+                            count++;
+                            break;
+                        case REGION: {
+                            long size;
+
+                            size = changes[(int)(i + 1) & mask];
+                            handler.regionChanged(
+                                (int)(change >>> 48),
+                                (int)(change >>> 32) & 0xFFFF,
+                                (int)(change >>> 16) & 0xFFFF,
+                                (int)(size >>> 48),
+                                (int)(size >>> 32) & 0xFFFF,
+                                (int)(size >>> 16) & 0xFFFF
+                            );
+                            count++;
+                            i++;
+                            break;
+                        }
+                    }
+                }
+            } finally {
+                synchronized(this) {
+                    head = end;
+                }
+            }
+
+            if(lost > 0)
+                handler.overflowed();
+            return count;
+        }
+    }
+
+    public void clear() {
+        synchronized(drainLock) {
+            synchronized(this) {
+                head = tail;
+                dropped = 0;
+            }
+        }
+    }
+
+    private void coalesce(long start, long end) {
+        int tableMask, generation;
+
+        if(coalesceKeys == null) {
+            coalesceKeys = new long[capacity * 2];
+            coalesceSlots = new int[capacity * 2];
+            coalesceStamps = new int[capacity * 2];
+        }
+        tableMask = coalesceKeys.length - 1;
+
+        generation = ++coalesceGeneration;
+        if(generation == 0) {
+            Arrays.fill(coalesceStamps, 0);
+            generation = coalesceGeneration = 1;
+        }
+
+        for(long i = start;i < end;i++) {
+            long key;
+            int slot, index;
+
+            slot = (int)i & mask;
+            if(kinds[slot] != BLOCK)
+                continue;
+
+            key = changes[slot] >>> 16;
+            index = (int)(key ^ (key >>> 17) ^ (key >>> 31)) * 0x9E3779B1 & tableMask;
+            while(true) {
+                if(coalesceStamps[index] != generation) {
+                    coalesceStamps[index] = generation;
+                    coalesceKeys[index] = key;
+                    coalesceSlots[index] = slot;
+                    break;
+                }
+                if(coalesceKeys[index] == key) {
+                    int previous;
+
+                    previous = coalesceSlots[index];
+                    changes[slot] = (changes[slot] & ~0xFF00L) | (changes[previous] & 0xFF00L);
+                    kinds[previous] = SKIP;
+                    coalesceSlots[index] = slot;
+                    break;
+                }
+                index = (index + 1) & tableMask;
+            }
+        }
+    }
+}
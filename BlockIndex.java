@@ -0,0 +1,361 @@
+package mcmaplib;
+
+import mcmaplib.util.PagedByteArray;
+
+public class BlockIndex implements MapChangeListener {
+    private static final int REGION_SHIFT = 4,
+                             REGION_SIZE = 1 << REGION_SHIFT,
+                             REGION_MASK = REGION_SIZE - 1,
+                             INITIAL_BUCKET_SIZE = 4;
+
+    public static interface Visitor {
+        public void visit(int width, int height, int depth);
+    }
+
+    private final MinecraftMap map, source;
+    private final boolean[] types;
+    private final int flagMask;
+    private final int width, height, depth;
+    private final int regionsWidth, regionsHeight, regionsDepth;
+    private final short[][] buckets;
+    private final int[] counts;
+    private int size;
+
+    private BlockIndex(MinecraftMap map, boolean[] types, int flagMask) {
+        this.map = map;
+        this.source = map instanceof ConcurrentMinecraftMap
+            ? ((ConcurrentMinecraftMap)map).getMap()
+            : map;
+        this.types = types;
+        this.flagMask = flagMask;
+        this.width = map.getWidth();
+        this.height = map.getHeight();
+        this.depth = map.getDepth();
+        this.regionsWidth = (width + REGION_MASK) >> REGION_SHIFT;
+        this.regionsHeight = (height + REGION_MASK) >> REGION_SHIFT;
+        this.regionsDepth = (depth + REGION_MASK) >> REGION_SHIFT;
+        this.buckets = new short[regionsWidth * regionsHeight * regionsDepth][];
+        this.counts = new int[buckets.length];
+    }
+
+    public static BlockIndex forFlags(MinecraftMap map, int flagMask) {
+        MinecraftMap source;
+
+        source = map instanceof ConcurrentMinecraftMap
+            ? ((ConcurrentMinecraftMap)map).getMap()
+            : map;
+        if(!(source instanceof RUMMinecraftMap))
+            throw new IllegalArgumentException("Flag indexes require a RUM map");
+        if((flagMask & 0xFF) == 0)
+            throw new IllegalArgumentException("Empty flag mask");
+
+        return attach(new BlockIndex(map, null, flagMask & 0xFF));
+    }
+
+    public static BlockIndex forTypes(MinecraftMap map, byte... types) {
+        boolean[] matches;
+
+        if(types.length == 0)
+            throw new IllegalArgumentException("No block types given");
+
+        matches = new boolean[256];
+        for(int i = 0;i < types.length;i++)
+            matches[types[i] & 0xFF] = true;
+        return attach(new BlockIndex(map, matches, 0));
+    }
+
+    public static BlockIndex forSpecialBlocks(MinecraftMap map,
+                                              MCSharpMinecraftMap.SpecialBlock... blocks) {
+        byte[] types;
+
+        types = new byte[blocks.length];
+        for(int i = 0;i < blocks.length;i++)
+            types[i] = (byte)blocks[i].CODE;
+        return forTypes(map, types);
+    }
+
+    private static BlockIndex attach(final BlockIndex index) {
+        if(index.map instanceof ConcurrentMinecraftMap) {
+            ((ConcurrentMinecraftMap)index.map).read(
+                0, 0, 0,
+                index.width, index.height, index.depth,
+                new ConcurrentMinecraftMap.Update() {
+                    public void update(MinecraftMap map) {
+                        index.rebuild();
+                    }
+                }
+            );
+        } else {
+            index.rebuild();
+        }
+        return index;
+    }
+
+    private synchronized void rebuild() {
+        source.addChangeListener(this);
+        scan(0, 0, 0, width, height, depth);
+    }
+
+    public void close() {
+        source.removeChangeListener(this);
+    }
+
+    public MinecraftMap getMap() {
+        return map;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean contains(int width, int height, int depth) {
+        int bucket;
+
+        if(width < 0 || height < 0 || depth < 0
+                || width >= this.width || height >= this.height || depth >= this.depth)
+            return false;
+
+        bucket = getBucket(width, height, depth);
+        return find(bucket, getLocalIndex(width, height, depth)) >= 0;
+    }
+
+    public synchronized int count(int width, int height, int depth,
+                                  int sizeWidth, int sizeHeight, int sizeDepth) {
+        return collect(width, height, depth, sizeWidth, sizeHeight, sizeDepth, null);
+    }
+
+    public synchronized int[] query(int width, int height, int depth,
+                                    int sizeWidth, int sizeHeight, int sizeDepth) {
+        int[] offsets;
+
+        offsets = new int[collect(width, height, depth, sizeWidth, sizeHeight, sizeDepth, null)];
+        collect(width, height, depth, sizeWidth, sizeHeight, sizeDepth, offsets);
+        return offsets;
+    }
+
+    public int[] query() {
+        return query(0, 0, 0, width, height, depth);
+    }
+
+    public void forEach(int width, int height, int depth,
+                        int sizeWidth, int sizeHeight, int sizeDepth,
+                        Visitor visitor) {
+        int[] offsets;
+
+        offsets = query(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        for(int i = 0;i < offsets.length;i++) {
+            int row;
+
+            row = offsets[i] / this.width;
+            visitor.visit(offsets[i] % this.width, row / this.depth, row % this.depth);
+        }
+    }
+
+    public void forEach(Visitor visitor) {
+        forEach(0, 0, 0, width, height, depth, visitor);
+    }
+
+    public void blockChanged(MinecraftMap map, int width, int height, int depth,
+                             byte oldType, byte newType, byte flags) {
+        boolean matches;
+
+        if(types != null)
+            matches = types[newType & 0xFF];
+        else
+            matches = (flags & flagMask) != 0;
+
+        synchronized(this) {
+            if(matches)
+                add(width, height, depth);
+            else
+                remove(width, height, depth);
+        }
+    }
+
+    public void regionChanged(MinecraftMap map, int width, int height, int depth,
+                              int sizeWidth, int sizeHeight, int sizeDepth) {
+        synchronized(this) {
+            scan(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        }
+    }
+
+    public void spawnChanged(MinecraftMap map) {
+    }
+
+    public void attributeChanged(MinecraftMap map, String name) {
+    }
+
+    private int getBucket(int width, int height, int depth) {
+        return ((height >> REGION_SHIFT) * regionsDepth + (depth >> REGION_SHIFT)) * regionsWidth
+                   + (width >> REGION_SHIFT);
+    }
+
+    private static short getLocalIndex(int width, int height, int depth) {
+        return (short)(((height & REGION_MASK) << (2 * REGION_SHIFT))
+                           | ((depth & REGION_MASK) << REGION_SHIFT)
+                           | (width & REGION_MASK));
+    }
+
+    private int find(int bucket, short local) {
+        short[] entries;
+        int low, high;
+
+        entries = buckets[bucket];
+        if(entries == null)
+            return -1;
+
+        low = 0;
+        high = counts[bucket] - 1;
+        while(low <= high) {
+            int middle;
+
+            middle = (low + high) >>> 1;
+            if(entries[middle] < local)
+                low = middle + 1;
+            else if(entries[middle] > local)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -(low + 1);
+    }
+
+    private void add(int width, int height, int depth) {
+        short[] entries;
+        short local;
+        int bucket, position, count;
+
+        bucket = getBucket(width, height, depth);
+        local = getLocalIndex(width, height, depth);
+        position = find(bucket, local);
+        if(position >= 0)
+            return;
+
+        position = -(position + 1);
+        entries = buckets[bucket];
+        count = counts[bucket];
+        if(entries == null) {
+            entries = new short[INITIAL_BUCKET_SIZE];
+            buckets[bucket] = entries;
+        } else if(count == entries.length) {
+            short[] grown;
+
+            grown = new short[Math.min(entries.length * 2, REGION_SIZE * REGION_SIZE * REGION_SIZE)];
+            System.arraycopy(entries, 0, grown, 0, count);
+            entries = grown;
+            buckets[bucket] = entries;
+        }
+        System.arraycopy(entries, position, entries, position + 1, count - position);
+        entries[position] = local;
+        counts[bucket] = count + 1;
+        size++;
+    }
+
+    private void remove(int width, int height, int depth) {
+        short[] entries;
+        int bucket, position, count;
+
+        bucket = getBucket(width, height, depth);
+        position = find(bucket, getLocalIndex(width, height, depth));
+        if(position < 0)
+            return;
+
+        entries = buckets[bucket];
+        count = counts[bucket] - 1;
+        System.arraycopy(entries, position + 1, entries, position, count - position);
+        counts[bucket] = count;
+        if(count == 0)
+            buckets[bucket] = null;
+        size--;
+    }
+
+    private void scan(int width, int height, int depth,
+                      int sizeWidth, int sizeHeight, int sizeDepth) {
+        PagedByteArray[] planes;
+        PagedByteArray plane;
+        byte[] row;
+
+        if(sizeWidth <= 0 || sizeHeight <= 0 || sizeDepth <= 0)
+            return;
+
+        planes = source.getBlockPlanes();
+        plane = null;
+        if(planes != null)
+            plane = types != null ? planes[0] : planes[1];
+
+        row = new byte[sizeWidth];
+        for(int h = height;h < height + sizeHeight;h++) {
+            for(int d = depth;d < depth + sizeDepth;d++) {
+                if(plane != null)
+                    plane.get((h * this.depth + d) * this.width + width, row, 0, sizeWidth);
+                else
+                    source.readRegion(width, h, d, sizeWidth, 1, 1, row, 0);
+
+                for(int i = 0;i < sizeWidth;i++) {
+                    boolean matches;
+
+                    if(types != null)
+                        matches = types[row[i] & 0xFF];
+                    else
+                        matches = (row[i] & flagMask) != 0;
+
+                    if(matches)
+                        add(width + i, h, d);
+                    else
+                        remove(width + i, h, d);
+                }
+            }
+        }
+    }
+
+    private int collect(int width, int height, int depth,
+                        int sizeWidth, int sizeHeight, int sizeDepth,
+                        int[] offsets) {
+        int firstWidth, firstHeight, firstDepth, lastWidth, lastHeight, lastDepth;
+        int count;
+
+        map.checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        if(sizeWidth == 0 || sizeHeight == 0 || sizeDepth == 0)
+            return 0;
+
+        firstWidth = width >> REGION_SHIFT;
+        firstHeight = height >> REGION_SHIFT;
+        firstDepth = depth >> REGION_SHIFT;
+        lastWidth = (width + sizeWidth - 1) >> REGION_SHIFT;
+        lastHeight = (height + sizeHeight - 1) >> REGION_SHIFT;
+        lastDepth = (depth + sizeDepth - 1) >> REGION_SHIFT;
+
+        count = 0;
+        for(int rh = firstHeight;rh <= lastHeight;rh++) {
+            for(int rd = firstDepth;rd <= lastDepth;rd++) {
+                for(int rw = firstWidth;rw <= lastWidth;rw++) {
+                    short[] entries;
+                    int bucket, bucketCount;
+
+                    bucket = (rh * regionsDepth + rd) * regionsWidth + rw;
+                    entries = buckets[bucket];
+                    if(entries == null)
+                        continue;
+
+                    bucketCount = counts[bucket];
+                    for(int i = 0;i < bucketCount;i++) {
+                        int w, h, d;
+
+                        w = (rw << REGION_SHIFT) | (entries[i] & REGION_MASK);
+                        d = (rd << REGION_SHIFT) | ((entries[i] >> REGION_SHIFT) & REGION_MASK);
+                        h = (rh << REGION_SHIFT) | (entries[i] >> (2 * REGION_SHIFT));
+                        if(w < width || w >= width + sizeWidth
+                                || h < height || h >= height + sizeHeight
+                                || d < depth || d >= depth + sizeDepth)
+                            continue;
+
+                        if(offsets != null)
+                            offsets[count] = (h * this.depth + d) * this.width + w;
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,83 @@
+package mcmaplib;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+final class BlockStreams {
+    private BlockStreams() {
+    }
+
+    static void checkChunkSize(int chunkSize) {
+        if(chunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size must be positive");
+    }
+
+    static void visitBlocks(BlockVisitor visitor, MapHeader header,
+                            long offset, byte[] blocks, byte[][] extendedBlocks,
+                            int count) throws IOException {
+        long row;
+        int width, height, depth;
+
+        row = offset / header.getWidth();
+        width = (int)(offset % header.getWidth());
+        depth = (int)(row % header.getDepth());
+        height = (int)(row / header.getDepth());
+        visitor.visitBlocks(
+            offset,
+            width, height, depth,
+            blocks, extendedBlocks,
+            count
+        );
+    }
+
+    static void visit(DataInput in, MapHeader header, byte[] table,
+                      BlockVisitor visitor, int chunkSize) throws IOException {
+        long totalBlocks, offset;
+        byte[] chunk;
+
+        checkChunkSize(chunkSize);
+        totalBlocks = header.getTotalBlocks();
+        chunk = new byte[(int)Math.min(chunkSize, Math.max(totalBlocks, 1))];
+        offset = 0;
+        while(offset < totalBlocks) {
+            int count;
+
+            count = (int)Math.min(chunk.length, totalBlocks - offset);
+            in.readFully(chunk, 0, count);
+            if(table != null) {
+                for(int i = 0;i < count;i++)
+                    chunk[i] = table[chunk[i] & 0xFF];
+            }
+            visitBlocks(visitor, header, offset, chunk, null, count);
+            offset += count;
+        }
+    }
+
+    static void visit(MinecraftMap map, BlockVisitor visitor, int chunkSize)
+            throws IOException {
+        MapHeader header;
+        BlockView view;
+        byte[] chunk;
+        int totalBlocks;
+
+        checkChunkSize(chunkSize);
+        header = new MapHeader(
+            map.getWidth(), map.getHeight(), map.getDepth(),
+            map.getSpawnWidth(), map.getSpawnHeight(), map.getSpawnDepth(),
+            map.getSpawnRotation(), map.getSpawnPitch()
+        );
+        visitor.visitHeader(header);
+
+        view = map.getBlockView();
+        totalBlocks = view.length();
+        chunk = new byte[Math.min(chunkSize, Math.max(totalBlocks, 1))];
+        for(int offset = 0;offset < totalBlocks;) {
+            int count;
+
+            count = Math.min(chunk.length, totalBlocks - offset);
+            view.copyTo(offset, chunk, 0, count);
+            visitBlocks(visitor, header, offset, chunk, null, count);
+            offset += count;
+        }
+    }
+}
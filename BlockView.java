@@ -0,0 +1,14 @@
+package mcmaplib;
+
+import java.nio.ByteBuffer;
+
+public interface BlockView {
+    public int getWidth();
+    public int getHeight();
+    public int getDepth();
+    public int length();
+    public byte get(int offset);
+    public byte getBlock(int width, int height, int depth);
+    public void copyTo(int offset, byte[] dest, int destOffset, int length);
+    public void copyTo(int offset, ByteBuffer dest, int length);
+}
@@ -0,0 +1,13 @@
+package mcmaplib;
+
+import java.io.IOException;
+
+public interface BlockVisitor {
+    public static final int DEFAULT_CHUNK_SIZE = 65536;
+
+    public void visitHeader(MapHeader header) throws IOException;
+    public void visitBlocks(long offset,
+                            int width, int height, int depth,
+                            byte[] blocks, byte[][] extendedBlocks,
+                            int count) throws IOException;
+}
@@ -0,0 +1,722 @@
+package mcmaplib;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+public final class ChangeLog implements MapChangeListener, Closeable {
+    public static final String EXTENSION = ".wal";
+    public static final long DEFAULT_COMMIT_INTERVAL = 200;
+    public static final int DEFAULT_COMMIT_THRESHOLD = 1 << 20;
+    public static final long MAX_RETRY_INTERVAL = 30000;
+
+    private static final int MAGIC = 0x4D43574C,
+                             BATCH_MAGIC = 0x4D435742;
+    private static final byte VERSION_1 = 1,
+                              VERSION_2 = 2;
+    private static final int HEADER_SIZE = 33,
+                             BATCH_HEADER_SIZE = 8,
+                             BATCH_CRC_SIZE = 4,
+                             INITIAL_BUFFER_SIZE = 4096;
+    private static final byte BLOCK = 1,
+                              REGION = 2,
+                              SPAWN = 3,
+                              ATTRIBUTE = 4,
+                              FILL = 5;
+
+    private final Path mapFile;
+    private final MinecraftMap map;
+    private final FileChannel channel;
+    private final long commitInterval;
+    private final int commitThreshold;
+    private final Object commitLock = new Object();
+    private final Thread committer;
+    private final int recovered;
+
+    private ByteBuffer pending, spare;
+    private long appended;
+    private IOException failure;
+    private boolean closed;
+
+    private long position, committed;
+
+    private ChangeLog(Path mapFile, MinecraftMap map, FileChannel channel,
+                      long position, int recovered,
+                      long commitInterval, int commitThreshold) {
+        this.mapFile = mapFile;
+        this.map = map;
+        this.channel = channel;
+        this.position = position;
+        this.recovered = recovered;
+        this.commitInterval = commitInterval;
+        this.commitThreshold = commitThreshold;
+        this.pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        this.committer = new Thread(new Runnable() {
+            public void run() {
+                runCommitter();
+            }
+        }, "mcmaplib-changelog-" + mapFile.getFileName());
+        this.committer.setDaemon(true);
+    }
+
+    public static File getLogFile(File mapFile) {
+        return new File(mapFile.getPath() + EXTENSION);
+    }
+
+    public static Path getLogPath(Path mapFile) {
+        return mapFile.resolveSibling(mapFile.getFileName().toString() + EXTENSION);
+    }
+
+    public static ChangeLog open(File mapFile, MinecraftMap map) throws IOException {
+        return open(mapFile.toPath(), map);
+    }
+
+    public static ChangeLog open(Path mapFile, MinecraftMap map) throws IOException {
+        return open(mapFile, map, DEFAULT_COMMIT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    public static ChangeLog open(File mapFile, MinecraftMap map,
+                                 long commitInterval, TimeUnit unit) throws IOException {
+        return open(mapFile.toPath(), map, commitInterval, unit);
+    }
+
+    public static ChangeLog open(Path mapFile, MinecraftMap map,
+                                 long commitInterval, TimeUnit unit) throws IOException {
+        FileChannel channel;
+        ChangeLog log;
+        long interval, size, checksum;
+
+        interval = unit.toMillis(commitInterval);
+        if(interval <= 0)
+            throw new IllegalArgumentException("Commit interval must be positive");
+
+        size = Files.size(mapFile);
+        checksum = DeltaJournal.checksum(mapFile);
+        channel = FileChannel.open(
+            getLogPath(mapFile),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+        );
+        try {
+            long end;
+            int records;
+
+            end = -1;
+            records = 0;
+            if(readHeader(channel, size, checksum, map)) {
+                end = HEADER_SIZE;
+                while(true) {
+                    ByteBuffer body;
+
+                    body = readBatch(channel, end);
+                    if(body == null)
+                        break;
+                    end += BATCH_HEADER_SIZE + body.remaining() + BATCH_CRC_SIZE;
+                    records += applyBatch(body, map);
+                }
+            }
+
+            if(end < 0) {
+                channel.truncate(0);
+                writeHeader(channel, size, checksum, map);
+                channel.force(true);
+                end = HEADER_SIZE;
+            } else if(end < channel.size()) {
+                channel.truncate(end);
+                channel.force(false);
+            }
+
+            log = new ChangeLog(
+                mapFile, map, channel, end, records,
+                interval, DEFAULT_COMMIT_THRESHOLD
+            );
+        } catch(IOException e) {
+            channel.close();
+            throw e;
+        } catch(RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+
+        map.addChangeListener(log);
+        log.committer.start();
+        return log;
+    }
+
+    public static ChangeLog open(File mapFile, MapFormat format, LoadOptions options)
+            throws IOException, NotImplementedException, MapFormatException {
+        return open(mapFile.toPath(), format, options);
+    }
+
+    public static ChangeLog open(Path mapFile, MapFormat format, LoadOptions options)
+            throws IOException, NotImplementedException, MapFormatException {
+        return open(mapFile, format.load(mapFile, options));
+    }
+
+    public MinecraftMap getMap() {
+        return map;
+    }
+
+    public Path getMapPath() {
+        return mapFile;
+    }
+
+    public int getRecoveredRecords() {
+        return recovered;
+    }
+
+    public synchronized long getAppendedRecords() {
+        return appended;
+    }
+
+    public long getCommittedRecords() {
+        synchronized(commitLock) {
+            return committed;
+        }
+    }
+
+    public synchronized int getPendingBytes() {
+        return pending.position();
+    }
+
+    public void blockChanged(MinecraftMap map, int width, int height, int depth,
+                             byte oldType, byte newType, byte flags) {
+        synchronized(this) {
+            ensureCapacity(10);
+            pending.put(BLOCK);
+            pending.putShort((short)width);
+            pending.putShort((short)height);
+            pending.putShort((short)depth);
+            pending.put(newType);
+            pending.put(flags);
+            appended();
+        }
+    }
+
+    public void regionChanged(MinecraftMap map, int width, int height, int depth,
+                              int sizeWidth, int sizeHeight, int sizeDepth) {
+        int size;
+
+        size = sizeWidth * sizeHeight * sizeDepth;
+        synchronized(this) {
+            ensureCapacity(13 + size);
+            pending.put(REGION);
+            pending.putShort((short)width);
+            pending.putShort((short)height);
+            pending.putShort((short)depth);
+            pending.putShort((short)sizeWidth);
+            pending.putShort((short)sizeHeight);
+            pending.putShort((short)sizeDepth);
+            map.readRegionRaw(
+                width, height, depth,
+                sizeWidth, sizeHeight, sizeDepth,
+                pending.array(), pending.position()
+            );
+            pending.position(pending.position() + size);
+            appended();
+        }
+    }
+
+    @Override
+    public void regionFilled(MinecraftMap map, int width, int height, int depth,
+                             int sizeWidth, int sizeHeight, int sizeDepth, byte type) {
+        synchronized(this) {
+            ensureCapacity(14);
+            pending.put(FILL);
+            pending.putShort((short)width);
+            pending.putShort((short)height);
+            pending.putShort((short)depth);
+            pending.putShort((short)sizeWidth);
+            pending.putShort((short)sizeHeight);
+            pending.putShort((short)sizeDepth);
+            pending.put(type);
+            appended();
+        }
+    }
+
+    public void spawnChanged(MinecraftMap map) {
+        synchronized(this) {
+            ensureCapacity(17);
+            pending.put(SPAWN);
+            pending.putInt(map.getSpawnWidth());
+            pending.putInt(map.getSpawnHeight());
+            pending.putInt(map.getSpawnDepth());
+            pending.putShort(map.getSpawnRotation());
+            pending.putShort(map.getSpawnPitch());
+            appended();
+        }
+    }
+
+    public void attributeChanged(MinecraftMap map, String name) {
+        byte[] key, value;
+
+        key = name.getBytes(StandardCharsets.UTF_8);
+        if(key.length > 65535)
+            throw new IllegalArgumentException("Attribute name too long");
+
+        value = map.getAttribute(name);
+        synchronized(this) {
+            ensureCapacity(7 + key.length + (value == null ? 0 : value.length));
+            pending.put(ATTRIBUTE);
+            pending.putShort((short)key.length);
+            pending.put(key);
+            if(value == null) {
+                pending.putInt(-1);
+            } else {
+                pending.putInt(value.length);
+                pending.put(value);
+            }
+            appended();
+        }
+    }
+
+    public void sync() throws IOException {
+        long target;
+
+        synchronized(this) {
+            checkOpen();
+            target = appended;
+        }
+        synchronized(commitLock) {
+            if(committed < target)
+                commit();
+        }
+    }
+
+    public void checkpoint() throws IOException, NotImplementedException {
+        checkpoint(new SaveOptions());
+    }
+
+    public void checkpoint(SaveOptions options) throws IOException, NotImplementedException {
+        synchronized(commitLock) {
+            MinecraftMap snapshot;
+            long target;
+            int mark;
+
+            synchronized(this) {
+                checkOpen();
+                snapshot = map.clone();
+                mark = pending.position();
+                target = appended;
+            }
+
+            DeltaJournal.compact(mapFile, snapshot, options);
+            channel.truncate(0);
+            writeHeader(channel, Files.size(mapFile), DeltaJournal.checksum(mapFile), map);
+            channel.force(true);
+            position = HEADER_SIZE;
+            committed = target;
+
+            synchronized(this) {
+                pending.flip();
+                pending.position(mark);
+                pending.compact();
+            }
+        }
+    }
+
+    public void mapSaved(MinecraftMap map, Path path) throws IOException {
+        boolean saved;
+
+        try {
+            saved = Files.isSameFile(path, mapFile);
+        } catch(IOException e) {
+            saved = false;
+        }
+        if(!saved)
+            return;
+
+        // Records are absolute writes, so replaying the ones already in the
+        // new base is harmless; only the key has to follow the file.
+        synchronized(commitLock) {
+            synchronized(this) {
+                if(closed)
+                    return;
+            }
+            writeHeader(channel, Files.size(mapFile), DeltaJournal.checksum(mapFile), map);
+            channel.force(true);
+        }
+    }
+
+    public void close() throws IOException {
+        synchronized(this) {
+            if(closed)
+                return;
+            closed = true;
+            notifyAll();
+        }
+        map.removeChangeListener(this);
+        try {
+            committer.join();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            synchronized(commitLock) {
+                commit();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void appended() {
+        appended++;
+        if(pending.position() >= commitThreshold)
+            notifyAll();
+    }
+
+    private void ensureCapacity(int count) {
+        if(pending.remaining() < count) {
+            ByteBuffer grown;
+
+            grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + count));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        IOException e;
+
+        if(closed)
+            throw new IOException("Change log closed");
+
+        e = failure;
+        if(e != null) {
+            failure = null;
+            throw e;
+        }
+    }
+
+    private void runCommitter() {
+        long retryInterval;
+
+        retryInterval = 0;
+        while(true) {
+            synchronized(this) {
+                if(closed)
+                    return;
+                try {
+                    if(retryInterval > 0)
+                        backOff(retryInterval);
+                    else if(pending.position() < commitThreshold)
+                        wait(commitInterval);
+                } catch(InterruptedException e) {
+                    return;
+                }
+                if(closed)
+                    return;
+            }
+
+            try {
+                synchronized(commitLock) {
+                    commit();
+                }
+                retryInterval = 0;
+            } catch(IOException e) {
+                synchronized(this) {
+                    failure = e;
+                }
+                // A failing write would otherwise be retried at once whenever
+                // the pending batch is over the threshold.
+                if(retryInterval == 0)
+                    retryInterval = commitInterval;
+                else
+                    retryInterval = Math.min(retryInterval * 2, MAX_RETRY_INTERVAL);
+            }
+        }
+    }
+
+    // Waits out the whole interval; appended() wakes the committer whenever
+    // the threshold is crossed, which must not cut a retry delay short.
+    private void backOff(long interval) throws InterruptedException {
+        long deadline;
+
+        deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(interval);
+        while(!closed) {
+            long remaining;
+
+            remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if(remaining <= 0)
+                return;
+            wait(remaining);
+        }
+    }
+
+    private void commit() throws IOException {
+        ByteBuffer batch, frame;
+        CRC32 crc;
+        long target;
+        int length;
+
+        synchronized(this) {
+            if(pending.position() == 0) {
+                committed = appended;
+                return;
+            }
+            batch = pending;
+            target = appended;
+            if(spare != null) {
+                pending = spare;
+                spare = null;
+            } else {
+                pending = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+            }
+        }
+
+        length = batch.position();
+        crc = new CRC32();
+        crc.update(batch.array(), 0, length);
+        try {
+            frame = ByteBuffer.allocate(BATCH_HEADER_SIZE);
+            frame.putInt(BATCH_MAGIC);
+            frame.putInt(length);
+            frame.flip();
+            writeFully(channel, frame, position);
+
+            batch.flip();
+            writeFully(channel, batch, position + BATCH_HEADER_SIZE);
+
+            frame = ByteBuffer.allocate(BATCH_CRC_SIZE);
+            frame.putInt((int)crc.getValue());
+            frame.flip();
+            writeFully(channel, frame, position + BATCH_HEADER_SIZE + length);
+            channel.force(false);
+        } catch(IOException e) {
+            synchronized(this) {
+                ByteBuffer merged;
+
+                batch.position(0);
+                batch.limit(length);
+                pending.flip();
+                merged = ByteBuffer.allocate(Math.max(INITIAL_BUFFER_SIZE, length + pending.remaining()));
+                merged.put(batch);
+                merged.put(pending);
+                pending = merged;
+            }
+            throw e;
+        }
+
+        position += BATCH_HEADER_SIZE + length + BATCH_CRC_SIZE;
+        committed = target;
+        synchronized(this) {
+            if(batch.capacity() <= commitThreshold) {
+                batch.clear();
+                spare = batch;
+            }
+        }
+    }
+
+    private static boolean readHeader(FileChannel channel, long size, long checksum,
+                                      MinecraftMap map)
+            throws IOException {
+        ByteBuffer header;
+        byte version;
+
+        if(channel.size() < HEADER_SIZE)
+            return false;
+
+        header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, 0);
+        header.flip();
+        if(header.getInt() != MAGIC)
+            throw new MapFormatException("Not a map change log");
+        version = header.get();
+        // Version 1 was keyed to the modification time, which a save within
+        // the timestamp granularity leaves unchanged.
+        if(version == VERSION_1)
+            return false;
+        if(version != VERSION_2)
+            throw new NotImplementedException("Unsupported change log version");
+
+        if(header.getLong() != size || header.getLong() != checksum)
+            return false;
+
+        if(header.getInt() != map.getWidth()
+                || header.getInt() != map.getHeight()
+                || header.getInt() != map.getDepth())
+            throw new MapFormatException("Change log does not match map dimensions");
+        return true;
+    }
+
+    private static void writeHeader(FileChannel channel, long size, long checksum,
+                                    MinecraftMap map)
+            throws IOException {
+        ByteBuffer header;
+
+        header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.put(VERSION_2);
+        header.putLong(size);
+        header.putLong(checksum);
+        header.putInt(map.getWidth());
+        header.putInt(map.getHeight());
+        header.putInt(map.getDepth());
+        header.flip();
+        writeFully(channel, header, 0);
+    }
+
+    private static ByteBuffer readBatch(FileChannel channel, long position)
+            throws IOException {
+        ByteBuffer header, body;
+        CRC32 crc;
+        int length;
+
+        if(channel.size() - position < BATCH_HEADER_SIZE)
+            return null;
+
+        header = ByteBuffer.allocate(BATCH_HEADER_SIZE);
+        readFully(channel, header, position);
+        header.flip();
+        if(header.getInt() != BATCH_MAGIC)
+            return null;
+        length = header.getInt();
+        if(length <= 0 || length > channel.size() - position - BATCH_HEADER_SIZE - BATCH_CRC_SIZE)
+            return null;
+
+        body = ByteBuffer.allocate(length + BATCH_CRC_SIZE);
+        readFully(channel, body, position + BATCH_HEADER_SIZE);
+        crc = new CRC32();
+        crc.update(body.array(), 0, length);
+        if(body.getInt(length) != (int)crc.getValue())
+            return null;
+
+        body.position(0);
+        body.limit(length);
+        return body;
+    }
+
+    private static int applyBatch(ByteBuffer body, MinecraftMap map)
+            throws IOException {
+        int records;
+
+        records = 0;
+        try {
+            while(body.hasRemaining()) {
+                byte type;
+
+                type = body.get();
+                switch(type) {
+                    case BLOCK: {
+                        int width, height, depth;
+                        byte value, flags;
+
+                        width = body.getShort() & 0xFFFF;
+                        height = body.getShort() & 0xFFFF;
+                        depth = body.getShort() & 0xFFFF;
+                        value = body.get();
+                        flags = body.get();
+                        map.restoreBlock(width, height, depth, value, flags);
+                        break;
+                    }
+                    case REGION: {
+                        int width, height, depth, sizeWidth, sizeHeight, sizeDepth, size;
+
+                        width = body.getShort() & 0xFFFF;
+                        height = body.getShort() & 0xFFFF;
+                        depth = body.getShort() & 0xFFFF;
+                        sizeWidth = body.getShort() & 0xFFFF;
+                        sizeHeight = body.getShort() & 0xFFFF;
+                        sizeDepth = body.getShort() & 0xFFFF;
+                        size = sizeWidth * sizeHeight * sizeDepth;
+                        if(size > body.remaining())
+                            throw new BufferUnderflowException();
+                        map.writeRegion(
+                            width, height, depth,
+                            sizeWidth, sizeHeight, sizeDepth,
+                            body.array(), body.position()
+                        );
+                        body.position(body.position() + size);
+                        break;
+                    }
+                    case FILL: {
+                        int width, height, depth, sizeWidth, sizeHeight, sizeDepth;
+                        byte value;
+
+                        width = body.getShort() & 0xFFFF;
+                        height = body.getShort() & 0xFFFF;
+                        depth = body.getShort() & 0xFFFF;
+                        sizeWidth = body.getShort() & 0xFFFF;
+                        sizeHeight = body.getShort() & 0xFFFF;
+                        sizeDepth = body.getShort() & 0xFFFF;
+                        value = body.get();
+                        map.fillRegion(
+                            width, height, depth,
+                            sizeWidth, sizeHeight, sizeDepth,
+                            value
+                        );
+                        break;
+                    }
+                    case SPAWN: {
+                        int spawnWidth, spawnHeight, spawnDepth, spawnRotation, spawnPitch;
+
+                        spawnWidth = body.getInt();
+                        spawnHeight = body.getInt();
+                        spawnDepth = body.getInt();
+                        spawnRotation = body.getShort();
+                        spawnPitch = body.getShort();
+                        map.setSpawn(spawnWidth, spawnHeight, spawnDepth, spawnRotation, spawnPitch);
+                        break;
+                    }
+                    case ATTRIBUTE: {
+                        byte[] key, value;
+                        int length;
+
+                        key = new byte[body.getShort() & 0xFFFF];
+                        body.get(key);
+                        length = body.getInt();
+                        if(length < -1 || length > body.remaining())
+                            throw new BufferUnderflowException();
+                        value = null;
+                        if(length >= 0) {
+                            value = new byte[length];
+                            body.get(value);
+                        }
+                        map.setAttribute(new String(key, StandardCharsets.UTF_8), value);
+                        break;
+                    }
+                    default:
+                        throw new MapFormatException("Unknown change log record");
+                }
+                records++;
+            }
+        } catch(BufferUnderflowException e) {
+            throw new MapFormatException("Change log record incomplete", e);
+        } catch(IndexOutOfBoundsException e) {
+            throw new MapFormatException("Change log record outside map boundries", e);
+        }
+        return records;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while(buffer.hasRemaining()) {
+            int n;
+
+            n = channel.read(buffer, position);
+            if(n < 0)
+                throw new EOFException();
+            position += n;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while(buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+}
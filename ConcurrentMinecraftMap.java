@@ -0,0 +1,602 @@
+package mcmaplib;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.locks.StampedLock;
+import mcmaplib.util.PagedByteArray;
+
+public class ConcurrentMinecraftMap extends MinecraftMap {
+    private static final long serialVersionUID = 1L;
+
+    public static final int REGION_SHIFT = 4;
+    public static final int DEFAULT_STRIPES = Integer.highestOneBit(
+        Math.min(4096, Math.max(64, Runtime.getRuntime().availableProcessors() * 64))
+    );
+
+    private static final byte SHARED = 1,
+                              EXCLUSIVE = 2;
+
+    private final MinecraftMap map;
+    private final StampedLock[] stripes;
+    private final int stripeMask;
+
+    public ConcurrentMinecraftMap(MinecraftMap map) {
+        this(map, DEFAULT_STRIPES);
+    }
+
+    public ConcurrentMinecraftMap(MinecraftMap map, int stripes) {
+        if(map == null)
+            throw new NullPointerException("Map must not be null");
+        if(map instanceof ConcurrentMinecraftMap)
+            throw new IllegalArgumentException("Map is already concurrent");
+        if(stripes <= 0 || (stripes & (stripes - 1)) != 0)
+            throw new IllegalArgumentException("Stripe count must be a positive power of two");
+
+        this.map = map;
+        this.stripes = new StampedLock[stripes];
+        this.stripeMask = stripes - 1;
+        for(int i = 0;i < stripes;i++)
+            this.stripes[i] = new StampedLock();
+    }
+
+    public static interface Update {
+        public void update(MinecraftMap map);
+    }
+
+    public MinecraftMap getMap() {
+        return map;
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    private int getStripeIndex(int regionWidth, int regionHeight, int regionDepth) {
+        int hash;
+
+        hash = regionWidth * 0x9E3779B1 ^ regionHeight * 0x85EBCA77 ^ regionDepth * 0xC2B2AE3D;
+        return (hash ^ (hash >>> 16)) & stripeMask;
+    }
+
+    private StampedLock getStripe(int width, int height, int depth) {
+        return stripes[getStripeIndex(
+            width >> REGION_SHIFT,
+            height >> REGION_SHIFT,
+            depth >> REGION_SHIFT
+        )];
+    }
+
+    private void markRegion(byte[] modes,
+                            int width, int height, int depth,
+                            int sizeWidth, int sizeHeight, int sizeDepth,
+                            byte mode) {
+        long regions;
+        int firstWidth, firstHeight, firstDepth, lastWidth, lastHeight, lastDepth;
+
+        if(sizeWidth <= 0 || sizeHeight <= 0 || sizeDepth <= 0)
+            return;
+
+        firstWidth = width >> REGION_SHIFT;
+        firstHeight = height >> REGION_SHIFT;
+        firstDepth = depth >> REGION_SHIFT;
+        lastWidth = (width + sizeWidth - 1) >> REGION_SHIFT;
+        lastHeight = (height + sizeHeight - 1) >> REGION_SHIFT;
+        lastDepth = (depth + sizeDepth - 1) >> REGION_SHIFT;
+        regions = (long)(lastWidth - firstWidth + 1)
+                      * (lastHeight - firstHeight + 1)
+                      * (lastDepth - firstDepth + 1);
+        if(regions >= stripes.length) {
+            for(int i = 0;i < modes.length;i++) {
+                if(modes[i] < mode)
+                    modes[i] = mode;
+            }
+            return;
+        }
+
+        for(int h = firstHeight;h <= lastHeight;h++) {
+            for(int d = firstDepth;d <= lastDepth;d++) {
+                for(int w = firstWidth;w <= lastWidth;w++) {
+                    int stripe;
+
+                    stripe = getStripeIndex(w, h, d);
+                    if(modes[stripe] < mode)
+                        modes[stripe] = mode;
+                }
+            }
+        }
+    }
+
+    private long[] lock(byte[] modes) {
+        long[] stamps;
+
+        stamps = new long[stripes.length];
+        for(int i = 0;i < stripes.length;i++) {
+            if(modes[i] == EXCLUSIVE)
+                stamps[i] = stripes[i].writeLock();
+            else if(modes[i] == SHARED)
+                stamps[i] = stripes[i].readLock();
+        }
+        return stamps;
+    }
+
+    private long[] lockRegion(int width, int height, int depth,
+                              int sizeWidth, int sizeHeight, int sizeDepth,
+                              boolean exclusive) {
+        byte[] modes;
+
+        modes = new byte[stripes.length];
+        markRegion(
+            modes,
+            width, height, depth,
+            sizeWidth, sizeHeight, sizeDepth,
+            exclusive ? EXCLUSIVE : SHARED
+        );
+        return lock(modes);
+    }
+
+    private long[] lockAll(boolean exclusive) {
+        long[] stamps;
+
+        stamps = new long[stripes.length];
+        for(int i = 0;i < stripes.length;i++)
+            stamps[i] = exclusive ? stripes[i].writeLock() : stripes[i].readLock();
+        return stamps;
+    }
+
+    private void unlock(long[] stamps) {
+        for(int i = stamps.length - 1;i >= 0;i--) {
+            if(stamps[i] != 0)
+                stripes[i].unlock(stamps[i]);
+        }
+    }
+
+    public void update(int width, int height, int depth,
+                       int sizeWidth, int sizeHeight, int sizeDepth,
+                       Update update) {
+        long[] stamps;
+
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        stamps = lockRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth, true);
+        try {
+            update.update(map);
+        } finally {
+            unlock(stamps);
+        }
+    }
+
+    public void read(int width, int height, int depth,
+                     int sizeWidth, int sizeHeight, int sizeDepth,
+                     Update reader) {
+        long[] stamps;
+
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        stamps = lockRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth, false);
+        try {
+            reader.update(map);
+        } finally {
+            unlock(stamps);
+        }
+    }
+
+    public MinecraftMap snapshot() {
+        long[] stamps;
+
+        stamps = lockAll(false);
+        try {
+            return map.clone();
+        } finally {
+            unlock(stamps);
+        }
+    }
+
+    public byte getBlock(int width, int height, int depth) {
+        StampedLock lock;
+        long stamp;
+
+        lock = getStripe(width, height, depth);
+        stamp = lock.tryOptimisticRead();
+        if(stamp != 0) {
+            try {
+                byte value;
+
+                value = map.getBlock(width, height, depth);
+                if(lock.validate(stamp))
+                    return value;
+            } catch(RuntimeException e) {
+                if(lock.validate(stamp))
+                    throw e;
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return map.getBlock(width, height, depth);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void setBlock(int width, int height, int depth, byte type) {
+        StampedLock lock;
+        long stamp;
+
+        lock = getStripe(width, height, depth);
+        stamp = lock.writeLock();
+        try {
+            map.setBlock(width, height, depth, type);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    void restoreBlock(int width, int height, int depth, byte type, byte flags) {
+        StampedLock lock;
+        long stamp;
+
+        lock = getStripe(width, height, depth);
+        stamp = lock.writeLock();
+        try {
+            map.restoreBlock(width, height, depth, type, flags);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void setBlocks(BlockChangeBatch batch) {
+        int[] widths, heights, depths;
+        byte[] modes;
+        long[] stamps;
+        int size;
+
+        checkBatch(batch);
+        widths = batch.getWidths();
+        heights = batch.getHeights();
+        depths = batch.getDepths();
+        size = batch.size();
+        modes = new byte[stripes.length];
+        for(int i = 0;i < size;i++) {
+            modes[getStripeIndex(
+                widths[i] >> REGION_SHIFT,
+                heights[i] >> REGION_SHIFT,
+                depths[i] >> REGION_SHIFT
+            )] = EXCLUSIVE;
+        }
+        stamps = lock(modes);
+        try {
+            map.setBlocks(batch);
+        } finally {
+            unlock(stamps);
+        }
+    }
+
+    public boolean isOutOfBounds(int width, int height, int depth) {
+        return map.isOutOfBounds(width, height, depth);
+    }
+
+    public boolean isPlayerOutOfBounds(int width, int height, int depth) {
+        return map.isPlayerOutOfBounds(width, height, depth);
+    }
+
+    public byte[] getBlocks() {
+        long[] stamps;
+
+        stamps = lockAll(false);
+        try {
+            return map.getBlocks();
+        } finally {
+            unlock(stamps);
+        }
+    }
+
+    @Override
+    public void copyBlocksTo(byte[] dest, int offset) {
+        long[] stamps;
+
+        stamps = lockAll(false);
+        try {
+            map.copyBlocksTo(dest, offset);
+        } finally {
+            unlock(stamps);
+        }
+    }
+
+    @Override
+    public void copyBlocksTo(ByteBuffer dest) {
+        long[] stamps;
+
+        stamps = lockAll(false);
+        try {
+            map.copyBlocksTo(dest);
+        } finally {
+            unlock(stamps);
+        }
+    }
+
+    @Override
+    public BlockView getBlockView() {
+        return snapshot().getBlockView();
+    }
+
+    public void setSpawn(int spawnWidth, int spawnHeight, int spawnDepth,
+                         int spawnRotation, int spawnPitch) {
+        synchronized(this) {
+            map.setSpawn(spawnWidth, spawnHeight, spawnDepth, spawnRotation, spawnPitch);
+        }
+    }
+
+    public int getWidth() {
+        return map.getWidth();
+    }
+
+    public int getHeight() {
+        return map.getHeight();
+    }
+
+    public int getDepth() {
+        return map.getDepth();
+    }
+
+    public int getSpawnWidth() {
+        return map.getSpawnWidth();
+    }
+
+    public int getSpawnHeight() {
+        return map.getSpawnHeight();
+    }
+
+    public int getSpawnDepth() {
+        return map.getSpawnDepth();
+    }
+
+    public short getSpawnRotation() {
+        return map.getSpawnRotation();
+    }
+
+    public short getSpawnPitch() {
+        return map.getSpawnPitch();
+    }
+
+    @Override
+    public void fillRegion(int width, int height, int depth,
+                           int sizeWidth, int sizeHeight, int sizeDepth,
+                           byte type) {
+        long[] stamps;
+
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        stamps = lockRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth, true);
+        try {
+            map.fillRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth, type);
+        } finally {
+            unlock(stamps);
+        }
+    }
+
+    @Override
+    public int replaceInRegion(int width, int height, int depth,
+                               int sizeWidth, int sizeHeight, int sizeDepth,
+                               byte from, byte to) {
+        long[] stamps;
+
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        stamps = lockRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth, true);
+        try {
+            return map.replaceInRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth, from, to);
+        } finally {
+            unlock(stamps);
+        }
+    }
+
+    @Override
+    public void readRegion(int width, int height, int depth,
+                           int sizeWidth, int sizeHeight, int sizeDepth,
+                           byte[] dest, int offset) {
+        long[] stamps;
+
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        checkBuffer(dest, offset, sizeWidth, sizeHeight, sizeDepth);
+        stamps = lockRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth, false);
+        try {
+            map.readRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth, dest, offset);
+        } finally {
+            unlock(stamps);
+        }
+    }
+
+    @Override
+    public void writeRegion(int width, int height, int depth,
+                            int sizeWidth, int sizeHeight, int sizeDepth,
+                            byte[] src, int offset) {
+        long[] stamps;
+
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        checkBuffer(src, offset, sizeWidth, sizeHeight, sizeDepth);
+        stamps = lockRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth, true);
+        try {
+            map.writeRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth, src, offset);
+        } finally {
+            unlock(stamps);
+        }
+    }
+
+    @Override
+    public void copyRegion(MinecraftMap source,
+                           int sourceWidth, int sourceHeight, int sourceDepth,
+                           int width, int height, int depth,
+                           int sizeWidth, int sizeHeight, int sizeDepth) {
+        byte[] modes;
+        long[] stamps;
+
+        if(source != this) {
+            super.copyRegion(
+                source,
+                sourceWidth, sourceHeight, sourceDepth,
+                width, height, depth,
+                sizeWidth, sizeHeight, sizeDepth
+            );
+            return;
+        }
+
+        checkRegion(sourceWidth, sourceHeight, sourceDepth, sizeWidth, sizeHeight, sizeDepth);
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        modes = new byte[stripes.length];
+        markRegion(
+            modes,
+            sourceWidth, sourceHeight, sourceDepth,
+            sizeWidth, sizeHeight, sizeDepth,
+            SHARED
+        );
+        markRegion(modes, width, height, depth, sizeWidth, sizeHeight, sizeDepth, EXCLUSIVE);
+        stamps = lock(modes);
+        try {
+            map.copyRegion(
+                map,
+                sourceWidth, sourceHeight, sourceDepth,
+                width, height, depth,
+                sizeWidth, sizeHeight, sizeDepth
+            );
+        } finally {
+            unlock(stamps);
+        }
+    }
+
+    @Override
+    protected PagedByteArray[] getBlockPlanes() {
+        return map.getBlockPlanes();
+    }
+
+    @Override
+    public boolean isDirty() {
+        return map.isDirty();
+    }
+
+    @Override
+    public void clearDirty() {
+        long[] stamps;
+
+        stamps = lockAll(true);
+        try {
+            map.clearDirty();
+        } finally {
+            unlock(stamps);
+        }
+    }
+
+    @Override
+    public int saveDelta(Path path) throws IOException, NotImplementedException {
+        long[] stamps;
+
+        stamps = lockAll(false);
+        try {
+            return map.saveDelta(path);
+        } finally {
+            unlock(stamps);
+        }
+    }
+
+    @Override
+    public void compact(Path path, SaveOptions options) throws IOException, NotImplementedException {
+        MinecraftMap snapshot;
+        String[] attributes;
+        long[] stamps;
+        boolean saved;
+
+        stamps = lockAll(false);
+        try {
+            snapshot = map.clone();
+            attributes = map.getDirtyAttributes();
+            map.clearDirty();
+        } finally {
+            unlock(stamps);
+        }
+
+        saved = false;
+        try {
+            DeltaJournal.compact(path, snapshot, options);
+            saved = true;
+        } finally {
+            if(!saved)
+                restoreDirty(snapshot, attributes);
+        }
+    }
+
+    private void restoreDirty(MinecraftMap snapshot, String[] attributes) {
+        PagedByteArray[] planes, snapshotPlanes;
+
+        for(int i = 0;i < attributes.length;i++)
+            map.markAttributeDirty(attributes[i]);
+
+        planes = map.getBlockPlanes();
+        snapshotPlanes = snapshot.getBlockPlanes();
+        if(planes == null || snapshotPlanes == null)
+            return;
+
+        for(int i = 0;i < planes.length;i++) {
+            int region;
+
+            region = snapshotPlanes[i].nextDirtyRegion(0);
+            while(region >= 0) {
+                planes[i].markDirty(region << PagedByteArray.DIRTY_SHIFT, 1);
+                region = snapshotPlanes[i].nextDirtyRegion(region + 1);
+            }
+        }
+    }
+
+    @Override
+    public void save(OutputStream out) throws IOException, NotImplementedException {
+        snapshot().save(out);
+    }
+
+    @Override
+    public void save(OutputStream out, SaveOptions options) throws IOException, NotImplementedException {
+        snapshot().save(out, options);
+    }
+
+    @Override
+    public void addChangeListener(MapChangeListener listener) {
+        map.addChangeListener(listener);
+    }
+
+    @Override
+    public void removeChangeListener(MapChangeListener listener) {
+        map.removeChangeListener(listener);
+    }
+
+    @Override
+    void fireMapSaved(Path path) throws IOException {
+        map.fireMapSaved(path);
+    }
+
+    @Override
+    byte[] getAttribute(String name) {
+        return map.getAttribute(name);
+    }
+
+    @Override
+    void markAttributeDirty(String name) {
+        map.markAttributeDirty(name);
+    }
+
+    @Override
+    String[] getDirtyAttributes() {
+        return map.getDirtyAttributes();
+    }
+
+    @Override
+    void clearDirtyAttributes(String[] names) {
+        map.clearDirtyAttributes(names);
+    }
+
+    @Override
+    void setAttribute(String name, byte[] value) throws MapFormatException {
+        map.setAttribute(name, value);
+    }
+
+    @Override
+    public ConcurrentMinecraftMap clone() {
+        return new ConcurrentMinecraftMap(snapshot(), stripes.length);
+    }
+}
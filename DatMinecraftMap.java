@@ -1,23 +1,35 @@
 package mcmaplib;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.EOFException;
-import java.io.FileInputStream;
-import java.io.DataInputStream;
-import java.io.FileOutputStream;
+import java.io.FileNotFoundException;
+import java.io.DataOutput;
+import java.io.DataInput;
 import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.zip.GZIPInputStream;
-import mcmaplib.util.ExtendedDataInputStream;
+import mcmaplib.util.ChannelInputStream;
+import mcmaplib.util.ChannelOutputStream;
+import mcmaplib.util.CodecInputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.io.ObjectOutputStream;
 import java.io.ObjectStreamClass;
 import java.io.ObjectStreamConstants;
 import java.io.ObjectStreamField;
 import java.io.OutputStream;
-import java.util.zip.GZIPOutputStream;
-import mcmaplib.util.ExtendedDataOutputStream;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import mcmaplib.util.CodecOutputStream;
+import mcmaplib.util.FinishableOutputStream;
+import mcmaplib.util.PagedByteArray;
+import mcmaplib.util.PooledGZIPInputStream;
+import mcmaplib.util.PooledGZIPOutputStream;
+import mcmaplib.util.ReleasableInputStream;
 
 public class DatMinecraftMap extends MinecraftMapBase {
     private static final long MAGIC = 0x271bb788;
@@ -27,6 +39,89 @@ public class DatMinecraftMap extends MinecraftMapBase {
     public static final short VERSION_2 = SUPPORTED_VERSIONS[0],
                               CURRENT_VERSION = VERSION_2;
 
+    private final static Set<String> EXTENSIONS;
+    private final static String NAME = "Minecraft",
+                                DESCRIPTION = "Map format for the Minecraft Classic client";
+
+    static {
+        Set<String> extensions = new HashSet<String>();
+        extensions.add("dat");
+        EXTENSIONS = Collections.unmodifiableSet(extensions);
+    }
+
+    public static MapFormat FORMAT = new MapFormat() {
+        public String getName() {
+            return NAME;
+        }
+
+        public String getDescription() {
+            return DESCRIPTION;
+        }
+
+        public Set<String> getExtensions() {
+            return EXTENSIONS;
+        }
+
+        public DatMinecraftMap load(File file)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException,
+                       FileNotFoundException {
+            return DatMinecraftMap.load(file);
+        }
+
+        @Override
+        public DatMinecraftMap load(File file, LoadOptions options)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException,
+                       FileNotFoundException {
+            return DatMinecraftMap.load(file, options);
+        }
+
+        @Override
+        public MapHeader readHeader(File file)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException,
+                       FileNotFoundException {
+            return DatMinecraftMap.readHeader(file);
+        }
+
+        @Override
+        public void visit(InputStream in, BlockVisitor visitor, int chunkSize)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException {
+            DatMinecraftMap.visit(in, visitor, chunkSize);
+        }
+
+        @Override
+        public MapStreamWriter createStreamWriter(OutputStream out) {
+            return DatMinecraftMap.createStreamWriter(out);
+        }
+
+        @Override
+        public DatMinecraftMap load(InputStream in, LoadOptions options)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException {
+            return DatMinecraftMap.load(in, options);
+        }
+
+        @Override
+        public boolean matchesSignature(byte[] data, int length, boolean compressed) {
+            return compressed && length >= 5
+                && (ByteBuffer.wrap(data).getInt(0) & 0xFFFFFFFFL) == MAGIC
+                && data[4] == VERSION_2;
+        }
+
+        public DatMinecraftMap convert(MinecraftMap map)
+                throws InvalidMapException {
+            return new DatMinecraftMap(map);
+        }
+    };
+
     public static boolean isVersionSupported(long version) {
         for(int i = 0;i < SUPPORTED_VERSIONS.length;i++) {
             if(SUPPORTED_VERSIONS[i] == version)
@@ -48,9 +143,22 @@ public class DatMinecraftMap extends MinecraftMapBase {
         );
     }
 
+    protected DatMinecraftMap(PagedByteArray blocks,
+                              int width, int height, int depth,
+                              int spawnWidth, int spawnHeight, int spawnDepth,
+                              int spawnRotation, int spawnPitch)
+                                  throws InvalidMapException {
+        super(
+            blocks,
+            width, height, depth,
+            spawnWidth, spawnHeight, spawnDepth,
+            spawnRotation, spawnPitch
+        );
+    }
+
     public DatMinecraftMap(MinecraftMap map) throws InvalidMapException {
         this(
-            map.getBlocks(),
+            copyBlocks(map),
             map.getWidth(),
             map.getHeight(),
             map.getDepth(),
@@ -62,13 +170,25 @@ public class DatMinecraftMap extends MinecraftMapBase {
         );
     }
 
-    private static DatMinecraftMap loadVersion2(DataInputStream dis)
-            throws IOException, NotImplementedException, MapFormatException {
-        DatMinecraftMap map;
+    private static MapHeader createHeader(Level level) {
+        return new MapHeader(
+            level.width,
+            level.height,
+            level.depth,
+            level.xSpawn * 32,
+            level.ySpawn * 32,
+            level.zSpawn * 32,
+            Math.abs(Math.round((level.rotSpawn * 255) % 255)),
+            150
+        );
+    }
+
+    private static Level readLevel(InputStream in)
+            throws IOException, MapFormatException {
         LevelObjectInputStream ois;
         Level level;
 
-        ois = new LevelObjectInputStream(dis);
+        ois = new LevelObjectInputStream(in);
         try {
            level = (Level)ois.readObject();
         } catch(ClassNotFoundException e) {
@@ -76,18 +196,34 @@ public class DatMinecraftMap extends MinecraftMapBase {
         } catch(ClassCastException e)  {
             throw new MapFormatException("Holds wrong java serialized object", e);
         }
+        return level;
+    }
+
+    private static DatMinecraftMap loadVersion2(InputStream in, IOTracker tracker)
+            throws IOException, NotImplementedException, MapFormatException {
+        DatMinecraftMap map;
+        Level level;
+
+        tracker.enter(IOStatistics.Phase.DECOMPRESSION);
+        level = readLevel(in);
+        if(level.blocks != null)
+            tracker.blocks(level.blocks.length);
 
+        tracker.enter(IOStatistics.Phase.VALIDATION);
         try {
+            MapHeader header;
+
+            header = createHeader(level);
             map = new DatMinecraftMap(
                 level.blocks,
-                level.width,
-                level.height,
-                level.depth,
-                level.xSpawn * 32,
-                level.ySpawn * 32,
-                level.zSpawn * 32,
-                Math.abs(Math.round((level.rotSpawn * 255) % 255)),
-                150
+                header.getWidth(),
+                header.getHeight(),
+                header.getDepth(),
+                header.getSpawnWidth(),
+                header.getSpawnHeight(),
+                header.getSpawnDepth(),
+                header.getSpawnRotation(),
+                header.getSpawnPitch()
             );
         } catch(InvalidMapException e) {
             throw new MapFormatException("Invalid map data: " + e.getMessage(), e);
@@ -95,32 +231,201 @@ public class DatMinecraftMap extends MinecraftMapBase {
         return map;
     }
 
+    private static void visitVersion2(InputStream in,
+                                      BlockVisitor visitor, int chunkSize)
+            throws IOException, NotImplementedException, MapFormatException {
+        BufferedInputStream bis;
+        LevelStreamReader reader;
+        CodecInputStream bdis;
+        Level level;
+
+        bis = new BufferedInputStream(in);
+        bis.mark(LevelStreamReader.MARK_LIMIT);
+        bdis = new CodecInputStream(bis);
+
+        level = new Level();
+        reader = new LevelStreamReader(bdis);
+        if(reader.readLevel(level)) {
+            MapHeader header;
+
+            header = createHeader(level);
+            if(reader.getBlocksLength() != header.getTotalBlocks())
+                throw new MapFormatException("Block data array has incorrect size");
+
+            visitor.visitHeader(header);
+            BlockStreams.visit(bdis, header, null, visitor, chunkSize);
+        } else {
+            bis.reset();
+            BlockStreams.visit(loadVersion2(bis, IOTracker.DISABLED), visitor, chunkSize);
+        }
+    }
+
+    public static MapHeader readHeader(InputStream in)
+            throws IOException, NotImplementedException, MapFormatException {
+        PooledGZIPInputStream gis;
+        BufferedInputStream bis;
+        CodecInputStream dis;
+        MapHeader header;
+
+        gis = new PooledGZIPInputStream(in, null);
+        bis = new BufferedInputStream(gis);
+        bis.mark(LevelStreamReader.MARK_LIMIT);
+        dis = new CodecInputStream(bis);
+        try {
+            Level level;
+
+            readVersion(dis);
+            level = new Level();
+            if(new LevelStreamReader(dis).readLevel(level)) {
+                header = createHeader(level);
+            } else {
+                bis.reset();
+                dis = new CodecInputStream(bis);
+                readVersion(dis);
+                header = createHeader(readLevel(dis));
+            }
+        } catch(EOFException e) {
+            throw new MapFormatException("Map header incomplete", e);
+        } finally {
+            gis.release();
+        }
+        return header;
+    }
+
+    public static MapHeader readHeader(File file)
+            throws IOException, NotImplementedException, MapFormatException {
+        return readHeader(file.toPath());
+    }
+
+    public static MapHeader readHeader(Path path)
+            throws IOException, NotImplementedException, MapFormatException {
+        InputStream in;
+        MapHeader header;
+
+        in = new ChannelInputStream(path);
+        try {
+            header = readHeader(in);
+        } finally {
+            in.close();
+        }
+        return header;
+    }
+
+    private static void readVersion(CodecInputStream dis)
+            throws IOException, NotImplementedException, MapFormatException {
+        if(dis.readUnsignedInt() != MAGIC)
+            throw new MapFormatException("Wrong magic constant");
+        if(dis.readUnsignedByte() != VERSION_2)
+            throw new NotImplementedException("Unsupported version");
+    }
+
+    public static void visit(InputStream in, BlockVisitor visitor, int chunkSize)
+            throws IOException, NotImplementedException, MapFormatException {
+        PooledGZIPInputStream gis;
+        CodecInputStream dis;
+        long magic;
+        short version;
+
+        gis = new PooledGZIPInputStream(in, null);
+        dis = new CodecInputStream(gis);
+        try {
+            magic = dis.readUnsignedInt();
+            if(magic != MAGIC)
+                throw new MapFormatException("Wrong magic constant");
+
+            version = (short)dis.readUnsignedByte();
+            if(version == VERSION_2)
+                visitVersion2(dis, visitor, chunkSize);
+            else
+                throw new NotImplementedException("Unsupported version");
+        } catch(EOFException e) {
+            throw new MapFormatException("Map file incomplete", e);
+        } finally {
+            gis.release();
+        }
+    }
+
+    public static void visit(InputStream in, BlockVisitor visitor)
+            throws IOException, NotImplementedException, MapFormatException {
+        visit(in, visitor, BlockVisitor.DEFAULT_CHUNK_SIZE);
+    }
+
+    public static void visit(File file, BlockVisitor visitor, int chunkSize)
+            throws IOException, NotImplementedException, MapFormatException {
+        visit(file.toPath(), visitor, chunkSize);
+    }
+
+    public static void visit(Path path, BlockVisitor visitor, int chunkSize)
+            throws IOException, NotImplementedException, MapFormatException {
+        InputStream fis;
+
+        fis = new ChannelInputStream(path);
+        try {
+            visit(fis, visitor, chunkSize);
+        } finally {
+            fis.close();
+        }
+    }
+
+    public static void visit(File file, BlockVisitor visitor)
+            throws IOException, NotImplementedException, MapFormatException {
+        visit(file.toPath(), visitor);
+    }
+
+    public static void visit(Path path, BlockVisitor visitor)
+            throws IOException, NotImplementedException, MapFormatException {
+        visit(path, visitor, BlockVisitor.DEFAULT_CHUNK_SIZE);
+    }
+
     public static DatMinecraftMap load(File file)
             throws IOException, NotImplementedException, MapFormatException {
-        FileInputStream fis;
+        return load(file.toPath());
+    }
+
+    public static DatMinecraftMap load(Path path)
+            throws IOException, NotImplementedException, MapFormatException {
+        return load(path, new LoadOptions());
+    }
+
+    public static DatMinecraftMap load(File file, LoadOptions options)
+            throws IOException, NotImplementedException, MapFormatException {
+        return load(file.toPath(), options);
+    }
+
+    public static DatMinecraftMap load(Path path, LoadOptions options)
+            throws IOException, NotImplementedException, MapFormatException {
+        InputStream in;
         DatMinecraftMap map;
 
-        fis = new FileInputStream(file);
+        in = new ChannelInputStream(path, options.getBufferSize());
         try {
-            map = load(fis);
+            map = load(in, options);
         } finally {
-            fis.close();
+            in.close();
         }
         return map;
     }
 
     public static DatMinecraftMap load(InputStream in)
             throws IOException, NotImplementedException, MapFormatException {
+        return load(in, new LoadOptions());
+    }
+
+    public static DatMinecraftMap load(InputStream in, LoadOptions options)
+            throws IOException, NotImplementedException, MapFormatException {
         DatMinecraftMap map;
-        GZIPInputStream gis;
+        IOTracker tracker;
+        ReleasableInputStream gis;
 
-        gis = new GZIPInputStream(in);
+        tracker = IOTracker.startLoad(NAME);
+        gis = null;
         try {
-            ExtendedDataInputStream dis;
+            CodecInputStream dis;
             long magic;
             short version;
 
-            dis = new ExtendedDataInputStream(gis);
+            gis = options.createGZIPInputStream(tracker.source(in));
+            dis = new CodecInputStream(tracker.inflated(gis));
 
             magic = dis.readUnsignedInt();
             if(magic != MAGIC)
@@ -128,59 +433,152 @@ public class DatMinecraftMap extends MinecraftMapBase {
 
             version = (short)dis.readUnsignedByte();
             if(version == VERSION_2)
-                map = loadVersion2(dis);
+                map = loadVersion2(dis, tracker);
             else
                 throw new NotImplementedException("Unsupported version");
         } catch(EOFException e) {
-            throw new MapFormatException("Map file incomplete", e);
+            throw tracker.failed(new MapFormatException("Map file incomplete", e));
+        } catch(IOException e) {
+            throw tracker.failed(e);
+        } catch(RuntimeException e) {
+            throw tracker.failed(e);
+        } finally {
+            if(gis != null)
+                gis.release();
         }
+        tracker.completed();
         return map;
     }
 
     public void save(File file, int version)
             throws IOException, NotImplementedException{
-        FileOutputStream fos;
+        save(file.toPath(), version);
+    }
+
+    public void save(Path path, int version)
+            throws IOException, NotImplementedException{
+        OutputStream fos;
 
-        fos = new FileOutputStream(file);
+        fos = new ChannelOutputStream(path);
         try {
             save(fos, version);
         } finally {
             fos.close();
         }
+        fireMapSaved(path);
     }
 
     public void saveVersion2(OutputStream out)
             throws IOException, NotImplementedException {
-        ExtendedDataOutputStream dos;
+        saveVersion2(out, new SaveOptions());
+    }
+
+    public void saveVersion2(OutputStream out, SaveOptions options)
+            throws IOException, NotImplementedException {
+        CodecOutputStream dos;
         LevelObjectOutputStream los;
-        GZIPOutputStream gos;
+        FinishableOutputStream gos;
+        IOTracker tracker;
         Level level;
 
-        gos = new GZIPOutputStream(out);
-        dos = new ExtendedDataOutputStream(gos);
-        dos.writeUnsignedInt(MAGIC);
-        dos.writeUnsignedByte(VERSION_2);
+        tracker = IOTracker.startSave(NAME);
+        gos = null;
+        try {
+            gos = options.createGZIPOutputStream(tracker.sink(out));
+            dos = new CodecOutputStream(tracker.deflated(gos));
+            dos.writeUnsignedInt(MAGIC);
+            dos.writeByte(VERSION_2);
+
+            tracker.enter(IOStatistics.Phase.COMPRESSION);
+            los = new LevelObjectOutputStream(dos);
+            level = new Level();
+            level.width = width;
+            level.height = height;
+            level.depth = depth;
+            level.blocks = blocks.toByteArray();
+            level.xSpawn = spawnWidth / 32;
+            level.ySpawn = spawnHeight / 32;
+            level.zSpawn = spawnDepth / 32;
+            los.writeObject(level);
+            los.flush();
+            tracker.blocks(level.blocks.length);
+            dos.flush();
+            gos.finish();
+            gos.flush();
+        } catch(IOException e) {
+            throw tracker.failed(e);
+        } catch(RuntimeException e) {
+            throw tracker.failed(e);
+        } finally {
+            if(gos != null)
+                gos.release();
+        }
+        tracker.completed();
+    }
 
-        los = new LevelObjectOutputStream(dos);
-        level = new Level();
-        level.width = width;
-        level.height = height;
-        level.depth = depth;
-        level.blocks = blocks;
-        level.xSpawn = spawnWidth / 32;
-        level.ySpawn = spawnHeight / 32;
-        level.zSpawn = spawnDepth / 32;
-        los.writeObject(level);
-        los.flush();
-        dos.flush();
-        gos.finish();
-        gos.flush();
+    private static class StreamWriterVersion2 extends MapStreamWriter {
+        private CodecOutputStream dos;
+        private FinishableOutputStream gos;
+        private LevelStreamWriter writer;
+
+        StreamWriterVersion2(OutputStream out) {
+            super(out);
+        }
+
+        protected void writeHeader(MapHeader header) throws IOException {
+            Level level;
+
+            if(header.getTotalBlocks() > Integer.MAX_VALUE)
+                throw new MapFormatException("Width, height, and depth are too large");
+
+            gos = new PooledGZIPOutputStream(out, null);
+            dos = new CodecOutputStream(gos);
+            dos.writeUnsignedInt(MAGIC);
+            dos.writeByte(VERSION_2);
+
+            level = new Level();
+            level.width = header.getWidth();
+            level.height = header.getHeight();
+            level.depth = header.getDepth();
+            level.xSpawn = header.getSpawnWidth() / 32;
+            level.ySpawn = header.getSpawnHeight() / 32;
+            level.zSpawn = header.getSpawnDepth() / 32;
+            writer = new LevelStreamWriter(dos);
+            writer.writeLevel(level, (int)header.getTotalBlocks());
+        }
+
+        protected void writeBlocks(byte[] blocks, byte[][] extendedBlocks, int count)
+                throws IOException {
+            dos.write(blocks, 0, count);
+        }
+
+        protected void finishBlocks() throws IOException {
+            writer.writeLevelEnd();
+            dos.flush();
+            gos.finish();
+            gos.flush();
+        }
+
+        @Override
+        public void release() {
+            if(gos != null)
+                gos.release();
+        }
+    }
+
+    public static MapStreamWriter createStreamWriter(OutputStream out) {
+        return new StreamWriterVersion2(out);
     }
 
     public void save(OutputStream out, int version)
             throws IOException, NotImplementedException{
+        save(out, version, new SaveOptions());
+    }
+
+    public void save(OutputStream out, int version, SaveOptions options)
+            throws IOException, NotImplementedException{
         if(version == VERSION_2)
-            saveVersion2(out);
+            saveVersion2(out, options);
         else
             throw new NotImplementedException("Unsupported version");
     }
@@ -197,10 +595,21 @@ public class DatMinecraftMap extends MinecraftMapBase {
         save(out, CURRENT_VERSION);
     }
 
+    @Override
+    public void save(OutputStream out, SaveOptions options)
+            throws IOException, NotImplementedException{
+        save(out, CURRENT_VERSION, options);
+    }
+
     @Override
     public DatMinecraftMap clone() {
         try {
-            return new DatMinecraftMap(this);
+            return new DatMinecraftMap(
+                blocks.snapshot(),
+                width, height, depth,
+                spawnWidth, spawnHeight, spawnDepth,
+                spawnRotation, spawnPitch
+            );
         } catch(InvalidMapException e) {
             throw new RuntimeException("Could not clone map", e);
         }
@@ -225,6 +634,236 @@ class LevelObjectInputStream extends ObjectInputStream {
     }
 }
 
+class LevelStreamReader implements ObjectStreamConstants {
+    static final int MARK_LIMIT = 65536;
+
+    private static final String LEVEL_CLASS = "com.mojang.minecraft.level.Level";
+
+    private final DataInput in;
+    private int blocksLength;
+
+    LevelStreamReader(DataInput in) {
+        this.in = in;
+    }
+
+    int getBlocksLength() {
+        return blocksLength;
+    }
+
+    boolean readLevel(Level level) throws IOException {
+        String[] names, types;
+        char[] typeCodes;
+        int fieldCount, found;
+        byte flags;
+
+        if(in.readShort() != STREAM_MAGIC || in.readShort() != STREAM_VERSION)
+            return false;
+        if(in.readByte() != TC_OBJECT || in.readByte() != TC_CLASSDESC)
+            return false;
+        if(!in.readUTF().equals(LEVEL_CLASS))
+            return false;
+
+        in.readLong();
+        flags = in.readByte();
+        if((flags & SC_SERIALIZABLE) == 0 || (flags & (SC_WRITE_METHOD | SC_EXTERNALIZABLE)) != 0)
+            return false;
+
+        fieldCount = in.readUnsignedShort();
+        typeCodes = new char[fieldCount];
+        names = new String[fieldCount];
+        types = new String[fieldCount];
+        for(int i = 0;i < fieldCount;i++) {
+            typeCodes[i] = (char)in.readUnsignedByte();
+            names[i] = in.readUTF();
+            if(typeCodes[i] == '[' || typeCodes[i] == 'L') {
+                if(in.readByte() != TC_STRING)
+                    return false;
+                types[i] = in.readUTF();
+            }
+        }
+
+        if(in.readByte() != TC_ENDBLOCKDATA || in.readByte() != TC_NULL)
+            return false;
+
+        found = 0;
+        for(int i = 0;i < fieldCount;i++) {
+            switch(typeCodes[i]) {
+                case 'I': {
+                    int value;
+
+                    value = in.readInt();
+                    if(names[i].equals("width")) {
+                        level.width = value;
+                        found |= 1;
+                    } else if(names[i].equals("height")) {
+                        level.height = value;
+                        found |= 2;
+                    } else if(names[i].equals("depth")) {
+                        level.depth = value;
+                        found |= 4;
+                    } else if(names[i].equals("xSpawn")) {
+                        level.xSpawn = value;
+                    } else if(names[i].equals("ySpawn")) {
+                        level.ySpawn = value;
+                    } else if(names[i].equals("zSpawn")) {
+                        level.zSpawn = value;
+                    }
+                    break;
+                }
+                case 'F': {
+                    float value;
+
+                    value = in.readFloat();
+                    if(names[i].equals("rotSpawn"))
+                        level.rotSpawn = value;
+                    break;
+                }
+                case 'B':
+                case 'Z':
+                    in.readByte();
+                    break;
+                case 'C':
+                case 'S':
+                    in.readShort();
+                    break;
+                case 'J':
+                case 'D':
+                    in.readLong();
+                    break;
+                default:
+                    if(!names[i].equals("blocks") || !"[B".equals(types[i]))
+                        return false;
+                    return found == 7 && readBlocksHeader();
+            }
+        }
+        return false;
+    }
+
+    private boolean readBlocksHeader() throws IOException {
+        if(in.readByte() != TC_ARRAY)
+            return false;
+
+        switch(in.readByte()) {
+            case TC_CLASSDESC:
+                if(!in.readUTF().equals("[B"))
+                    return false;
+                in.readLong();
+                in.readByte();
+                if(in.readUnsignedShort() != 0)
+                    return false;
+                if(in.readByte() != TC_ENDBLOCKDATA || in.readByte() != TC_NULL)
+                    return false;
+                break;
+            default:
+                return false;
+        }
+
+        blocksLength = in.readInt();
+        return blocksLength >= 0;
+    }
+}
+
+class LevelStreamWriter implements ObjectStreamConstants {
+    private final DataOutput out;
+    private ObjectStreamField[] fields;
+    private int nextField;
+
+    LevelStreamWriter(DataOutput out) {
+        this.out = out;
+    }
+
+    void writeLevel(Level level, int blocksLength) throws IOException {
+        ObjectStreamClass desc;
+
+        desc = ObjectStreamClass.lookup(Level.class);
+        fields = desc.getFields();
+
+        out.writeShort(STREAM_MAGIC);
+        out.writeShort(STREAM_VERSION);
+        out.writeByte(TC_OBJECT);
+        out.writeByte(TC_CLASSDESC);
+        out.writeUTF("com.mojang.minecraft.level.Level");
+        out.writeLong(desc.getSerialVersionUID());
+        out.writeByte(SC_SERIALIZABLE);
+        out.writeShort(fields.length);
+        for(int i = 0;i < fields.length;i++) {
+            out.writeByte(fields[i].getTypeCode());
+            out.writeUTF(fields[i].getName());
+            if(!fields[i].isPrimitive()) {
+                out.writeByte(TC_STRING);
+                out.writeUTF(fields[i].getTypeString());
+            }
+        }
+        out.writeByte(TC_ENDBLOCKDATA);
+        out.writeByte(TC_NULL);
+
+        try {
+            for(nextField = 0;nextField < fields.length;nextField++) {
+                ObjectStreamField field;
+                Field value;
+
+                field = fields[nextField];
+                if(!field.isPrimitive())
+                    break;
+
+                value = Level.class.getField(field.getName());
+                switch(field.getTypeCode()) {
+                    case 'I':
+                        out.writeInt(value.getInt(level));
+                        break;
+                    case 'F':
+                        out.writeFloat(value.getFloat(level));
+                        break;
+                    case 'J':
+                        out.writeLong(value.getLong(level));
+                        break;
+                    case 'D':
+                        out.writeDouble(value.getDouble(level));
+                        break;
+                    case 'Z':
+                        out.writeBoolean(value.getBoolean(level));
+                        break;
+                    case 'B':
+                        out.writeByte(value.getByte(level));
+                        break;
+                    case 'C':
+                        out.writeChar(value.getChar(level));
+                        break;
+                    case 'S':
+                        out.writeShort(value.getShort(level));
+                        break;
+                }
+            }
+        } catch(NoSuchFieldException e) {
+            throw new IOException("Cannot serialize level field", e);
+        } catch(IllegalAccessException e) {
+            throw new IOException("Cannot serialize level field", e);
+        }
+
+        for(;nextField < fields.length;nextField++) {
+            if(fields[nextField].getName().equals("blocks"))
+                break;
+            out.writeByte(TC_NULL);
+        }
+        nextField++;
+
+        out.writeByte(TC_ARRAY);
+        out.writeByte(TC_CLASSDESC);
+        out.writeUTF("[B");
+        out.writeLong(ObjectStreamClass.lookup(byte[].class).getSerialVersionUID());
+        out.writeByte(SC_SERIALIZABLE);
+        out.writeShort(0);
+        out.writeByte(TC_ENDBLOCKDATA);
+        out.writeByte(TC_NULL);
+        out.writeInt(blocksLength);
+    }
+
+    void writeLevelEnd() throws IOException {
+        for(;nextField < fields.length;nextField++)
+            out.writeByte(TC_NULL);
+    }
+}
+
 class LevelObjectOutputStream extends ObjectOutputStream {
     public LevelObjectOutputStream(OutputStream out) throws IOException {
         super(out);
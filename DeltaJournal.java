@@ -0,0 +1,563 @@
+package mcmaplib;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import mcmaplib.util.PagedByteArray;
+
+public final class DeltaJournal {
+    public static final String EXTENSION = ".journal";
+
+    private static final int MAGIC = 0x4D434A4C,
+                             ENTRY_MAGIC = 0x4D434A45;
+    private static final byte VERSION_1 = 1,
+                              VERSION_2 = 2,
+                              VERSION_3 = 3;
+    private static final int HEADER_SIZE = 34,
+                             ENTRY_HEADER_SIZE = 8,
+                             ENTRY_CRC_SIZE = 4,
+                             SPAWN_SIZE = 16,
+                             REGION_SIZE = 5,
+                             CHECKSUM_BUFFER_SIZE = 65536;
+
+    private static final ConcurrentHashMap<Path, BaseKey> BASE_KEYS =
+        new ConcurrentHashMap<Path, BaseKey>();
+
+    private DeltaJournal() {
+    }
+
+    public static File getJournalFile(File mapFile) {
+        return new File(mapFile.getPath() + EXTENSION);
+    }
+
+    public static Path getJournalPath(Path mapFile) {
+        return mapFile.resolveSibling(mapFile.getFileName().toString() + EXTENSION);
+    }
+
+    public static int append(File mapFile, MinecraftMap map)
+            throws IOException, NotImplementedException {
+        return append(mapFile.toPath(), map);
+    }
+
+    public static int append(Path mapFile, MinecraftMap map)
+            throws IOException, NotImplementedException {
+        PagedByteArray[] planes;
+        FileChannel channel;
+        String[] attributes;
+        BaseKey base;
+        int regions;
+
+        planes = getPlanes(map);
+        attributes = map.getDirtyAttributes();
+        base = getBaseKey(mapFile, false);
+        regions = 0;
+        for(int i = 0;i < planes.length;i++) {
+            for(int region = planes[i].nextDirtyRegion(0);
+                    region >= 0;
+                    region = planes[i].nextDirtyRegion(region + 1))
+                regions++;
+        }
+
+        channel = FileChannel.open(
+            getJournalPath(mapFile),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+        );
+        try {
+            ByteBuffer lastSpawn;
+            long end;
+
+            lastSpawn = ByteBuffer.allocate(SPAWN_SIZE);
+            end = -1;
+            if(readHeader(channel, base.size, base.checksum, map, planes.length))
+                end = scan(channel, lastSpawn);
+
+            if(end < 0) {
+                channel.truncate(0);
+                writeHeader(channel, base.size, base.checksum, map, planes.length);
+                end = HEADER_SIZE;
+                lastSpawn = null;
+            } else if(end < channel.size()) {
+                channel.truncate(end);
+            }
+
+            if(regions == 0 && attributes.length == 0
+                    && lastSpawn != null && lastSpawn.position() == SPAWN_SIZE
+                    && encodeSpawn(map).equals(lastSpawn.flip()))
+                return 0;
+
+            writeFully(channel, ByteBuffer.wrap(encodeEntry(map, planes, regions, attributes)), end);
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+
+        for(int i = 0;i < planes.length;i++)
+            planes[i].clearDirty();
+        map.clearDirtyAttributes(attributes);
+        return regions;
+    }
+
+    public static int replay(File mapFile, MinecraftMap map)
+            throws IOException, NotImplementedException {
+        return replay(mapFile.toPath(), map);
+    }
+
+    public static int replay(Path mapFile, MinecraftMap map)
+            throws IOException, NotImplementedException {
+        PagedByteArray[] planes;
+        FileChannel channel;
+        BaseKey base;
+        int entries;
+
+        planes = getPlanes(map);
+        try {
+            channel = FileChannel.open(getJournalPath(mapFile), StandardOpenOption.READ);
+        } catch(NoSuchFileException e) {
+            return 0;
+        }
+
+        entries = 0;
+        try {
+            long position;
+
+            base = getBaseKey(mapFile, true);
+            if(!readHeader(channel, base.size, base.checksum, map, planes.length))
+                return 0;
+
+            position = HEADER_SIZE;
+            while(true) {
+                ByteBuffer body;
+
+                body = readEntry(channel, position);
+                if(body == null)
+                    break;
+                position += ENTRY_HEADER_SIZE + body.remaining() + ENTRY_CRC_SIZE;
+                applyEntry(body, map, planes);
+                entries++;
+            }
+        } finally {
+            channel.close();
+        }
+        return entries;
+    }
+
+    public static MinecraftMap load(File mapFile, MapFormat format, LoadOptions options)
+            throws IOException, NotImplementedException, MapFormatException {
+        return load(mapFile.toPath(), format, options);
+    }
+
+    public static MinecraftMap load(Path mapFile, MapFormat format, LoadOptions options)
+            throws IOException, NotImplementedException, MapFormatException {
+        MinecraftMap map;
+
+        map = format.load(mapFile, options);
+        map.clearDirty();
+        if(replay(mapFile, map) > 0)
+            map.clearDirty();
+        return map;
+    }
+
+    public static void compact(Path mapFile, MinecraftMap map, SaveOptions options)
+            throws IOException, NotImplementedException {
+        map.saveAtomic(mapFile, options);
+        Files.deleteIfExists(getJournalPath(mapFile));
+        map.clearDirty();
+        getBaseKey(mapFile, true);
+    }
+
+    public static void compact(File mapFile, MapFormat format,
+                               LoadOptions loadOptions, SaveOptions saveOptions)
+            throws IOException, NotImplementedException, MapFormatException {
+        compact(mapFile.toPath(), format, loadOptions, saveOptions);
+    }
+
+    public static void compact(Path mapFile, MapFormat format,
+                               LoadOptions loadOptions, SaveOptions saveOptions)
+            throws IOException, NotImplementedException, MapFormatException {
+        if(!Files.exists(getJournalPath(mapFile)))
+            return;
+        compact(mapFile, load(mapFile, format, loadOptions), saveOptions);
+    }
+
+    private static PagedByteArray[] getPlanes(MinecraftMap map)
+            throws NotImplementedException {
+        PagedByteArray[] planes;
+
+        planes = map.getBlockPlanes();
+        if(planes == null)
+            throw new NotImplementedException("Delta saves not supported for this map type");
+        return planes;
+    }
+
+    // The header records a CRC-32 of the base file rather than its
+    // modification time, which is too coarse on some file systems to tell
+    // a rewrite of the same size apart from the file the journal was
+    // started against.
+    static long checksum(Path file) throws IOException {
+        FileChannel channel;
+        ByteBuffer buffer;
+        CRC32 crc;
+
+        crc = new CRC32();
+        buffer = ByteBuffer.allocate(CHECKSUM_BUFFER_SIZE);
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            while(channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        } finally {
+            channel.close();
+        }
+        return crc.getValue();
+    }
+
+    // Appends trust a checksum this process took earlier for as long as the
+    // base keeps its size and modification time, so an autosave costs what
+    // its entry costs. Replay and compaction always read the whole base.
+    private static BaseKey getBaseKey(Path mapFile, boolean verify) throws IOException {
+        BasicFileAttributes attributes;
+        BaseKey key;
+        Path path;
+
+        path = mapFile.toAbsolutePath().normalize();
+        attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        key = BASE_KEYS.get(path);
+        if(!verify && key != null && key.size == attributes.size()
+                && key.modified.equals(attributes.lastModifiedTime()))
+            return key;
+
+        key = new BaseKey(attributes.size(), attributes.lastModifiedTime(), checksum(path));
+        BASE_KEYS.put(path, key);
+        return key;
+    }
+
+    static void forgetBase(Path mapFile) {
+        BASE_KEYS.remove(mapFile.toAbsolutePath().normalize());
+    }
+
+    private static boolean readHeader(FileChannel channel, long size, long checksum,
+                                      MinecraftMap map, int planeCount)
+            throws IOException, NotImplementedException {
+        ByteBuffer header;
+        byte version;
+
+        if(channel.size() < HEADER_SIZE)
+            return false;
+
+        header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, 0);
+        header.flip();
+        if(header.getInt() != MAGIC)
+            throw new MapFormatException("Not a map journal");
+        version = header.get();
+        // Version 1 was keyed to the modification time and version 2
+        // entries carried no attributes; both are started over.
+        if(version == VERSION_1 || version == VERSION_2)
+            return false;
+        if(version != VERSION_3)
+            throw new NotImplementedException("Unsupported journal version");
+
+        if(header.getLong() != size || header.getLong() != checksum)
+            return false;
+
+        if(header.getInt() != map.getWidth()
+                || header.getInt() != map.getHeight()
+                || header.getInt() != map.getDepth()
+                || header.get() != planeCount)
+            throw new MapFormatException("Journal does not match map dimensions");
+        return true;
+    }
+
+    private static void writeHeader(FileChannel channel, long size, long checksum,
+                                    MinecraftMap map, int planeCount)
+            throws IOException {
+        ByteBuffer header;
+
+        header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.put(VERSION_3);
+        header.putLong(size);
+        header.putLong(checksum);
+        header.putInt(map.getWidth());
+        header.putInt(map.getHeight());
+        header.putInt(map.getDepth());
+        header.put((byte)planeCount);
+        header.flip();
+        writeFully(channel, header, 0);
+    }
+
+    private static long scan(FileChannel channel, ByteBuffer lastSpawn)
+            throws IOException {
+        long position;
+
+        position = HEADER_SIZE;
+        while(true) {
+            ByteBuffer body;
+
+            body = readEntry(channel, position);
+            if(body == null)
+                return position;
+            position += ENTRY_HEADER_SIZE + body.remaining() + ENTRY_CRC_SIZE;
+            lastSpawn.clear();
+            body.limit(body.position() + SPAWN_SIZE);
+            lastSpawn.put(body);
+        }
+    }
+
+    private static ByteBuffer readEntry(FileChannel channel, long position)
+            throws IOException {
+        ByteBuffer header, body;
+        CRC32 crc;
+        int length;
+
+        if(channel.size() - position < ENTRY_HEADER_SIZE)
+            return null;
+
+        header = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+        readFully(channel, header, position);
+        header.flip();
+        if(header.getInt() != ENTRY_MAGIC)
+            return null;
+        length = header.getInt();
+        if(length < SPAWN_SIZE + 4 || length > channel.size() - position - ENTRY_HEADER_SIZE - ENTRY_CRC_SIZE)
+            return null;
+
+        body = ByteBuffer.allocate(length + ENTRY_CRC_SIZE);
+        readFully(channel, body, position + ENTRY_HEADER_SIZE);
+        crc = new CRC32();
+        crc.update(body.array(), 0, length);
+        if(body.getInt(length) != (int)crc.getValue())
+            return null;
+
+        body.position(0);
+        body.limit(length);
+        return body;
+    }
+
+    private static ByteBuffer encodeSpawn(MinecraftMap map) {
+        ByteBuffer spawn;
+
+        spawn = ByteBuffer.allocate(SPAWN_SIZE);
+        spawn.putInt(map.getSpawnWidth());
+        spawn.putInt(map.getSpawnHeight());
+        spawn.putInt(map.getSpawnDepth());
+        spawn.putShort(map.getSpawnRotation());
+        spawn.putShort(map.getSpawnPitch());
+        spawn.flip();
+        return spawn;
+    }
+
+    private static byte[] encodeEntry(MinecraftMap map, PagedByteArray[] planes, int regions,
+                                      String[] attributes)
+            throws IOException {
+        ByteArrayOutputStream bytes;
+        DataOutputStream dos;
+        byte[] entry, transfer;
+        Deflater deflater;
+        CRC32 crc;
+
+        bytes = new ByteArrayOutputStream();
+        dos = new DataOutputStream(bytes);
+        dos.writeInt(ENTRY_MAGIC);
+        dos.writeInt(0);
+        dos.write(encodeSpawn(map).array());
+        dos.writeInt(regions);
+        for(int i = 0;i < planes.length;i++) {
+            for(int region = planes[i].nextDirtyRegion(0);
+                    region >= 0;
+                    region = planes[i].nextDirtyRegion(region + 1)) {
+                dos.writeByte(i);
+                dos.writeInt(region);
+            }
+        }
+        dos.writeInt(attributes.length);
+        for(int i = 0;i < attributes.length;i++) {
+            byte[] key, value;
+
+            key = attributes[i].getBytes(StandardCharsets.UTF_8);
+            value = map.getAttribute(attributes[i]);
+            dos.writeShort(key.length);
+            dos.write(key);
+            if(value == null) {
+                dos.writeInt(-1);
+            } else {
+                dos.writeInt(value.length);
+                dos.write(value);
+            }
+        }
+        dos.flush();
+
+        transfer = new byte[PagedByteArray.DIRTY_REGION_SIZE];
+        deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            DeflaterOutputStream zos;
+
+            zos = new DeflaterOutputStream(bytes, deflater, transfer.length);
+            for(int i = 0;i < planes.length;i++) {
+                for(int region = planes[i].nextDirtyRegion(0);
+                        region >= 0;
+                        region = planes[i].nextDirtyRegion(region + 1)) {
+                    int length;
+
+                    length = planes[i].getRegionLength(region);
+                    planes[i].get(region << PagedByteArray.DIRTY_SHIFT, transfer, 0, length);
+                    zos.write(transfer, 0, length);
+                }
+            }
+            zos.finish();
+        } finally {
+            deflater.end();
+        }
+
+        dos.writeInt(0);
+        dos.flush();
+        entry = bytes.toByteArray();
+        ByteBuffer.wrap(entry).putInt(4, entry.length - ENTRY_HEADER_SIZE - ENTRY_CRC_SIZE);
+        crc = new CRC32();
+        crc.update(entry, ENTRY_HEADER_SIZE, entry.length - ENTRY_HEADER_SIZE - ENTRY_CRC_SIZE);
+        ByteBuffer.wrap(entry).putInt(entry.length - ENTRY_CRC_SIZE, (int)crc.getValue());
+        return entry;
+    }
+
+    private static void applyEntry(ByteBuffer body, MinecraftMap map, PagedByteArray[] planes)
+            throws IOException {
+        int spawnWidth, spawnHeight, spawnDepth, spawnRotation, spawnPitch;
+        int[] regionPlanes, regionIndexes;
+        String[] attributeNames;
+        byte[][] attributeValues;
+        DataInputStream dis;
+        byte[] transfer;
+        Inflater inflater;
+        int regions;
+
+        spawnWidth = body.getInt();
+        spawnHeight = body.getInt();
+        spawnDepth = body.getInt();
+        spawnRotation = body.getShort();
+        spawnPitch = body.getShort();
+        regions = body.getInt();
+        if(regions < 0 || (long)regions * REGION_SIZE > body.remaining())
+            throw new MapFormatException("Corrupt journal entry");
+
+        regionPlanes = new int[regions];
+        regionIndexes = new int[regions];
+        for(int i = 0;i < regions;i++) {
+            regionPlanes[i] = body.get();
+            regionIndexes[i] = body.getInt();
+            if(regionPlanes[i] < 0 || regionPlanes[i] >= planes.length
+                    || regionIndexes[i] < 0
+                    || regionIndexes[i] >= planes[regionPlanes[i]].getRegionCount())
+                throw new MapFormatException("Journal region outside map boundries");
+        }
+
+        try {
+            int attributes;
+
+            attributes = body.getInt();
+            if(attributes < 0 || attributes > body.remaining())
+                throw new MapFormatException("Corrupt journal entry");
+            attributeNames = new String[attributes];
+            attributeValues = new byte[attributes][];
+            for(int i = 0;i < attributes;i++) {
+                byte[] key;
+                int length;
+
+                key = new byte[body.getShort() & 0xFFFF];
+                body.get(key);
+                length = body.getInt();
+                if(length < -1 || length > body.remaining())
+                    throw new MapFormatException("Corrupt journal entry");
+                attributeNames[i] = new String(key, StandardCharsets.UTF_8);
+                if(length >= 0) {
+                    attributeValues[i] = new byte[length];
+                    body.get(attributeValues[i]);
+                }
+            }
+        } catch(BufferUnderflowException e) {
+            throw new MapFormatException("Corrupt journal entry", e);
+        }
+
+        transfer = new byte[PagedByteArray.DIRTY_REGION_SIZE];
+        inflater = new Inflater();
+        try {
+            dis = new DataInputStream(new InflaterInputStream(
+                new ByteArrayInputStream(body.array(), body.position(), body.remaining()),
+                inflater
+            ));
+            for(int i = 0;i < regions;i++) {
+                PagedByteArray plane;
+                int length;
+
+                plane = planes[regionPlanes[i]];
+                length = plane.getRegionLength(regionIndexes[i]);
+                dis.readFully(transfer, 0, length);
+                plane.set(regionIndexes[i] << PagedByteArray.DIRTY_SHIFT, transfer, 0, length);
+            }
+        } catch(EOFException e) {
+            throw new MapFormatException("Journal entry incomplete", e);
+        } finally {
+            inflater.end();
+        }
+
+        try {
+            map.setSpawn(spawnWidth, spawnHeight, spawnDepth, spawnRotation, spawnPitch);
+        } catch(IndexOutOfBoundsException e) {
+            throw new MapFormatException("Journal spawn outside map boundries", e);
+        }
+        for(int i = 0;i < attributeNames.length;i++)
+            map.setAttribute(attributeNames[i], attributeValues[i]);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while(buffer.hasRemaining()) {
+            int n;
+
+            n = channel.read(buffer, position);
+            if(n < 0)
+                throw new EOFException();
+            position += n;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while(buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    private static final class BaseKey {
+        final long size, checksum;
+        final FileTime modified;
+
+        BaseKey(long size, FileTime modified, long checksum) {
+            this.size = size;
+            this.modified = modified;
+            this.checksum = checksum;
+        }
+    }
+}
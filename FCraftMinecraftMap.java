@@ -4,23 +4,29 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.EOFException;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Iterator;
 import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
-import java.math.BigInteger;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
-import mcmaplib.util.ExtendedDataInputStream;
-import mcmaplib.util.ExtendedDataOutputStream;
+import mcmaplib.util.ByteCodec;
+import mcmaplib.util.ChannelInputStream;
+import mcmaplib.util.ChannelOutputStream;
+import mcmaplib.util.CodecInputStream;
+import mcmaplib.util.CodecOutputStream;
+import mcmaplib.util.FinishableOutputStream;
+import mcmaplib.util.PagedByteArray;
+import mcmaplib.util.PooledGZIPInputStream;
+import mcmaplib.util.PooledGZIPOutputStream;
+import mcmaplib.util.ReleasableInputStream;
 
 public class FCraftMinecraftMap extends MinecraftMapBase {
     private static final int[] SUPPORTED_VERSIONS = new int[] {
@@ -60,6 +66,51 @@ public class FCraftMinecraftMap extends MinecraftMapBase {
             return FCraftMinecraftMap.load(file);
         }
 
+        @Override
+        public FCraftMinecraftMap load(File file, LoadOptions options)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException,
+                       FileNotFoundException {
+            return FCraftMinecraftMap.load(file, options);
+        }
+
+        @Override
+        public Header readHeader(File file)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException,
+                       FileNotFoundException {
+            return FCraftMinecraftMap.readHeader(file);
+        }
+
+        @Override
+        public void visit(InputStream in, BlockVisitor visitor, int chunkSize)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException {
+            FCraftMinecraftMap.visit(in, visitor, chunkSize);
+        }
+
+        @Override
+        public MapStreamWriter createStreamWriter(OutputStream out) {
+            return FCraftMinecraftMap.createStreamWriter(out);
+        }
+
+        @Override
+        public FCraftMinecraftMap load(InputStream in, LoadOptions options)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException {
+            return FCraftMinecraftMap.load(in, options);
+        }
+
+        @Override
+        public boolean matchesSignature(byte[] data, int length, boolean compressed) {
+            return !compressed && length >= 4
+                && ByteCodec.getLEUnsignedInt(ByteBuffer.wrap(data), 0) == (VERSION_2 & 0xFFFFFFFFL);
+        }
+
         public FCraftMinecraftMap convert(MinecraftMap map)
                 throws InvalidMapException {
             return new FCraftMinecraftMap(map);
@@ -92,9 +143,24 @@ public class FCraftMinecraftMap extends MinecraftMapBase {
         this.metadata = metadata;
     }
 
+    protected FCraftMinecraftMap(PagedByteArray blocks,
+                                 int width, int height, int depth,
+                                 int spawnWidth, int spawnHeight, int spawnDepth,
+                                 int spawnRotation, int spawnPitch,
+                                 Map<String, String> metadata)
+                                     throws InvalidMapException {
+        super(
+            blocks,
+            width, height, depth,
+            spawnWidth, spawnHeight, spawnDepth,
+            spawnRotation, spawnPitch
+        );
+        this.metadata = metadata;
+    }
+
     public FCraftMinecraftMap(MinecraftMap map) throws InvalidMapException {
         this(
-            map.getBlocks(),
+            copyBlocks(map),
             map.getWidth(),
             map.getHeight(),
             map.getDepth(),
@@ -109,7 +175,7 @@ public class FCraftMinecraftMap extends MinecraftMapBase {
 
     public FCraftMinecraftMap(FCraftMinecraftMap map) throws InvalidMapException {
         this(
-            map.getBlocks(),
+            copyBlocks(map),
             map.getWidth(),
             map.getHeight(),
             map.getDepth(),
@@ -122,17 +188,36 @@ public class FCraftMinecraftMap extends MinecraftMapBase {
         );
     }
 
-    private static FCraftMinecraftMap loadVersion2(InputStream in)
-            throws IOException, NotImplementedException, MapFormatException {
-        ExtendedDataInputStream dis;
-        FCraftMinecraftMap map;
+    public static class Header extends MapHeader {
+        private final Map<String, String> metadata;
+
+        protected Header(int width, int height, int depth,
+                         int spawnWidth, int spawnHeight, int spawnDepth,
+                         int spawnRotation, int spawnPitch,
+                         Map<String, String> metadata) {
+            super(
+                width, height, depth,
+                spawnWidth, spawnHeight, spawnDepth,
+                spawnRotation, spawnPitch
+            );
+            this.metadata = metadata;
+        }
+
+        public String getMetadata(String name) {
+            return metadata.get(name);
+        }
+
+        public Map<String, String> getMetadataMap() {
+            return new HashMap<String, String>(metadata);
+        }
+    }
+
+    private static Header readHeaderVersion2(CodecInputStream dis)
+            throws IOException, MapFormatException {
         int width, height, depth, spawnWidth, spawnHeight, spawnDepth;
         short spawnRotation, spawnPitch;
-        byte[] blocks;
         Map<String, String> metadata;
 
-        dis = new ExtendedDataInputStream(in);
-
         width = dis.readLEUnsignedShort();
         height = dis.readLEUnsignedShort();
         depth = dis.readLEUnsignedShort();
@@ -170,37 +255,57 @@ public class FCraftMinecraftMap extends MinecraftMapBase {
                 metadata.put(key, value);
             }
         }
-        {
-            BigInteger totalBlocks;
-            int intTotalBlocks;
 
-            totalBlocks = BigInteger.valueOf(width)
-                .multiply(BigInteger.valueOf(height))
-                .multiply(BigInteger.valueOf(depth));
+        return new Header(
+            width, height, depth,
+            spawnWidth, spawnHeight, spawnDepth,
+            spawnRotation, spawnPitch,
+            metadata
+        );
+    }
 
-            if(totalBlocks.compareTo(BigInteger.valueOf(Integer.MAX_VALUE)) == 1)
-                throw new MapFormatException("Width, height, and depth are too large");
+    private static FCraftMinecraftMap loadVersion2(InputStream in, LoadOptions options,
+                                                   IOTracker tracker)
+            throws IOException, NotImplementedException, MapFormatException {
+        CodecInputStream dis;
+        FCraftMinecraftMap map;
+        Header header;
+        PagedByteArray blocks;
 
-            intTotalBlocks = totalBlocks.intValue();
-            blocks = new byte[intTotalBlocks];
-        }
+        dis = new CodecInputStream(in);
+        header = readHeaderVersion2(dis);
 
+        if(header.getTotalBlocks() > Integer.MAX_VALUE)
+            throw new MapFormatException("Width, height, and depth are too large");
+        tracker.enter(IOStatistics.Phase.ALLOCATION);
+        blocks = new PagedByteArray((int)header.getTotalBlocks());
+
+        tracker.enter(IOStatistics.Phase.DECOMPRESSION);
         {
-            GZIPInputStream gis;
-            DataInputStream gdis;
+            ReleasableInputStream gis;
 
-            gis = new GZIPInputStream(dis);
-            gdis = new DataInputStream(gis);
-            gdis.readFully(blocks);
+            gis = options.createGZIPInputStream(dis);
+            try {
+                blocks.readFully(new DataInputStream(tracker.inflated(gis)));
+            } finally {
+                gis.release();
+            }
         }
+        tracker.blocks(header.getTotalBlocks());
 
+        tracker.enter(IOStatistics.Phase.VALIDATION);
         try {
             map = new FCraftMinecraftMap(
                 blocks,
-                width, height, depth,
-                spawnWidth, spawnHeight, spawnDepth,
-                spawnRotation, spawnPitch,
-                metadata
+                header.getWidth(),
+                header.getHeight(),
+                header.getDepth(),
+                header.getSpawnWidth(),
+                header.getSpawnHeight(),
+                header.getSpawnDepth(),
+                header.getSpawnRotation(),
+                header.getSpawnPitch(),
+                header.metadata
             );
         } catch(InvalidMapException e) {
             throw new MapFormatException(e);
@@ -208,14 +313,47 @@ public class FCraftMinecraftMap extends MinecraftMapBase {
         return map;
     }
 
+    private static void visitVersion2(InputStream in, BlockVisitor visitor, int chunkSize)
+            throws IOException, NotImplementedException, MapFormatException {
+        PooledGZIPInputStream gis;
+        CodecInputStream dis;
+        Header header;
+
+        dis = new CodecInputStream(in);
+        header = readHeaderVersion2(dis);
+        visitor.visitHeader(header);
+
+        gis = new PooledGZIPInputStream(dis, null);
+        try {
+            BlockStreams.visit(new DataInputStream(gis), header, null, visitor, chunkSize);
+        } finally {
+            gis.release();
+        }
+    }
+
     public static FCraftMinecraftMap load(File file)
             throws IOException, NotImplementedException, MapFormatException {
-        FileInputStream fis;
+        return load(file.toPath());
+    }
+
+    public static FCraftMinecraftMap load(Path path)
+            throws IOException, NotImplementedException, MapFormatException {
+        return load(path, new LoadOptions());
+    }
+
+    public static FCraftMinecraftMap load(File file, LoadOptions options)
+            throws IOException, NotImplementedException, MapFormatException {
+        return load(file.toPath(), options);
+    }
+
+    public static FCraftMinecraftMap load(Path path, LoadOptions options)
+            throws IOException, NotImplementedException, MapFormatException {
+        InputStream in;
         FCraftMinecraftMap map;
 
-        fis = new FileInputStream(file);
+        in = new ChannelInputStream(path, options.getBufferSize());
         try {
-            map = load(fis);
+            map = load(in, options);
         } catch(EOFException e) {
             e.printStackTrace();
             throw new MapFormatException("Map data incomplete");
@@ -223,21 +361,125 @@ public class FCraftMinecraftMap extends MinecraftMapBase {
             e.printStackTrace();
             throw e;
         } finally {
-            fis.close();
+            in.close();
         }
         return map;
     }
 
+    public static Header readHeader(InputStream in)
+            throws IOException, NotImplementedException, MapFormatException {
+        CodecInputStream dis;
+        Header header;
+        int version;
+
+        dis = new CodecInputStream(in);
+        version = (int)dis.readLEUnsignedInt();
+        if(version == VERSION_2)
+            header = readHeaderVersion2(dis);
+        else
+            throw new NotImplementedException("Unsupported version");
+
+        return header;
+    }
+
+    public static Header readHeader(File file)
+            throws IOException, NotImplementedException, MapFormatException {
+        return readHeader(file.toPath());
+    }
+
+    public static Header readHeader(Path path)
+            throws IOException, NotImplementedException, MapFormatException {
+        InputStream in;
+        Header header;
+
+        in = new ChannelInputStream(path);
+        try {
+            header = readHeader(in);
+        } catch(EOFException e) {
+            throw new MapFormatException("Map header incomplete", e);
+        } finally {
+            in.close();
+        }
+        return header;
+    }
+
+    public static void visit(InputStream in, BlockVisitor visitor, int chunkSize)
+            throws IOException, NotImplementedException, MapFormatException {
+        CodecInputStream dis;
+        int version;
+
+        dis = new CodecInputStream(in);
+        version = (int)dis.readLEUnsignedInt();
+        if(version == VERSION_2)
+            visitVersion2(dis, visitor, chunkSize);
+        else
+            throw new NotImplementedException("Unsupported version");
+    }
+
+    public static void visit(InputStream in, BlockVisitor visitor)
+            throws IOException, NotImplementedException, MapFormatException {
+        visit(in, visitor, BlockVisitor.DEFAULT_CHUNK_SIZE);
+    }
+
+    public static void visit(File file, BlockVisitor visitor, int chunkSize)
+            throws IOException, NotImplementedException, MapFormatException {
+        visit(file.toPath(), visitor, chunkSize);
+    }
+
+    public static void visit(Path path, BlockVisitor visitor, int chunkSize)
+            throws IOException, NotImplementedException, MapFormatException {
+        InputStream in;
+
+        in = new ChannelInputStream(path);
+        try {
+            visit(in, visitor, chunkSize);
+        } catch(EOFException e) {
+            throw new MapFormatException("Map data incomplete", e);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static void visit(File file, BlockVisitor visitor)
+            throws IOException, NotImplementedException, MapFormatException {
+        visit(file.toPath(), visitor);
+    }
+
+    public static void visit(Path path, BlockVisitor visitor)
+            throws IOException, NotImplementedException, MapFormatException {
+        visit(path, visitor, BlockVisitor.DEFAULT_CHUNK_SIZE);
+    }
+
     public String getMetadata(String name) {
         return metadata.get(name);
     }
 
     public void setMetadata(String name, String value) {
         metadata.put(name, value);
+        fireAttributeChanged(name);
     }
 
     public void removeMetadata(String name) {
         metadata.remove(name);
+        fireAttributeChanged(name);
+    }
+
+    @Override
+    byte[] getAttribute(String name) {
+        String value;
+
+        value = metadata.get(name);
+        if(value == null)
+            return null;
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    void setAttribute(String name, byte[] value) {
+        if(value == null)
+            metadata.remove(name);
+        else
+            metadata.put(name, new String(value, StandardCharsets.UTF_8));
     }
 
     public Map<String, String> getMetadataMap() {
@@ -246,52 +488,67 @@ public class FCraftMinecraftMap extends MinecraftMapBase {
 
     public static FCraftMinecraftMap load(InputStream in)
             throws IOException, NotImplementedException, MapFormatException {
+        return load(in, new LoadOptions());
+    }
+
+    public static FCraftMinecraftMap load(InputStream in, LoadOptions options)
+            throws IOException, NotImplementedException, MapFormatException {
         FCraftMinecraftMap map;
-        ExtendedDataInputStream dis;
+        CodecInputStream dis;
+        IOTracker tracker;
         int version;
 
-        dis = new ExtendedDataInputStream(in);
-        version = (int)dis.readLEUnsignedInt();
-        if(version == VERSION_2)
-            map = loadVersion2(dis);
-        else
-            throw new NotImplementedException("Unsupported version");
-        
+        tracker = IOTracker.startLoad(NAME);
+        try {
+            dis = new CodecInputStream(tracker.source(in));
+            version = (int)dis.readLEUnsignedInt();
+            if(version == VERSION_2)
+                map = loadVersion2(dis, options, tracker);
+            else
+                throw new NotImplementedException("Unsupported version");
+        } catch(IOException e) {
+            throw tracker.failed(e);
+        } catch(RuntimeException e) {
+            throw tracker.failed(e);
+        }
+        tracker.completed();
         return map;
     }
 
     public void save(File file, int version)
             throws IOException, NotImplementedException{
-        FileOutputStream fos;
+        save(file.toPath(), version);
+    }
+
+    public void save(Path path, int version)
+            throws IOException, NotImplementedException{
+        OutputStream fos;
 
-        fos = new FileOutputStream(file);
+        fos = new ChannelOutputStream(path);
         try {
             save(fos, version);
         } finally {
             fos.close();
         }
+        fireMapSaved(path);
     }
 
-    public void saveVersion2(OutputStream out)
-            throws IOException, NotImplementedException {
-        ExtendedDataOutputStream dos;
-
-        dos = new ExtendedDataOutputStream(out);
-        dos.writeLEUnsignedInt(VERSION_2);
-        dos.writeLEUnsignedShort(width);
-        dos.writeLEUnsignedShort(height);
-        dos.writeLEUnsignedShort(depth);
-        dos.writeLEUnsignedShort(spawnWidth);
-        dos.writeLEUnsignedShort(spawnHeight);
-        dos.writeLEUnsignedShort(spawnDepth);
-        dos.writeByte(spawnRotation);
-        dos.writeByte(spawnPitch);
-        dos.writeLEUnsignedShort(metadata.size());
+    private static void writeHeaderVersion2(CodecOutputStream dos, Header header)
+            throws IOException {
+        dos.writeLEUnsignedShort(header.getWidth());
+        dos.writeLEUnsignedShort(header.getHeight());
+        dos.writeLEUnsignedShort(header.getDepth());
+        dos.writeLEUnsignedShort(header.getSpawnWidth());
+        dos.writeLEUnsignedShort(header.getSpawnHeight());
+        dos.writeLEUnsignedShort(header.getSpawnDepth());
+        dos.writeByte(header.getSpawnRotation());
+        dos.writeByte(header.getSpawnPitch());
+        dos.writeLEUnsignedShort(header.metadata.size());
 
         {
             Iterator<String> keys, values;
-            keys = metadata.keySet().iterator();
-            values = metadata.values().iterator();
+            keys = header.metadata.keySet().iterator();
+            values = header.metadata.values().iterator();
 
             while(keys.hasNext() && values.hasNext()) {
                 String value, key;
@@ -304,22 +561,113 @@ public class FCraftMinecraftMap extends MinecraftMapBase {
                 dos.writeBytes(value);
             }
         }
-        {
-            GZIPOutputStream gos;
+    }
+
+    public void saveVersion2(OutputStream out)
+            throws IOException, NotImplementedException {
+        saveVersion2(out, new SaveOptions());
+    }
+
+    public void saveVersion2(OutputStream out, SaveOptions options)
+            throws IOException, NotImplementedException {
+        CodecOutputStream dos;
+        IOTracker tracker;
+
+        tracker = IOTracker.startSave(NAME);
+        try {
+            dos = new CodecOutputStream(tracker.sink(out));
+            dos.writeLEUnsignedInt(VERSION_2);
+            writeHeaderVersion2(dos, new Header(
+                width, height, depth,
+                spawnWidth, spawnHeight, spawnDepth,
+                spawnRotation, spawnPitch,
+                metadata
+            ));
+            tracker.enter(IOStatistics.Phase.COMPRESSION);
+            {
+                FinishableOutputStream gos;
+
+                gos = options.createGZIPOutputStream(dos);
+                try {
+                    blocks.writeTo(tracker.deflated(gos));
+                    gos.finish();
+                    gos.flush();
+                } finally {
+                    gos.release();
+                }
+            }
+            tracker.blocks(blocks.length());
+            dos.flush();
+        } catch(IOException e) {
+            throw tracker.failed(e);
+        } catch(RuntimeException e) {
+            throw tracker.failed(e);
+        }
+        tracker.completed();
+    }
+
+    private static class StreamWriterVersion2 extends MapStreamWriter {
+        private CodecOutputStream dos;
+        private FinishableOutputStream gos;
+
+        StreamWriterVersion2(OutputStream out) {
+            super(out);
+        }
+
+        protected void writeHeader(MapHeader header) throws IOException {
+            Map<String, String> metadata;
+
+            if(header instanceof Header)
+                metadata = ((Header)header).metadata;
+            else
+                metadata = new HashMap<String, String>();
+
+            dos = new CodecOutputStream(out);
+            dos.writeLEUnsignedInt(VERSION_2);
+            writeHeaderVersion2(dos, new Header(
+                header.getWidth(),
+                header.getHeight(),
+                header.getDepth(),
+                header.getSpawnWidth(),
+                header.getSpawnHeight(),
+                header.getSpawnDepth(),
+                header.getSpawnRotation(),
+                header.getSpawnPitch(),
+                metadata
+            ));
+            gos = new PooledGZIPOutputStream(dos, null);
+        }
+
+        protected void writeBlocks(byte[] blocks, byte[][] extendedBlocks, int count)
+                throws IOException {
+            gos.write(blocks, 0, count);
+        }
 
-            System.out.println(blocks.length);
-            gos = new GZIPOutputStream(dos);
-            gos.write(blocks);
+        protected void finishBlocks() throws IOException {
             gos.finish();
-            gos.flush();
+            dos.flush();
         }
-        dos.flush();
+
+        @Override
+        public void release() {
+            if(gos != null)
+                gos.release();
+        }
+    }
+
+    public static MapStreamWriter createStreamWriter(OutputStream out) {
+        return new StreamWriterVersion2(out);
     }
 
     public void save(OutputStream out, int version)
             throws IOException, NotImplementedException{
+        save(out, version, new SaveOptions());
+    }
+
+    public void save(OutputStream out, int version, SaveOptions options)
+            throws IOException, NotImplementedException{
         if(version == VERSION_2)
-            saveVersion2(out);
+            saveVersion2(out, options);
         else
             throw new NotImplementedException("Unsupported version");
     }
@@ -336,10 +684,22 @@ public class FCraftMinecraftMap extends MinecraftMapBase {
         save(out, CURRENT_VERSION);
     }
 
+    @Override
+    public void save(OutputStream out, SaveOptions options)
+            throws IOException, NotImplementedException{
+        save(out, CURRENT_VERSION, options);
+    }
+
     @Override
     public FCraftMinecraftMap clone() {
         try {
-            return new FCraftMinecraftMap(this);
+            return new FCraftMinecraftMap(
+                blocks.snapshot(),
+                width, height, depth,
+                spawnWidth, spawnHeight, spawnDepth,
+                spawnRotation, spawnPitch,
+                getMetadataMap()
+            );
         } catch(InvalidMapException e) {
             throw new RuntimeException("Could not clone map", e);
         }
@@ -0,0 +1,126 @@
+package mcmaplib;
+
+import java.util.Locale;
+
+public final class IOStatistics {
+    public enum Operation {
+        LOAD,
+        SAVE
+    }
+
+    public enum Phase {
+        READ,
+        HEADER,
+        ALLOCATION,
+        DECOMPRESSION,
+        VALIDATION,
+        COMPRESSION,
+        WRITE
+    }
+
+    private final Operation operation;
+    private final String format;
+    private final long[] phaseNanos;
+    private final long totalNanos;
+    private final long bytesRead, bytesInflated;
+    private final long bytesWritten, bytesDeflated;
+    private final long bytesAllocated;
+    private final long blocks;
+    private final Throwable error;
+
+    IOStatistics(Operation operation, String format, long[] phaseNanos, long totalNanos,
+                 long bytesRead, long bytesInflated, long bytesWritten, long bytesDeflated,
+                 long bytesAllocated, long blocks, Throwable error) {
+        this.operation = operation;
+        this.format = format;
+        this.phaseNanos = phaseNanos;
+        this.totalNanos = totalNanos;
+        this.bytesRead = bytesRead;
+        this.bytesInflated = bytesInflated;
+        this.bytesWritten = bytesWritten;
+        this.bytesDeflated = bytesDeflated;
+        this.bytesAllocated = bytesAllocated;
+        this.blocks = blocks;
+        this.error = error;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesInflated() {
+        return bytesInflated;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getBytesDeflated() {
+        return bytesDeflated;
+    }
+
+    public long getBytesAllocated() {
+        return bytesAllocated;
+    }
+
+    public long getBlocks() {
+        return blocks;
+    }
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb;
+
+        sb = new StringBuilder();
+        sb.append(format).append(' ').append(operation.name().toLowerCase(Locale.ROOT));
+        sb.append(String.format(Locale.ROOT, " %.3f ms", totalNanos / 1e6));
+        for(Phase phase : Phase.values()) {
+            long nanos;
+
+            nanos = phaseNanos[phase.ordinal()];
+            if(nanos != 0) {
+                sb.append(String.format(
+                    Locale.ROOT, ", %s %.3f ms",
+                    phase.name().toLowerCase(Locale.ROOT), nanos / 1e6
+                ));
+            }
+        }
+        if(operation == Operation.LOAD)
+            sb.append(", ").append(bytesRead).append(" bytes read, ")
+              .append(bytesInflated).append(" inflated");
+        else
+            sb.append(", ").append(bytesWritten).append(" bytes written, ")
+              .append(bytesDeflated).append(" deflated");
+        if(bytesAllocated >= 0)
+            sb.append(", ").append(bytesAllocated).append(" allocated");
+        sb.append(", ").append(blocks).append(" blocks");
+        if(error != null)
+            sb.append(", failed: ").append(error);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,351 @@
+package mcmaplib;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+final class IOTracker {
+    static final IOTracker DISABLED = new IOTracker(null, null, null);
+
+    // com.sun.management is not present on every JVM, so the allocation
+    // counter is only ever reached through reflection.
+    private static final ThreadMXBean THREADS;
+    private static final Method ALLOCATION_ENABLED, ALLOCATED_BYTES;
+
+    static {
+        ThreadMXBean threads;
+        Method enabled, allocated;
+
+        threads = null;
+        enabled = null;
+        allocated = null;
+        try {
+            Class<?> type;
+
+            type = Class.forName("com.sun.management.ThreadMXBean");
+            threads = ManagementFactory.getThreadMXBean();
+            if(type.isInstance(threads)
+                    && Boolean.TRUE.equals(type.getMethod("isThreadAllocatedMemorySupported").invoke(threads))) {
+                enabled = type.getMethod("isThreadAllocatedMemoryEnabled");
+                allocated = type.getMethod("getThreadAllocatedBytes", long.class);
+            }
+        } catch(Exception e) {
+        } catch(LinkageError e) {
+        }
+
+        if(allocated == null)
+            threads = null;
+        THREADS = threads;
+        ALLOCATION_ENABLED = enabled;
+        ALLOCATED_BYTES = allocated;
+    }
+
+    private final IOStatistics.Operation operation;
+    private final String format;
+    private final MapIOListener[] listeners;
+    private final long[] phaseNanos;
+    private final long start, allocatedStart;
+    private IOStatistics.Phase phase;
+    private long mark, transferNanos, transferMark;
+    private long bytesTransferred, bytesCoded, blocks;
+    private boolean finished;
+
+    private IOTracker(IOStatistics.Operation operation, String format,
+                      MapIOListener[] listeners) {
+        this.operation = operation;
+        this.format = format;
+        this.listeners = listeners;
+        if(listeners == null) {
+            phaseNanos = null;
+            start = 0;
+            allocatedStart = 0;
+            return;
+        }
+
+        for(int i = 0;i < listeners.length;i++)
+            listeners[i].operationStarted(operation, format);
+
+        phaseNanos = new long[IOStatistics.Phase.values().length];
+        phase = IOStatistics.Phase.HEADER;
+        allocatedStart = allocatedBytes();
+        start = System.nanoTime();
+        mark = start;
+    }
+
+    private static long allocatedBytes() {
+        if(THREADS == null)
+            return -1;
+        try {
+            if(!Boolean.TRUE.equals(ALLOCATION_ENABLED.invoke(THREADS)))
+                return -1;
+            return ((Long)ALLOCATED_BYTES.invoke(THREADS, Thread.currentThread().getId())).longValue();
+        } catch(Exception e) {
+            return -1;
+        }
+    }
+
+    static IOTracker startLoad(String format) {
+        return start(IOStatistics.Operation.LOAD, format);
+    }
+
+    static IOTracker startSave(String format) {
+        return start(IOStatistics.Operation.SAVE, format);
+    }
+
+    // The listeners are fixed when the operation starts, so one added or
+    // removed part way through never sees only half of it.
+    private static IOTracker start(IOStatistics.Operation operation, String format) {
+        MapIOListener[] listeners;
+
+        listeners = MapInstrumentation.getListeners().toArray(new MapIOListener[0]);
+        if(listeners.length == 0)
+            return DISABLED;
+        return new IOTracker(operation, format, listeners);
+    }
+
+    boolean isEnabled() {
+        return listeners != null;
+    }
+
+    InputStream source(InputStream in) {
+        if(listeners == null)
+            return in;
+        return new SourceInputStream(in);
+    }
+
+    InputStream inflated(InputStream in) {
+        if(listeners == null)
+            return in;
+        return new InflatedInputStream(in);
+    }
+
+    OutputStream sink(OutputStream out) {
+        if(listeners == null)
+            return out;
+        return new SinkOutputStream(out);
+    }
+
+    OutputStream deflated(OutputStream out) {
+        if(listeners == null)
+            return out;
+        return new DeflatedOutputStream(out);
+    }
+
+    void enter(IOStatistics.Phase next) {
+        if(listeners == null || finished)
+            return;
+        closePhase(System.nanoTime());
+        phase = next;
+    }
+
+    void blocks(long count) {
+        blocks += count;
+    }
+
+    void completed() {
+        finish(null);
+    }
+
+    <T extends Throwable> T failed(T error) {
+        finish(error);
+        return error;
+    }
+
+    private void closePhase(long now) {
+        long transfer;
+
+        transfer = transferNanos - transferMark;
+        phaseNanos[phase.ordinal()] += now - mark - transfer;
+        if(operation == IOStatistics.Operation.LOAD)
+            phaseNanos[IOStatistics.Phase.READ.ordinal()] += transfer;
+        else
+            phaseNanos[IOStatistics.Phase.WRITE.ordinal()] += transfer;
+        transferMark = transferNanos;
+        mark = now;
+    }
+
+    private void finish(Throwable error) {
+        IOStatistics statistics;
+        long now, allocated;
+
+        if(listeners == null || finished)
+            return;
+        finished = true;
+
+        now = System.nanoTime();
+        closePhase(now);
+        allocated = allocatedStart < 0 ? -1 : allocatedBytes() - allocatedStart;
+
+        if(operation == IOStatistics.Operation.LOAD) {
+            statistics = new IOStatistics(
+                operation, format, phaseNanos, now - start,
+                bytesTransferred, bytesCoded, 0, 0,
+                allocated, blocks, error
+            );
+        } else {
+            statistics = new IOStatistics(
+                operation, format, phaseNanos, now - start,
+                0, 0, bytesTransferred, bytesCoded,
+                allocated, blocks, error
+            );
+        }
+        for(int i = 0;i < listeners.length;i++)
+            listeners[i].operationCompleted(statistics);
+    }
+
+    private final class SourceInputStream extends FilterInputStream {
+        SourceInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long begin;
+            int b;
+
+            begin = System.nanoTime();
+            b = in.read();
+            transferNanos += System.nanoTime() - begin;
+            if(b >= 0)
+                bytesTransferred++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long begin;
+            int n;
+
+            begin = System.nanoTime();
+            n = in.read(b, off, len);
+            transferNanos += System.nanoTime() - begin;
+            if(n > 0)
+                bytesTransferred += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long begin, skipped;
+
+            begin = System.nanoTime();
+            skipped = in.skip(n);
+            transferNanos += System.nanoTime() - begin;
+            bytesTransferred += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    private final class InflatedInputStream extends FilterInputStream {
+        InflatedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b;
+
+            b = in.read();
+            if(b >= 0)
+                bytesCoded++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n;
+
+            n = in.read(b, off, len);
+            if(n > 0)
+                bytesCoded += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped;
+
+            skipped = in.skip(n);
+            bytesCoded += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    private final class SinkOutputStream extends FilterOutputStream {
+        SinkOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long begin;
+
+            begin = System.nanoTime();
+            out.write(b);
+            transferNanos += System.nanoTime() - begin;
+            bytesTransferred++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long begin;
+
+            begin = System.nanoTime();
+            out.write(b, off, len);
+            transferNanos += System.nanoTime() - begin;
+            bytesTransferred += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long begin;
+
+            begin = System.nanoTime();
+            out.flush();
+            transferNanos += System.nanoTime() - begin;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private final class DeflatedOutputStream extends FilterOutputStream {
+        DeflatedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytesCoded++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytesCoded += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
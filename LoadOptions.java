@@ -0,0 +1,72 @@
+package mcmaplib;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import mcmaplib.util.InflaterPool;
+import mcmaplib.util.ParallelGZIPInputStream;
+import mcmaplib.util.ParallelGZIPOutputStream;
+import mcmaplib.util.PooledGZIPInputStream;
+import mcmaplib.util.ReleasableInputStream;
+
+public class LoadOptions {
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    private volatile ExecutorService decompressionExecutor;
+    private volatile int bufferSize = DEFAULT_BUFFER_SIZE;
+    private volatile InflaterPool inflaterPool;
+
+    public LoadOptions() {
+    }
+
+    public boolean isParallelDecompression() {
+        return decompressionExecutor != null;
+    }
+
+    public LoadOptions setParallelDecompression(boolean parallel) {
+        if(parallel)
+            decompressionExecutor = ParallelGZIPOutputStream.getDefaultExecutor();
+        else
+            decompressionExecutor = null;
+        return this;
+    }
+
+    public ExecutorService getDecompressionExecutor() {
+        return decompressionExecutor;
+    }
+
+    public LoadOptions setDecompressionExecutor(ExecutorService executor) {
+        decompressionExecutor = executor;
+        return this;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public LoadOptions setBufferSize(int bufferSize) {
+        if(bufferSize <= 0)
+            throw new IllegalArgumentException("Buffer size must be positive");
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    public InflaterPool getInflaterPool() {
+        return inflaterPool;
+    }
+
+    public LoadOptions setInflaterPool(InflaterPool pool) {
+        inflaterPool = pool;
+        return this;
+    }
+
+    public ReleasableInputStream createGZIPInputStream(InputStream in)
+            throws IOException {
+        ExecutorService executor;
+
+        executor = decompressionExecutor;
+        if(executor != null)
+            return new ParallelGZIPInputStream(in, executor, inflaterPool);
+        return new PooledGZIPInputStream(in, bufferSize, inflaterPool);
+    }
+}
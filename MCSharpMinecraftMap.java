@@ -1,17 +1,26 @@
 package mcmaplib;
 
-import java.math.BigInteger;
 import java.io.IOException;
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.io.OutputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
-import mcmaplib.util.ExtendedDataInputStream;
-import mcmaplib.util.ExtendedDataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import mcmaplib.util.ByteCodec;
+import mcmaplib.util.ChannelInputStream;
+import mcmaplib.util.ChannelOutputStream;
+import mcmaplib.util.CodecInputStream;
+import mcmaplib.util.CodecOutputStream;
+import mcmaplib.util.FinishableOutputStream;
+import mcmaplib.util.PagedByteArray;
+import mcmaplib.util.PooledGZIPInputStream;
+import mcmaplib.util.PooledGZIPOutputStream;
+import mcmaplib.util.ReleasableInputStream;
 
 public class MCSharpMinecraftMap extends MinecraftMapBase {
     private static final int[] SUPPORTED_VERSIONS = new int[] {
@@ -19,6 +28,90 @@ public class MCSharpMinecraftMap extends MinecraftMapBase {
     };
     public static final int VERSION_1 = SUPPORTED_VERSIONS[0],
                             CURRENT_VERSION = VERSION_1;
+    public static final String VISIT_PERMISSION = "visitPermission",
+                               BUILD_PERMISSION = "buildPermission";
+
+    private final static Set<String> EXTENSIONS;
+    private final static String NAME = "MCSharp",
+                                DESCRIPTION = "Map format for MCSharp";
+
+    static {
+        Set<String> extensions = new HashSet<String>();
+        extensions.add("lvl");
+        EXTENSIONS = Collections.unmodifiableSet(extensions);
+    }
+
+    public static MapFormat FORMAT = new MapFormat() {
+        public String getName() {
+            return NAME;
+        }
+
+        public String getDescription() {
+            return DESCRIPTION;
+        }
+
+        public Set<String> getExtensions() {
+            return EXTENSIONS;
+        }
+
+        public MCSharpMinecraftMap load(File file)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException,
+                       FileNotFoundException {
+            return MCSharpMinecraftMap.load(file);
+        }
+
+        @Override
+        public MCSharpMinecraftMap load(File file, LoadOptions options)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException,
+                       FileNotFoundException {
+            return MCSharpMinecraftMap.load(file, options);
+        }
+
+        @Override
+        public Header readHeader(File file)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException,
+                       FileNotFoundException {
+            return MCSharpMinecraftMap.readHeader(file);
+        }
+
+        @Override
+        public void visit(InputStream in, BlockVisitor visitor, int chunkSize)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException {
+            MCSharpMinecraftMap.visit(in, visitor, chunkSize);
+        }
+
+        @Override
+        public MapStreamWriter createStreamWriter(OutputStream out) {
+            return MCSharpMinecraftMap.createStreamWriter(out);
+        }
+
+        @Override
+        public MCSharpMinecraftMap load(InputStream in, LoadOptions options)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException {
+            return MCSharpMinecraftMap.load(in, options);
+        }
+
+        @Override
+        public boolean matchesSignature(byte[] data, int length, boolean compressed) {
+            return compressed && length >= 2
+                && ByteCodec.getLEUnsignedShort(ByteBuffer.wrap(data), 0) == VERSION_1;
+        }
+
+        public MCSharpMinecraftMap convert(MinecraftMap map)
+                throws InvalidMapException {
+            return new MCSharpMinecraftMap(map);
+        }
+    };
 
     public static boolean isVersionSupported(long version) {
         for(int i = 0;i < SUPPORTED_VERSIONS.length;i++) {
@@ -117,6 +210,14 @@ public class MCSharpMinecraftMap extends MinecraftMapBase {
         }
     }
 
+    private static final byte[] NORMAL_BLOCKS;
+
+    static {
+        NORMAL_BLOCKS = new byte[256];
+        for(int i = 0;i < NORMAL_BLOCKS.length;i++)
+            NORMAL_BLOCKS[i] = (byte)SpecialBlock.convertToNormalBlock(i);
+    }
+
     private volatile LevelPermission visitPermission, buildPermission;
     
     public MCSharpMinecraftMap(byte[] blocks,
@@ -143,9 +244,33 @@ public class MCSharpMinecraftMap extends MinecraftMapBase {
         this.buildPermission = buildPermission;
     }
 
+    protected MCSharpMinecraftMap(PagedByteArray blocks,
+                                  int width, int height, int depth,
+                                  int spawnWidth, int spawnHeight, int spawnDepth,
+                                  int spawnRotation, int spawnPitch,
+                                  LevelPermission visitPermission,
+                                  LevelPermission buildPermission)
+                                      throws InvalidMapException {
+        super(
+            blocks,
+            width, height, depth,
+            spawnWidth, spawnHeight, spawnDepth,
+            spawnRotation, spawnPitch
+        );
+
+        if(visitPermission == null)
+            visitPermission = LevelPermission.NULL;
+
+        if(buildPermission == null)
+            buildPermission = LevelPermission.NULL;
+
+        this.visitPermission = visitPermission;
+        this.buildPermission = buildPermission;
+    }
+
     public MCSharpMinecraftMap(MinecraftMap map) throws InvalidMapException {
         this(
-            map.getBlocks(),
+            copyBlocks(map),
             map.getWidth(),
             map.getHeight(),
             map.getDepth(),
@@ -161,7 +286,7 @@ public class MCSharpMinecraftMap extends MinecraftMapBase {
 
     public MCSharpMinecraftMap(MCSharpMinecraftMap mcSharpMap) throws InvalidMapException {
         this(
-            mcSharpMap.getBlocks(),
+            copyBlocks(mcSharpMap),
             mcSharpMap.getWidth(),
             mcSharpMap.getHeight(),
             mcSharpMap.getDepth(),
@@ -175,12 +300,36 @@ public class MCSharpMinecraftMap extends MinecraftMapBase {
         );
     }
 
-    private static MCSharpMinecraftMap loadVersion1(ExtendedDataInputStream dis)
-            throws IOException, EOFException, MapFormatException, NotImplementedException {
-        MCSharpMinecraftMap map;
+    public static class Header extends MapHeader {
+        private final LevelPermission visitPermission, buildPermission;
+
+        protected Header(int width, int height, int depth,
+                         int spawnWidth, int spawnHeight, int spawnDepth,
+                         int spawnRotation, int spawnPitch,
+                         LevelPermission visitPermission,
+                         LevelPermission buildPermission) {
+            super(
+                width, height, depth,
+                spawnWidth, spawnHeight, spawnDepth,
+                spawnRotation, spawnPitch
+            );
+            this.visitPermission = visitPermission;
+            this.buildPermission = buildPermission;
+        }
+
+        public LevelPermission getVisitPermission() {
+            return visitPermission;
+        }
+
+        public LevelPermission getBuildPermission() {
+            return buildPermission;
+        }
+    }
+
+    private static Header readHeaderVersion1(CodecInputStream dis)
+            throws IOException, EOFException {
         int width, height, depth, spawnWidth, spawnHeight, spawnDepth;
         short spawnRotation, spawnPitch;
-        byte[] blocks;
         LevelPermission buildPermission, visitPermission;
 
         width = dis.readLEUnsignedShort();
@@ -202,30 +351,45 @@ public class MCSharpMinecraftMap extends MinecraftMapBase {
             buildPermission = LevelPermission.fromCode(buildPermissionCode);
         }
 
-        {
-            BigInteger totalBlocks;
-            int intTotalBlocks;
+        return new Header(
+            width, height, depth,
+            spawnWidth, spawnHeight, spawnDepth,
+            spawnRotation, spawnPitch,
+            visitPermission, buildPermission
+        );
+    }
 
-            totalBlocks = BigInteger.valueOf(width)
-                .multiply(BigInteger.valueOf(height))
-                .multiply(BigInteger.valueOf(depth));
+    private static MCSharpMinecraftMap loadVersion1(CodecInputStream dis, IOTracker tracker)
+            throws IOException, EOFException, MapFormatException, NotImplementedException {
+        MCSharpMinecraftMap map;
+        Header header;
+        PagedByteArray blocks;
 
-            if(totalBlocks.compareTo(BigInteger.valueOf(Integer.MAX_VALUE)) == 1)
-                throw new MapFormatException("Width, height, and depth are too long");
+        header = readHeaderVersion1(dis);
 
-            intTotalBlocks = totalBlocks.intValue();
-            blocks = new byte[intTotalBlocks];
-        }
+        if(header.getTotalBlocks() > Integer.MAX_VALUE)
+            throw new MapFormatException("Width, height, and depth are too long");
+        tracker.enter(IOStatistics.Phase.ALLOCATION);
+        blocks = new PagedByteArray((int)header.getTotalBlocks());
 
-        dis.readFully(blocks);
+        tracker.enter(IOStatistics.Phase.DECOMPRESSION);
+        blocks.readFully(dis);
+        tracker.blocks(header.getTotalBlocks());
 
+        tracker.enter(IOStatistics.Phase.VALIDATION);
         try {
             map = new MCSharpMinecraftMap(
                 blocks,
-                width, height, depth,
-                spawnWidth, spawnHeight, spawnDepth,
-                spawnRotation, spawnPitch,
-                visitPermission, buildPermission
+                header.getWidth(),
+                header.getHeight(),
+                header.getDepth(),
+                header.getSpawnWidth(),
+                header.getSpawnHeight(),
+                header.getSpawnDepth(),
+                header.getSpawnRotation(),
+                header.getSpawnPitch(),
+                header.getVisitPermission(),
+                header.getBuildPermission()
             );
         } catch(InvalidMapException e) {
             throw new MapFormatException(e);
@@ -233,83 +397,328 @@ public class MCSharpMinecraftMap extends MinecraftMapBase {
         return map;
     }
 
+    private static void visitVersion1(CodecInputStream dis,
+                                      BlockVisitor visitor, int chunkSize)
+            throws IOException, EOFException {
+        Header header;
+
+        header = readHeaderVersion1(dis);
+        visitor.visitHeader(header);
+        BlockStreams.visit(dis, header, NORMAL_BLOCKS, visitor, chunkSize);
+    }
+
     public static MCSharpMinecraftMap load(InputStream in)
             throws IOException, MapFormatException, NotImplementedException {
+        return load(in, new LoadOptions());
+    }
+
+    public static MCSharpMinecraftMap load(InputStream in, LoadOptions options)
+            throws IOException, MapFormatException, NotImplementedException {
         MCSharpMinecraftMap map;
-        ExtendedDataInputStream dis;
-        GZIPInputStream gis;
+        CodecInputStream dis;
+        ReleasableInputStream gis;
+        IOTracker tracker;
         int version;
 
-        gis = new GZIPInputStream(in);
-        dis = new ExtendedDataInputStream(gis);
-        version = dis.readLEUnsignedShort();
-        if(version == VERSION_1) {
-            map = loadVersion1(dis);
-        } else {
-            throw new NotImplementedException("Map version unsupported");
+        tracker = IOTracker.startLoad(NAME);
+        gis = null;
+        try {
+            gis = options.createGZIPInputStream(tracker.source(in));
+            dis = new CodecInputStream(tracker.inflated(gis));
+            version = dis.readLEUnsignedShort();
+            if(version == VERSION_1) {
+                map = loadVersion1(dis, tracker);
+            } else {
+                throw new NotImplementedException("Map version unsupported");
+            }
+        } catch(IOException e) {
+            throw tracker.failed(e);
+        } catch(RuntimeException e) {
+            throw tracker.failed(e);
+        } finally {
+            if(gis != null)
+                gis.release();
         }
+        tracker.completed();
         return map;
     }
 
     public static MCSharpMinecraftMap load(File file)
             throws IOException, MapFormatException, NotImplementedException {
+        return load(file.toPath());
+    }
+
+    public static MCSharpMinecraftMap load(Path path)
+            throws IOException, MapFormatException, NotImplementedException {
+        return load(path, new LoadOptions());
+    }
+
+    public static MCSharpMinecraftMap load(File file, LoadOptions options)
+            throws IOException, MapFormatException, NotImplementedException {
+        return load(file.toPath(), options);
+    }
+
+    public static MCSharpMinecraftMap load(Path path, LoadOptions options)
+            throws IOException, MapFormatException, NotImplementedException {
         MCSharpMinecraftMap map;
-        FileInputStream fis;
+        InputStream in;
 
-        fis = new FileInputStream(file);
+        in = new ChannelInputStream(path, options.getBufferSize());
         try {
-            map = load(fis);
+            map = load(in, options);
         } catch(EOFException e) {
             throw new MapFormatException("Map file incomplete", e);
         } finally {
-            fis.close();
+            in.close();
         }
         return map;
     }
 
-    private void saveVersion1(ExtendedDataOutputStream dos) throws IOException {
-        dos.writeLEUnsignedShort(width);
-        dos.writeLEUnsignedShort(height);
-        dos.writeLEUnsignedShort(depth);
+    public static Header readHeader(InputStream in)
+            throws IOException, MapFormatException, NotImplementedException {
+        CodecInputStream dis;
+        PooledGZIPInputStream gis;
+        Header header;
+        int version;
 
-        dos.writeLEUnsignedShort(spawnWidth);
-        dos.writeLEUnsignedShort(spawnHeight);
-        dos.writeLEUnsignedShort(spawnDepth);
+        gis = new PooledGZIPInputStream(in, null);
+        try {
+            dis = new CodecInputStream(gis);
+            version = dis.readLEUnsignedShort();
+            if(version == VERSION_1) {
+                header = readHeaderVersion1(dis);
+            } else {
+                throw new NotImplementedException("Map version unsupported");
+            }
+        } finally {
+            gis.release();
+        }
+        return header;
+    }
 
-        dos.writeUnsignedByte(spawnPitch);
-        dos.writeUnsignedByte(spawnRotation);
+    public static Header readHeader(File file)
+            throws IOException, MapFormatException, NotImplementedException {
+        return readHeader(file.toPath());
+    }
 
-        dos.writeUnsignedByte(visitPermission.CODE);
-        dos.writeUnsignedByte(buildPermission.CODE);
+    public static Header readHeader(Path path)
+            throws IOException, MapFormatException, NotImplementedException {
+        Header header;
+        InputStream fis;
 
-        dos.write(getBlocks());
+        fis = new ChannelInputStream(path);
+        try {
+            header = readHeader(fis);
+        } catch(EOFException e) {
+            throw new MapFormatException("Map header incomplete", e);
+        } finally {
+            fis.close();
+        }
+        return header;
+    }
+
+    public static void visit(InputStream in, BlockVisitor visitor, int chunkSize)
+            throws IOException, MapFormatException, NotImplementedException {
+        CodecInputStream dis;
+        PooledGZIPInputStream gis;
+        int version;
+
+        gis = new PooledGZIPInputStream(in, null);
+        try {
+            dis = new CodecInputStream(gis);
+            version = dis.readLEUnsignedShort();
+            if(version == VERSION_1) {
+                visitVersion1(dis, visitor, chunkSize);
+            } else {
+                throw new NotImplementedException("Map version unsupported");
+            }
+        } finally {
+            gis.release();
+        }
+    }
+
+    public static void visit(InputStream in, BlockVisitor visitor)
+            throws IOException, NotImplementedException, MapFormatException {
+        visit(in, visitor, BlockVisitor.DEFAULT_CHUNK_SIZE);
+    }
+
+    public static void visit(File file, BlockVisitor visitor, int chunkSize)
+            throws IOException, NotImplementedException, MapFormatException {
+        visit(file.toPath(), visitor, chunkSize);
+    }
+
+    public static void visit(Path path, BlockVisitor visitor, int chunkSize)
+            throws IOException, NotImplementedException, MapFormatException {
+        InputStream in;
+
+        in = new ChannelInputStream(path);
+        try {
+            visit(in, visitor, chunkSize);
+        } catch(EOFException e) {
+            throw new MapFormatException("Map file incomplete", e);
+        } finally {
+            in.close();
+        }
+    }
+
+    public static void visit(File file, BlockVisitor visitor)
+            throws IOException, NotImplementedException, MapFormatException {
+        visit(file.toPath(), visitor);
+    }
+
+    public static void visit(Path path, BlockVisitor visitor)
+            throws IOException, NotImplementedException, MapFormatException {
+        visit(path, visitor, BlockVisitor.DEFAULT_CHUNK_SIZE);
+    }
+
+    private static void writeHeaderVersion1(CodecOutputStream dos, Header header)
+            throws IOException {
+        dos.writeLEUnsignedShort(header.getWidth());
+        dos.writeLEUnsignedShort(header.getHeight());
+        dos.writeLEUnsignedShort(header.getDepth());
+
+        dos.writeLEUnsignedShort(header.getSpawnWidth());
+        dos.writeLEUnsignedShort(header.getSpawnHeight());
+        dos.writeLEUnsignedShort(header.getSpawnDepth());
+
+        dos.writeByte(header.getSpawnPitch());
+        dos.writeByte(header.getSpawnRotation());
+
+        dos.writeByte(header.getVisitPermission().CODE);
+        dos.writeByte(header.getBuildPermission().CODE);
+    }
+
+    private void saveVersion1(CodecOutputStream dos, IOTracker tracker) throws IOException {
+        writeHeaderVersion1(dos, new Header(
+            width, height, depth,
+            spawnWidth, spawnHeight, spawnDepth,
+            spawnRotation, spawnPitch,
+            visitPermission, buildPermission
+        ));
+        tracker.enter(IOStatistics.Phase.COMPRESSION);
+        {
+            BlockView view;
+            byte[] transfer;
+            int offset;
+
+            view = getBlockView();
+            transfer = new byte[Math.min(BlockVisitor.DEFAULT_CHUNK_SIZE, view.length())];
+            for(offset = 0;offset < view.length();offset += transfer.length) {
+                int count;
+
+                count = Math.min(transfer.length, view.length() - offset);
+                view.copyTo(offset, transfer, 0, count);
+                dos.write(transfer, 0, count);
+            }
+        }
+        tracker.blocks(blocks.length());
+    }
+
+    private static class StreamWriterVersion1 extends MapStreamWriter {
+        private CodecOutputStream dos;
+        private FinishableOutputStream gos;
+
+        StreamWriterVersion1(OutputStream out) {
+            super(out);
+        }
+
+        protected void writeHeader(MapHeader header) throws IOException {
+            LevelPermission visitPermission, buildPermission;
+
+            if(header instanceof Header) {
+                visitPermission = ((Header)header).getVisitPermission();
+                buildPermission = ((Header)header).getBuildPermission();
+            } else {
+                visitPermission = LevelPermission.NULL;
+                buildPermission = LevelPermission.NULL;
+            }
+
+            gos = new PooledGZIPOutputStream(out, null);
+            dos = new CodecOutputStream(gos);
+            dos.writeLEUnsignedShort(VERSION_1);
+            writeHeaderVersion1(dos, new Header(
+                header.getWidth(),
+                header.getHeight(),
+                header.getDepth(),
+                header.getSpawnWidth(),
+                header.getSpawnHeight(),
+                header.getSpawnDepth(),
+                header.getSpawnRotation(),
+                header.getSpawnPitch(),
+                visitPermission, buildPermission
+            ));
+        }
+
+        protected void writeBlocks(byte[] blocks, byte[][] extendedBlocks, int count)
+                throws IOException {
+            dos.write(blocks, 0, count);
+        }
+
+        protected void finishBlocks() throws IOException {
+            dos.flush();
+            gos.finish();
+            gos.flush();
+        }
+
+        @Override
+        public void release() {
+            if(gos != null)
+                gos.release();
+        }
+    }
+
+    public static MapStreamWriter createStreamWriter(OutputStream out) {
+        return new StreamWriterVersion1(out);
     }
 
     public void save(OutputStream out, int version) throws IOException, NotImplementedException {
-        ExtendedDataOutputStream dos;
-        GZIPOutputStream gos;
+        save(out, version, new SaveOptions());
+    }
 
-        gos = new GZIPOutputStream(out);
-        dos = new ExtendedDataOutputStream(gos);
-        if(version == VERSION_1) {
-            dos.writeLEUnsignedShort(version);
-            saveVersion1(dos);
-        } else
-            throw new NotImplementedException("Unknown file version");
-        dos.flush();
-        gos.finish();
-        gos.flush();
+    public void save(OutputStream out, int version, SaveOptions options)
+            throws IOException, NotImplementedException {
+        CodecOutputStream dos;
+        FinishableOutputStream gos;
+        IOTracker tracker;
+
+        tracker = IOTracker.startSave(NAME);
+        gos = null;
+        try {
+            gos = options.createGZIPOutputStream(tracker.sink(out));
+            dos = new CodecOutputStream(tracker.deflated(gos));
+            if(version == VERSION_1) {
+                dos.writeLEUnsignedShort(version);
+                saveVersion1(dos, tracker);
+            } else
+                throw new NotImplementedException("Unknown file version");
+            dos.flush();
+            gos.finish();
+            gos.flush();
+        } catch(IOException e) {
+            throw tracker.failed(e);
+        } catch(RuntimeException e) {
+            throw tracker.failed(e);
+        } finally {
+            if(gos != null)
+                gos.release();
+        }
+        tracker.completed();
     }
 
     public void save(File file, int version) throws IOException, NotImplementedException {
-        FileOutputStream fos;
+        save(file.toPath(), version);
+    }
+
+    public void save(Path path, int version) throws IOException, NotImplementedException {
+        OutputStream fos;
 
-        fos = new FileOutputStream(file);
+        fos = new ChannelOutputStream(path);
         try {
             save(fos, version);
         } finally {
             fos.close();
         }
+        fireMapSaved(path);
     }
 
     @Override
@@ -317,6 +726,11 @@ public class MCSharpMinecraftMap extends MinecraftMapBase {
         save(out, CURRENT_VERSION);
     }
 
+    @Override
+    public void save(OutputStream out, SaveOptions options) throws IOException {
+        save(out, CURRENT_VERSION, options);
+    }
+
     @Override
     public void save(File file) throws IOException {
         save(file, CURRENT_VERSION);
@@ -340,10 +754,37 @@ public class MCSharpMinecraftMap extends MinecraftMapBase {
 
     public void setVisitPermission(LevelPermission visitPermission) {
         this.visitPermission = visitPermission;
+        fireAttributeChanged(VISIT_PERMISSION);
     }
 
     public void setBuildPermission(LevelPermission buildPermission) {
         this.buildPermission = buildPermission;
+        fireAttributeChanged(BUILD_PERMISSION);
+    }
+
+    @Override
+    byte[] getAttribute(String name) {
+        if(VISIT_PERMISSION.equals(name))
+            return new byte[] {(byte)visitPermission.CODE};
+        if(BUILD_PERMISSION.equals(name))
+            return new byte[] {(byte)buildPermission.CODE};
+        return null;
+    }
+
+    @Override
+    void setAttribute(String name, byte[] value) throws MapFormatException {
+        LevelPermission permission;
+
+        if(value == null || value.length != 1)
+            throw new MapFormatException("Invalid permission attribute");
+
+        permission = LevelPermission.fromCode(value[0] & 0xFF);
+        if(VISIT_PERMISSION.equals(name))
+            visitPermission = permission;
+        else if(BUILD_PERMISSION.equals(name))
+            buildPermission = permission;
+        else
+            super.setAttribute(name, value);
     }
 
     @Override
@@ -355,7 +796,7 @@ public class MCSharpMinecraftMap extends MinecraftMapBase {
 
         offset = getBlockOffset(width, height, depth);
 
-        return (byte)SpecialBlock.convertToNormalBlock(blocks[offset]);
+        return NORMAL_BLOCKS[blocks.get(offset) & 0xFF];
     }
 
     public byte getBlockSpecial(int width, int height, int depth) {
@@ -366,32 +807,70 @@ public class MCSharpMinecraftMap extends MinecraftMapBase {
 
         offset = getBlockOffset(width, height, depth);
 
-        return blocks[offset];
+        return blocks.get(offset);
     }
 
     @Override
     public byte[] getBlocks() {
         byte[] newBlocks;
 
-        newBlocks = new byte[blocks.length];
-        for(int i = 0;i < blocks.length;i++)
-            newBlocks[i] = (byte)SpecialBlock.convertToNormalBlock(blocks[i]);
+        newBlocks = new byte[blocks.length()];
+        copyBlocksTo(newBlocks, 0);
         return newBlocks;
     }
 
-    public byte[] getBlocksSpecial() {
-        byte[] newBlocks;
+    @Override
+    public BlockView getBlockView() {
+        return new PagedBlockView(blocks, width, height, depth, NORMAL_BLOCKS);
+    }
 
-        newBlocks = new byte[blocks.length];
-        for(int i = 0;i < blocks.length;i++)
-            newBlocks[i] = blocks[i];
-        return newBlocks;
+    @Override
+    public void copyBlocksTo(byte[] dest, int offset) {
+        getBlockView().copyTo(0, dest, offset, blocks.length());
+    }
+
+    @Override
+    public void copyBlocksTo(ByteBuffer dest) {
+        getBlockView().copyTo(0, dest, blocks.length());
+    }
+
+    @Override
+    public void readRegion(int width, int height, int depth,
+                           int sizeWidth, int sizeHeight, int sizeDepth,
+                           byte[] dest, int offset) {
+        int end;
+
+        super.readRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth, dest, offset);
+        end = offset + sizeWidth * sizeHeight * sizeDepth;
+        for(int i = offset;i < end;i++)
+            dest[i] = NORMAL_BLOCKS[dest[i] & 0xFF];
+    }
+
+    @Override
+    void readRegionRaw(int width, int height, int depth,
+                       int sizeWidth, int sizeHeight, int sizeDepth,
+                       byte[] dest, int offset) {
+        super.readRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth, dest, offset);
+    }
+
+    public BlockView getBlockViewSpecial() {
+        return new PagedBlockView(blocks, width, height, depth, null);
+    }
+
+    public byte[] getBlocksSpecial() {
+        return blocks.toByteArray();
     }
 
     @Override
     public MCSharpMinecraftMap clone() {
         try {
-            return new MCSharpMinecraftMap(this);
+            return new MCSharpMinecraftMap(
+                blocks.snapshot(),
+                width, height, depth,
+                spawnWidth, spawnHeight, spawnDepth,
+                spawnRotation, spawnPitch,
+                visitPermission, buildPermission
+            );
         } catch(InvalidMapException e) {
             throw new RuntimeException("Could not clone map", e);
         }
@@ -0,0 +1,417 @@
+package mcmaplib;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MapBatchLoader {
+    public static final int DEFAULT_PARALLELISM =
+        Runtime.getRuntime().availableProcessors();
+    public static final long DEFAULT_MEMORY_BUDGET =
+        Runtime.getRuntime().maxMemory() / 2;
+
+    private final List<MapFormat> formats;
+    private final ConcurrentHashMap<MapFormat, Double> overheadFactors =
+        new ConcurrentHashMap<MapFormat, Double>();
+    private volatile int parallelism = DEFAULT_PARALLELISM;
+    private volatile long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    private volatile LoadOptions loadOptions = new LoadOptions();
+
+    public MapBatchLoader() {
+        this(MapFormats.getFormats());
+    }
+
+    public MapBatchLoader(List<MapFormat> formats) {
+        this.formats = Collections.unmodifiableList(new ArrayList<MapFormat>(formats));
+        // Dat levels are deserialized into a byte[] that is then copied
+        // into the map's pages, so both are live at once. Mapped files are
+        // mapped read-only and only pages that are written reach the heap.
+        overheadFactors.put(DatMinecraftMap.FORMAT, 2.0);
+        overheadFactors.put(MappedMinecraftMap.FORMAT, 0.0);
+    }
+
+    public List<MapFormat> getFormats() {
+        return formats;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public MapBatchLoader setParallelism(int parallelism) {
+        if(parallelism <= 0)
+            throw new IllegalArgumentException("Parallelism must be positive");
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public MapBatchLoader setMemoryBudget(long memoryBudget) {
+        if(memoryBudget <= 0)
+            throw new IllegalArgumentException("Memory budget must be positive");
+        this.memoryBudget = memoryBudget;
+        return this;
+    }
+
+    public double getOverheadFactor(MapFormat format) {
+        Double factor;
+
+        factor = overheadFactors.get(format);
+        return factor == null ? 1.0 : factor.doubleValue();
+    }
+
+    public MapBatchLoader setOverheadFactor(MapFormat format, double factor) {
+        if(format == null)
+            throw new NullPointerException("Format must not be null");
+        if(factor < 0 || Double.isNaN(factor) || Double.isInfinite(factor))
+            throw new IllegalArgumentException("Overhead factor must be a non-negative number");
+        overheadFactors.put(format, factor);
+        return this;
+    }
+
+    public LoadOptions getLoadOptions() {
+        return loadOptions;
+    }
+
+    public MapBatchLoader setLoadOptions(LoadOptions options) {
+        if(options == null)
+            throw new NullPointerException("Load options must not be null");
+        loadOptions = options;
+        return this;
+    }
+
+    public Report load(File directory) throws IOException, InterruptedException {
+        return load(directory.toPath());
+    }
+
+    public Report load(Path directory) throws IOException, InterruptedException {
+        List<Path> files;
+        DirectoryStream<Path> stream;
+
+        files = new ArrayList<Path>();
+        stream = Files.newDirectoryStream(directory);
+        try {
+            for(Path file : stream) {
+                if(Files.isRegularFile(file) && isMapFile(file))
+                    files.add(file);
+            }
+        } finally {
+            stream.close();
+        }
+        Collections.sort(files);
+        return load(files);
+    }
+
+    public Report load(List<Path> files) throws InterruptedException {
+        final MemoryBudget budget;
+        final LoadOptions options;
+        List<Future<Result>> futures;
+        List<Result> results;
+        ExecutorService executor;
+        long start;
+
+        budget = new MemoryBudget(memoryBudget);
+        options = loadOptions;
+        executor = createExecutor(Math.max(1, Math.min(parallelism, files.size())));
+        futures = new ArrayList<Future<Result>>(files.size());
+        results = new ArrayList<Result>(files.size());
+        start = System.nanoTime();
+        try {
+            for(final Path file : files) {
+                futures.add(executor.submit(new Callable<Result>() {
+                    public Result call() throws InterruptedException {
+                        return loadFile(file, options, budget);
+                    }
+                }));
+            }
+            for(int i = 0;i < futures.size();i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch(ExecutionException e) {
+                    results.add(new Result(files.get(i), null, null, null, e.getCause(), 0, 0, 0));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return new Report(results, System.nanoTime() - start);
+    }
+
+    private Result loadFile(Path file, LoadOptions options, MemoryBudget budget)
+            throws InterruptedException {
+        MapFormat format;
+        MapHeader header;
+        MinecraftMap map;
+        long size, cost, queued, admitted;
+
+        queued = System.nanoTime();
+        format = null;
+        header = null;
+        size = 0;
+        try {
+            size = Files.size(file);
+            format = findFormat(file);
+            if(format == null)
+                throw new MapFormatException("Unrecognized map format");
+            header = format.readHeader(file.toFile());
+        } catch(Exception e) {
+            return new Result(file, format, header, null, e, size, 0, System.nanoTime() - queued);
+        }
+
+        cost = estimateMemory(format, header);
+        budget.acquire(cost);
+        admitted = System.nanoTime();
+        try {
+            map = format.load(file, options);
+        } catch(Exception e) {
+            return new Result(
+                file, format, header, null, e, size,
+                admitted - queued, System.nanoTime() - admitted
+            );
+        } finally {
+            budget.release(cost);
+        }
+        return new Result(
+            file, format, header, map, null, size,
+            admitted - queued, System.nanoTime() - admitted
+        );
+    }
+
+    private MapFormat findFormat(Path file) throws IOException {
+        MapFormat format;
+
+        format = MapFormats.detect(file);
+        if(format != null && formats.contains(format))
+            return format;
+        return findFormatByExtension(file);
+    }
+
+    private boolean isMapFile(Path file) {
+        MapFormat format;
+
+        if(findFormatByExtension(file) != null)
+            return true;
+        try {
+            format = MapFormats.detect(file);
+        } catch(IOException e) {
+            return false;
+        }
+        return format != null && formats.contains(format);
+    }
+
+    private MapFormat findFormatByExtension(Path file) {
+        String name;
+        int dot;
+
+        name = file.getFileName().toString();
+        dot = name.lastIndexOf('.');
+        if(dot < 0)
+            return null;
+
+        name = name.substring(dot + 1).toLowerCase(Locale.ROOT);
+        for(MapFormat format : formats) {
+            if(format.getExtensions().contains(name))
+                return format;
+        }
+        return null;
+    }
+
+    private long estimateMemory(MapFormat format, MapHeader header) {
+        long bytesPerBlock;
+
+        bytesPerBlock = 1;
+        if(header instanceof RUMMinecraftMap.Header)
+            bytesPerBlock = ((RUMMinecraftMap.Header)header).getExtendedBlockLength();
+        return (long)Math.ceil(header.getTotalBlocks() * bytesPerBlock * getOverheadFactor(format));
+    }
+
+    private static ExecutorService createExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger next = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread;
+
+                thread = new Thread(r, "mcmaplib-batch-" + next.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    private static final class MemoryBudget {
+        private final long limit;
+        private long used;
+
+        MemoryBudget(long limit) {
+            this.limit = limit;
+        }
+
+        synchronized void acquire(long bytes) throws InterruptedException {
+            bytes = Math.min(bytes, limit);
+            while(used > 0 && used + bytes > limit)
+                wait();
+            used += bytes;
+        }
+
+        synchronized void release(long bytes) {
+            used -= Math.min(bytes, limit);
+            notifyAll();
+        }
+    }
+
+    public static class Result {
+        private final Path file;
+        private final MapFormat format;
+        private final MapHeader header;
+        private final MinecraftMap map;
+        private final Throwable error;
+        private final long fileSize;
+        private final long waitNanos, loadNanos;
+
+        Result(Path file, MapFormat format, MapHeader header, MinecraftMap map,
+               Throwable error, long fileSize, long waitNanos, long loadNanos) {
+            this.file = file;
+            this.format = format;
+            this.header = header;
+            this.map = map;
+            this.error = error;
+            this.fileSize = fileSize;
+            this.waitNanos = waitNanos;
+            this.loadNanos = loadNanos;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public MapFormat getFormat() {
+            return format;
+        }
+
+        public MapHeader getHeader() {
+            return header;
+        }
+
+        public MinecraftMap getMap() {
+            return map;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return map != null;
+        }
+
+        public long getFileSize() {
+            return fileSize;
+        }
+
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        public long getLoadNanos() {
+            return loadNanos;
+        }
+    }
+
+    public static class Report {
+        private final List<Result> results;
+        private final long elapsedNanos;
+
+        Report(List<Result> results, long elapsedNanos) {
+            this.results = Collections.unmodifiableList(results);
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public List<Result> getResults() {
+            return results;
+        }
+
+        public List<MinecraftMap> getMaps() {
+            List<MinecraftMap> maps;
+
+            maps = new ArrayList<MinecraftMap>(results.size());
+            for(Result result : results) {
+                if(result.isSuccess())
+                    maps.add(result.getMap());
+            }
+            return maps;
+        }
+
+        public int getFailureCount() {
+            int failures;
+
+            failures = 0;
+            for(Result result : results) {
+                if(!result.isSuccess())
+                    failures++;
+            }
+            return failures;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public long getTotalBytes() {
+            long total;
+
+            total = 0;
+            for(Result result : results) {
+                if(result.isSuccess())
+                    total += result.getFileSize();
+            }
+            return total;
+        }
+
+        public long getTotalBlocks() {
+            long total;
+
+            total = 0;
+            for(Result result : results) {
+                if(result.isSuccess())
+                    total += result.getHeader().getTotalBlocks();
+            }
+            return total;
+        }
+
+        public double getBytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : getTotalBytes() * 1e9 / elapsedNanos;
+        }
+
+        public double getMapsPerSecond() {
+            return elapsedNanos == 0 ? 0 : (results.size() - getFailureCount()) * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                Locale.ROOT,
+                "%d maps (%d failed), %d bytes in %.3f s, %.1f MB/s, %.1f maps/s",
+                results.size(), getFailureCount(), getTotalBytes(),
+                elapsedNanos / 1e9, getBytesPerSecond() / 1e6, getMapsPerSecond()
+            );
+        }
+    }
+}
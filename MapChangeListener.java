@@ -0,0 +1,24 @@
+package mcmaplib;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+public interface MapChangeListener {
+    void blockChanged(MinecraftMap map, int width, int height, int depth,
+                      byte oldType, byte newType, byte flags);
+
+    void regionChanged(MinecraftMap map, int width, int height, int depth,
+                       int sizeWidth, int sizeHeight, int sizeDepth);
+
+    default void regionFilled(MinecraftMap map, int width, int height, int depth,
+                              int sizeWidth, int sizeHeight, int sizeDepth, byte type) {
+        regionChanged(map, width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+    }
+
+    void spawnChanged(MinecraftMap map);
+
+    void attributeChanged(MinecraftMap map, String name);
+
+    default void mapSaved(MinecraftMap map, Path path) throws IOException {
+    }
+}
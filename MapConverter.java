@@ -0,0 +1,69 @@
+package mcmaplib;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import mcmaplib.util.ChannelInputStream;
+import mcmaplib.util.ChannelOutputStream;
+
+public final class MapConverter {
+    private MapConverter() {
+    }
+
+    public static void convert(InputStream in, MapFormat sourceFormat,
+                               OutputStream out, MapFormat destFormat,
+                               int chunkSize)
+            throws IOException, NotImplementedException, MapFormatException {
+        MapStreamWriter writer;
+
+        writer = destFormat.createStreamWriter(out);
+        try {
+            sourceFormat.visit(in, writer, chunkSize);
+            writer.finish();
+        } finally {
+            writer.release();
+        }
+    }
+
+    public static void convert(InputStream in, MapFormat sourceFormat,
+                               OutputStream out, MapFormat destFormat)
+            throws IOException, NotImplementedException, MapFormatException {
+        convert(in, sourceFormat, out, destFormat, BlockVisitor.DEFAULT_CHUNK_SIZE);
+    }
+
+    public static void convert(File source, MapFormat sourceFormat,
+                               File dest, MapFormat destFormat)
+            throws IOException, NotImplementedException, MapFormatException {
+        convert(source.toPath(), sourceFormat, dest.toPath(), destFormat);
+    }
+
+    public static void convert(Path source, MapFormat sourceFormat,
+                               Path dest, MapFormat destFormat)
+            throws IOException, NotImplementedException, MapFormatException {
+        InputStream in;
+        OutputStream out;
+        boolean success;
+
+        success = false;
+        in = new ChannelInputStream(source);
+        try {
+            out = new ChannelOutputStream(dest);
+            try {
+                convert(in, sourceFormat, out, destFormat);
+                success = true;
+            } catch(EOFException e) {
+                throw new MapFormatException("Map file incomplete", e);
+            } finally {
+                out.close();
+                if(!success)
+                    Files.deleteIfExists(dest);
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
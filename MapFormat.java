@@ -3,6 +3,9 @@ package mcmaplib;
 import java.io.File;
 import java.io.IOException;
 import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.Set;
 
 public abstract class MapFormat {
@@ -18,6 +21,53 @@ public abstract class MapFormat {
                    MapFormatException,
                    FileNotFoundException;
 
+    public MinecraftMap load(File file, LoadOptions options)
+            throws IOException,
+                   NotImplementedException,
+                   MapFormatException,
+                   FileNotFoundException {
+        return load(file);
+    }
+
+    public MinecraftMap load(Path path, LoadOptions options)
+            throws IOException,
+                   NotImplementedException,
+                   MapFormatException,
+                   FileNotFoundException {
+        return load(path.toFile(), options);
+    }
+
+    public MinecraftMap load(InputStream in, LoadOptions options)
+            throws IOException,
+                   NotImplementedException,
+                   MapFormatException {
+        throw new NotImplementedException("Stream loading not implemented for this map format");
+    }
+
+    public MapHeader readHeader(File file)
+            throws IOException,
+                   NotImplementedException,
+                   MapFormatException,
+                   FileNotFoundException {
+        throw new NotImplementedException("Header probing not implemented for this map format");
+    }
+
+    public void visit(InputStream in, BlockVisitor visitor, int chunkSize)
+            throws IOException,
+                   NotImplementedException,
+                   MapFormatException {
+        throw new NotImplementedException("Streaming reads not implemented for this map format");
+    }
+
+    public MapStreamWriter createStreamWriter(OutputStream out)
+            throws NotImplementedException {
+        throw new NotImplementedException("Streaming writes not implemented for this map format");
+    }
+
+    public boolean matchesSignature(byte[] data, int length, boolean compressed) {
+        return false;
+    }
+
     public abstract MinecraftMap convert(MinecraftMap map)
             throws InvalidMapException;
 }
\ No newline at end of file
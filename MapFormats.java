@@ -0,0 +1,243 @@
+package mcmaplib;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public final class MapFormats {
+    public static final int PROBE_SIZE = 1024;
+
+    private static final int SIGNATURE_SIZE = 8;
+    private static final int GZIP_MAGIC_1 = 0x1F,
+                             GZIP_MAGIC_2 = 0x8B,
+                             GZIP_DEFLATE = 8,
+                             GZIP_HEADER_SIZE = 10;
+    private static final int FLAG_HEADER_CRC = 2,
+                             FLAG_EXTRA = 4,
+                             FLAG_NAME = 8,
+                             FLAG_COMMENT = 16;
+
+    private static final CopyOnWriteArrayList<MapFormat> formats =
+        new CopyOnWriteArrayList<MapFormat>();
+
+    static {
+        formats.add(FCraftMinecraftMap.FORMAT);
+        formats.add(MCSharpMinecraftMap.FORMAT);
+        formats.add(RUMMinecraftMap.FORMAT);
+        formats.add(DatMinecraftMap.FORMAT);
+        formats.add(MappedMinecraftMap.FORMAT);
+    }
+
+    private MapFormats() {
+    }
+
+    public static List<MapFormat> getFormats() {
+        return Collections.unmodifiableList(formats);
+    }
+
+    public static void register(MapFormat format) {
+        if(format == null)
+            throw new NullPointerException("Format must not be null");
+        formats.addIfAbsent(format);
+    }
+
+    public static boolean unregister(MapFormat format) {
+        return formats.remove(format);
+    }
+
+    public static MapFormat forName(String name) {
+        for(MapFormat format : formats) {
+            if(format.getName().equalsIgnoreCase(name))
+                return format;
+        }
+        return null;
+    }
+
+    public static MapFormat forExtension(String extension) {
+        extension = extension.toLowerCase(Locale.ROOT);
+        if(extension.startsWith("."))
+            extension = extension.substring(1);
+        for(MapFormat format : formats) {
+            if(format.getExtensions().contains(extension))
+                return format;
+        }
+        return null;
+    }
+
+    public static MapFormat forFile(File file) {
+        return forFile(file.toPath());
+    }
+
+    public static MapFormat forFile(Path path) {
+        String name;
+        int dot;
+
+        name = path.getFileName().toString();
+        dot = name.lastIndexOf('.');
+        if(dot < 0)
+            return null;
+        return forExtension(name.substring(dot + 1));
+    }
+
+    public static MapFormat detect(byte[] data, int length) {
+        byte[] signature;
+        int signatureLength;
+
+        for(MapFormat format : formats) {
+            if(format.matchesSignature(data, length, false))
+                return format;
+        }
+
+        if(length < 2 || (data[0] & 0xFF) != GZIP_MAGIC_1 || (data[1] & 0xFF) != GZIP_MAGIC_2)
+            return null;
+
+        signature = new byte[SIGNATURE_SIZE];
+        signatureLength = inflateSignature(data, length, signature);
+        if(signatureLength <= 0)
+            return null;
+
+        for(MapFormat format : formats) {
+            if(format.matchesSignature(signature, signatureLength, true))
+                return format;
+        }
+        return null;
+    }
+
+    public static MapFormat detect(InputStream in) throws IOException {
+        byte[] data;
+        int length;
+
+        if(!in.markSupported())
+            throw new IllegalArgumentException("Stream does not support mark/reset");
+
+        data = new byte[PROBE_SIZE];
+        length = 0;
+        in.mark(PROBE_SIZE);
+        try {
+            while(length < data.length) {
+                int n;
+
+                n = in.read(data, length, data.length - length);
+                if(n < 0)
+                    break;
+                length += n;
+            }
+        } finally {
+            in.reset();
+        }
+        return detect(data, length);
+    }
+
+    public static MapFormat detect(File file) throws IOException {
+        return detect(file.toPath());
+    }
+
+    public static MapFormat detect(Path path) throws IOException {
+        FileChannel channel;
+        ByteBuffer buffer;
+
+        buffer = ByteBuffer.allocate(PROBE_SIZE);
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            while(buffer.hasRemaining()) {
+                if(channel.read(buffer) < 0)
+                    break;
+            }
+        } finally {
+            channel.close();
+        }
+        return detect(buffer.array(), buffer.position());
+    }
+
+    public static MinecraftMap load(File file)
+            throws IOException, NotImplementedException, MapFormatException {
+        return load(file.toPath(), new LoadOptions());
+    }
+
+    public static MinecraftMap load(Path path)
+            throws IOException, NotImplementedException, MapFormatException {
+        return load(path, new LoadOptions());
+    }
+
+    public static MinecraftMap load(Path path, LoadOptions options)
+            throws IOException, NotImplementedException, MapFormatException {
+        MapFormat format;
+
+        format = detect(path);
+        if(format == null)
+            throw new MapFormatException("Unrecognized map format");
+        return format.load(path, options);
+    }
+
+    public static MinecraftMap load(InputStream in)
+            throws IOException, NotImplementedException, MapFormatException {
+        return load(in, new LoadOptions());
+    }
+
+    public static MinecraftMap load(InputStream in, LoadOptions options)
+            throws IOException, NotImplementedException, MapFormatException {
+        MapFormat format;
+
+        if(!in.markSupported())
+            in = new BufferedInputStream(in, Math.max(PROBE_SIZE, options.getBufferSize()));
+        format = detect(in);
+        if(format == null)
+            throw new MapFormatException("Unrecognized map format");
+        return format.load(in, options);
+    }
+
+    private static int inflateSignature(byte[] data, int length, byte[] signature) {
+        Inflater inflater;
+        int offset, flags;
+
+        if(length < GZIP_HEADER_SIZE || (data[2] & 0xFF) != GZIP_DEFLATE)
+            return -1;
+
+        flags = data[3] & 0xFF;
+        offset = GZIP_HEADER_SIZE;
+        if((flags & FLAG_EXTRA) != 0) {
+            if(offset + 2 > length)
+                return -1;
+            offset += 2 + ((data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8);
+        }
+        if((flags & FLAG_NAME) != 0)
+            offset = skipString(data, offset, length);
+        if((flags & FLAG_COMMENT) != 0)
+            offset = skipString(data, offset, length);
+        if(offset >= 0 && (flags & FLAG_HEADER_CRC) != 0)
+            offset += 2;
+        if(offset < 0 || offset >= length)
+            return -1;
+
+        inflater = new Inflater(true);
+        try {
+            inflater.setInput(data, offset, length - offset);
+            return inflater.inflate(signature, 0, signature.length);
+        } catch(DataFormatException e) {
+            return -1;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int skipString(byte[] data, int offset, int length) {
+        if(offset < 0)
+            return -1;
+        while(offset < length) {
+            if(data[offset++] == 0)
+                return offset;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,56 @@
+package mcmaplib;
+
+public class MapHeader {
+    private final int width, height, depth;
+    private final int spawnWidth, spawnHeight, spawnDepth;
+    private final short spawnRotation, spawnPitch;
+
+    protected MapHeader(int width, int height, int depth,
+                        int spawnWidth, int spawnHeight, int spawnDepth,
+                        int spawnRotation, int spawnPitch) {
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.spawnWidth = spawnWidth;
+        this.spawnHeight = spawnHeight;
+        this.spawnDepth = spawnDepth;
+        this.spawnRotation = (short)spawnRotation;
+        this.spawnPitch = (short)spawnPitch;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSpawnWidth() {
+        return spawnWidth;
+    }
+
+    public int getSpawnHeight() {
+        return spawnHeight;
+    }
+
+    public int getSpawnDepth() {
+        return spawnDepth;
+    }
+
+    public short getSpawnRotation() {
+        return spawnRotation;
+    }
+
+    public short getSpawnPitch() {
+        return spawnPitch;
+    }
+
+    public long getTotalBlocks() {
+        return (long)width * height * depth;
+    }
+}
@@ -0,0 +1,286 @@
+package mcmaplib;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MapIO {
+    public static final int DEFAULT_MAX_CONCURRENT_JOBS =
+        Runtime.getRuntime().availableProcessors();
+
+    private static volatile Executor defaultExecutor;
+
+    private final Executor executor;
+    private final LinkedList<Task<?>> queue;
+    private final int maxConcurrentJobs;
+    private int activeJobs;
+
+    public MapIO() {
+        this(getDefaultExecutor(), DEFAULT_MAX_CONCURRENT_JOBS);
+    }
+
+    public MapIO(Executor executor) {
+        this(executor, DEFAULT_MAX_CONCURRENT_JOBS);
+    }
+
+    public MapIO(Executor executor, int maxConcurrentJobs) {
+        if(executor == null)
+            throw new NullPointerException("Executor must not be null");
+        if(maxConcurrentJobs <= 0)
+            throw new IllegalArgumentException("Concurrent job limit must be positive");
+
+        this.executor = executor;
+        this.maxConcurrentJobs = maxConcurrentJobs;
+        this.queue = new LinkedList<Task<?>>();
+    }
+
+    public static Executor getDefaultExecutor() {
+        Executor executor;
+
+        executor = defaultExecutor;
+        if(executor == null) {
+            synchronized(MapIO.class) {
+                executor = defaultExecutor;
+                if(executor == null) {
+                    executor = createDefaultExecutor();
+                    defaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static Executor createDefaultExecutor() {
+        try {
+            Method factory;
+
+            factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor)factory.invoke(null);
+        } catch(NoSuchMethodException e) {
+        } catch(IllegalAccessException e) {
+        } catch(InvocationTargetException e) {
+        }
+
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger next = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread;
+
+                thread = new Thread(r, "mcmaplib-io-" + next.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public int getMaxConcurrentJobs() {
+        return maxConcurrentJobs;
+    }
+
+    public int getActiveJobs() {
+        synchronized(queue) {
+            return activeJobs;
+        }
+    }
+
+    public int getQueuedJobs() {
+        synchronized(queue) {
+            return queue.size();
+        }
+    }
+
+    public CompletableFuture<MinecraftMap> load(File file, MapFormat format) {
+        return load(file.toPath(), format, new LoadOptions());
+    }
+
+    public CompletableFuture<MinecraftMap> load(File file, MapFormat format,
+                                                LoadOptions options) {
+        return load(file.toPath(), format, options);
+    }
+
+    public CompletableFuture<MinecraftMap> load(Path path, MapFormat format) {
+        return load(path, format, new LoadOptions());
+    }
+
+    public CompletableFuture<MinecraftMap> load(final Path path, final MapFormat format,
+                                                final LoadOptions options) {
+        return submit(new Callable<MinecraftMap>() {
+            public MinecraftMap call() throws Exception {
+                return format.load(path, options);
+            }
+        });
+    }
+
+    public CompletableFuture<MapHeader> readHeader(File file, MapFormat format) {
+        return readHeader(file.toPath(), format);
+    }
+
+    public CompletableFuture<MapHeader> readHeader(final Path path, final MapFormat format) {
+        return submit(new Callable<MapHeader>() {
+            public MapHeader call() throws Exception {
+                return format.readHeader(path.toFile());
+            }
+        });
+    }
+
+    public CompletableFuture<Void> save(MinecraftMap map, File file) {
+        return save(map, file.toPath(), new SaveOptions());
+    }
+
+    public CompletableFuture<Void> save(MinecraftMap map, File file, SaveOptions options) {
+        return save(map, file.toPath(), options);
+    }
+
+    public CompletableFuture<Void> save(MinecraftMap map, Path path) {
+        return save(map, path, new SaveOptions());
+    }
+
+    public CompletableFuture<Void> save(final MinecraftMap map, final Path path,
+                                        final SaveOptions options) {
+        final MinecraftMap snapshot;
+
+        snapshot = map.clone();
+        return submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                snapshot.writeAtomic(path, options);
+                // The snapshot has no listeners; tell the ones on the map.
+                map.fireMapSaved(path);
+                return null;
+            }
+        });
+    }
+
+    public CompletableFuture<Void> convert(final Path source, final MapFormat sourceFormat,
+                                           final Path dest, final MapFormat destFormat) {
+        return submit(new Callable<Void>() {
+            public Void call() throws Exception {
+                MapConverter.convert(source, sourceFormat, dest, destFormat);
+                return null;
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> submit(Callable<T> job) {
+        Task<T> task;
+
+        task = new Task<T>(job);
+        synchronized(queue) {
+            queue.addLast(task);
+        }
+        dispatch();
+        return task;
+    }
+
+    private void dispatch() {
+        while(true) {
+            Task<?> task;
+
+            synchronized(queue) {
+                if(activeJobs >= maxConcurrentJobs)
+                    return;
+                task = nextTask();
+                if(task == null)
+                    return;
+                activeJobs++;
+            }
+
+            try {
+                executor.execute(new Worker(task));
+            } catch(RejectedExecutionException e) {
+                synchronized(queue) {
+                    activeJobs--;
+                }
+                task.completeExceptionally(e);
+            }
+        }
+    }
+
+    private Task<?> nextTask() {
+        while(!queue.isEmpty()) {
+            Task<?> task;
+
+            task = queue.removeFirst();
+            if(!task.isDone())
+                return task;
+        }
+        return null;
+    }
+
+    private final class Worker implements Runnable {
+        private Task<?> task;
+
+        Worker(Task<?> task) {
+            this.task = task;
+        }
+
+        public void run() {
+            while(task != null) {
+                try {
+                    task.run();
+                } finally {
+                    synchronized(queue) {
+                        task = nextTask();
+                        if(task == null)
+                            activeJobs--;
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Task<T> extends CompletableFuture<T> implements Runnable {
+        private final Callable<T> job;
+        private Thread runner;
+
+        Task(Callable<T> job) {
+            this.job = job;
+        }
+
+        public void run() {
+            synchronized(this) {
+                if(isDone())
+                    return;
+                runner = Thread.currentThread();
+            }
+
+            try {
+                complete(job.call());
+            } catch(Throwable t) {
+                completeExceptionally(t);
+            } finally {
+                synchronized(this) {
+                    runner = null;
+                }
+                Thread.interrupted();
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled;
+
+            cancelled = super.cancel(mayInterruptIfRunning);
+            if(cancelled && mayInterruptIfRunning) {
+                synchronized(this) {
+                    if(runner != null)
+                        runner.interrupt();
+                }
+            }
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package mcmaplib;
+
+public interface MapIOListener {
+    void operationStarted(IOStatistics.Operation operation, String format);
+
+    void operationCompleted(IOStatistics statistics);
+}
@@ -0,0 +1,206 @@
+package mcmaplib;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class MapIOStats implements MapIOStatsMBean, MapIOListener {
+    private final LongAdder loads, loadFailures, saves, saveFailures;
+    private final LongAdder bytesRead, bytesInflated, bytesWritten, bytesDeflated;
+    private final LongAdder bytesAllocated, blocksDecoded, blocksEncoded;
+    private final LongAdder loadNanos, saveNanos;
+    private final AtomicLong maxLoadNanos, maxSaveNanos;
+    private final LongAdder[] phaseNanos;
+
+    public MapIOStats() {
+        loads = new LongAdder();
+        loadFailures = new LongAdder();
+        saves = new LongAdder();
+        saveFailures = new LongAdder();
+        bytesRead = new LongAdder();
+        bytesInflated = new LongAdder();
+        bytesWritten = new LongAdder();
+        bytesDeflated = new LongAdder();
+        bytesAllocated = new LongAdder();
+        blocksDecoded = new LongAdder();
+        blocksEncoded = new LongAdder();
+        loadNanos = new LongAdder();
+        saveNanos = new LongAdder();
+        maxLoadNanos = new AtomicLong();
+        maxSaveNanos = new AtomicLong();
+        phaseNanos = new LongAdder[IOStatistics.Phase.values().length];
+        for(int i = 0;i < phaseNanos.length;i++)
+            phaseNanos[i] = new LongAdder();
+    }
+
+    public void operationStarted(IOStatistics.Operation operation, String format) {
+    }
+
+    public void operationCompleted(IOStatistics statistics) {
+        IOStatistics.Phase[] phases;
+
+        if(statistics.getOperation() == IOStatistics.Operation.LOAD) {
+            loads.increment();
+            if(!statistics.isSuccess())
+                loadFailures.increment();
+            loadNanos.add(statistics.getTotalNanos());
+            updateMax(maxLoadNanos, statistics.getTotalNanos());
+            blocksDecoded.add(statistics.getBlocks());
+        } else {
+            saves.increment();
+            if(!statistics.isSuccess())
+                saveFailures.increment();
+            saveNanos.add(statistics.getTotalNanos());
+            updateMax(maxSaveNanos, statistics.getTotalNanos());
+            blocksEncoded.add(statistics.getBlocks());
+        }
+
+        bytesRead.add(statistics.getBytesRead());
+        bytesInflated.add(statistics.getBytesInflated());
+        bytesWritten.add(statistics.getBytesWritten());
+        bytesDeflated.add(statistics.getBytesDeflated());
+        if(statistics.getBytesAllocated() > 0)
+            bytesAllocated.add(statistics.getBytesAllocated());
+
+        phases = IOStatistics.Phase.values();
+        for(int i = 0;i < phases.length;i++)
+            phaseNanos[i].add(statistics.getPhaseNanos(phases[i]));
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+
+        current = max.get();
+        while(value > current && !max.compareAndSet(current, value))
+            current = max.get();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    public long getSaveCount() {
+        return saves.sum();
+    }
+
+    public long getSaveFailureCount() {
+        return saveFailures.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getBytesInflated() {
+        return bytesInflated.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long getBytesDeflated() {
+        return bytesDeflated.sum();
+    }
+
+    public long getBytesAllocated() {
+        return bytesAllocated.sum();
+    }
+
+    public long getBlocksDecoded() {
+        return blocksDecoded.sum();
+    }
+
+    public long getBlocksEncoded() {
+        return blocksEncoded.sum();
+    }
+
+    public double getLoadTimeMillis() {
+        return millis(loadNanos.sum());
+    }
+
+    public double getSaveTimeMillis() {
+        return millis(saveNanos.sum());
+    }
+
+    public double getAverageLoadMillis() {
+        long count;
+
+        count = loads.sum();
+        return count == 0 ? 0 : millis(loadNanos.sum()) / count;
+    }
+
+    public double getAverageSaveMillis() {
+        long count;
+
+        count = saves.sum();
+        return count == 0 ? 0 : millis(saveNanos.sum()) / count;
+    }
+
+    public double getMaxLoadMillis() {
+        return millis(maxLoadNanos.get());
+    }
+
+    public double getMaxSaveMillis() {
+        return millis(maxSaveNanos.get());
+    }
+
+    public double getPhaseMillis(IOStatistics.Phase phase) {
+        return millis(phaseNanos[phase.ordinal()].sum());
+    }
+
+    public double getReadMillis() {
+        return getPhaseMillis(IOStatistics.Phase.READ);
+    }
+
+    public double getHeaderMillis() {
+        return getPhaseMillis(IOStatistics.Phase.HEADER);
+    }
+
+    public double getAllocationMillis() {
+        return getPhaseMillis(IOStatistics.Phase.ALLOCATION);
+    }
+
+    public double getDecompressionMillis() {
+        return getPhaseMillis(IOStatistics.Phase.DECOMPRESSION);
+    }
+
+    public double getValidationMillis() {
+        return getPhaseMillis(IOStatistics.Phase.VALIDATION);
+    }
+
+    public double getCompressionMillis() {
+        return getPhaseMillis(IOStatistics.Phase.COMPRESSION);
+    }
+
+    public double getWriteMillis() {
+        return getPhaseMillis(IOStatistics.Phase.WRITE);
+    }
+
+    public void reset() {
+        loads.reset();
+        loadFailures.reset();
+        saves.reset();
+        saveFailures.reset();
+        bytesRead.reset();
+        bytesInflated.reset();
+        bytesWritten.reset();
+        bytesDeflated.reset();
+        bytesAllocated.reset();
+        blocksDecoded.reset();
+        blocksEncoded.reset();
+        loadNanos.reset();
+        saveNanos.reset();
+        maxLoadNanos.set(0);
+        maxSaveNanos.set(0);
+        for(int i = 0;i < phaseNanos.length;i++)
+            phaseNanos[i].reset();
+    }
+}
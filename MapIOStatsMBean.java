@@ -0,0 +1,53 @@
+package mcmaplib;
+
+public interface MapIOStatsMBean {
+    long getLoadCount();
+
+    long getLoadFailureCount();
+
+    long getSaveCount();
+
+    long getSaveFailureCount();
+
+    long getBytesRead();
+
+    long getBytesInflated();
+
+    long getBytesWritten();
+
+    long getBytesDeflated();
+
+    long getBytesAllocated();
+
+    long getBlocksDecoded();
+
+    long getBlocksEncoded();
+
+    double getLoadTimeMillis();
+
+    double getSaveTimeMillis();
+
+    double getAverageLoadMillis();
+
+    double getAverageSaveMillis();
+
+    double getMaxLoadMillis();
+
+    double getMaxSaveMillis();
+
+    double getReadMillis();
+
+    double getHeaderMillis();
+
+    double getAllocationMillis();
+
+    double getDecompressionMillis();
+
+    double getValidationMillis();
+
+    double getCompressionMillis();
+
+    double getWriteMillis();
+
+    void reset();
+}
@@ -0,0 +1,105 @@
+package mcmaplib;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public final class MapInstrumentation {
+    public static final String MBEAN_NAME = "mcmaplib:type=MapIO";
+
+    private static final String FLIGHT_RECORDER_LISTENER =
+        "mcmaplib.jfr.FlightRecorderListener";
+
+    private static final CopyOnWriteArrayList<MapIOListener> listeners =
+        new CopyOnWriteArrayList<MapIOListener>();
+
+    private static MapIOStats mbean;
+    private static ObjectName mbeanName;
+    private static MapIOListener flightRecorder;
+
+    private MapInstrumentation() {
+    }
+
+    public static void addListener(MapIOListener listener) {
+        if(listener == null)
+            throw new NullPointerException("Listener must not be null");
+        listeners.addIfAbsent(listener);
+    }
+
+    public static boolean removeListener(MapIOListener listener) {
+        return listeners.remove(listener);
+    }
+
+    static List<MapIOListener> getListeners() {
+        return listeners;
+    }
+
+    public static synchronized MapIOStats registerMBean() throws JMException {
+        MBeanServer server;
+        ObjectName name;
+        MapIOStats stats;
+
+        if(mbean != null)
+            return mbean;
+
+        server = ManagementFactory.getPlatformMBeanServer();
+        name = new ObjectName(MBEAN_NAME);
+        stats = new MapIOStats();
+        server.registerMBean(stats, name);
+        addListener(stats);
+        mbean = stats;
+        mbeanName = name;
+        return stats;
+    }
+
+    public static synchronized void unregisterMBean() throws JMException {
+        if(mbean == null)
+            return;
+
+        removeListener(mbean);
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+        } finally {
+            mbean = null;
+            mbeanName = null;
+        }
+    }
+
+    public static synchronized MapIOStats getMBean() {
+        return mbean;
+    }
+
+    public static synchronized boolean enableFlightRecorder() {
+        MapIOListener listener;
+
+        if(flightRecorder != null)
+            return true;
+
+        try {
+            listener = (MapIOListener)Class.forName(FLIGHT_RECORDER_LISTENER)
+                .getConstructor()
+                .newInstance();
+        } catch(ReflectiveOperationException e) {
+            return false;
+        } catch(LinkageError e) {
+            return false;
+        }
+        addListener(listener);
+        flightRecorder = listener;
+        return true;
+    }
+
+    public static synchronized void disableFlightRecorder() {
+        if(flightRecorder == null)
+            return;
+        removeListener(flightRecorder);
+        flightRecorder = null;
+    }
+
+    public static synchronized boolean isFlightRecorderEnabled() {
+        return flightRecorder != null;
+    }
+}
@@ -0,0 +1,86 @@
+package mcmaplib;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public abstract class MapStreamWriter implements BlockVisitor {
+    protected final OutputStream out;
+    private MapHeader header;
+    private long blocksWritten;
+    private boolean finished;
+
+    protected MapStreamWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public MapHeader getHeader() {
+        return header;
+    }
+
+    public long getBlocksWritten() {
+        return blocksWritten;
+    }
+
+    public final void visitHeader(MapHeader header) throws IOException {
+        if(this.header != null)
+            throw new IllegalStateException("Header already written");
+
+        try {
+            MinecraftMap.checkDimensions(
+                header.getWidth(),
+                header.getHeight(),
+                header.getDepth(),
+                header.getSpawnWidth(),
+                header.getSpawnHeight(),
+                header.getSpawnDepth(),
+                header.getSpawnRotation(),
+                header.getSpawnPitch()
+            );
+        } catch(InvalidMapException e) {
+            throw new MapFormatException("Invalid map header: " + e.getMessage(), e);
+        }
+
+        this.header = header;
+        writeHeader(header);
+    }
+
+    public final void visitBlocks(long offset,
+                                  int width, int height, int depth,
+                                  byte[] blocks, byte[][] extendedBlocks,
+                                  int count) throws IOException {
+        if(header == null)
+            throw new IllegalStateException("Header not written");
+        if(offset != blocksWritten || count > header.getTotalBlocks() - blocksWritten)
+            throw new MapFormatException("Blocks out of sequence");
+
+        writeBlocks(blocks, extendedBlocks, count);
+        blocksWritten += count;
+    }
+
+    public void finish() throws IOException {
+        if(finished)
+            return;
+        if(header == null)
+            throw new IllegalStateException("Header not written");
+        if(blocksWritten != header.getTotalBlocks())
+            throw new MapFormatException("Block data incomplete");
+
+        try {
+            finishBlocks();
+            out.flush();
+            finished = true;
+        } finally {
+            release();
+        }
+    }
+
+    public void release() {
+    }
+
+    protected abstract void writeHeader(MapHeader header) throws IOException;
+
+    protected abstract void writeBlocks(byte[] blocks, byte[][] extendedBlocks, int count)
+            throws IOException;
+
+    protected abstract void finishBlocks() throws IOException;
+}
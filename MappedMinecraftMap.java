@@ -0,0 +1,909 @@
+package mcmaplib;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.OutputStream;
+import java.io.ObjectStreamException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import mcmaplib.util.ChannelInputStream;
+import mcmaplib.util.CodecInputStream;
+
+public class MappedMinecraftMap extends MinecraftMap implements Closeable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int MAGIC = 0x4D434D4D,
+                             VERSION_1 = 1,
+                             HEADER_SIZE = 64;
+    private static final int PAGE_SHIFT = 16,
+                             PAGE_SIZE = 1 << PAGE_SHIFT,
+                             PAGE_MASK = PAGE_SIZE - 1;
+
+    private final static Set<String> EXTENSIONS;
+    private final static String NAME = "Mapped",
+                                DESCRIPTION = "Uncompressed memory-mapped map format";
+
+    static {
+        Set<String> extensions = new HashSet<String>();
+        extensions.add("mcm");
+        EXTENSIONS = Collections.unmodifiableSet(extensions);
+    }
+
+    public static MapFormat FORMAT = new MapFormat() {
+        public String getName() {
+            return NAME;
+        }
+
+        public String getDescription() {
+            return DESCRIPTION;
+        }
+
+        public Set<String> getExtensions() {
+            return EXTENSIONS;
+        }
+
+        public MappedMinecraftMap load(File file)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException,
+                       FileNotFoundException {
+            return MappedMinecraftMap.load(file);
+        }
+
+        @Override
+        public MappedMinecraftMap load(InputStream in, LoadOptions options)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException {
+            return MappedMinecraftMap.load(in);
+        }
+
+        @Override
+        public MapHeader readHeader(File file)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException,
+                       FileNotFoundException {
+            return MappedMinecraftMap.readHeader(file);
+        }
+
+        @Override
+        public void visit(InputStream in, BlockVisitor visitor, int chunkSize)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException {
+            MappedMinecraftMap.visit(in, visitor, chunkSize);
+        }
+
+        @Override
+        public boolean matchesSignature(byte[] data, int length, boolean compressed) {
+            return !compressed && length >= 4 && ByteBuffer.wrap(data).getInt(0) == MAGIC;
+        }
+
+        public MappedMinecraftMap convert(MinecraftMap map)
+                throws InvalidMapException {
+            return new MappedMinecraftMap(map);
+        }
+    };
+
+    private final int width, height, depth;
+    private volatile int spawnWidth, spawnHeight, spawnDepth;
+    private volatile short spawnRotation, spawnPitch;
+    private final transient File file;
+    private final transient ByteBuffer header;
+    private final transient ByteBuffer blocks;
+    // Set for maps loaded with load(): blocks is then a READ_ONLY mapping,
+    // and a page is copied here the first time it is written.
+    private final transient AtomicReferenceArray<byte[]> pages;
+    private volatile boolean closed;
+
+    private MappedMinecraftMap(File file, ByteBuffer header, ByteBuffer blocks, boolean copyOnWrite,
+                               int width, int height, int depth,
+                               int spawnWidth, int spawnHeight, int spawnDepth,
+                               int spawnRotation, int spawnPitch)
+                                   throws InvalidMapException {
+        checkDimensions(
+            width, height, depth,
+            spawnWidth, spawnHeight, spawnDepth,
+            spawnRotation, spawnPitch
+        );
+
+        if((long)width * height * depth != blocks.capacity())
+            throw new InvalidMapException("Block buffer size does not match dimensions");
+
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.spawnWidth = spawnWidth;
+        this.spawnHeight = spawnHeight;
+        this.spawnDepth = spawnDepth;
+        this.spawnRotation = (short)spawnRotation;
+        this.spawnPitch = (short)spawnPitch;
+        this.file = file;
+        this.header = header;
+        this.blocks = blocks;
+        if(copyOnWrite)
+            this.pages = new AtomicReferenceArray<byte[]>((blocks.capacity() + PAGE_MASK) >>> PAGE_SHIFT);
+        else
+            this.pages = null;
+
+        if(isPlayerOutOfBounds(spawnWidth, spawnHeight, spawnDepth))
+            throw new InvalidMapException("Spawn out of bounds");
+    }
+
+    public MappedMinecraftMap(int width, int height, int depth,
+                              int spawnWidth, int spawnHeight, int spawnDepth,
+                              int spawnRotation, int spawnPitch)
+                                  throws InvalidMapException {
+        this(
+            null,
+            null,
+            allocateBlocks(width, height, depth),
+            false,
+            width, height, depth,
+            spawnWidth, spawnHeight, spawnDepth,
+            spawnRotation, spawnPitch
+        );
+    }
+
+    public MappedMinecraftMap(MinecraftMap map) throws InvalidMapException {
+        this(
+            map.getWidth(),
+            map.getHeight(),
+            map.getDepth(),
+            map.getSpawnWidth(),
+            map.getSpawnHeight(),
+            map.getSpawnDepth(),
+            map.getSpawnRotation(),
+            map.getSpawnPitch()
+        );
+        copyBlocksFrom(map);
+    }
+
+    private static ByteBuffer allocateBlocks(int width, int height, int depth)
+            throws InvalidMapException {
+        return ByteBuffer.allocateDirect(getTotalBlocks(width, height, depth));
+    }
+
+    private static int getTotalBlocks(int width, int height, int depth)
+            throws InvalidMapException {
+        long totalBlocks;
+
+        totalBlocks = (long)width * height * depth;
+        if(totalBlocks > MAX_BLOCK_DATA_SIZE || totalBlocks < MIN_BLOCK_DATA_SIZE)
+            throw new InvalidMapException("Invalid block array size");
+        return (int)totalBlocks;
+    }
+
+    public static MappedMinecraftMap create(File file,
+                                            int width, int height, int depth,
+                                            int spawnWidth, int spawnHeight, int spawnDepth,
+                                            int spawnRotation, int spawnPitch)
+                                                throws IOException, InvalidMapException {
+        RandomAccessFile raf;
+        MappedMinecraftMap map;
+
+        checkDimensions(
+            width, height, depth,
+            spawnWidth, spawnHeight, spawnDepth,
+            spawnRotation, spawnPitch
+        );
+
+        raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel;
+            MappedByteBuffer header, blocks;
+            int totalBlocks;
+
+            totalBlocks = getTotalBlocks(width, height, depth);
+            raf.setLength(0);
+            raf.setLength(HEADER_SIZE + (long)totalBlocks);
+            channel = raf.getChannel();
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            blocks = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE, totalBlocks);
+
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION_1);
+            header.putInt(8, width);
+            header.putInt(12, height);
+            header.putInt(16, depth);
+
+            map = new MappedMinecraftMap(
+                file, header, blocks, false,
+                width, height, depth,
+                spawnWidth, spawnHeight, spawnDepth,
+                spawnRotation, spawnPitch
+            );
+            map.writeSpawn();
+        } finally {
+            raf.close();
+        }
+        return map;
+    }
+
+    public static MappedMinecraftMap create(File file, MinecraftMap map)
+            throws IOException, InvalidMapException {
+        MappedMinecraftMap mappedMap;
+
+        // Truncating the file would zero every page the map still reads
+        // from it.
+        if(map instanceof MappedMinecraftMap && ((MappedMinecraftMap)map).isBackedBy(file.toPath()))
+            throw new IllegalArgumentException("Map is backed by the file being created");
+
+        mappedMap = create(
+            file,
+            map.getWidth(),
+            map.getHeight(),
+            map.getDepth(),
+            map.getSpawnWidth(),
+            map.getSpawnHeight(),
+            map.getSpawnDepth(),
+            map.getSpawnRotation(),
+            map.getSpawnPitch()
+        );
+        mappedMap.copyBlocksFrom(map);
+        return mappedMap;
+    }
+
+    public static MappedMinecraftMap open(File file)
+            throws IOException, MapFormatException {
+        return open(file, true);
+    }
+
+    public static MappedMinecraftMap load(File file)
+            throws IOException, MapFormatException {
+        return open(file, false);
+    }
+
+    private static MappedMinecraftMap open(File file, boolean writeThrough)
+            throws IOException, MapFormatException {
+        RandomAccessFile raf;
+        MappedMinecraftMap map;
+
+        raf = new RandomAccessFile(file, writeThrough ? "rw" : "r");
+        try {
+            FileChannel channel;
+            MappedByteBuffer header, blocks;
+            int width, height, depth;
+            long totalBlocks;
+
+            if(raf.length() < HEADER_SIZE)
+                throw new MapFormatException("Map file incomplete");
+
+            channel = raf.getChannel();
+            header = channel.map(
+                writeThrough ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                0, HEADER_SIZE
+            );
+            if(header.getInt(0) != MAGIC)
+                throw new MapFormatException("Wrong magic constant");
+
+            if(header.getInt(4) != VERSION_1)
+                throw new NotImplementedException("Unsupported version");
+
+            width = header.getInt(8);
+            height = header.getInt(12);
+            depth = header.getInt(16);
+
+            totalBlocks = (long)width * height * depth;
+            if(totalBlocks > MAX_BLOCK_DATA_SIZE || totalBlocks < 0)
+                throw new MapFormatException("Width, height, and depth are too large");
+
+            if(raf.length() != HEADER_SIZE + totalBlocks)
+                throw new MapFormatException("Block data has incorrect size");
+
+            blocks = channel.map(
+                writeThrough ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+                HEADER_SIZE, totalBlocks
+            );
+            try {
+                map = new MappedMinecraftMap(
+                    file, writeThrough ? header : null, blocks, !writeThrough,
+                    width, height, depth,
+                    header.getInt(20),
+                    header.getInt(24),
+                    header.getInt(28),
+                    header.getInt(32),
+                    header.getInt(36)
+                );
+            } catch(InvalidMapException e) {
+                throw new MapFormatException(e);
+            }
+        } finally {
+            raf.close();
+        }
+        return map;
+    }
+
+    private static MapHeader readHeader(CodecInputStream in)
+            throws IOException, MapFormatException {
+        int width, height, depth;
+        MapHeader header;
+
+        if(in.readInt() != MAGIC)
+            throw new MapFormatException("Wrong magic constant");
+        if(in.readInt() != VERSION_1)
+            throw new NotImplementedException("Unsupported version");
+
+        width = in.readInt();
+        height = in.readInt();
+        depth = in.readInt();
+        header = new MapHeader(
+            width, height, depth,
+            in.readInt(), in.readInt(), in.readInt(),
+            in.readInt(), in.readInt()
+        );
+        if(width < 0 || height < 0 || depth < 0
+                || header.getTotalBlocks() > MAX_BLOCK_DATA_SIZE)
+            throw new MapFormatException("Width, height, and depth are too large");
+        in.skipBytes(HEADER_SIZE - 40);
+        return header;
+    }
+
+    public static MapHeader readHeader(InputStream in)
+            throws IOException, MapFormatException {
+        return readHeader(new CodecInputStream(in, 64));
+    }
+
+    public static MapHeader readHeader(File file)
+            throws IOException, MapFormatException {
+        InputStream in;
+        MapHeader header;
+
+        in = new ChannelInputStream(file.toPath(), HEADER_SIZE);
+        try {
+            header = readHeader(in);
+        } catch(EOFException e) {
+            throw new MapFormatException("Map header incomplete", e);
+        } finally {
+            in.close();
+        }
+        return header;
+    }
+
+    public static MappedMinecraftMap load(InputStream in)
+            throws IOException, MapFormatException {
+        final MappedMinecraftMap map;
+        CodecInputStream dis;
+        MapHeader header;
+
+        dis = new CodecInputStream(in);
+        try {
+            header = readHeader(dis);
+            // There is no file to map, so the blocks go on the heap rather
+            // than taking the whole map out of the direct memory limit.
+            try {
+                ByteBuffer blocks;
+
+                blocks = ByteBuffer.allocate(
+                    getTotalBlocks(header.getWidth(), header.getHeight(), header.getDepth())
+                );
+                map = new MappedMinecraftMap(
+                    null, null, blocks, false,
+                    header.getWidth(), header.getHeight(), header.getDepth(),
+                    header.getSpawnWidth(), header.getSpawnHeight(), header.getSpawnDepth(),
+                    header.getSpawnRotation(), header.getSpawnPitch()
+                );
+            } catch(InvalidMapException e) {
+                throw new MapFormatException(e);
+            }
+            BlockStreams.visit(dis, header, null, new BlockVisitor() {
+                public void visitHeader(MapHeader header) {
+                }
+
+                public void visitBlocks(long offset,
+                                        int width, int height, int depth,
+                                        byte[] blocks, byte[][] extendedBlocks,
+                                        int count) {
+                    ByteBuffer buffer;
+
+                    buffer = map.blocks.duplicate();
+                    buffer.position((int)offset);
+                    buffer.put(blocks, 0, count);
+                }
+            }, BlockVisitor.DEFAULT_CHUNK_SIZE);
+        } catch(EOFException e) {
+            throw new MapFormatException("Map file incomplete", e);
+        }
+        return map;
+    }
+
+    public static void visit(InputStream in, BlockVisitor visitor, int chunkSize)
+            throws IOException, MapFormatException {
+        CodecInputStream dis;
+        MapHeader header;
+
+        dis = new CodecInputStream(in);
+        try {
+            header = readHeader(dis);
+            visitor.visitHeader(header);
+            BlockStreams.visit(dis, header, null, visitor, chunkSize);
+        } catch(EOFException e) {
+            throw new MapFormatException("Map file incomplete", e);
+        }
+    }
+
+    private void copyBlocksFrom(MinecraftMap map) {
+        ByteBuffer buffer;
+
+        buffer = blocks.duplicate();
+        buffer.clear();
+        map.copyBlocksTo(buffer);
+    }
+
+    private void writeSpawn() {
+        if(header == null || closed)
+            return;
+
+        header.putInt(20, spawnWidth);
+        header.putInt(24, spawnHeight);
+        header.putInt(28, spawnDepth);
+        header.putInt(32, spawnRotation);
+        header.putInt(36, spawnPitch);
+    }
+
+    public boolean isFileBacked() {
+        return header != null;
+    }
+
+    public boolean isCopyOnWrite() {
+        return pages != null;
+    }
+
+    public int getCopiedPageCount() {
+        int count = 0;
+
+        if(pages == null)
+            return 0;
+        for(int i = 0;i < pages.length();i++) {
+            if(pages.get(i) != null)
+                count++;
+        }
+        return count;
+    }
+
+    public void flush() {
+        if(header == null || closed)
+            return;
+
+        ((MappedByteBuffer)header).force();
+        ((MappedByteBuffer)blocks).force();
+    }
+
+    private boolean isBackedBy(Path path) {
+        if(file == null)
+            return false;
+        try {
+            return Files.isSameFile(file.toPath(), path);
+        } catch(IOException e) {
+            return false;
+        }
+    }
+
+    // A write-through map already is its file. A copy-on-write map still
+    // reads untouched pages from it, so it is replaced rather than
+    // rewritten in place.
+    @Override
+    public void save(Path path) throws IOException {
+        save(path, new SaveOptions());
+    }
+
+    @Override
+    public void save(Path path, SaveOptions options) throws IOException {
+        if(!isBackedBy(path)) {
+            super.save(path, options);
+        } else if(pages == null) {
+            checkOpen();
+            flush();
+            fireMapSaved(path);
+        } else {
+            saveAtomic(path, options);
+        }
+    }
+
+    @Override
+    public void save(OutputStream out) throws IOException {
+        ByteBuffer buffer;
+        byte[] page;
+
+        buffer = ByteBuffer.allocate(HEADER_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION_1);
+        buffer.putInt(width);
+        buffer.putInt(height);
+        buffer.putInt(depth);
+        synchronized(this) {
+            buffer.putInt(spawnWidth);
+            buffer.putInt(spawnHeight);
+            buffer.putInt(spawnDepth);
+            buffer.putInt(spawnRotation);
+            buffer.putInt(spawnPitch);
+        }
+        out.write(buffer.array());
+
+        page = new byte[PAGE_SIZE];
+        for(int offset = 0;offset < blocks.capacity();offset += PAGE_SIZE) {
+            int length;
+
+            length = Math.min(PAGE_SIZE, blocks.capacity() - offset);
+            copyRange(offset, page, 0, length);
+            out.write(page, 0, length);
+        }
+    }
+
+    // Unmapping is immediate, so the map, its block views and any buffer
+    // returned by asReadOnlyBuffer must not be used by another thread
+    // while the map is closing.
+    public void close() {
+        synchronized(this) {
+            if(closed)
+                return;
+            flush();
+            closed = true;
+        }
+        if(pages != null) {
+            for(int i = 0;i < pages.length();i++)
+                pages.set(i, null);
+        }
+        unmap(header);
+        unmap(blocks);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void checkOpen() {
+        if(closed)
+            throw new IllegalStateException("Map closed");
+    }
+
+    // There is no public unmap before Java 19, so the buffer's cleaner is
+    // reached through reflection: Unsafe.invokeCleaner on Java 9 and up,
+    // DirectBuffer.cleaner() on Java 8. If neither is accessible the
+    // mapping is left for the garbage collector.
+    private static void unmap(ByteBuffer buffer) {
+        if(buffer == null || !buffer.isDirect())
+            return;
+
+        try {
+            Class<?> type;
+            Field field;
+
+            type = Class.forName("sun.misc.Unsafe");
+            field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            type.getMethod("invokeCleaner", ByteBuffer.class).invoke(field.get(null), buffer);
+            return;
+        } catch(Exception e) {
+        } catch(LinkageError e) {
+        }
+
+        try {
+            Method cleaner;
+            Object instance;
+
+            cleaner = buffer.getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            instance = cleaner.invoke(buffer);
+            if(instance != null)
+                instance.getClass().getMethod("clean").invoke(instance);
+        } catch(Exception e) {
+        } catch(LinkageError e) {
+        }
+    }
+
+    protected int getBlockOffset(int width, int height, int depth) {
+        return ((height * this.depth + depth) * this.width + width);
+    }
+
+    public boolean isOutOfBounds(int width, int height, int depth) {
+        if(width < 0 || height < 0 || depth < 0
+                || width >= this.width || height >= this.height || depth >= this.depth)
+            return true;
+        else
+            return false;
+    }
+
+    public boolean isPlayerOutOfBounds(int width, int height, int depth) {
+        return isOutOfBounds(width / 32, height / 32, depth / 32);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSpawnWidth() {
+        return spawnWidth;
+    }
+
+    public int getSpawnHeight() {
+        return spawnHeight;
+    }
+
+    public int getSpawnDepth() {
+        return spawnDepth;
+    }
+
+    public short getSpawnRotation() {
+        return spawnRotation;
+    }
+
+    public short getSpawnPitch() {
+        return spawnPitch;
+    }
+
+    private byte get(int offset) {
+        byte[] page;
+
+        checkOpen();
+        if(pages != null) {
+            page = pages.get(offset >>> PAGE_SHIFT);
+            if(page != null)
+                return page[offset & PAGE_MASK];
+        }
+        return blocks.get(offset);
+    }
+
+    private void put(int offset, byte value) {
+        checkOpen();
+        if(pages != null)
+            getWritablePage(offset >>> PAGE_SHIFT)[offset & PAGE_MASK] = value;
+        else
+            blocks.put(offset, value);
+    }
+
+    private byte[] getWritablePage(int index) {
+        byte[] page;
+
+        page = pages.get(index);
+        if(page == null)
+            page = copyPage(index);
+        return page;
+    }
+
+    private synchronized byte[] copyPage(int index) {
+        ByteBuffer buffer;
+        byte[] page;
+        int start;
+
+        page = pages.get(index);
+        if(page != null)
+            return page;
+
+        start = index << PAGE_SHIFT;
+        page = new byte[Math.min(PAGE_SIZE, blocks.capacity() - start)];
+        buffer = blocks.duplicate();
+        buffer.position(start);
+        buffer.get(page);
+        pages.set(index, page);
+        return page;
+    }
+
+    private void copyRange(int offset, byte[] dest, int destOffset, int length) {
+        ByteBuffer buffer;
+
+        checkOpen();
+        buffer = blocks.duplicate();
+        if(pages == null) {
+            buffer.limit(offset + length).position(offset);
+            buffer.get(dest, destOffset, length);
+            return;
+        }
+
+        while(length > 0) {
+            byte[] page;
+            int n;
+
+            n = Math.min(length, PAGE_SIZE - (offset & PAGE_MASK));
+            page = pages.get(offset >>> PAGE_SHIFT);
+            if(page != null) {
+                System.arraycopy(page, offset & PAGE_MASK, dest, destOffset, n);
+            } else {
+                buffer.limit(offset + n).position(offset);
+                buffer.get(dest, destOffset, n);
+            }
+            offset += n;
+            destOffset += n;
+            length -= n;
+        }
+    }
+
+    private void copyRange(int offset, ByteBuffer dest, int length) {
+        ByteBuffer buffer;
+
+        checkOpen();
+        buffer = blocks.duplicate();
+        if(pages == null) {
+            buffer.limit(offset + length).position(offset);
+            dest.put(buffer);
+            return;
+        }
+
+        while(length > 0) {
+            byte[] page;
+            int n;
+
+            n = Math.min(length, PAGE_SIZE - (offset & PAGE_MASK));
+            page = pages.get(offset >>> PAGE_SHIFT);
+            if(page != null) {
+                dest.put(page, offset & PAGE_MASK, n);
+            } else {
+                buffer.limit(offset + n).position(offset);
+                dest.put(buffer);
+            }
+            offset += n;
+            length -= n;
+        }
+    }
+
+    public byte getBlock(int width, int height, int depth) {
+        if(isOutOfBounds(width, height, depth))
+            throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
+
+        return get(getBlockOffset(width, height, depth));
+    }
+
+    public void setBlock(int width, int height, int depth, byte value) {
+        if(isOutOfBounds(width, height, depth))
+            throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
+
+        if(hasChangeListeners()) {
+            int offset;
+            byte oldValue;
+
+            offset = getBlockOffset(width, height, depth);
+            oldValue = get(offset);
+            put(offset, value);
+            fireBlockChanged(width, height, depth, oldValue, value, (byte)0);
+        } else {
+            put(getBlockOffset(width, height, depth), value);
+        }
+    }
+
+    // Copy-on-write maps keep written pages on the heap, so once any page
+    // has been copied the buffer is assembled into a new direct buffer.
+    public ByteBuffer asReadOnlyBuffer() {
+        ByteBuffer buffer;
+
+        checkOpen();
+        if(getCopiedPageCount() > 0) {
+            buffer = ByteBuffer.allocateDirect(blocks.capacity());
+            copyRange(0, buffer, blocks.capacity());
+            buffer.clear();
+            return buffer.asReadOnlyBuffer();
+        }
+
+        buffer = blocks.asReadOnlyBuffer();
+        buffer.clear();
+        return buffer;
+    }
+
+    @Override
+    public BlockView getBlockView() {
+        return new BufferBlockView();
+    }
+
+    @Override
+    public void copyBlocksTo(byte[] dest, int offset) {
+        copyRange(0, dest, offset, blocks.capacity());
+    }
+
+    @Override
+    public void copyBlocksTo(ByteBuffer dest) {
+        copyRange(0, dest, blocks.capacity());
+    }
+
+    public byte[] getBlocks() {
+        byte[] newBlocks;
+
+        newBlocks = new byte[blocks.capacity()];
+        copyBlocksTo(newBlocks, 0);
+        return newBlocks;
+    }
+
+    public void setSpawn(int spawnWidth, int spawnHeight, int spawnDepth,
+                         int spawnRotation, int spawnPitch) {
+        if(isPlayerOutOfBounds(spawnWidth, spawnHeight, spawnDepth))
+            throw new IndexOutOfBoundsException("Attempting to set spawn outside map boundries");
+
+        if(spawnRotation > MAX_SPAWN_ROTATION || spawnRotation < MIN_SPAWN_ROTATION)
+            throw new RuntimeException("Attempting to set invalid spawn rotation");
+
+        if(spawnPitch > MAX_SPAWN_PITCH || spawnPitch < MIN_SPAWN_PITCH)
+            throw new RuntimeException("Attempting to set invalid spawn pitch");
+
+        synchronized(this) {
+            this.spawnWidth = spawnWidth;
+            this.spawnHeight = spawnHeight;
+            this.spawnDepth = spawnDepth;
+            this.spawnRotation = (short)spawnRotation;
+            this.spawnPitch = (short)spawnPitch;
+            writeSpawn();
+        }
+        fireSpawnChanged();
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        try {
+            return new MinecraftMapBase(this);
+        } catch(InvalidMapException e) {
+            throw new InvalidObjectException(e.getMessage());
+        }
+    }
+
+    private final class BufferBlockView implements BlockView {
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public int length() {
+            return blocks.capacity();
+        }
+
+        public byte get(int offset) {
+            if(offset < 0 || offset >= blocks.capacity())
+                throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
+
+            return MappedMinecraftMap.this.get(offset);
+        }
+
+        public byte getBlock(int width, int height, int depth) {
+            return MappedMinecraftMap.this.getBlock(width, height, depth);
+        }
+
+        public void copyTo(int offset, byte[] dest, int destOffset, int length) {
+            if(offset < 0 || length < 0 || offset > blocks.capacity() - length)
+                throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
+
+            copyRange(offset, dest, destOffset, length);
+        }
+
+        public void copyTo(int offset, ByteBuffer dest, int length) {
+            if(offset < 0 || length < 0 || offset > blocks.capacity() - length)
+                throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
+
+            copyRange(offset, dest, length);
+        }
+    }
+
+    @Override
+    public MappedMinecraftMap clone() {
+        try {
+            return new MappedMinecraftMap(this);
+        } catch(InvalidMapException e) {
+            throw new RuntimeException("Could not clone map", e);
+        }
+    }
+}
@@ -1,10 +1,21 @@
 package mcmaplib;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import mcmaplib.util.ChannelOutputStream;
+import mcmaplib.util.PagedByteArray;
 
 public abstract class MinecraftMap implements Cloneable, Serializable {
     protected static final int MAX_WIDTH = 65535,
@@ -27,6 +38,11 @@ public abstract class MinecraftMap implements Cloneable, Serializable {
 
                                MAX_BLOCK_DATA_SIZE = Integer.MAX_VALUE,
                                MIN_BLOCK_DATA_SIZE = MIN_WIDTH * MIN_HEIGHT * MIN_DEPTH;
+
+    private static final AtomicLong TEMP_SEQUENCE = new AtomicLong();
+
+    private transient volatile MapChangeListener[] changeListeners;
+    private transient Set<String> dirtyAttributes;
     
     public abstract void setBlock(int width, int height, int depth, byte type);
     public abstract byte getBlock(int width, int height, int depth);
@@ -44,21 +60,600 @@ public abstract class MinecraftMap implements Cloneable, Serializable {
     public abstract short getSpawnRotation();
     public abstract short getSpawnPitch();
 
+    protected static void checkDimensions(int width, int height, int depth,
+                                          int spawnWidth, int spawnHeight, int spawnDepth,
+                                          int spawnRotation, int spawnPitch)
+                                              throws InvalidMapException {
+        if(width > MAX_WIDTH || width < MIN_WIDTH)
+            throw new InvalidMapException("Invalid width");
+
+        if(height > MAX_HEIGHT || height < MIN_HEIGHT)
+            throw new InvalidMapException("Invalid height");
+
+        if(depth > MAX_DEPTH || depth < MIN_DEPTH)
+            throw new InvalidMapException("Invalid depth");
+
+        if(spawnWidth > MAX_SPAWN_WIDTH || spawnWidth < MIN_SPAWN_WIDTH)
+            throw new InvalidMapException("Invalid spawn width");
+
+        if(spawnHeight > MAX_SPAWN_HEIGHT || spawnHeight < MIN_SPAWN_HEIGHT)
+            throw new InvalidMapException("Invalid spawn height");
+
+        if(spawnDepth > MAX_SPAWN_DEPTH || spawnDepth < MIN_SPAWN_DEPTH)
+            throw new InvalidMapException("Invalid spawn depth");
+
+        if(spawnRotation > MAX_SPAWN_ROTATION || spawnRotation < MIN_SPAWN_ROTATION)
+            throw new InvalidMapException("Invalid spawn rotation");
+
+        if(spawnPitch > MAX_SPAWN_PITCH || spawnPitch < MIN_SPAWN_PITCH)
+            throw new InvalidMapException("Invalid spawn pitch");
+    }
+
+    public BlockView getBlockView() {
+        return new MapBlockView(this);
+    }
+
+    public void copyBlocksTo(byte[] dest, int offset) {
+        BlockView view;
+
+        view = getBlockView();
+        view.copyTo(0, dest, offset, view.length());
+    }
+
+    public void copyBlocksTo(ByteBuffer dest) {
+        BlockView view;
+
+        view = getBlockView();
+        view.copyTo(0, dest, view.length());
+    }
+
+    protected void checkRegion(int width, int height, int depth,
+                               int sizeWidth, int sizeHeight, int sizeDepth) {
+        if(width < 0 || height < 0 || depth < 0
+                || sizeWidth < 0 || sizeHeight < 0 || sizeDepth < 0
+                || width > getWidth() - sizeWidth
+                || height > getHeight() - sizeHeight
+                || depth > getDepth() - sizeDepth)
+            throw new IndexOutOfBoundsException("attempting to access region outside map boundries");
+    }
+
+    protected static void checkBuffer(byte[] buffer, int offset,
+                                      int sizeWidth, int sizeHeight, int sizeDepth) {
+        if(offset < 0 || (long)sizeWidth * sizeHeight * sizeDepth > buffer.length - offset)
+            throw new IndexOutOfBoundsException("Buffer too small for region");
+    }
+
+    public void fillRegion(int width, int height, int depth,
+                           int sizeWidth, int sizeHeight, int sizeDepth,
+                           byte type) {
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        for(int h = height;h < height + sizeHeight;h++)
+            for(int d = depth;d < depth + sizeDepth;d++)
+                for(int w = width;w < width + sizeWidth;w++)
+                    setBlock(w, h, d, type);
+    }
+
+    public int replaceInRegion(int width, int height, int depth,
+                               int sizeWidth, int sizeHeight, int sizeDepth,
+                               byte from, byte to) {
+        int replaced = 0;
+
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        for(int h = height;h < height + sizeHeight;h++) {
+            for(int d = depth;d < depth + sizeDepth;d++) {
+                for(int w = width;w < width + sizeWidth;w++) {
+                    if(getBlock(w, h, d) == from) {
+                        setBlock(w, h, d, to);
+                        replaced++;
+                    }
+                }
+            }
+        }
+        return replaced;
+    }
+
+    protected void checkBatch(BlockChangeBatch batch) {
+        int[] widths, heights, depths;
+        int width, height, depth, size;
+
+        widths = batch.getWidths();
+        heights = batch.getHeights();
+        depths = batch.getDepths();
+        width = getWidth();
+        height = getHeight();
+        depth = getDepth();
+        size = batch.size();
+        for(int i = 0;i < size;i++) {
+            if(widths[i] < 0 || heights[i] < 0 || depths[i] < 0
+                    || widths[i] >= width || heights[i] >= height || depths[i] >= depth)
+                throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
+        }
+    }
+
+    public void setBlocks(BlockChangeBatch batch) {
+        int[] widths, heights, depths;
+        byte[] types;
+        int size;
+
+        checkBatch(batch);
+        widths = batch.getWidths();
+        heights = batch.getHeights();
+        depths = batch.getDepths();
+        types = batch.getTypes();
+        size = batch.size();
+        for(int i = 0;i < size;i++)
+            setBlock(widths[i], heights[i], depths[i], types[i]);
+    }
+
+    public void readRegion(int width, int height, int depth,
+                           int sizeWidth, int sizeHeight, int sizeDepth,
+                           byte[] dest, int offset) {
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        checkBuffer(dest, offset, sizeWidth, sizeHeight, sizeDepth);
+        for(int h = height;h < height + sizeHeight;h++)
+            for(int d = depth;d < depth + sizeDepth;d++)
+                for(int w = width;w < width + sizeWidth;w++)
+                    dest[offset++] = getBlock(w, h, d);
+    }
+
+    // Reads the stored block values, without the translation that formats
+    // with special blocks apply in readRegion.
+    void readRegionRaw(int width, int height, int depth,
+                       int sizeWidth, int sizeHeight, int sizeDepth,
+                       byte[] dest, int offset) {
+        readRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth, dest, offset);
+    }
+
+    public void writeRegion(int width, int height, int depth,
+                            int sizeWidth, int sizeHeight, int sizeDepth,
+                            byte[] src, int offset) {
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        checkBuffer(src, offset, sizeWidth, sizeHeight, sizeDepth);
+        for(int h = height;h < height + sizeHeight;h++)
+            for(int d = depth;d < depth + sizeDepth;d++)
+                for(int w = width;w < width + sizeWidth;w++)
+                    setBlock(w, h, d, src[offset++]);
+    }
+
+    public void copyRegion(MinecraftMap source,
+                           int sourceWidth, int sourceHeight, int sourceDepth,
+                           int width, int height, int depth,
+                           int sizeWidth, int sizeHeight, int sizeDepth) {
+        byte[] row;
+        boolean backwards;
+
+        source.checkRegion(sourceWidth, sourceHeight, sourceDepth, sizeWidth, sizeHeight, sizeDepth);
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+
+        backwards = source == this
+                && (height > sourceHeight || (height == sourceHeight && depth > sourceDepth));
+        row = new byte[sizeWidth];
+        for(int i = 0;i < sizeHeight;i++) {
+            int h;
+
+            h = backwards ? sizeHeight - 1 - i : i;
+            for(int j = 0;j < sizeDepth;j++) {
+                int d;
+
+                d = backwards ? sizeDepth - 1 - j : j;
+                if(source == this) {
+                    readRegionRaw(
+                        sourceWidth, sourceHeight + h, sourceDepth + d,
+                        sizeWidth, 1, 1,
+                        row, 0
+                    );
+                } else {
+                    source.readRegion(
+                        sourceWidth, sourceHeight + h, sourceDepth + d,
+                        sizeWidth, 1, 1,
+                        row, 0
+                    );
+                }
+                writeRegion(
+                    width, height + h, depth + d,
+                    sizeWidth, 1, 1,
+                    row, 0
+                );
+            }
+        }
+    }
+
+    protected static PagedByteArray copyBlocks(MinecraftMap map) {
+        PagedByteArray blocks;
+        BlockView view;
+        byte[] transfer;
+        int length;
+
+        view = map.getBlockView();
+        length = view.length();
+        blocks = new PagedByteArray(length);
+        transfer = new byte[Math.min(PagedByteArray.PAGE_SIZE, length)];
+        for(int offset = 0;offset < length;offset += transfer.length) {
+            int count;
+
+            count = Math.min(transfer.length, length - offset);
+            view.copyTo(offset, transfer, 0, count);
+            blocks.set(offset, transfer, 0, count);
+        }
+        return blocks;
+    }
+
     public void save(File file) throws IOException, NotImplementedException {
-        FileOutputStream fos;
+        save(file.toPath());
+    }
+
+    public void save(Path path) throws IOException, NotImplementedException {
+        OutputStream fos;
 
-        fos = new FileOutputStream(file);
+        fos = new ChannelOutputStream(path);
         try {
             save(fos);
         } finally {
             fos.close();
         }
+        fireMapSaved(path);
     }
 
     public void save(OutputStream out) throws IOException, NotImplementedException {
         throw new NotImplementedException("Saving not implemented for this map format");
     }
+
+    public void save(File file, SaveOptions options) throws IOException, NotImplementedException {
+        save(file.toPath(), options);
+    }
+
+    public void save(Path path, SaveOptions options) throws IOException, NotImplementedException {
+        OutputStream out;
+
+        if(options.isAtomic()) {
+            saveAtomic(path, options);
+            return;
+        }
+
+        out = new ChannelOutputStream(path, options.getBufferSize());
+        try {
+            save(out, options);
+            out.flush();
+        } finally {
+            out.close();
+        }
+        fireMapSaved(path);
+    }
+
+    public void save(OutputStream out, SaveOptions options) throws IOException, NotImplementedException {
+        save(out);
+    }
+
+    public void saveAtomic(File file, SaveOptions options) throws IOException, NotImplementedException {
+        saveAtomic(file.toPath(), options);
+    }
+
+    public void saveAtomic(Path path, SaveOptions options) throws IOException, NotImplementedException {
+        // Written from a copy so edits made during the save can't tear it.
+        clone().writeAtomic(path, options);
+        fireMapSaved(path);
+    }
+
+    // For callers that already hold a snapshot; does not notify listeners.
+    void writeAtomic(Path path, SaveOptions options) throws IOException, NotImplementedException {
+        Path directory, temp;
+
+        path = path.toAbsolutePath();
+        directory = path.getParent();
+        temp = directory.resolve(
+            path.getFileName().toString() + "."
+                + Long.toHexString(System.nanoTime() + TEMP_SEQUENCE.incrementAndGet())
+                + ".tmp"
+        );
+        try {
+            ChannelOutputStream out;
+
+            out = new ChannelOutputStream(
+                FileChannel.open(
+                    temp,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE_NEW
+                ),
+                options.getBufferSize()
+            );
+            try {
+                save(out, options);
+                out.flush();
+                out.getChannel().force(true);
+            } finally {
+                out.close();
+            }
+
+            try {
+                Files.move(
+                    temp, path,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE
+                );
+            } catch(AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch(IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        } catch(RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        syncDirectory(directory);
+    }
+
+    private static void syncDirectory(Path directory) {
+        try {
+            FileChannel channel;
+
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+            try {
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+        } catch(IOException e) {
+        }
+    }
+
+    protected PagedByteArray[] getBlockPlanes() {
+        return null;
+    }
+
+    public boolean isDirty() {
+        PagedByteArray[] planes;
+
+        if(getDirtyAttributes().length > 0)
+            return true;
+        planes = getBlockPlanes();
+        if(planes == null)
+            return true;
+        for(int i = 0;i < planes.length;i++) {
+            if(planes[i].isDirty())
+                return true;
+        }
+        return false;
+    }
+
+    public void clearDirty() {
+        PagedByteArray[] planes;
+
+        clearDirtyAttributes(getDirtyAttributes());
+        planes = getBlockPlanes();
+        if(planes == null)
+            return;
+        for(int i = 0;i < planes.length;i++)
+            planes[i].clearDirty();
+    }
+
+    public int saveDelta(File file) throws IOException, NotImplementedException {
+        return saveDelta(file.toPath());
+    }
+
+    public int saveDelta(Path path) throws IOException, NotImplementedException {
+        return DeltaJournal.append(path, this);
+    }
+
+    public void compact(File file, SaveOptions options) throws IOException, NotImplementedException {
+        compact(file.toPath(), options);
+    }
+
+    public void compact(Path path, SaveOptions options) throws IOException, NotImplementedException {
+        DeltaJournal.compact(path, this, options);
+    }
+    
+    public synchronized void addChangeListener(MapChangeListener listener) {
+        MapChangeListener[] listeners, newListeners;
+
+        if(listener == null)
+            throw new NullPointerException("listener");
+
+        listeners = changeListeners;
+        if(listeners == null) {
+            newListeners = new MapChangeListener[1];
+        } else {
+            newListeners = new MapChangeListener[listeners.length + 1];
+            System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+        }
+        newListeners[newListeners.length - 1] = listener;
+        changeListeners = newListeners;
+    }
+
+    public synchronized void removeChangeListener(MapChangeListener listener) {
+        MapChangeListener[] listeners, newListeners;
+
+        listeners = changeListeners;
+        if(listeners == null)
+            return;
+        for(int i = 0;i < listeners.length;i++) {
+            if(listeners[i] == listener) {
+                if(listeners.length == 1) {
+                    changeListeners = null;
+                } else {
+                    newListeners = new MapChangeListener[listeners.length - 1];
+                    System.arraycopy(listeners, 0, newListeners, 0, i);
+                    System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+                    changeListeners = newListeners;
+                }
+                return;
+            }
+        }
+    }
+
+    protected final boolean hasChangeListeners() {
+        return changeListeners != null;
+    }
+
+    protected final void fireBlockChanged(int width, int height, int depth,
+                                          byte oldType, byte newType, byte flags) {
+        MapChangeListener[] listeners;
+
+        listeners = changeListeners;
+        if(listeners == null)
+            return;
+        for(int i = 0;i < listeners.length;i++)
+            listeners[i].blockChanged(this, width, height, depth, oldType, newType, flags);
+    }
+
+    protected final void fireRegionChanged(int width, int height, int depth,
+                                           int sizeWidth, int sizeHeight, int sizeDepth) {
+        MapChangeListener[] listeners;
+
+        listeners = changeListeners;
+        if(listeners == null)
+            return;
+        for(int i = 0;i < listeners.length;i++)
+            listeners[i].regionChanged(this, width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+    }
+
+    protected final void fireRegionFilled(int width, int height, int depth,
+                                          int sizeWidth, int sizeHeight, int sizeDepth,
+                                          byte type) {
+        MapChangeListener[] listeners;
+
+        listeners = changeListeners;
+        if(listeners == null)
+            return;
+        for(int i = 0;i < listeners.length;i++)
+            listeners[i].regionFilled(this, width, height, depth, sizeWidth, sizeHeight, sizeDepth, type);
+    }
+
+    protected final void fireSpawnChanged() {
+        MapChangeListener[] listeners;
+
+        listeners = changeListeners;
+        if(listeners == null)
+            return;
+        for(int i = 0;i < listeners.length;i++)
+            listeners[i].spawnChanged(this);
+    }
+
+    protected final void fireAttributeChanged(String name) {
+        MapChangeListener[] listeners;
+
+        markAttributeDirty(name);
+        listeners = changeListeners;
+        if(listeners == null)
+            return;
+        for(int i = 0;i < listeners.length;i++)
+            listeners[i].attributeChanged(this, name);
+    }
+
+    // Not final, so ConcurrentMinecraftMap can pass it on to the map that
+    // holds its listeners.
+    void fireMapSaved(Path path) throws IOException {
+        MapChangeListener[] listeners;
+        IOException failure;
+
+        DeltaJournal.forgetBase(path);
+        listeners = changeListeners;
+        if(listeners == null)
+            return;
+        failure = null;
+        for(int i = 0;i < listeners.length;i++) {
+            try {
+                listeners[i].mapSaved(this, path);
+            } catch(IOException e) {
+                if(failure == null)
+                    failure = e;
+            }
+        }
+        if(failure != null)
+            throw failure;
+    }
+
+    void restoreBlock(int width, int height, int depth, byte type, byte flags) {
+        setBlock(width, height, depth, type);
+    }
+
+    byte[] getAttribute(String name) {
+        return null;
+    }
+
+    // Attributes live outside the block planes, so delta saves find the
+    // changed ones here rather than in the dirty regions.
+    synchronized void markAttributeDirty(String name) {
+        if(dirtyAttributes == null)
+            dirtyAttributes = new HashSet<String>();
+        dirtyAttributes.add(name);
+    }
+
+    synchronized String[] getDirtyAttributes() {
+        if(dirtyAttributes == null)
+            return new String[0];
+        return dirtyAttributes.toArray(new String[dirtyAttributes.size()]);
+    }
+
+    synchronized void clearDirtyAttributes(String[] names) {
+        if(dirtyAttributes == null)
+            return;
+        for(int i = 0;i < names.length;i++)
+            dirtyAttributes.remove(names[i]);
+    }
+
+    void setAttribute(String name, byte[] value) throws MapFormatException {
+        throw new MapFormatException("Unknown map attribute " + name);
+    }
     
     @Override
     public abstract MinecraftMap clone();
+
+    private static class MapBlockView implements BlockView {
+        private final MinecraftMap map;
+        private final int width, height, depth;
+
+        MapBlockView(MinecraftMap map) {
+            this.map = map;
+            this.width = map.getWidth();
+            this.height = map.getHeight();
+            this.depth = map.getDepth();
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public int length() {
+            return width * height * depth;
+        }
+
+        public byte get(int offset) {
+            int row;
+
+            if(offset < 0 || offset >= length())
+                throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
+
+            row = offset / width;
+            return map.getBlock(offset % width, row / depth, row % depth);
+        }
+
+        public byte getBlock(int width, int height, int depth) {
+            return map.getBlock(width, height, depth);
+        }
+
+        public void copyTo(int offset, byte[] dest, int destOffset, int length) {
+            if(offset < 0 || length < 0 || offset > length() - length)
+                throw new IndexOutOfBoundsException("Range outside map boundries");
+
+            for(int i = 0;i < length;i++)
+                dest[destOffset + i] = get(offset + i);
+        }
+
+        public void copyTo(int offset, ByteBuffer dest, int length) {
+            if(offset < 0 || length < 0 || offset > length() - length)
+                throw new IndexOutOfBoundsException("Range outside map boundries");
+
+            for(int i = 0;i < length;i++)
+                dest.put(get(offset + i));
+        }
+    }
 }
\ No newline at end of file
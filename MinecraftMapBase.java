@@ -1,41 +1,39 @@
 package mcmaplib;
 
+import java.nio.ByteBuffer;
+import mcmaplib.util.PagedByteArray;
+
 public class MinecraftMapBase extends MinecraftMap {
     protected final int width, height, depth;
     protected volatile int spawnWidth, spawnHeight, spawnDepth;
     protected volatile short spawnRotation, spawnPitch;
-    protected final byte[] blocks;
+    protected final PagedByteArray blocks;
 
     public MinecraftMapBase(byte[] blocks,
                             int width, int height, int depth,
                             int spawnWidth, int spawnHeight, int spawnDepth,
                             int spawnRotation, int spawnPitch)
                                 throws InvalidMapException {
-        if(width > MAX_WIDTH || width < MIN_WIDTH)
-            throw new InvalidMapException("Invalid width");
-
-        if(height > MAX_HEIGHT || height < MIN_HEIGHT)
-            throw new InvalidMapException("Invalid height");
-
-        if(depth > MAX_DEPTH || depth < MIN_DEPTH)
-            throw new InvalidMapException("Invalid depth");
-
-        if(spawnWidth > MAX_SPAWN_WIDTH || spawnWidth < MIN_SPAWN_WIDTH)
-            throw new InvalidMapException("Invalid spawn width");
-
-        if(spawnHeight > MAX_SPAWN_HEIGHT || spawnHeight < MIN_SPAWN_HEIGHT)
-            throw new InvalidMapException("Invalid spawn height");
-
-        if(spawnDepth > MAX_SPAWN_DEPTH || spawnDepth < MIN_SPAWN_DEPTH)
-            throw new InvalidMapException("Invalid spawn depth");
-
-        if(spawnRotation > MAX_SPAWN_ROTATION || spawnRotation < MIN_SPAWN_ROTATION)
-            throw new InvalidMapException("Invalid spawn rotation");
+        this(
+            new PagedByteArray(blocks),
+            width, height, depth,
+            spawnWidth, spawnHeight, spawnDepth,
+            spawnRotation, spawnPitch
+        );
+    }
 
-        if(spawnPitch > MAX_SPAWN_PITCH || spawnPitch < MIN_SPAWN_PITCH)
-            throw new InvalidMapException("Invalid spawn pitch");
+    protected MinecraftMapBase(PagedByteArray blocks,
+                               int width, int height, int depth,
+                               int spawnWidth, int spawnHeight, int spawnDepth,
+                               int spawnRotation, int spawnPitch)
+                                   throws InvalidMapException {
+        checkDimensions(
+            width, height, depth,
+            spawnWidth, spawnHeight, spawnDepth,
+            spawnRotation, spawnPitch
+        );
 
-        if(blocks.length < MIN_BLOCK_DATA_SIZE || blocks.length > MAX_BLOCK_DATA_SIZE)
+        if(blocks.length() < MIN_BLOCK_DATA_SIZE || blocks.length() > MAX_BLOCK_DATA_SIZE)
             throw new InvalidMapException("Invalid block array size");
 
         this.width = width;
@@ -54,7 +52,7 @@ public class MinecraftMapBase extends MinecraftMap {
 
     public MinecraftMapBase(MinecraftMap map) throws InvalidMapException {
         this(
-            map.getBlocks(),
+            copyBlocks(map),
             map.getWidth(),
             map.getHeight(),
             map.getDepth(),
@@ -122,7 +120,7 @@ public class MinecraftMapBase extends MinecraftMap {
 
         offset = getBlockOffset(width, height, depth);
 
-        return blocks[offset];
+        return blocks.get(offset);
     }
 
     public void setSpawn(int spawnWidth, int spawnHeight, int spawnDepth,
@@ -141,6 +139,7 @@ public class MinecraftMapBase extends MinecraftMap {
         this.spawnDepth = spawnDepth;
         this.spawnRotation = (short)spawnRotation;
         this.spawnPitch = (short)spawnPitch;
+        fireSpawnChanged();
     }
 
     public void setBlock(int width, int height, int depth, byte value) {
@@ -150,23 +149,164 @@ public class MinecraftMapBase extends MinecraftMap {
             throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
 
         offset = getBlockOffset(width, height, depth);
-        blocks[offset] = value;
+        if(hasChangeListeners()) {
+            byte oldValue;
+
+            oldValue = blocks.get(offset);
+            blocks.set(offset, value);
+            fireBlockChanged(width, height, depth, oldValue, value, (byte)0);
+        } else {
+            blocks.set(offset, value);
+        }
     }
     
 
+    @Override
+    public void setBlocks(BlockChangeBatch batch) {
+        int[] widths, heights, depths;
+        byte[] types;
+        int size;
+
+        checkBatch(batch);
+        widths = batch.getWidths();
+        heights = batch.getHeights();
+        depths = batch.getDepths();
+        types = batch.getTypes();
+        size = batch.size();
+        if(hasChangeListeners()) {
+            for(int i = 0;i < size;i++) {
+                int offset;
+                byte oldValue;
+
+                offset = getBlockOffset(widths[i], heights[i], depths[i]);
+                oldValue = blocks.get(offset);
+                blocks.set(offset, types[i]);
+                fireBlockChanged(widths[i], heights[i], depths[i], oldValue, types[i], (byte)0);
+            }
+        } else {
+            for(int i = 0;i < size;i++)
+                blocks.set(getBlockOffset(widths[i], heights[i], depths[i]), types[i]);
+        }
+    }
+
+    @Override
+    public void fillRegion(int width, int height, int depth,
+                           int sizeWidth, int sizeHeight, int sizeDepth,
+                           byte type) {
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        for(int h = height;h < height + sizeHeight;h++) {
+            for(int d = depth;d < depth + sizeDepth;d++) {
+                int offset;
+
+                offset = getBlockOffset(width, h, d);
+                blocks.fill(offset, offset + sizeWidth, type);
+            }
+        }
+        fireRegionFilled(width, height, depth, sizeWidth, sizeHeight, sizeDepth, type);
+    }
+
+    @Override
+    public int replaceInRegion(int width, int height, int depth,
+                               int sizeWidth, int sizeHeight, int sizeDepth,
+                               byte from, byte to) {
+        byte[] row;
+        int[] columns;
+        int replaced = 0;
+
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        row = new byte[sizeWidth];
+        columns = hasChangeListeners() ? new int[sizeWidth] : null;
+        for(int h = height;h < height + sizeHeight;h++) {
+            for(int d = depth;d < depth + sizeDepth;d++) {
+                int offset, rowReplaced = 0;
+
+                offset = getBlockOffset(width, h, d);
+                blocks.get(offset, row, 0, sizeWidth);
+                for(int i = 0;i < sizeWidth;i++) {
+                    if(row[i] == from) {
+                        row[i] = to;
+                        if(columns != null)
+                            columns[rowReplaced] = i;
+                        rowReplaced++;
+                    }
+                }
+                if(rowReplaced > 0) {
+                    blocks.set(offset, row, 0, sizeWidth);
+                    replaced += rowReplaced;
+                    if(columns != null) {
+                        for(int i = 0;i < rowReplaced;i++)
+                            fireBlockChanged(width + columns[i], h, d, from, to, (byte)0);
+                    }
+                }
+            }
+        }
+        return replaced;
+    }
+
+    @Override
+    public void readRegion(int width, int height, int depth,
+                           int sizeWidth, int sizeHeight, int sizeDepth,
+                           byte[] dest, int offset) {
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        checkBuffer(dest, offset, sizeWidth, sizeHeight, sizeDepth);
+        for(int h = height;h < height + sizeHeight;h++) {
+            for(int d = depth;d < depth + sizeDepth;d++) {
+                blocks.get(getBlockOffset(width, h, d), dest, offset, sizeWidth);
+                offset += sizeWidth;
+            }
+        }
+    }
+
+    @Override
+    public void writeRegion(int width, int height, int depth,
+                            int sizeWidth, int sizeHeight, int sizeDepth,
+                            byte[] src, int offset) {
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        checkBuffer(src, offset, sizeWidth, sizeHeight, sizeDepth);
+        for(int h = height;h < height + sizeHeight;h++) {
+            for(int d = depth;d < depth + sizeDepth;d++) {
+                blocks.set(getBlockOffset(width, h, d), src, offset, sizeWidth);
+                offset += sizeWidth;
+            }
+        }
+        fireRegionChanged(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+    }
+
     public byte[] getBlocks() {
-        byte[] newBlocks;
+        return blocks.toByteArray();
+    }
 
-        newBlocks = new byte[blocks.length];
-        for(int i = 0;i < blocks.length;i++)
-            newBlocks[i] = blocks[i];
-        return newBlocks;
+    @Override
+    protected PagedByteArray[] getBlockPlanes() {
+        return new PagedByteArray[] {
+            blocks
+        };
+    }
+
+    @Override
+    public BlockView getBlockView() {
+        return new PagedBlockView(blocks, width, height, depth, null);
+    }
+
+    @Override
+    public void copyBlocksTo(byte[] dest, int offset) {
+        blocks.get(0, dest, offset, blocks.length());
+    }
+
+    @Override
+    public void copyBlocksTo(ByteBuffer dest) {
+        blocks.get(0, dest, blocks.length());
     }
 
     @Override
     public MinecraftMapBase clone() {
         try {
-            return new MinecraftMapBase(this);
+            return new MinecraftMapBase(
+                blocks.snapshot(),
+                width, height, depth,
+                spawnWidth, spawnHeight, spawnDepth,
+                spawnRotation, spawnPitch
+            );
         } catch(InvalidMapException e) {
             throw new RuntimeException("Could not clone map", e);
         }
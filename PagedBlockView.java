@@ -0,0 +1,82 @@
+package mcmaplib;
+
+import java.nio.ByteBuffer;
+import mcmaplib.util.PagedByteArray;
+
+class PagedBlockView implements BlockView {
+    private static final int TRANSFER_SIZE = 8192;
+
+    private final PagedByteArray blocks;
+    private final int width, height, depth;
+    private final byte[] translation;
+
+    PagedBlockView(PagedByteArray blocks, int width, int height, int depth,
+                   byte[] translation) {
+        this.blocks = blocks;
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.translation = translation;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int length() {
+        return blocks.length();
+    }
+
+    public byte get(int offset) {
+        byte value;
+
+        value = blocks.get(offset);
+        if(translation != null)
+            value = translation[value & 0xFF];
+        return value;
+    }
+
+    public byte getBlock(int width, int height, int depth) {
+        if(width < 0 || height < 0 || depth < 0
+                || width >= this.width || height >= this.height || depth >= this.depth)
+            throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
+
+        return get((height * this.depth + depth) * this.width + width);
+    }
+
+    public void copyTo(int offset, byte[] dest, int destOffset, int length) {
+        blocks.get(offset, dest, destOffset, length);
+        if(translation != null) {
+            for(int i = destOffset;i < destOffset + length;i++)
+                dest[i] = translation[dest[i] & 0xFF];
+        }
+    }
+
+    public void copyTo(int offset, ByteBuffer dest, int length) {
+        byte[] transfer;
+
+        if(translation == null) {
+            blocks.get(offset, dest, length);
+            return;
+        }
+
+        transfer = new byte[Math.min(TRANSFER_SIZE, length)];
+        while(length > 0) {
+            int count;
+
+            count = Math.min(transfer.length, length);
+            copyTo(offset, transfer, 0, count);
+            dest.put(transfer, 0, count);
+            offset += count;
+            length -= count;
+        }
+    }
+}
@@ -0,0 +1,648 @@
+package mcmaplib;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class PalettedMinecraftMap extends MinecraftMap {
+    private static final long serialVersionUID = 1L;
+
+    private static final int SECTION_SHIFT = 4,
+                             SECTION_SIZE = 1 << SECTION_SHIFT,
+                             SECTION_MASK = SECTION_SIZE - 1,
+                             SECTION_VOLUME = SECTION_SIZE * SECTION_SIZE * SECTION_SIZE,
+                             MAX_PACKED_BITS = 4;
+
+    private static final int TRANSFER_SIZE = 8192;
+
+    private static final int OBJECT_HEADER_SIZE = 16,
+                             ARRAY_HEADER_SIZE = 16,
+                             REFERENCE_SIZE = 4;
+
+    private final int width, height, depth;
+    private final int sectionsWidth, sectionsHeight, sectionsDepth;
+    private volatile int spawnWidth, spawnHeight, spawnDepth;
+    private volatile short spawnRotation, spawnPitch;
+    private final Section[] sections;
+    private final int[] sectionEpochs;
+    private volatile int epoch;
+
+    public PalettedMinecraftMap(int width, int height, int depth,
+                                int spawnWidth, int spawnHeight, int spawnDepth,
+                                int spawnRotation, int spawnPitch)
+                                    throws InvalidMapException {
+        this(
+            null,
+            width, height, depth,
+            spawnWidth, spawnHeight, spawnDepth,
+            spawnRotation, spawnPitch
+        );
+    }
+
+    private PalettedMinecraftMap(Section[] sections,
+                                 int width, int height, int depth,
+                                 int spawnWidth, int spawnHeight, int spawnDepth,
+                                 int spawnRotation, int spawnPitch)
+                                     throws InvalidMapException {
+        checkDimensions(
+            width, height, depth,
+            spawnWidth, spawnHeight, spawnDepth,
+            spawnRotation, spawnPitch
+        );
+
+        if((long)width * height * depth > MAX_BLOCK_DATA_SIZE)
+            throw new InvalidMapException("Invalid block array size");
+
+        this.width = width;
+        this.height = height;
+        this.depth = depth;
+        this.spawnWidth = spawnWidth;
+        this.spawnHeight = spawnHeight;
+        this.spawnDepth = spawnDepth;
+        this.spawnRotation = (short)spawnRotation;
+        this.spawnPitch = (short)spawnPitch;
+
+        sectionsWidth = (width + SECTION_MASK) >> SECTION_SHIFT;
+        sectionsHeight = (height + SECTION_MASK) >> SECTION_SHIFT;
+        sectionsDepth = (depth + SECTION_MASK) >> SECTION_SHIFT;
+        if(sections == null) {
+            sections = new Section[sectionsWidth * sectionsHeight * sectionsDepth];
+            for(int i = 0;i < sections.length;i++)
+                sections[i] = new Section((byte)0);
+        } else {
+            sections = sections.clone();
+        }
+        this.sections = sections;
+        sectionEpochs = new int[sections.length];
+
+        if(isPlayerOutOfBounds(spawnWidth, spawnHeight, spawnDepth))
+            throw new InvalidMapException("Spawn out of bounds");
+    }
+
+    public PalettedMinecraftMap(MinecraftMap map) throws InvalidMapException {
+        this(
+            map.getWidth(),
+            map.getHeight(),
+            map.getDepth(),
+            map.getSpawnWidth(),
+            map.getSpawnHeight(),
+            map.getSpawnDepth(),
+            map.getSpawnRotation(),
+            map.getSpawnPitch()
+        );
+        setBlocks(map.getBlocks());
+    }
+
+    private void setBlocks(byte[] blocks) throws InvalidMapException {
+        byte[] values;
+
+        if(blocks.length != width * height * depth)
+            throw new InvalidMapException("Block array size does not match dimensions");
+
+        values = new byte[SECTION_VOLUME];
+        for(int sy = 0;sy < sectionsHeight;sy++) {
+            for(int sz = 0;sz < sectionsDepth;sz++) {
+                for(int sx = 0;sx < sectionsWidth;sx++) {
+                    int baseWidth, baseHeight, baseDepth;
+                    int sizeWidth, sizeHeight, sizeDepth;
+
+                    baseWidth = sx << SECTION_SHIFT;
+                    baseHeight = sy << SECTION_SHIFT;
+                    baseDepth = sz << SECTION_SHIFT;
+                    sizeWidth = Math.min(SECTION_SIZE, width - baseWidth);
+                    sizeHeight = Math.min(SECTION_SIZE, height - baseHeight);
+                    sizeDepth = Math.min(SECTION_SIZE, depth - baseDepth);
+
+                    Arrays.fill(values, blocks[getBlockOffset(baseWidth, baseHeight, baseDepth)]);
+                    for(int ly = 0;ly < sizeHeight;ly++) {
+                        for(int lz = 0;lz < sizeDepth;lz++) {
+                            System.arraycopy(
+                                blocks, getBlockOffset(baseWidth, baseHeight + ly, baseDepth + lz),
+                                values, getSectionIndex(0, ly, lz),
+                                sizeWidth
+                            );
+                        }
+                    }
+                    sections[getSectionOffset(sx, sy, sz)] = Section.encode(values);
+                }
+            }
+        }
+    }
+
+    protected int getBlockOffset(int width, int height, int depth) {
+        return ((height * this.depth + depth) * this.width + width);
+    }
+
+    private int getSectionOffset(int sectionWidth, int sectionHeight, int sectionDepth) {
+        return ((sectionHeight * sectionsDepth + sectionDepth) * sectionsWidth + sectionWidth);
+    }
+
+    private static int getSectionIndex(int width, int height, int depth) {
+        return (((height & SECTION_MASK) << SECTION_SHIFT | (depth & SECTION_MASK)) << SECTION_SHIFT)
+                | (width & SECTION_MASK);
+    }
+
+    private Section getSection(int width, int height, int depth) {
+        return sections[getSectionOffset(
+            width >> SECTION_SHIFT,
+            height >> SECTION_SHIFT,
+            depth >> SECTION_SHIFT
+        )];
+    }
+
+    private Section getWritableSection(int width, int height, int depth) {
+        int offset, currentEpoch;
+        Section section;
+
+        offset = getSectionOffset(
+            width >> SECTION_SHIFT,
+            height >> SECTION_SHIFT,
+            depth >> SECTION_SHIFT
+        );
+        currentEpoch = epoch;
+        section = sections[offset];
+        if(sectionEpochs[offset] != currentEpoch) {
+            section = section.copy();
+            sections[offset] = section;
+            sectionEpochs[offset] = currentEpoch;
+        }
+        return section;
+    }
+
+    public boolean isOutOfBounds(int width, int height, int depth) {
+        if(width < 0 || height < 0 || depth < 0
+                || width >= this.width || height >= this.height || depth >= this.depth)
+            return true;
+        else
+            return false;
+    }
+
+    public boolean isPlayerOutOfBounds(int width, int height, int depth) {
+        return isOutOfBounds(width / 32, height / 32, depth / 32);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSpawnWidth() {
+        return spawnWidth;
+    }
+
+    public int getSpawnHeight() {
+        return spawnHeight;
+    }
+
+    public int getSpawnDepth() {
+        return spawnDepth;
+    }
+
+    public short getSpawnRotation() {
+        return spawnRotation;
+    }
+
+    public short getSpawnPitch() {
+        return spawnPitch;
+    }
+
+    public byte getBlock(int width, int height, int depth) {
+        if(isOutOfBounds(width, height, depth))
+            throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
+
+        return getSection(width, height, depth).get(getSectionIndex(width, height, depth));
+    }
+
+    public void setBlock(int width, int height, int depth, byte value) {
+        if(isOutOfBounds(width, height, depth))
+            throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
+
+        if(hasChangeListeners()) {
+            byte oldValue;
+
+            oldValue = getBlock(width, height, depth);
+            getWritableSection(width, height, depth).set(getSectionIndex(width, height, depth), value);
+            fireBlockChanged(width, height, depth, oldValue, value, (byte)0);
+        } else {
+            getWritableSection(width, height, depth).set(getSectionIndex(width, height, depth), value);
+        }
+    }
+
+    public byte[] getBlocks() {
+        byte[] blocks;
+
+        blocks = new byte[width * height * depth];
+        copyBlocksTo(blocks, 0);
+        return blocks;
+    }
+
+    @Override
+    public void copyBlocksTo(byte[] blocks, int start) {
+        if(start < 0 || start > blocks.length - width * height * depth)
+            throw new IndexOutOfBoundsException("Destination array too small");
+
+        copyRange(0, blocks, start, width * height * depth);
+    }
+
+    @Override
+    public void copyBlocksTo(ByteBuffer dest) {
+        copyRange(0, dest, width * height * depth);
+    }
+
+    @Override
+    public BlockView getBlockView() {
+        return new SectionBlockView();
+    }
+
+    private void copyRange(int offset, byte[] dest, int destOffset, int length) {
+        if(offset < 0 || length < 0 || offset > width * height * depth - length)
+            throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
+        if(destOffset < 0 || destOffset > dest.length - length)
+            throw new IndexOutOfBoundsException("Destination array too small");
+
+        while(length > 0) {
+            int row, blockWidth, blockHeight, blockDepth, count;
+
+            row = offset / width;
+            blockWidth = offset - row * width;
+            blockHeight = row / depth;
+            blockDepth = row - blockHeight * depth;
+            count = Math.min(length, Math.min(
+                SECTION_SIZE - (blockWidth & SECTION_MASK),
+                width - blockWidth
+            ));
+            getSection(blockWidth, blockHeight, blockDepth).copyTo(
+                getSectionIndex(blockWidth, blockHeight, blockDepth),
+                dest, destOffset, count
+            );
+            offset += count;
+            destOffset += count;
+            length -= count;
+        }
+    }
+
+    private void copyRange(int offset, ByteBuffer dest, int length) {
+        byte[] transfer;
+
+        transfer = new byte[Math.min(TRANSFER_SIZE, length)];
+        while(length > 0) {
+            int count;
+
+            count = Math.min(transfer.length, length);
+            copyRange(offset, transfer, 0, count);
+            dest.put(transfer, 0, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    public void setSpawn(int spawnWidth, int spawnHeight, int spawnDepth,
+                         int spawnRotation, int spawnPitch) {
+        if(isPlayerOutOfBounds(spawnWidth, spawnHeight, spawnDepth))
+            throw new IndexOutOfBoundsException("Attempting to set spawn outside map boundries");
+
+        if(spawnRotation > MAX_SPAWN_ROTATION || spawnRotation < MIN_SPAWN_ROTATION)
+            throw new RuntimeException("Attempting to set invalid spawn rotation");
+
+        if(spawnPitch > MAX_SPAWN_PITCH || spawnPitch < MIN_SPAWN_PITCH)
+            throw new RuntimeException("Attempting to set invalid spawn pitch");
+
+        this.spawnWidth = spawnWidth;
+        this.spawnHeight = spawnHeight;
+        this.spawnDepth = spawnDepth;
+        this.spawnRotation = (short)spawnRotation;
+        this.spawnPitch = (short)spawnPitch;
+        fireSpawnChanged();
+    }
+
+    public void compact() {
+        byte[] values;
+        int currentEpoch;
+
+        currentEpoch = epoch;
+        values = new byte[SECTION_VOLUME];
+        for(int i = 0;i < sections.length;i++) {
+            Section section;
+
+            section = sections[i];
+            if(section.bits == 0)
+                continue;
+
+            for(int j = 0;j < SECTION_VOLUME;j++)
+                values[j] = section.get(j);
+            sections[i] = Section.encode(values);
+            sectionEpochs[i] = currentEpoch;
+        }
+    }
+
+    public int getSectionCount() {
+        return sections.length;
+    }
+
+    public int getUniformSectionCount() {
+        int count = 0;
+
+        for(int i = 0;i < sections.length;i++) {
+            if(sections[i].bits == 0)
+                count++;
+        }
+        return count;
+    }
+
+    public long getMemoryFootprint() {
+        long size;
+
+        size = OBJECT_HEADER_SIZE + 9 * 4 + 2 * 2 + REFERENCE_SIZE;
+        size += ARRAY_HEADER_SIZE + (long)sections.length * REFERENCE_SIZE;
+        for(int i = 0;i < sections.length;i++)
+            size += sections[i].getMemoryFootprint();
+        return size;
+    }
+
+    @Override
+    public PalettedMinecraftMap clone() {
+        PalettedMinecraftMap map;
+
+        try {
+            map = new PalettedMinecraftMap(
+                sections,
+                width, height, depth,
+                spawnWidth, spawnHeight, spawnDepth,
+                spawnRotation, spawnPitch
+            );
+        } catch(InvalidMapException e) {
+            throw new RuntimeException("Could not clone map", e);
+        }
+
+        map.epoch = 1;
+        epoch = epoch + 1;
+        return map;
+    }
+
+    private final class SectionBlockView implements BlockView {
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public int length() {
+            return width * height * depth;
+        }
+
+        public byte get(int offset) {
+            int row;
+
+            if(offset < 0 || offset >= length())
+                throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
+
+            row = offset / width;
+            return getBlock(offset - row * width, row / depth, row % depth);
+        }
+
+        public byte getBlock(int width, int height, int depth) {
+            return PalettedMinecraftMap.this.getBlock(width, height, depth);
+        }
+
+        public void copyTo(int offset, byte[] dest, int destOffset, int length) {
+            copyRange(offset, dest, destOffset, length);
+        }
+
+        public void copyTo(int offset, ByteBuffer dest, int length) {
+            copyRange(offset, dest, length);
+        }
+    }
+
+    private static final class Section implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private byte[] palette;
+        private int paletteSize;
+        private int bits;
+        private long[] packed;
+        private byte[] raw;
+
+        Section(byte value) {
+            palette = new byte[] { value };
+            paletteSize = 1;
+            bits = 0;
+        }
+
+        private Section() {
+        }
+
+        static Section encode(byte[] values) {
+            Section section;
+            boolean[] seen;
+            byte[] palette;
+            int paletteSize = 0;
+
+            seen = new boolean[256];
+            palette = new byte[1 << MAX_PACKED_BITS];
+            for(int i = 0;i < values.length;i++) {
+                int value;
+
+                value = values[i] & 0xFF;
+                if(seen[value])
+                    continue;
+
+                if(paletteSize == palette.length) {
+                    paletteSize++;
+                    break;
+                }
+                seen[value] = true;
+                palette[paletteSize++] = (byte)value;
+            }
+
+            section = new Section();
+            if(paletteSize == 1) {
+                section.palette = new byte[] { palette[0] };
+                section.paletteSize = 1;
+                section.bits = 0;
+            } else if(paletteSize > palette.length) {
+                section.bits = 8;
+                section.raw = values.clone();
+            } else {
+                section.bits = getBitsForPalette(paletteSize);
+                section.palette = new byte[1 << section.bits];
+                System.arraycopy(palette, 0, section.palette, 0, paletteSize);
+                section.paletteSize = paletteSize;
+                section.packed = new long[SECTION_VOLUME * section.bits / 64];
+                for(int i = 0;i < values.length;i++)
+                    section.setIndex(i, section.indexOf(values[i]));
+            }
+            return section;
+        }
+
+        private static int getBitsForPalette(int paletteSize) {
+            if(paletteSize <= 2)
+                return 1;
+            else if(paletteSize <= 4)
+                return 2;
+            else
+                return 4;
+        }
+
+        byte get(int index) {
+            switch(bits) {
+                case 0:
+                    return palette[0];
+                case 8:
+                    return raw[index];
+                default:
+                    return palette[getIndex(index)];
+            }
+        }
+
+        void copyTo(int index, byte[] dest, int destOffset, int length) {
+            switch(bits) {
+                case 0:
+                    Arrays.fill(dest, destOffset, destOffset + length, palette[0]);
+                    break;
+                case 8:
+                    System.arraycopy(raw, index, dest, destOffset, length);
+                    break;
+                default: {
+                    int bitOffset, mask;
+
+                    // bits divides 64, so an index never spans two words
+                    bitOffset = index * bits;
+                    mask = (1 << bits) - 1;
+                    for(int i = 0;i < length;i++, bitOffset += bits)
+                        dest[destOffset + i] = palette[(int)(packed[bitOffset >>> 6] >>> (bitOffset & 63)) & mask];
+                    break;
+                }
+            }
+        }
+
+        void set(int index, byte value) {
+            int paletteIndex;
+
+            if(bits == 8) {
+                raw[index] = value;
+                return;
+            }
+
+            paletteIndex = indexOf(value);
+            if(paletteIndex == -1) {
+                if(bits == 0 || paletteSize == palette.length)
+                    grow();
+
+                if(bits == 8) {
+                    raw[index] = value;
+                    return;
+                }
+
+                paletteIndex = paletteSize;
+                palette[paletteSize++] = value;
+            } else if(bits == 0) {
+                return;
+            }
+            setIndex(index, paletteIndex);
+        }
+
+        private void grow() {
+            if(bits == 0) {
+                byte value;
+
+                value = palette[0];
+                bits = 1;
+                palette = new byte[2];
+                palette[0] = value;
+                packed = new long[SECTION_VOLUME / 64];
+            } else if(bits < MAX_PACKED_BITS) {
+                long[] oldPacked;
+                int oldBits;
+                byte[] oldPalette;
+
+                oldPacked = packed;
+                oldBits = bits;
+                oldPalette = palette;
+                bits = bits << 1;
+                palette = new byte[1 << bits];
+                System.arraycopy(oldPalette, 0, palette, 0, paletteSize);
+                packed = new long[SECTION_VOLUME * bits / 64];
+                for(int i = 0;i < SECTION_VOLUME;i++)
+                    setIndex(i, getIndex(oldPacked, oldBits, i));
+            } else {
+                byte[] values;
+
+                values = new byte[SECTION_VOLUME];
+                for(int i = 0;i < SECTION_VOLUME;i++)
+                    values[i] = palette[getIndex(i)];
+                bits = 8;
+                raw = values;
+                palette = null;
+                paletteSize = 0;
+                packed = null;
+            }
+        }
+
+        private int indexOf(byte value) {
+            for(int i = 0;i < paletteSize;i++) {
+                if(palette[i] == value)
+                    return i;
+            }
+            return -1;
+        }
+
+        private int getIndex(int index) {
+            return getIndex(packed, bits, index);
+        }
+
+        private static int getIndex(long[] packed, int bits, int index) {
+            int bitOffset;
+
+            bitOffset = index * bits;
+            return (int)(packed[bitOffset >>> 6] >>> (bitOffset & 63)) & ((1 << bits) - 1);
+        }
+
+        private void setIndex(int index, int paletteIndex) {
+            int bitOffset, word;
+            long mask;
+
+            bitOffset = index * bits;
+            word = bitOffset >>> 6;
+            mask = ((1L << bits) - 1) << (bitOffset & 63);
+            packed[word] = (packed[word] & ~mask) | (((long)paletteIndex << (bitOffset & 63)) & mask);
+        }
+
+        long getMemoryFootprint() {
+            long size;
+
+            size = OBJECT_HEADER_SIZE + 3 * REFERENCE_SIZE + 2 * 4;
+            if(palette != null)
+                size += ARRAY_HEADER_SIZE + palette.length;
+            if(packed != null)
+                size += ARRAY_HEADER_SIZE + packed.length * 8L;
+            if(raw != null)
+                size += ARRAY_HEADER_SIZE + raw.length;
+            return size;
+        }
+
+        Section copy() {
+            Section section;
+
+            section = new Section();
+            section.palette = palette == null ? null : palette.clone();
+            section.paletteSize = paletteSize;
+            section.bits = bits;
+            section.packed = packed == null ? null : packed.clone();
+            section.raw = raw == null ? null : raw.clone();
+            return section;
+        }
+    }
+}
@@ -2,36 +2,45 @@ package mcmaplib;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.HashMap;
-import java.math.BigInteger;
 import java.io.Serializable;
 import java.io.File;
 import java.io.IOException;
 import java.io.EOFException;
-import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.OutputStream;
-import java.io.FileOutputStream;
 import java.io.InputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
-import mcmaplib.util.ExtendedDataInputStream;
-import mcmaplib.util.ExtendedDataOutputStream;
+import java.nio.file.Path;
+import java.nio.ByteBuffer;
+import mcmaplib.util.ChannelInputStream;
+import mcmaplib.util.ChannelOutputStream;
+import mcmaplib.util.CodecInputStream;
+import mcmaplib.util.CodecOutputStream;
+import mcmaplib.util.FinishableOutputStream;
+import mcmaplib.util.PagedByteArray;
+import mcmaplib.util.PooledGZIPInputStream;
+import mcmaplib.util.PooledGZIPOutputStream;
+import mcmaplib.util.ReleasableInputStream;
 
 public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializable {
     private static final int MAX_BLOCK_LENGTH = 257,
 
                              MIN_BLOCK_LENGTH = 2,
 
-                             MAX_METADATA_SIZE = 65535;
+                             MAX_METADATA_SIZE = 65535,
 
-    private static final byte SPECIAL_BIT =  (byte)0x80,
-                              SOLID_BIT =    (byte)0x40,
-                              PHYSICS_BIT =  (byte)0x20,
-                              MESSAGE_BIT =  (byte)0x10,
-                              PORTAL_BIT =   (byte)0x08,
-                              SCRIPTED_BIT = (byte)0x04;
+                             TRANSFER_BLOCKS = 8192;
+
+    public static final byte SPECIAL_BIT =  (byte)0x80,
+                             SOLID_BIT =    (byte)0x40,
+                             PHYSICS_BIT =  (byte)0x20,
+                             MESSAGE_BIT =  (byte)0x10,
+                             PORTAL_BIT =   (byte)0x08,
+                             SCRIPTED_BIT = (byte)0x04;
 
     private static final long[] SUPPORTED_VERSIONS = new long[] {
         0xAA000001L
@@ -39,11 +48,93 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
     public static final long VERSION_1 = SUPPORTED_VERSIONS[0],
                              CURRENT_VERSION = VERSION_1;
 
+    private final static Set<String> EXTENSIONS;
+    private final static String NAME = "RUM",
+                                DESCRIPTION = "Map format with extended block data";
+
+    static {
+        Set<String> extensions = new HashSet<String>();
+        extensions.add("rum");
+        EXTENSIONS = Collections.unmodifiableSet(extensions);
+    }
+
+    public static MapFormat FORMAT = new MapFormat() {
+        public String getName() {
+            return NAME;
+        }
+
+        public String getDescription() {
+            return DESCRIPTION;
+        }
+
+        public Set<String> getExtensions() {
+            return EXTENSIONS;
+        }
+
+        public RUMMinecraftMap load(File file)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException,
+                       FileNotFoundException {
+            return RUMMinecraftMap.load(file);
+        }
+
+        @Override
+        public RUMMinecraftMap load(File file, LoadOptions options)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException,
+                       FileNotFoundException {
+            return RUMMinecraftMap.load(file, options);
+        }
+
+        @Override
+        public Header readHeader(File file)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException,
+                       FileNotFoundException {
+            return RUMMinecraftMap.readHeader(file);
+        }
+
+        @Override
+        public void visit(InputStream in, BlockVisitor visitor, int chunkSize)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException {
+            RUMMinecraftMap.visit(in, visitor, chunkSize);
+        }
+
+        @Override
+        public MapStreamWriter createStreamWriter(OutputStream out) {
+            return RUMMinecraftMap.createStreamWriter(out);
+        }
+
+        @Override
+        public RUMMinecraftMap load(InputStream in, LoadOptions options)
+                throws IOException,
+                       NotImplementedException,
+                       MapFormatException {
+            return RUMMinecraftMap.load(in, options);
+        }
+
+        @Override
+        public boolean matchesSignature(byte[] data, int length, boolean compressed) {
+            return !compressed && length >= 4
+                && (ByteBuffer.wrap(data).getInt(0) & 0xFFFFFFFFL) == VERSION_1;
+        }
+
+        public RUMMinecraftMap convert(MinecraftMap map)
+                throws InvalidMapException {
+            return new RUMMinecraftMap(map);
+        }
+    };
+
     private final int width, height, depth;
     private volatile int spawnWidth, spawnHeight, spawnDepth;
     private volatile short spawnRotation, spawnPitch;
     private final Map<String, byte[]> metadata;
-    protected final byte[][] blockData;
+    protected final PagedByteArray[] blockPlanes;
     protected final short blockLength;
 
     public RUMMinecraftMap(int width, int height, int depth,
@@ -52,29 +143,27 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
                   Map<String, byte[]> metadata,
                   byte[][] blockData,
                   int blockLength) throws InvalidMapException {
-        if(width > MAX_WIDTH || width < MIN_WIDTH)
-            throw new InvalidMapException("Invalid width");
-
-        if(height > MAX_HEIGHT || height < MIN_HEIGHT)
-            throw new InvalidMapException("Invalid height");
-
-        if(depth > MAX_DEPTH || depth < MIN_DEPTH)
-            throw new InvalidMapException("Invalid depth");
-
-        if(spawnWidth > MAX_SPAWN_WIDTH || spawnWidth < MIN_SPAWN_WIDTH)
-            throw new InvalidMapException("Invalid spawn width");
-
-        if(spawnHeight > MAX_SPAWN_HEIGHT || spawnHeight < MIN_SPAWN_HEIGHT)
-            throw new InvalidMapException("Invalid spawn height");
-
-        if(spawnDepth > MAX_SPAWN_DEPTH || spawnDepth < MIN_SPAWN_DEPTH)
-            throw new InvalidMapException("Invalid spawn depth");
-
-        if(spawnRotation > MAX_SPAWN_ROTATION || spawnRotation < MIN_SPAWN_ROTATION)
-            throw new InvalidMapException("Invalid spawn rotation");
+        this(
+            width, height, depth,
+            spawnWidth, spawnHeight, spawnDepth,
+            spawnRotation, spawnPitch,
+            metadata,
+            blockLength,
+            toBlockPlanes(blockData, blockLength)
+        );
+    }
 
-        if(spawnPitch > MAX_SPAWN_PITCH || spawnPitch < MIN_SPAWN_PITCH)
-            throw new InvalidMapException("Invalid spawn pitch");
+    protected RUMMinecraftMap(int width, int height, int depth,
+                  int spawnWidth, int spawnHeight, int spawnDepth,
+                  int spawnRotation, int spawnPitch,
+                  Map<String, byte[]> metadata,
+                  int blockLength,
+                  PagedByteArray[] blockPlanes) throws InvalidMapException {
+        checkDimensions(
+            width, height, depth,
+            spawnWidth, spawnHeight, spawnDepth,
+            spawnRotation, spawnPitch
+        );
 
         if(metadata.size() > MAX_METADATA_SIZE)
             throw new InvalidMapException("Invalid metadata size");
@@ -82,11 +171,16 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
         if(blockLength > MAX_BLOCK_LENGTH || blockLength < MIN_BLOCK_LENGTH)
             throw new InvalidMapException("Invalid block length");
 
-        if(blockData.length < MIN_BLOCK_DATA_SIZE || blockData.length > MAX_BLOCK_DATA_SIZE)
+        if(blockPlanes.length != blockLength)
+            throw new InvalidMapException("blockPlanes array length does not equal blockLength");
+
+        if(blockPlanes[0].length() < MIN_BLOCK_DATA_SIZE || blockPlanes[0].length() > MAX_BLOCK_DATA_SIZE)
             throw new InvalidMapException("Invalid block array size");
 
-        if(blockData[0].length != blockLength)
-            throw new InvalidMapException("blockData inner array length does not equal blockLength");
+        for(int i = 1;i < blockLength;i++) {
+            if(blockPlanes[i].length() != blockPlanes[0].length())
+                throw new InvalidMapException("blockPlanes inner arrays differ in length");
+        }
 
         this.width = width;
         this.height = height;
@@ -97,7 +191,7 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
         this.spawnRotation = (short)spawnRotation;
         this.spawnPitch = (short)spawnPitch;
         this.metadata = metadata;
-        this.blockData = blockData;
+        this.blockPlanes = blockPlanes;
         this.blockLength = (short)blockLength;
 
         if(isPlayerOutOfBounds(spawnWidth, spawnHeight, spawnDepth))
@@ -115,8 +209,8 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
             rumMap.getSpawnRotation(),
             rumMap.getSpawnPitch(),
             rumMap.getMetadataMap(),
-            rumMap.getExtendedBlocks(),
-            rumMap.getExtendedBlockLength()
+            rumMap.getExtendedBlockLength(),
+            snapshotBlockPlanes(rumMap.blockPlanes)
         );
     }
 
@@ -132,14 +226,52 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
         return metadata;
     }
 
-    private static byte[][] extendBlocks(byte[] blocks, int blockLength) {
-        byte[][] extendedBlocks;
+    private static PagedByteArray[] extendBlocks(PagedByteArray blocks, int blockLength) {
+        PagedByteArray[] blockPlanes;
+
+        blockPlanes = new PagedByteArray[blockLength];
+        blockPlanes[0] = blocks;
+        for(int i = 1;i < blockLength;i++)
+            blockPlanes[i] = new PagedByteArray(blocks.length());
+        return blockPlanes;
+    }
+
+    private static PagedByteArray[] toBlockPlanes(byte[][] blockData, int blockLength)
+            throws InvalidMapException {
+        PagedByteArray[] blockPlanes;
+        byte[] column;
 
-        extendedBlocks = new byte[blocks.length][blockLength];
-        for(int i = 0;i < blocks.length;i++) {
-            extendedBlocks[i][0] = blocks[i];
+        if(blockLength > MAX_BLOCK_LENGTH || blockLength < MIN_BLOCK_LENGTH)
+            throw new InvalidMapException("Invalid block length");
+
+        for(int i = 0;i < blockData.length;i++) {
+            if(blockData[i].length != blockLength)
+                throw new InvalidMapException("blockData inner array length does not equal blockLength");
         }
-        return extendedBlocks;
+
+        blockPlanes = new PagedByteArray[blockLength];
+        column = new byte[Math.min(TRANSFER_BLOCKS, blockData.length)];
+        for(int j = 0;j < blockLength;j++) {
+            blockPlanes[j] = new PagedByteArray(blockData.length);
+            for(int start = 0;start < blockData.length;start += column.length) {
+                int count;
+
+                count = Math.min(column.length, blockData.length - start);
+                for(int i = 0;i < count;i++)
+                    column[i] = blockData[start + i][j];
+                blockPlanes[j].set(start, column, 0, count);
+            }
+        }
+        return blockPlanes;
+    }
+
+    private static PagedByteArray[] snapshotBlockPlanes(PagedByteArray[] blockPlanes) {
+        PagedByteArray[] snapshot;
+
+        snapshot = new PagedByteArray[blockPlanes.length];
+        for(int j = 0;j < blockPlanes.length;j++)
+            snapshot[j] = blockPlanes[j].snapshot();
+        return snapshot;
     }
 
     public RUMMinecraftMap(MinecraftMap map) throws InvalidMapException {
@@ -153,28 +285,56 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
             map.getSpawnRotation(),
             map.getSpawnPitch(),
             getDefaultMetadata(),
-            extendBlocks(map.getBlocks(), 2),
-            2
+            2,
+            extendBlocks(copyBlocks(map), 2)
         );
     }
 
 
-    private static RUMMinecraftMap loadVersion1(InputStream in)
-            throws IOException, EOFException, MapFormatException, NotImplementedException {
-        RUMMinecraftMap map;
+    public static class Header extends MapHeader {
+        private final Map<String, byte[]> metadata;
+        private final short blockLength;
+
+        protected Header(int width, int height, int depth,
+                         int spawnWidth, int spawnHeight, int spawnDepth,
+                         int spawnRotation, int spawnPitch,
+                         Map<String, byte[]> metadata,
+                         int blockLength) {
+            super(
+                width, height, depth,
+                spawnWidth, spawnHeight, spawnDepth,
+                spawnRotation, spawnPitch
+            );
+            this.metadata = metadata;
+            this.blockLength = (short)blockLength;
+        }
+
+        public byte[] getMetadata(String name) {
+            return metadata.get(name);
+        }
+
+        public boolean hasMetadata(String name) {
+            return metadata.containsKey(name);
+        }
+
+        public Map<String, byte[]> getMetadataMap() {
+            return Collections.synchronizedMap(
+                new HashMap<String, byte[]>(metadata)
+            );
+        }
+
+        public short getExtendedBlockLength() {
+            return blockLength;
+        }
+    }
+
+    private static Header readHeaderVersion1(CodecInputStream din)
+            throws IOException, EOFException {
         int width, height, depth;
         int spawnWidth, spawnHeight, spawnDepth;
         short spawnRotation, spawnPitch;
         Map<String, byte[]> metadata;
-        byte[][] blockData;
         short blockLength;
-        GZIPInputStream gin;
-
-        gin = new GZIPInputStream(in);
-        ExtendedDataInputStream din;
-
-        din = new ExtendedDataInputStream(gin);
-        BigInteger totalBlocks;
 
         {
             int metadataLength;
@@ -189,33 +349,14 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
 
                 {
                     byte[] nameData;
-                    int read = 0, nameLength;
-
-                    nameLength = din.readLEUnsignedShort();
-                    nameData = new byte[nameLength];
-                    while(read < nameLength) {
-                        int nread;
-                        nread = din.read(nameData, read, nameLength - read);
-                        if(nread == -1)
-                            throw new EOFException();
-                        read += nread;
-                    }
+
+                    nameData = new byte[din.readLEUnsignedShort()];
+                    din.readFully(nameData);
                     name = new String(nameData);
                 }
 
-                {
-                    int read = 0, payloadLength;
-
-                    payloadLength = din.readLEUnsignedShort();
-                    payload = new byte[payloadLength];
-                    while(read < payloadLength) {
-                        int nread;
-                        nread = din.read(payload, read, payloadLength - read);
-                        if(nread == -1)
-                            throw new EOFException();
-                        read += nread;
-                    }
-                }
+                payload = new byte[din.readLEUnsignedShort()];
+                din.readFully(payload);
 
                 metadata.put(name, payload);
             }
@@ -229,53 +370,125 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
         spawnHeight = din.readLEUnsignedShort();
         spawnDepth = din.readLEUnsignedShort();
 
-        spawnRotation = (short)din.readLEUnsignedByte();
-        spawnPitch = (short)din.readLEUnsignedByte();
+        spawnRotation = (short)din.readUnsignedByte();
+        spawnPitch = (short)din.readUnsignedByte();
 
-        blockLength = (short)(2 + din.readLEUnsignedByte());
+        blockLength = (short)(2 + din.readUnsignedByte());
 
-        totalBlocks = BigInteger.valueOf(width)
-            .multiply(BigInteger.valueOf(height))
-            .multiply(BigInteger.valueOf(depth));
+        return new Header(
+            width, height, depth,
+            spawnWidth, spawnHeight, spawnDepth,
+            spawnRotation, spawnPitch,
+            metadata, blockLength
+        );
+    }
 
-        if(totalBlocks.compareTo(BigInteger.valueOf(Integer.MAX_VALUE)) == 1)
-            throw new MapFormatException("Width, height, and depth are too long");
+    private static void visitBlocksVersion1(CodecInputStream din, Header header,
+                                            BlockVisitor visitor, int chunkSize)
+            throws IOException, EOFException, MapFormatException {
+        long totalBlocks, blocksRead;
+        byte[] transfer, column;
+        byte[][] extendedColumns;
+        short blockLength;
+        int chunk;
 
-        {
-            int read = 0, blocksRead = 0, intTotalBlocks;
-            BigInteger dataLength, currentDataLength;
-
-            intTotalBlocks = totalBlocks.intValue();
-
-            dataLength = din.readLEUnsignedBigInteger(8);
-            currentDataLength = totalBlocks.multiply(BigInteger.valueOf(blockLength));
-
-            if(dataLength.compareTo(currentDataLength) != 0)
-                throw new MapFormatException("Block data array has incorrect size");
-
-            blockData = new byte[intTotalBlocks][blockLength];
-            while(blocksRead < intTotalBlocks) {
-                    int nread;
-                    nread = din.read(blockData[blocksRead], read, blockLength - read);
-                    if(nread == -1)
-                        throw new EOFException();
-                    read += nread;
-                    if(read == blockLength) {
-                        read = 0;
-                        blocksRead++;
-                    }
+        BlockStreams.checkChunkSize(chunkSize);
+        blockLength = header.getExtendedBlockLength();
+        totalBlocks = header.getTotalBlocks();
+
+        if(din.readLELong() != totalBlocks * blockLength)
+            throw new MapFormatException("Block data array has incorrect size");
+
+        chunk = (int)Math.min(
+            Math.min(chunkSize, Integer.MAX_VALUE / blockLength),
+            Math.max(totalBlocks, 1)
+        );
+        transfer = new byte[chunk * blockLength];
+        column = new byte[chunk];
+        extendedColumns = new byte[blockLength - 1][chunk];
+        blocksRead = 0;
+        while(blocksRead < totalBlocks) {
+            int count;
+
+            count = (int)Math.min(chunk, totalBlocks - blocksRead);
+            din.readFully(transfer, 0, count * blockLength);
+            for(int i = 0, k = 0;i < count;i++, k += blockLength)
+                column[i] = transfer[k];
+            for(int j = 1;j < blockLength;j++) {
+                byte[] extendedColumn;
+
+                extendedColumn = extendedColumns[j - 1];
+                for(int i = 0, k = j;i < count;i++, k += blockLength)
+                    extendedColumn[i] = transfer[k];
             }
+            BlockStreams.visitBlocks(
+                visitor, header, blocksRead,
+                column, extendedColumns, count
+            );
+            blocksRead += count;
+        }
+
+        if(din.read() != -1)
+            throw new EOFException();
+    }
+
+    private static RUMMinecraftMap loadVersion1(InputStream in, LoadOptions options,
+                                                IOTracker tracker)
+            throws IOException, EOFException, MapFormatException, NotImplementedException {
+        RUMMinecraftMap map;
+        Header header;
+        final PagedByteArray[] blockPlanes;
+        short blockLength;
+        CodecInputStream din;
+        ReleasableInputStream gis;
+
+        gis = options.createGZIPInputStream(in);
+        try {
+            din = new CodecInputStream(tracker.inflated(gis));
+            header = readHeaderVersion1(din);
+            blockLength = header.getExtendedBlockLength();
+
+            if(header.getTotalBlocks() > Integer.MAX_VALUE)
+                throw new MapFormatException("Width, height, and depth are too long");
 
-            if(din.read() != -1)
-                throw new EOFException();
+            tracker.enter(IOStatistics.Phase.ALLOCATION);
+            blockPlanes = new PagedByteArray[blockLength];
+            for(int j = 0;j < blockLength;j++)
+                blockPlanes[j] = new PagedByteArray((int)header.getTotalBlocks());
+
+            tracker.enter(IOStatistics.Phase.DECOMPRESSION);
+            visitBlocksVersion1(din, header, new BlockVisitor() {
+                public void visitHeader(MapHeader header) {
+                }
+
+                public void visitBlocks(long offset,
+                                        int width, int height, int depth,
+                                        byte[] blocks, byte[][] extendedBlocks,
+                                        int count) {
+                    blockPlanes[0].set((int)offset, blocks, 0, count);
+                    for(int j = 1;j < blockPlanes.length;j++)
+                        blockPlanes[j].set((int)offset, extendedBlocks[j - 1], 0, count);
+                }
+            }, TRANSFER_BLOCKS);
+            tracker.blocks(header.getTotalBlocks());
+        } finally {
+            gis.release();
         }
+        for(int j = 0;j < blockLength;j++)
+            blockPlanes[j].clearDirty();
 
+        tracker.enter(IOStatistics.Phase.VALIDATION);
         try {
             map = new RUMMinecraftMap(
-                width, height, depth,
-                spawnWidth, spawnHeight, spawnDepth,
-                spawnRotation, spawnPitch,
-                metadata, blockData, blockLength
+                header.getWidth(),
+                header.getHeight(),
+                header.getDepth(),
+                header.getSpawnWidth(),
+                header.getSpawnHeight(),
+                header.getSpawnDepth(),
+                header.getSpawnRotation(),
+                header.getSpawnPitch(),
+                header.metadata, blockLength, blockPlanes
             );
         } catch(InvalidMapException e) {
             throw new MapFormatException(e);
@@ -286,56 +499,187 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
 
     public static RUMMinecraftMap load(InputStream in)
             throws IOException, MapFormatException, NotImplementedException {
+        return load(in, new LoadOptions());
+    }
+
+    public static RUMMinecraftMap load(InputStream in, LoadOptions options)
+            throws IOException, MapFormatException, NotImplementedException {
         RUMMinecraftMap map;
-        ExtendedDataInputStream dis;
+        CodecInputStream dis;
+        IOTracker tracker;
         long version;
 
-        dis = new ExtendedDataInputStream(in);
+        tracker = IOTracker.startLoad(NAME);
+        dis = new CodecInputStream(tracker.source(in));
         try {
             version = dis.readUnsignedInt();
             if(version == VERSION_1) {
-                map = loadVersion1(dis);
+                map = loadVersion1(dis, options, tracker);
             } else {
                 throw new NotImplementedException("Unsupported file version");
             }
+        } catch(IOException e) {
+            throw tracker.failed(e);
+        } catch(RuntimeException e) {
+            throw tracker.failed(e);
         } finally {
             dis.close();
         }
+        tracker.completed();
         return map;
     }
 
+    private static void visitVersion1(InputStream in, BlockVisitor visitor, int chunkSize)
+            throws IOException, EOFException, MapFormatException {
+        PooledGZIPInputStream gis;
+        CodecInputStream din;
+        Header header;
+
+        gis = new PooledGZIPInputStream(in, null);
+        try {
+            din = new CodecInputStream(gis);
+            header = readHeaderVersion1(din);
+            visitor.visitHeader(header);
+            visitBlocksVersion1(din, header, visitor, chunkSize);
+        } finally {
+            gis.release();
+        }
+    }
+
+    public static void visit(InputStream in, BlockVisitor visitor, int chunkSize)
+            throws IOException, MapFormatException, NotImplementedException {
+        CodecInputStream dis;
+        long version;
+
+        dis = new CodecInputStream(in);
+        version = dis.readUnsignedInt();
+        if(version == VERSION_1) {
+            visitVersion1(dis, visitor, chunkSize);
+        } else {
+            throw new NotImplementedException("Unsupported file version");
+        }
+    }
+
+    public static void visit(InputStream in, BlockVisitor visitor)
+            throws IOException, MapFormatException, NotImplementedException {
+        visit(in, visitor, BlockVisitor.DEFAULT_CHUNK_SIZE);
+    }
+
+    public static void visit(File file, BlockVisitor visitor, int chunkSize)
+            throws IOException, MapFormatException, NotImplementedException {
+        visit(file.toPath(), visitor, chunkSize);
+    }
+
+    public static void visit(Path path, BlockVisitor visitor, int chunkSize)
+            throws IOException, MapFormatException, NotImplementedException {
+        InputStream fis;
+
+        fis = new ChannelInputStream(path);
+        try {
+            visit(fis, visitor, chunkSize);
+        } catch(EOFException e) {
+            throw new MapFormatException("Map file incomplete", e);
+        } finally {
+            fis.close();
+        }
+    }
+
+    public static void visit(File file, BlockVisitor visitor)
+            throws IOException, MapFormatException, NotImplementedException {
+        visit(file.toPath(), visitor);
+    }
+
+    public static void visit(Path path, BlockVisitor visitor)
+            throws IOException, MapFormatException, NotImplementedException {
+        visit(path, visitor, BlockVisitor.DEFAULT_CHUNK_SIZE);
+    }
+
+    public static Header readHeader(InputStream in)
+            throws IOException, MapFormatException, NotImplementedException {
+        CodecInputStream dis;
+        Header header;
+        long version;
+
+        dis = new CodecInputStream(in);
+        version = dis.readUnsignedInt();
+        if(version == VERSION_1) {
+            PooledGZIPInputStream gis;
+
+            gis = new PooledGZIPInputStream(dis, null);
+            try {
+                header = readHeaderVersion1(new CodecInputStream(gis));
+            } finally {
+                gis.release();
+            }
+        } else {
+            throw new NotImplementedException("Unsupported file version");
+        }
+        return header;
+    }
+
+    public static Header readHeader(File file)
+            throws IOException, MapFormatException, NotImplementedException {
+        return readHeader(file.toPath());
+    }
+
+    public static Header readHeader(Path path)
+            throws IOException, MapFormatException, NotImplementedException {
+        Header header;
+        InputStream fis;
+
+        fis = new ChannelInputStream(path);
+        try {
+            header = readHeader(fis);
+        } catch(EOFException e) {
+            throw new MapFormatException("Map header incomplete", e);
+        } finally {
+            fis.close();
+        }
+        return header;
+    }
+
     public static RUMMinecraftMap load(File file)
             throws IOException, MapFormatException, NotImplementedException {
+        return load(file.toPath());
+    }
+
+    public static RUMMinecraftMap load(Path path)
+            throws IOException, MapFormatException, NotImplementedException {
+        return load(path, new LoadOptions());
+    }
+
+    public static RUMMinecraftMap load(File file, LoadOptions options)
+            throws IOException, MapFormatException, NotImplementedException {
+        return load(file.toPath(), options);
+    }
+
+    public static RUMMinecraftMap load(Path path, LoadOptions options)
+            throws IOException, MapFormatException, NotImplementedException {
         RUMMinecraftMap map;
-        FileInputStream fis;
+        InputStream in;
 
-        fis = new FileInputStream(file);
+        in = new ChannelInputStream(path, options.getBufferSize());
         try {
-            map = load(fis);
+            map = load(in, options);
         } catch(EOFException e) {
             throw new MapFormatException("Map file incomplete", e);
         } finally {
-            fis.close();
+            in.close();
         }
         return map;
     }
 
-    private void saveVersion1(OutputStream out)
-            throws IOException, NotImplementedException {
-        GZIPOutputStream gos;
-        ExtendedDataOutputStream dos;
-
-        gos = new GZIPOutputStream(out);
-        dos = new ExtendedDataOutputStream(gos);
-        dos.writeLEUnsignedShort(metadata.size());
+    private static void writeHeaderVersion1(CodecOutputStream dos, Header header)
+            throws IOException {
+        dos.writeLEUnsignedShort(header.metadata.size());
         {
             Collection<byte[]> payloads;
             Collection<String> names;
             Iterator<byte[]> payloadIterator;
             Iterator<String> nameIterator;
 
-            payloads = metadata.values();
-            names = metadata.keySet();
+            payloads = header.metadata.values();
+            names = header.metadata.keySet();
             payloadIterator = payloads.iterator();
             nameIterator = names.iterator();
             while(nameIterator.hasNext() && payloadIterator.hasNext()) {
@@ -352,43 +696,176 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
             }
         }
 
-        dos.writeLEUnsignedShort(width);
-        dos.writeLEUnsignedShort(height);
-        dos.writeLEUnsignedShort(depth);
+        dos.writeLEUnsignedShort(header.getWidth());
+        dos.writeLEUnsignedShort(header.getHeight());
+        dos.writeLEUnsignedShort(header.getDepth());
 
-        dos.writeLEUnsignedShort(spawnWidth);
-        dos.writeLEUnsignedShort(spawnHeight);
-        dos.writeLEUnsignedShort(spawnDepth);
+        dos.writeLEUnsignedShort(header.getSpawnWidth());
+        dos.writeLEUnsignedShort(header.getSpawnHeight());
+        dos.writeLEUnsignedShort(header.getSpawnDepth());
 
-        dos.writeLEUnsignedByte(spawnRotation);
-        dos.writeLEUnsignedByte(spawnPitch);
-        dos.writeLEUnsignedByte((short)(blockLength - 2));
+        dos.writeByte(header.getSpawnRotation());
+        dos.writeByte(header.getSpawnPitch());
+        dos.writeByte((short)(header.getExtendedBlockLength() - 2));
+    }
 
-        {
-            BigInteger blockDataLength;
+    private void saveVersion1(OutputStream out, SaveOptions options, IOTracker tracker)
+            throws IOException, NotImplementedException {
+        FinishableOutputStream gos;
+        CodecOutputStream dos;
 
-            blockDataLength = BigInteger.valueOf(blockData.length)
-                    .multiply(BigInteger.valueOf(blockLength));
+        gos = options.createGZIPOutputStream(out);
+        try {
+            dos = new CodecOutputStream(tracker.deflated(gos));
+            writeHeaderVersion1(dos, new Header(
+                width, height, depth,
+                spawnWidth, spawnHeight, spawnDepth,
+                spawnRotation, spawnPitch,
+                metadata, blockLength
+            ));
+
+            {
+                int totalBlocks, blocksWritten = 0;
+                byte[] transfer, column;
+
+                totalBlocks = blockPlanes[0].length();
+                dos.writeLELong((long)totalBlocks * blockLength);
+                tracker.enter(IOStatistics.Phase.COMPRESSION);
+                transfer = new byte[TRANSFER_BLOCKS * blockLength];
+                column = new byte[TRANSFER_BLOCKS];
+                while(blocksWritten < totalBlocks) {
+                    int count;
+
+                    count = Math.min(TRANSFER_BLOCKS, totalBlocks - blocksWritten);
+                    for(int j = 0;j < blockLength;j++) {
+                        blockPlanes[j].get(blocksWritten, column, 0, count);
+                        for(int i = 0, k = j;i < count;i++, k += blockLength)
+                            transfer[k] = column[i];
+                    }
+                    dos.write(transfer, 0, count * blockLength);
+                    blocksWritten += count;
+                }
+                tracker.blocks(totalBlocks);
+            }
+            dos.flush();
+            gos.finish();
+        } finally {
+            gos.release();
+        }
+    }
+
+    private static class StreamWriterVersion1 extends MapStreamWriter {
+        private CodecOutputStream dos;
+        private FinishableOutputStream gos;
+        private byte[] transfer;
+        private short blockLength;
+
+        StreamWriterVersion1(OutputStream out) {
+            super(out);
+        }
 
-            dos.writeLEUnsignedBigInteger(blockDataLength, 8);
-            for(int i = 0;i < blockData.length;i++) {
-                dos.write(blockData[i]);
+        protected void writeHeader(MapHeader header) throws IOException {
+            Map<String, byte[]> metadata;
+
+            if(header instanceof Header) {
+                metadata = ((Header)header).metadata;
+                blockLength = ((Header)header).getExtendedBlockLength();
+            } else {
+                metadata = getDefaultMetadata();
+                blockLength = MIN_BLOCK_LENGTH;
             }
+
+            dos = new CodecOutputStream(out);
+            dos.writeUnsignedInt(VERSION_1);
+            dos.flush();
+            gos = new PooledGZIPOutputStream(out, null);
+            dos = new CodecOutputStream(gos);
+            writeHeaderVersion1(dos, new Header(
+                header.getWidth(),
+                header.getHeight(),
+                header.getDepth(),
+                header.getSpawnWidth(),
+                header.getSpawnHeight(),
+                header.getSpawnDepth(),
+                header.getSpawnRotation(),
+                header.getSpawnPitch(),
+                metadata, blockLength
+            ));
+            dos.writeLELong(header.getTotalBlocks() * blockLength);
         }
-        dos.flush();
-        gos.finish();
+
+        protected void writeBlocks(byte[] blocks, byte[][] extendedBlocks, int count)
+                throws IOException {
+            int start;
+
+            start = 0;
+            if(transfer == null)
+                transfer = new byte[TRANSFER_BLOCKS * blockLength];
+            while(start < count) {
+                int n;
+
+                n = Math.min(TRANSFER_BLOCKS, count - start);
+                for(int i = 0, k = 0;i < n;i++, k += blockLength)
+                    transfer[k] = blocks[start + i];
+                for(int j = 1;j < blockLength;j++) {
+                    if(extendedBlocks != null && j - 1 < extendedBlocks.length) {
+                        byte[] extendedBlock;
+
+                        extendedBlock = extendedBlocks[j - 1];
+                        for(int i = 0, k = j;i < n;i++, k += blockLength)
+                            transfer[k] = extendedBlock[start + i];
+                    } else {
+                        for(int i = 0, k = j;i < n;i++, k += blockLength)
+                            transfer[k] = 0;
+                    }
+                }
+                dos.write(transfer, 0, n * blockLength);
+                start += n;
+            }
+        }
+
+        protected void finishBlocks() throws IOException {
+            dos.flush();
+            gos.finish();
+        }
+
+        @Override
+        public void release() {
+            if(gos != null)
+                gos.release();
+        }
+    }
+
+    public static MapStreamWriter createStreamWriter(OutputStream out) {
+        return new StreamWriterVersion1(out);
     }
 
     public void save(OutputStream out, long version)
             throws IOException, NotImplementedException {
-        ExtendedDataOutputStream dos;
+        save(out, version, new SaveOptions());
+    }
 
-        dos = new ExtendedDataOutputStream(out);
-        dos.writeUnsignedInt(version);
-        if(version == SUPPORTED_VERSIONS[0])
-            saveVersion1(out);
-        else
-            throw new NotImplementedException("Cannot save map, unsupported version");
+    public void save(OutputStream out, long version, SaveOptions options)
+            throws IOException, NotImplementedException {
+        CodecOutputStream dos;
+        IOTracker tracker;
+
+        tracker = IOTracker.startSave(NAME);
+        try {
+            out = tracker.sink(out);
+            dos = new CodecOutputStream(out);
+            dos.writeUnsignedInt(version);
+            dos.flush();
+            if(version == SUPPORTED_VERSIONS[0])
+                saveVersion1(out, options, tracker);
+            else
+                throw new NotImplementedException("Cannot save map, unsupported version");
+        } catch(IOException e) {
+            throw tracker.failed(e);
+        } catch(RuntimeException e) {
+            throw tracker.failed(e);
+        }
+        tracker.completed();
     }
 
     @Override
@@ -403,16 +880,28 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
         save(out, CURRENT_VERSION);
     }
 
+    @Override
+    public void save(OutputStream out, SaveOptions options)
+            throws IOException, NotImplementedException {
+        save(out, CURRENT_VERSION, options);
+    }
+
     public void save(File file, long version)
             throws IOException, NotImplementedException {
+        save(file.toPath(), version);
+    }
+
+    public void save(Path path, long version)
+            throws IOException, NotImplementedException {
         OutputStream fos;
         
-        fos = new FileOutputStream(file);
+        fos = new ChannelOutputStream(path);
         try {
             save(fos, version);
         } finally {
             fos.close();
         }
+        fireMapSaved(path);
     }
 
     public static boolean isVersionSupported(long version) {
@@ -483,7 +972,7 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
             throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
 
         offset = getBlockOffset(width, height, depth);
-        special = ((blockData[offset][1] & SPECIAL_BIT) != 0);
+        special = ((blockPlanes[1].get(offset) & SPECIAL_BIT) != 0);
         return special;
     }
 
@@ -495,7 +984,7 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
             throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
 
         offset = getBlockOffset(width, height, depth);
-        solid = ((blockData[offset][1] & SOLID_BIT) != 0);
+        solid = ((blockPlanes[1].get(offset) & SOLID_BIT) != 0);
         return solid;
     }
 
@@ -507,7 +996,7 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
             throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
 
         offset = getBlockOffset(width, height, depth);
-        physics = ((blockData[offset][1] & PHYSICS_BIT) != 0);
+        physics = ((blockPlanes[1].get(offset) & PHYSICS_BIT) != 0);
         return physics;
     }
 
@@ -519,7 +1008,7 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
             throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
 
         offset = getBlockOffset(width, height, depth);
-        message = ((blockData[offset][1] & MESSAGE_BIT) != 0);
+        message = ((blockPlanes[1].get(offset) & MESSAGE_BIT) != 0);
         return message;
     }
 
@@ -531,7 +1020,7 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
             throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
 
         offset = getBlockOffset(width, height, depth);
-        portal = ((blockData[offset][1] & PORTAL_BIT) != 0);
+        portal = ((blockPlanes[1].get(offset) & PORTAL_BIT) != 0);
         return portal;
     }
 
@@ -543,7 +1032,7 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
             throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
 
         offset = getBlockOffset(width, height, depth);
-        scripted = ((blockData[offset][1] & SCRIPTED_BIT) != 0);
+        scripted = ((blockPlanes[1].get(offset) & SCRIPTED_BIT) != 0);
         return scripted;
     }
 
@@ -555,7 +1044,7 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
 
         offset = getBlockOffset(width, height, depth);
 
-        return blockData[offset][0];
+        return blockPlanes[0].get(offset);
     }
 
     public void setSpawn(int spawnWidth, int spawnHeight, int spawnDepth,
@@ -574,6 +1063,7 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
         this.spawnDepth = spawnDepth;
         this.spawnRotation = (short)spawnRotation;
         this.spawnPitch = (short)spawnPitch;
+        fireSpawnChanged();
     }
 
     public void setBlock(int width, int height, int depth, byte value,
@@ -584,13 +1074,14 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
                          boolean portal,
                          boolean scripted) {
         int offset;
-        byte extendedData = 0;
+        byte oldValue, extendedData = 0;
 
         if(isOutOfBounds(width, height, depth))
             throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
 
         offset = getBlockOffset(width, height, depth);
-        blockData[offset][0] = value;
+        oldValue = blockPlanes[0].get(offset);
+        blockPlanes[0].set(offset, value);
 
         if(special)
             extendedData |= SPECIAL_BIT;
@@ -604,9 +1095,10 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
             extendedData |= MESSAGE_BIT;
         if(scripted)
             extendedData |= SCRIPTED_BIT;
-        blockData[offset][1] = extendedData;
+        blockPlanes[1].set(offset, extendedData);
         for(int i = 2;i < blockLength;i++)
-            blockData[offset][i] = 0;
+            blockPlanes[i].set(offset, (byte)0);
+        fireBlockChanged(width, height, depth, oldValue, value, extendedData);
     }
 
     protected void setBlockExtendable(int width, int height, int depth, byte value,
@@ -617,13 +1109,14 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
                                       boolean portal,
                                       boolean scripted) {
         int offset;
-        byte extendedData = 0;
+        byte oldValue, extendedData = 0;
 
         if(isOutOfBounds(width, height, depth))
             throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
 
         offset = getBlockOffset(width, height, depth);
-        blockData[offset][0] = value;
+        oldValue = blockPlanes[0].get(offset);
+        blockPlanes[0].set(offset, value);
 
         if(special)
             extendedData |= SPECIAL_BIT;
@@ -637,7 +1130,8 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
             extendedData |= MESSAGE_BIT;
         if(scripted)
             extendedData |= SCRIPTED_BIT;
-        blockData[offset][1] = extendedData;
+        blockPlanes[1].set(offset, extendedData);
+        fireBlockChanged(width, height, depth, oldValue, value, extendedData);
     }
 
     public void setBlock(int width, int height, int depth, byte value) {
@@ -647,17 +1141,168 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
             throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
 
         offset = getBlockOffset(width, height, depth);
-        blockData[offset][0] = value;
+        if(hasChangeListeners()) {
+            byte oldValue;
+
+            oldValue = blockPlanes[0].get(offset);
+            blockPlanes[0].set(offset, value);
+            for(int i = 1;i < blockLength;i++)
+                blockPlanes[i].set(offset, (byte)0);
+            fireBlockChanged(width, height, depth, oldValue, value, (byte)0);
+        } else {
+            blockPlanes[0].set(offset, value);
+            for(int i = 1;i < blockLength;i++)
+                blockPlanes[i].set(offset, (byte)0);
+        }
+    }
+
+    @Override
+    public void setBlocks(BlockChangeBatch batch) {
+        int[] widths, heights, depths;
+        byte[] types;
+        boolean listeners;
+        int size;
+
+        checkBatch(batch);
+        widths = batch.getWidths();
+        heights = batch.getHeights();
+        depths = batch.getDepths();
+        types = batch.getTypes();
+        size = batch.size();
+        listeners = hasChangeListeners();
+        for(int i = 0;i < size;i++) {
+            int offset;
+            byte oldValue;
+
+            offset = getBlockOffset(widths[i], heights[i], depths[i]);
+            oldValue = listeners ? blockPlanes[0].get(offset) : 0;
+            blockPlanes[0].set(offset, types[i]);
+            for(int j = 1;j < blockLength;j++)
+                blockPlanes[j].set(offset, (byte)0);
+            if(listeners)
+                fireBlockChanged(widths[i], heights[i], depths[i], oldValue, types[i], (byte)0);
+        }
+    }
+
+    private void clearExtendedData(int offset, int length) {
         for(int i = 1;i < blockLength;i++)
-            blockData[offset][i] = 0;
+            blockPlanes[i].fill(offset, offset + length, (byte)0);
+    }
+
+    @Override
+    public void fillRegion(int width, int height, int depth,
+                           int sizeWidth, int sizeHeight, int sizeDepth,
+                           byte type) {
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        for(int h = height;h < height + sizeHeight;h++) {
+            for(int d = depth;d < depth + sizeDepth;d++) {
+                int offset;
+
+                offset = getBlockOffset(width, h, d);
+                blockPlanes[0].fill(offset, offset + sizeWidth, type);
+                clearExtendedData(offset, sizeWidth);
+            }
+        }
+        fireRegionFilled(width, height, depth, sizeWidth, sizeHeight, sizeDepth, type);
+    }
+
+    @Override
+    public int replaceInRegion(int width, int height, int depth,
+                               int sizeWidth, int sizeHeight, int sizeDepth,
+                               byte from, byte to) {
+        byte[] row;
+        int replaced = 0;
+
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        row = new byte[sizeWidth];
+        for(int h = height;h < height + sizeHeight;h++) {
+            for(int d = depth;d < depth + sizeDepth;d++) {
+                int offset;
+
+                offset = getBlockOffset(width, h, d);
+                blockPlanes[0].get(offset, row, 0, sizeWidth);
+                for(int i = 0;i < sizeWidth;i++) {
+                    if(row[i] == from) {
+                        blockPlanes[0].set(offset + i, to);
+                        for(int j = 1;j < blockLength;j++)
+                            blockPlanes[j].set(offset + i, (byte)0);
+                        fireBlockChanged(width + i, h, d, from, to, (byte)0);
+                        replaced++;
+                    }
+                }
+            }
+        }
+        return replaced;
+    }
+
+    @Override
+    public void readRegion(int width, int height, int depth,
+                           int sizeWidth, int sizeHeight, int sizeDepth,
+                           byte[] dest, int offset) {
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        checkBuffer(dest, offset, sizeWidth, sizeHeight, sizeDepth);
+        for(int h = height;h < height + sizeHeight;h++) {
+            for(int d = depth;d < depth + sizeDepth;d++) {
+                blockPlanes[0].get(getBlockOffset(width, h, d), dest, offset, sizeWidth);
+                offset += sizeWidth;
+            }
+        }
+    }
+
+    @Override
+    public void writeRegion(int width, int height, int depth,
+                            int sizeWidth, int sizeHeight, int sizeDepth,
+                            byte[] src, int offset) {
+        checkRegion(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
+        checkBuffer(src, offset, sizeWidth, sizeHeight, sizeDepth);
+        for(int h = height;h < height + sizeHeight;h++) {
+            for(int d = depth;d < depth + sizeDepth;d++) {
+                int blockOffset;
+
+                blockOffset = getBlockOffset(width, h, d);
+                blockPlanes[0].set(blockOffset, src, offset, sizeWidth);
+                clearExtendedData(blockOffset, sizeWidth);
+                offset += sizeWidth;
+            }
+        }
+        fireRegionChanged(width, height, depth, sizeWidth, sizeHeight, sizeDepth);
     }
 
     public void setMetadata(String name, byte[] value) {
         metadata.put(name, value);
+        fireAttributeChanged(name);
     }
 
     public void deleteMetadata(String name) {
         metadata.remove(name);
+        fireAttributeChanged(name);
+    }
+
+    @Override
+    void restoreBlock(int width, int height, int depth, byte type, byte flags) {
+        int offset;
+
+        if(isOutOfBounds(width, height, depth))
+            throw new IndexOutOfBoundsException("attempting to access block outside map boundries");
+
+        offset = getBlockOffset(width, height, depth);
+        blockPlanes[0].set(offset, type);
+        blockPlanes[1].set(offset, flags);
+        for(int i = 2;i < blockLength;i++)
+            blockPlanes[i].set(offset, (byte)0);
+    }
+
+    @Override
+    byte[] getAttribute(String name) {
+        return metadata.get(name);
+    }
+
+    @Override
+    void setAttribute(String name, byte[] value) {
+        if(value == null)
+            metadata.remove(name);
+        else
+            metadata.put(name, value);
     }
 
     public boolean hasMetadata(String name) {
@@ -665,24 +1310,100 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
     }
 
     public byte[] getBlocks() {
-        byte[] blocks;
+        return blockPlanes[0].toByteArray();
+    }
 
-        blocks = new byte[blockData.length];
-        for(int i = 0;i < blockData.length;i++)
-            blocks[i] = blockData[i][0];
-        return blocks;
+    @Override
+    protected PagedByteArray[] getBlockPlanes() {
+        return blockPlanes.clone();
+    }
+
+    // Stand-ins for the protected blockData field, which held one byte[]
+    // per block before the planes replaced it. getBlockData returns a copy,
+    // so changes only reach the map through setBlockData.
+    @Deprecated
+    protected byte[][] getBlockData() {
+        byte[][] blockData;
+        byte[] column;
+        int length;
+
+        length = blockPlanes[0].length();
+        blockData = new byte[length][blockLength];
+        column = new byte[Math.min(TRANSFER_BLOCKS, length)];
+        for(int j = 0;j < blockLength;j++) {
+            for(int start = 0;start < length;start += column.length) {
+                int count;
+
+                count = Math.min(column.length, length - start);
+                blockPlanes[j].get(start, column, 0, count);
+                for(int i = 0;i < count;i++)
+                    blockData[start + i][j] = column[i];
+            }
+        }
+        return blockData;
+    }
+
+    @Deprecated
+    protected void setBlockData(byte[][] blockData) throws InvalidMapException {
+        PagedByteArray[] planes;
+        byte[] column;
+
+        if(blockData.length != blockPlanes[0].length())
+            throw new InvalidMapException("blockData array length does not equal total blocks");
+
+        planes = toBlockPlanes(blockData, blockLength);
+        column = new byte[Math.min(TRANSFER_BLOCKS, blockData.length)];
+        for(int j = 0;j < blockLength;j++) {
+            for(int start = 0;start < blockData.length;start += column.length) {
+                int count;
+
+                count = Math.min(column.length, blockData.length - start);
+                planes[j].get(start, column, 0, count);
+                blockPlanes[j].set(start, column, 0, count);
+            }
+        }
+    }
+
+    @Override
+    public BlockView getBlockView() {
+        return new PagedBlockView(blockPlanes[0], width, height, depth, null);
+    }
+
+    @Override
+    public void copyBlocksTo(byte[] dest, int offset) {
+        blockPlanes[0].get(0, dest, offset, blockPlanes[0].length());
+    }
+
+    @Override
+    public void copyBlocksTo(ByteBuffer dest) {
+        blockPlanes[0].get(0, dest, blockPlanes[0].length());
     }
 
     public byte[][] getExtendedBlocks() {
         byte[][] newBlocks;
+        int totalBlocks;
 
-        newBlocks = new byte[blockData.length][blockLength];
-        for(int i = 0;i < blockData.length;i++)
-            for(int j = 0;j < blockLength;j++)
-                newBlocks[i][j] = blockData[i][j];
+        totalBlocks = blockPlanes[0].length();
+        newBlocks = new byte[totalBlocks][blockLength];
+        for(int j = 0;j < blockLength;j++) {
+            byte[] plane;
+
+            plane = blockPlanes[j].toByteArray();
+            for(int i = 0;i < totalBlocks;i++)
+                newBlocks[i][j] = plane[i];
+        }
         return newBlocks;
     }
 
+    public byte[][] getExtendedBlockPlanes() {
+        byte[][] newPlanes;
+
+        newPlanes = new byte[blockLength][];
+        for(int j = 0;j < blockLength;j++)
+            newPlanes[j] = blockPlanes[j].toByteArray();
+        return newPlanes;
+    }
+
     public short getExtendedBlockLength() {
         return blockLength;
     }
@@ -696,7 +1417,14 @@ public class RUMMinecraftMap extends MinecraftMap implements Cloneable, Serializ
     @Override
     public RUMMinecraftMap clone() {
         try {
-            return new RUMMinecraftMap(this);
+            return new RUMMinecraftMap(
+                width, height, depth,
+                spawnWidth, spawnHeight, spawnDepth,
+                spawnRotation, spawnPitch,
+                getMetadataMap(),
+                blockLength,
+                snapshotBlockPlanes(blockPlanes)
+            );
         } catch(InvalidMapException e) {
             throw new RuntimeException("Could not clone map", e);
         }
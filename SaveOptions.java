@@ -0,0 +1,143 @@
+package mcmaplib;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+import mcmaplib.util.DeflaterPool;
+import mcmaplib.util.FinishableOutputStream;
+import mcmaplib.util.ParallelGZIPOutputStream;
+import mcmaplib.util.PooledGZIPOutputStream;
+
+public class SaveOptions {
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    private volatile ExecutorService compressionExecutor;
+    private volatile int compressionBlockSize = ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE;
+    private volatile int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private volatile int compressionStrategy = Deflater.DEFAULT_STRATEGY;
+    private volatile int bufferSize = DEFAULT_BUFFER_SIZE;
+    private volatile DeflaterPool deflaterPool;
+    private volatile boolean atomic;
+
+    public SaveOptions() {
+    }
+
+    public static SaveOptions fastest() {
+        return new SaveOptions().setCompressionLevel(Deflater.BEST_SPEED);
+    }
+
+    public static SaveOptions smallest() {
+        return new SaveOptions().setCompressionLevel(Deflater.BEST_COMPRESSION);
+    }
+
+    public boolean isParallelCompression() {
+        return compressionExecutor != null;
+    }
+
+    public SaveOptions setParallelCompression(boolean parallel) {
+        if(parallel)
+            compressionExecutor = ParallelGZIPOutputStream.getDefaultExecutor();
+        else
+            compressionExecutor = null;
+        return this;
+    }
+
+    public ExecutorService getCompressionExecutor() {
+        return compressionExecutor;
+    }
+
+    public SaveOptions setCompressionExecutor(ExecutorService executor) {
+        compressionExecutor = executor;
+        return this;
+    }
+
+    public int getCompressionBlockSize() {
+        return compressionBlockSize;
+    }
+
+    public SaveOptions setCompressionBlockSize(int blockSize) {
+        if(blockSize <= 0 || blockSize > ParallelGZIPOutputStream.MAX_BLOCK_SIZE)
+            throw new IllegalArgumentException("Block size must be between 1 and "
+                                               + ParallelGZIPOutputStream.MAX_BLOCK_SIZE);
+        compressionBlockSize = blockSize;
+        return this;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public SaveOptions setCompressionLevel(int level) {
+        if(level != Deflater.DEFAULT_COMPRESSION
+                && (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION))
+            throw new IllegalArgumentException("Invalid compression level");
+        compressionLevel = level;
+        return this;
+    }
+
+    public int getCompressionStrategy() {
+        return compressionStrategy;
+    }
+
+    public SaveOptions setCompressionStrategy(int strategy) {
+        if(strategy != Deflater.DEFAULT_STRATEGY
+                && strategy != Deflater.FILTERED
+                && strategy != Deflater.HUFFMAN_ONLY)
+            throw new IllegalArgumentException("Invalid compression strategy");
+        compressionStrategy = strategy;
+        return this;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public SaveOptions setBufferSize(int bufferSize) {
+        if(bufferSize <= 0)
+            throw new IllegalArgumentException("Buffer size must be positive");
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    public DeflaterPool getDeflaterPool() {
+        return deflaterPool;
+    }
+
+    public SaveOptions setDeflaterPool(DeflaterPool pool) {
+        deflaterPool = pool;
+        return this;
+    }
+
+    public boolean isAtomic() {
+        return atomic;
+    }
+
+    public SaveOptions setAtomic(boolean atomic) {
+        this.atomic = atomic;
+        return this;
+    }
+
+    public FinishableOutputStream createGZIPOutputStream(OutputStream out)
+            throws IOException {
+        ExecutorService executor;
+
+        executor = compressionExecutor;
+        if(executor != null) {
+            return new ParallelGZIPOutputStream(
+                out, executor,
+                compressionBlockSize,
+                compressionLevel,
+                compressionStrategy,
+                deflaterPool
+            );
+        }
+        return new PooledGZIPOutputStream(
+            out,
+            compressionLevel,
+            compressionStrategy,
+            bufferSize,
+            deflaterPool
+        );
+    }
+}
@@ -0,0 +1,32 @@
+package mcmaplib.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public final class BenchmarkMain {
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine;
+        ChainedOptionsBuilder builder;
+
+        commandLine = new CommandLineOptions(args);
+        if(commandLine.shouldHelp()) {
+            commandLine.showHelp();
+            return;
+        }
+        if(commandLine.shouldList()) {
+            new Runner(commandLine).list();
+            return;
+        }
+
+        builder = new OptionsBuilder().parent(commandLine);
+        if(commandLine.getProfilers().isEmpty())
+            builder.addProfiler(GCProfiler.class);
+        new Runner(builder.build()).run();
+    }
+}
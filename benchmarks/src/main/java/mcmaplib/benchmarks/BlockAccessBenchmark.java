@@ -0,0 +1,129 @@
+package mcmaplib.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import mcmaplib.BlockChangeBatch;
+import mcmaplib.MinecraftMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BlockAccessBenchmark {
+    private static final int RANDOM_ACCESSES = 4096;
+
+    @Param({"fCraft", "MCSharp", "RUM", "Minecraft"})
+    public String format;
+
+    @Param({"64x64x64", "256x64x256", "512x64x512"})
+    public String size;
+
+    private MinecraftMap map;
+    private BlockChangeBatch batch;
+    private int[] widths, heights, depths;
+    private byte[] types;
+    private int width, height, depth;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Random random;
+
+        map = MapFixtures.format(format).convert(MapFixtures.createMap(size));
+        width = map.getWidth();
+        height = map.getHeight();
+        depth = map.getDepth();
+
+        random = new Random(MapFixtures.SEED);
+        widths = new int[RANDOM_ACCESSES];
+        heights = new int[RANDOM_ACCESSES];
+        depths = new int[RANDOM_ACCESSES];
+        types = new byte[RANDOM_ACCESSES];
+        for(int i = 0;i < RANDOM_ACCESSES;i++) {
+            widths[i] = random.nextInt(width);
+            heights[i] = random.nextInt(height);
+            depths[i] = random.nextInt(depth);
+            types[i] = (byte)(1 + random.nextInt(49));
+        }
+
+        batch = new BlockChangeBatch(RANDOM_ACCESSES);
+        for(int i = 0;i < RANDOM_ACCESSES;i++)
+            batch.add(widths[i], heights[i], depths[i], types[i]);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public MinecraftMap cloneMap() {
+        return map.clone();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public byte[] getBlocks() {
+        return map.getBlocks();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RANDOM_ACCESSES)
+    public int randomGetBlock() {
+        int sum;
+
+        sum = 0;
+        for(int i = 0;i < RANDOM_ACCESSES;i++)
+            sum += map.getBlock(widths[i], heights[i], depths[i]);
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RANDOM_ACCESSES)
+    public void randomSetBlock() {
+        for(int i = 0;i < RANDOM_ACCESSES;i++)
+            map.setBlock(widths[i], heights[i], depths[i], types[i]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RANDOM_ACCESSES)
+    public void batchSetBlocks() {
+        map.setBlocks(batch);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int sequentialGetBlock() {
+        int sum;
+
+        sum = 0;
+        for(int h = 0;h < height;h++) {
+            for(int d = 0;d < depth;d++) {
+                for(int w = 0;w < width;w++)
+                    sum += map.getBlock(w, h, d);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void sequentialSetBlock() {
+        for(int h = 0;h < height;h++) {
+            for(int d = 0;d < depth;d++) {
+                for(int w = 0;w < width;w++)
+                    map.setBlock(w, h, d, types[(h + d + w) & (RANDOM_ACCESSES - 1)]);
+            }
+        }
+    }
+}
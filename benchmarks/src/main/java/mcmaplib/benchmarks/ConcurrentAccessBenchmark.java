@@ -0,0 +1,93 @@
+package mcmaplib.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import mcmaplib.ConcurrentMinecraftMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentAccessBenchmark {
+    @Param({"fCraft", "RUM"})
+    public String format;
+
+    @Param({"256x64x256"})
+    public String size;
+
+    private ConcurrentMinecraftMap map;
+    private int width, height, depth;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        map = new ConcurrentMinecraftMap(
+            MapFixtures.format(format).convert(MapFixtures.createMap(size))
+        );
+        width = map.getWidth();
+        height = map.getHeight();
+        depth = map.getDepth();
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public byte mixedRead() {
+        ThreadLocalRandom random;
+
+        random = ThreadLocalRandom.current();
+        return map.getBlock(random.nextInt(width), random.nextInt(height), random.nextInt(depth));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedWrite() {
+        ThreadLocalRandom random;
+
+        random = ThreadLocalRandom.current();
+        map.setBlock(
+            random.nextInt(width), random.nextInt(height), random.nextInt(depth),
+            (byte)(1 + random.nextInt(49))
+        );
+    }
+
+    @Benchmark
+    @Group("batch")
+    @GroupThreads(3)
+    public byte batchRead() {
+        ThreadLocalRandom random;
+
+        random = ThreadLocalRandom.current();
+        return map.getBlock(random.nextInt(width), random.nextInt(height), random.nextInt(depth));
+    }
+
+    @Benchmark
+    @Group("batch")
+    @GroupThreads(1)
+    public void batchWrite() {
+        ThreadLocalRandom random;
+
+        random = ThreadLocalRandom.current();
+        map.fillRegion(
+            random.nextInt(width - 8), random.nextInt(height - 8), random.nextInt(depth - 8),
+            8, 8, 8,
+            (byte)(1 + random.nextInt(49))
+        );
+    }
+}
@@ -0,0 +1,66 @@
+package mcmaplib.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+import mcmaplib.MapConverter;
+import mcmaplib.MapFormat;
+import mcmaplib.MinecraftMap;
+import mcmaplib.SaveOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConvertBenchmark {
+    @Param({"fCraft", "MCSharp", "RUM", "Minecraft"})
+    public String source;
+
+    @Param({"fCraft", "MCSharp", "RUM", "Minecraft"})
+    public String dest;
+
+    @Param({"64x64x64", "256x64x256"})
+    public String size;
+
+    private MapFormat sourceFormat, destFormat;
+    private MinecraftMap sourceMap;
+    private byte[] sourceData;
+    private MapFixtures.CountingOutputStream out;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        sourceFormat = MapFixtures.format(source);
+        destFormat = MapFixtures.format(dest);
+        sourceMap = sourceFormat.convert(MapFixtures.createMap(size));
+        sourceData = MapFixtures.save(sourceMap, new SaveOptions());
+        out = new MapFixtures.CountingOutputStream();
+    }
+
+    @Benchmark
+    public MinecraftMap convert() throws Exception {
+        return destFormat.convert(sourceMap);
+    }
+
+    @Benchmark
+    public long streamConvert() throws Exception {
+        out.reset();
+        MapConverter.convert(
+            new ByteArrayInputStream(sourceData), sourceFormat,
+            out, destFormat
+        );
+        return out.getCount();
+    }
+}
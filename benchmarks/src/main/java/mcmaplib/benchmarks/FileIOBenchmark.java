@@ -0,0 +1,101 @@
+package mcmaplib.benchmarks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import mcmaplib.LoadOptions;
+import mcmaplib.MapFormat;
+import mcmaplib.MinecraftMap;
+import mcmaplib.SaveOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Compares the FileChannel load and save paths with buffered
+// FileInputStream/FileOutputStream on the same files.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FileIOBenchmark {
+    @Param({"fCraft", "MCSharp", "RUM", "Minecraft"})
+    public String format;
+
+    @Param({"64x64x64", "512x64x512"})
+    public String size;
+
+    private MapFormat mapFormat;
+    private MinecraftMap map;
+    private LoadOptions loadOptions;
+    private SaveOptions saveOptions;
+    private Path source, dest;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        mapFormat = MapFixtures.format(format);
+        map = mapFormat.convert(MapFixtures.createMap(size));
+        loadOptions = new LoadOptions();
+        saveOptions = new SaveOptions();
+        source = Files.createTempFile("mcmaplib-bench", ".map");
+        dest = Files.createTempFile("mcmaplib-bench", ".map");
+        Files.write(source, MapFixtures.save(map, saveOptions));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(source);
+        Files.deleteIfExists(dest);
+    }
+
+    @Benchmark
+    public MinecraftMap loadChannel() throws Exception {
+        return mapFormat.load(source, loadOptions);
+    }
+
+    @Benchmark
+    public MinecraftMap loadStream() throws Exception {
+        InputStream in;
+
+        in = new BufferedInputStream(new FileInputStream(source.toFile()), loadOptions.getBufferSize());
+        try {
+            return mapFormat.load(in, loadOptions);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Benchmark
+    public void saveChannel() throws Exception {
+        map.save(dest, saveOptions);
+    }
+
+    @Benchmark
+    public void saveStream() throws Exception {
+        OutputStream out;
+
+        out = new BufferedOutputStream(new FileOutputStream(dest.toFile()), saveOptions.getBufferSize());
+        try {
+            map.save(out, saveOptions);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package mcmaplib.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import mcmaplib.InvalidMapException;
+import mcmaplib.MapFormat;
+import mcmaplib.MapFormats;
+import mcmaplib.MinecraftMap;
+import mcmaplib.MinecraftMapBase;
+import mcmaplib.NotImplementedException;
+import mcmaplib.SaveOptions;
+
+final class MapFixtures {
+    static final long SEED = 0x6d636d61706c6962L;
+
+    private static final byte AIR = 0,
+                              STONE = 1,
+                              GRASS = 2,
+                              DIRT = 3,
+                              WATER = 8,
+                              SAND = 12,
+                              GOLD_ORE = 14,
+                              IRON_ORE = 15,
+                              COAL_ORE = 16;
+
+    private MapFixtures() {
+    }
+
+    static MapFormat format(String name) {
+        MapFormat format;
+
+        format = MapFormats.forName(name);
+        if(format == null)
+            throw new IllegalArgumentException("Unknown map format: " + name);
+        return format;
+    }
+
+    static int[] dimensions(String size) {
+        String[] parts;
+
+        parts = size.split("x");
+        if(parts.length != 3)
+            throw new IllegalArgumentException("Size must be WIDTHxHEIGHTxDEPTH: " + size);
+        return new int[] {
+            Integer.parseInt(parts[0]),
+            Integer.parseInt(parts[1]),
+            Integer.parseInt(parts[2])
+        };
+    }
+
+    static MinecraftMap createMap(String size) throws InvalidMapException {
+        int width, height, depth, seaLevel;
+        int[] dimensions, surface;
+        byte[] blocks;
+        Random random;
+
+        dimensions = dimensions(size);
+        width = dimensions[0];
+        height = dimensions[1];
+        depth = dimensions[2];
+        seaLevel = height / 2;
+        random = new Random(SEED);
+        surface = createSurface(width, depth, height, random);
+        blocks = new byte[width * height * depth];
+
+        for(int h = 0;h < height;h++) {
+            for(int d = 0;d < depth;d++) {
+                for(int w = 0;w < width;w++) {
+                    int ground;
+                    byte type;
+
+                    ground = surface[d * width + w];
+                    if(h < ground - 3) {
+                        int ore;
+
+                        ore = random.nextInt(200);
+                        if(ore == 0)
+                            type = GOLD_ORE;
+                        else if(ore < 3)
+                            type = IRON_ORE;
+                        else if(ore < 6)
+                            type = COAL_ORE;
+                        else
+                            type = STONE;
+                    } else if(h < ground) {
+                        type = ground <= seaLevel + 1 ? SAND : DIRT;
+                    } else if(h == ground) {
+                        type = ground <= seaLevel ? SAND : GRASS;
+                    } else if(h <= seaLevel) {
+                        type = WATER;
+                    } else {
+                        type = AIR;
+                    }
+                    blocks[(h * depth + d) * width + w] = type;
+                }
+            }
+        }
+
+        return new MinecraftMapBase(
+            blocks,
+            width, height, depth,
+            width * 16, (surface[(depth / 2) * width + width / 2] + 2) * 32, depth * 16,
+            0, 0
+        );
+    }
+
+    private static int[] createSurface(int width, int depth, int height, Random random) {
+        int[] surface;
+        double[] noise;
+        int cells;
+
+        cells = 8;
+        noise = new double[(cells + 1) * (cells + 1)];
+        for(int i = 0;i < noise.length;i++)
+            noise[i] = random.nextDouble();
+
+        surface = new int[width * depth];
+        for(int d = 0;d < depth;d++) {
+            for(int w = 0;w < width;w++) {
+                double x, z, fx, fz, value;
+                int cx, cz;
+
+                x = (double)w * cells / width;
+                z = (double)d * cells / depth;
+                cx = (int)x;
+                cz = (int)z;
+                fx = x - cx;
+                fz = z - cz;
+                value = noise[cz * (cells + 1) + cx] * (1 - fx) * (1 - fz)
+                      + noise[cz * (cells + 1) + cx + 1] * fx * (1 - fz)
+                      + noise[(cz + 1) * (cells + 1) + cx] * (1 - fx) * fz
+                      + noise[(cz + 1) * (cells + 1) + cx + 1] * fx * fz;
+                surface[d * width + w] = (int)(height * (0.3 + 0.4 * value));
+            }
+        }
+        return surface;
+    }
+
+    static byte[] save(MinecraftMap map, SaveOptions options)
+            throws IOException, NotImplementedException {
+        ByteArrayOutputStream out;
+
+        out = new ByteArrayOutputStream();
+        map.save(out, options);
+        return out.toByteArray();
+    }
+
+    static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        void reset() {
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package mcmaplib.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import mcmaplib.MinecraftMap;
+import mcmaplib.SaveOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaveBenchmark {
+    @Param({"fCraft", "MCSharp", "RUM", "Minecraft"})
+    public String format;
+
+    @Param({"64x64x64", "256x64x256", "512x64x512"})
+    public String size;
+
+    private MinecraftMap map;
+    private SaveOptions options;
+    private MapFixtures.CountingOutputStream out;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        map = MapFixtures.format(format).convert(MapFixtures.createMap(size));
+        options = new SaveOptions();
+        out = new MapFixtures.CountingOutputStream();
+    }
+
+    @Benchmark
+    public long save() throws Exception {
+        out.reset();
+        map.save(out, options);
+        return out.getCount();
+    }
+}
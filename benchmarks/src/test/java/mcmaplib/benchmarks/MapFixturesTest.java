@@ -0,0 +1,61 @@
+package mcmaplib.benchmarks;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import mcmaplib.LoadOptions;
+import mcmaplib.MapFormat;
+import mcmaplib.MinecraftMap;
+import mcmaplib.SaveOptions;
+import org.junit.Test;
+
+public class MapFixturesTest {
+    @Test
+    public void fixturesAreDeterministic() throws Exception {
+        MinecraftMap first, second;
+
+        first = MapFixtures.createMap("64x32x48");
+        second = MapFixtures.createMap("64x32x48");
+        assertEquals(64, first.getWidth());
+        assertEquals(32, first.getHeight());
+        assertEquals(48, first.getDepth());
+        assertArrayEquals(first.getBlocks(), second.getBlocks());
+        assertEquals(first.getSpawnHeight(), second.getSpawnHeight());
+        assertFalse(first.isPlayerOutOfBounds(first.getSpawnWidth(), first.getSpawnHeight(), first.getSpawnDepth()));
+    }
+
+    @Test
+    public void fixturesSaveAndLoadInEveryBenchmarkedFormat() throws Exception {
+        MinecraftMap source;
+
+        source = MapFixtures.createMap("32x32x32");
+        for(String name : new String[] {"FCraft", "MCSharp", "RUM", "Minecraft"}) {
+            MapFormat format;
+            byte[] data;
+
+            format = MapFixtures.format(name);
+            data = MapFixtures.save(format.convert(source), new SaveOptions());
+            assertArrayEquals(name, source.getBlocks(),
+                              format.load(new ByteArrayInputStream(data), new LoadOptions()).getBlocks());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedSizeIsRejected() {
+        MapFixtures.dimensions("64x32");
+    }
+
+    @Test
+    public void countingStreamCountsEveryByte() throws Exception {
+        MapFixtures.CountingOutputStream out;
+
+        out = new MapFixtures.CountingOutputStream();
+        out.write(1);
+        out.write(new byte[10], 2, 5);
+        assertEquals(6, out.getCount());
+        out.reset();
+        assertEquals(0, out.getCount());
+    }
+}
@@ -0,0 +1,94 @@
+package mcmaplib.jfr;
+
+import java.util.ArrayList;
+import jdk.jfr.Event;
+import mcmaplib.IOStatistics;
+import mcmaplib.MapIOListener;
+
+public class FlightRecorderListener implements MapIOListener {
+    // Loads and saves can nest on one thread, so each thread keeps a stack
+    // of its open events. Disabled events are pushed as null to keep the
+    // stack matched with operationCompleted.
+    private final ThreadLocal<ArrayList<Event>> current = new ThreadLocal<ArrayList<Event>>() {
+        @Override
+        protected ArrayList<Event> initialValue() {
+            return new ArrayList<Event>();
+        }
+    };
+
+    public FlightRecorderListener() {
+    }
+
+    public void operationStarted(IOStatistics.Operation operation, String format) {
+        Event event;
+
+        if(operation == IOStatistics.Operation.LOAD)
+            event = new MapLoadEvent();
+        else
+            event = new MapSaveEvent();
+
+        if(event.isEnabled())
+            event.begin();
+        else
+            event = null;
+        current.get().add(event);
+    }
+
+    public void operationCompleted(IOStatistics statistics) {
+        ArrayList<Event> events;
+        Event event;
+
+        events = current.get();
+        if(events.isEmpty())
+            return;
+        event = events.remove(events.size() - 1);
+        if(events.isEmpty())
+            current.remove();
+        if(event == null)
+            return;
+
+        event.end();
+        if(!event.shouldCommit())
+            return;
+
+        if(event instanceof MapLoadEvent) {
+            MapLoadEvent load;
+
+            load = (MapLoadEvent)event;
+            load.format = statistics.getFormat();
+            load.success = statistics.isSuccess();
+            load.error = errorMessage(statistics);
+            load.bytesRead = statistics.getBytesRead();
+            load.bytesInflated = statistics.getBytesInflated();
+            load.bytesAllocated = statistics.getBytesAllocated();
+            load.blocks = statistics.getBlocks();
+            load.readTime = statistics.getPhaseNanos(IOStatistics.Phase.READ);
+            load.headerTime = statistics.getPhaseNanos(IOStatistics.Phase.HEADER);
+            load.allocationTime = statistics.getPhaseNanos(IOStatistics.Phase.ALLOCATION);
+            load.decompressionTime = statistics.getPhaseNanos(IOStatistics.Phase.DECOMPRESSION);
+            load.validationTime = statistics.getPhaseNanos(IOStatistics.Phase.VALIDATION);
+        } else {
+            MapSaveEvent save;
+
+            save = (MapSaveEvent)event;
+            save.format = statistics.getFormat();
+            save.success = statistics.isSuccess();
+            save.error = errorMessage(statistics);
+            save.bytesWritten = statistics.getBytesWritten();
+            save.bytesDeflated = statistics.getBytesDeflated();
+            save.bytesAllocated = statistics.getBytesAllocated();
+            save.blocks = statistics.getBlocks();
+            save.headerTime = statistics.getPhaseNanos(IOStatistics.Phase.HEADER);
+            save.compressionTime = statistics.getPhaseNanos(IOStatistics.Phase.COMPRESSION);
+            save.writeTime = statistics.getPhaseNanos(IOStatistics.Phase.WRITE);
+        }
+        event.commit();
+    }
+
+    private static String errorMessage(IOStatistics statistics) {
+        Throwable error;
+
+        error = statistics.getError();
+        return error == null ? null : error.toString();
+    }
+}
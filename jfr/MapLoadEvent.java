@@ -0,0 +1,61 @@
+package mcmaplib.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("mcmaplib.MapLoad")
+@Label("Map Load")
+@Category({"mcmaplib", "I/O"})
+@Description("Map loaded from a stream or file")
+@StackTrace(false)
+class MapLoadEvent extends Event {
+    @Label("Format")
+    String format;
+
+    @Label("Success")
+    boolean success;
+
+    @Label("Error")
+    String error;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Bytes Inflated")
+    @DataAmount
+    long bytesInflated;
+
+    @Label("Bytes Allocated")
+    @DataAmount
+    long bytesAllocated;
+
+    @Label("Blocks Decoded")
+    long blocks;
+
+    @Label("Read Time")
+    @Timespan
+    long readTime;
+
+    @Label("Header Time")
+    @Timespan
+    long headerTime;
+
+    @Label("Allocation Time")
+    @Timespan
+    long allocationTime;
+
+    @Label("Decompression Time")
+    @Timespan
+    long decompressionTime;
+
+    @Label("Validation Time")
+    @Timespan
+    long validationTime;
+}
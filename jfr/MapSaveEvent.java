@@ -0,0 +1,53 @@
+package mcmaplib.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("mcmaplib.MapSave")
+@Label("Map Save")
+@Category({"mcmaplib", "I/O"})
+@Description("Map saved to a stream or file")
+@StackTrace(false)
+class MapSaveEvent extends Event {
+    @Label("Format")
+    String format;
+
+    @Label("Success")
+    boolean success;
+
+    @Label("Error")
+    String error;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+
+    @Label("Bytes Deflated")
+    @DataAmount
+    long bytesDeflated;
+
+    @Label("Bytes Allocated")
+    @DataAmount
+    long bytesAllocated;
+
+    @Label("Blocks Encoded")
+    long blocks;
+
+    @Label("Header Time")
+    @Timespan
+    long headerTime;
+
+    @Label("Compression Time")
+    @Timespan
+    long compressionTime;
+
+    @Label("Write Time")
+    @Timespan
+    long writeTime;
+}
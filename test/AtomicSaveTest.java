@@ -0,0 +1,159 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AtomicSaveTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static MinecraftMap createMap(int seed) throws InvalidMapException {
+        byte[] blocks;
+        Random random;
+
+        random = new Random(seed);
+        blocks = new byte[64 * 32 * 64];
+        for(int i = 0;i < blocks.length;i++)
+            blocks[i] = (byte)random.nextInt(50);
+        return FCraftMinecraftMap.FORMAT.convert(
+            new MinecraftMapBase(blocks, 64, 32, 64, 1, 1, 1, 0, 0)
+        );
+    }
+
+    @Test
+    public void atomicSaveReplacesTheFileAndCleansUp() throws Exception {
+        MinecraftMap first, second;
+        File file;
+
+        file = new File(folder.getRoot(), "world.fcm");
+        first = createMap(1);
+        first.saveAtomic(file, new SaveOptions());
+        assertArrayEquals(first.getBlocks(), FCraftMinecraftMap.FORMAT.load(file).getBlocks());
+
+        second = createMap(2);
+        second.save(file, new SaveOptions().setAtomic(true));
+        assertArrayEquals(second.getBlocks(), FCraftMinecraftMap.FORMAT.load(file).getBlocks());
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void failedSaveKeepsTheOldFile() throws Exception {
+        MinecraftMap original, failing;
+        byte[] before;
+        File file;
+
+        file = new File(folder.getRoot(), "world.fcm");
+        original = createMap(3);
+        original.save(file);
+        before = Files.readAllBytes(file.toPath());
+
+        failing = new MinecraftMapBase(new byte[16 * 16 * 16], 16, 16, 16, 0, 0, 0, 0, 0) {
+            @Override
+            public void save(OutputStream out, SaveOptions options) throws IOException {
+                out.write(new byte[1000]);
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public MinecraftMapBase clone() {
+                return this;
+            }
+        };
+        try {
+            failing.saveAtomic(file, new SaveOptions());
+            fail("failing save succeeded");
+        } catch(IOException e) {
+        }
+        assertArrayEquals(before, Files.readAllBytes(file.toPath()));
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void snapshotSavesWhileEditsContinue() throws Exception {
+        final MinecraftMap map;
+        final AtomicBoolean running;
+        MinecraftMap snapshot;
+        Thread writer;
+        byte[] expected;
+        File file;
+
+        map = createMap(4);
+        snapshot = map.clone();
+        expected = snapshot.getBlocks();
+        running = new AtomicBoolean(true);
+        writer = new Thread(new Runnable() {
+            public void run() {
+                Random random;
+
+                random = new Random(5);
+                while(running.get())
+                    map.setBlock(random.nextInt(64), random.nextInt(32), random.nextInt(64), (byte)99);
+            }
+        });
+        writer.start();
+        try {
+            file = new File(folder.getRoot(), "snapshot.fcm");
+            for(int i = 0;i < 5;i++) {
+                snapshot.saveAtomic(file, SaveOptions.fastest());
+                assertArrayEquals(expected, FCraftMinecraftMap.FORMAT.load(file).getBlocks());
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+        assertArrayEquals(expected, snapshot.getBlocks());
+    }
+
+    @Test
+    public void atomicSaveWritesACopyOfTheMap() throws Exception {
+        AtomicReference<MinecraftMap> written;
+        MinecraftMap map;
+        File file;
+
+        written = new AtomicReference<MinecraftMap>();
+        map = new RecordingMap(new byte[16 * 16 * 16], written);
+        map.setBlock(1, 1, 1, (byte)7);
+        file = new File(folder.getRoot(), "copy.raw");
+        map.saveAtomic(file, new SaveOptions());
+        assertNotSame(map, written.get());
+        assertArrayEquals(map.getBlocks(), Files.readAllBytes(file.toPath()));
+    }
+
+    private static class RecordingMap extends MinecraftMapBase {
+        private final AtomicReference<MinecraftMap> written;
+
+        RecordingMap(byte[] blocks, AtomicReference<MinecraftMap> written)
+                throws InvalidMapException {
+            super(blocks, 16, 16, 16, 0, 0, 0, 0, 0);
+            this.written = written;
+        }
+
+        @Override
+        public void save(OutputStream out, SaveOptions options) throws IOException {
+            written.set(this);
+            out.write(getBlocks());
+        }
+
+        @Override
+        public RecordingMap clone() {
+            try {
+                return new RecordingMap(getBlocks(), written);
+            } catch(InvalidMapException e) {
+                throw new RuntimeException("Could not clone map", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.Test;
+
+public class BlockChangeTest {
+    private static class RecordingHandler implements BlockChangeFeed.Handler {
+        final List<int[]> blocks = new ArrayList<int[]>();
+        final List<int[]> regions = new ArrayList<int[]>();
+        boolean overflowed;
+
+        public void blockChanged(int width, int height, int depth,
+                                 byte oldType, byte newType, byte flags) {
+            blocks.add(new int[] {width, height, depth, oldType, newType, flags});
+        }
+
+        public void regionChanged(int width, int height, int depth,
+                                  int sizeWidth, int sizeHeight, int sizeDepth) {
+            regions.add(new int[] {width, height, depth, sizeWidth, sizeHeight, sizeDepth});
+        }
+
+        public void overflowed() {
+            overflowed = true;
+        }
+    }
+
+    private static MinecraftMapBase createMap() throws InvalidMapException {
+        return new MinecraftMapBase(new byte[32 * 32 * 32], 32, 32, 32, 0, 0, 0, 0, 0);
+    }
+
+    @Test
+    public void batchesGrowAndApplyInOrder() throws Exception {
+        BlockChangeBatch batch;
+        MinecraftMapBase map;
+
+        batch = new BlockChangeBatch(2);
+        for(int i = 0;i < 10;i++)
+            batch.add(i, i + 1, i + 2, (byte)(i + 1));
+        // Later changes to the same block win.
+        batch.add(0, 1, 2, (byte)42);
+        assertEquals(11, batch.size());
+        assertEquals(9, batch.getWidth(9));
+        assertEquals(10, batch.getHeight(9));
+        assertEquals(11, batch.getDepth(9));
+        assertEquals(10, batch.getType(9));
+
+        map = createMap();
+        map.setBlocks(batch);
+        assertEquals(42, map.getBlock(0, 1, 2));
+        assertEquals(10, map.getBlock(9, 10, 11));
+
+        batch.clear();
+        assertTrue(batch.isEmpty());
+        try {
+            batch.getType(0);
+            fail("read past the end of a batch");
+        } catch(IndexOutOfBoundsException e) {
+        }
+    }
+
+    @Test
+    public void outOfBoundsBatchChangesNothing() throws Exception {
+        BlockChangeBatch batch;
+        MinecraftMapBase map;
+
+        map = createMap();
+        batch = new BlockChangeBatch().add(1, 1, 1, (byte)5).add(32, 0, 0, (byte)5);
+        try {
+            map.setBlocks(batch);
+            fail("applied an out of bounds batch");
+        } catch(IndexOutOfBoundsException e) {
+        }
+        assertEquals(0, map.getBlock(1, 1, 1));
+    }
+
+    @Test
+    public void feedRecordsBlocksAndRegions() throws Exception {
+        RecordingHandler handler;
+        BlockChangeFeed feed;
+        MinecraftMapBase map;
+
+        map = createMap();
+        feed = new BlockChangeFeed(16);
+        map.addChangeListener(feed);
+        map.setBlock(1, 2, 3, (byte)4);
+        map.setBlock(1, 2, 3, (byte)5);
+        map.fillRegion(0, 0, 0, 4, 5, 6, (byte)7);
+        map.setBlocks(new BlockChangeBatch().add(31, 31, 31, (byte)8));
+        assertEquals(5, feed.size());
+
+        handler = new RecordingHandler();
+        assertEquals(4, feed.drain(handler));
+        assertEquals(0, feed.size());
+        assertEquals(3, handler.blocks.size());
+        assertEquals(1, handler.regions.size());
+        assertEquals(4, handler.blocks.get(1)[3]);
+        assertEquals(5, handler.blocks.get(1)[4]);
+        assertEquals(31, handler.blocks.get(2)[0]);
+        assertEquals(6, handler.regions.get(0)[5]);
+        assertFalse(handler.overflowed);
+
+        map.removeChangeListener(feed);
+        map.setBlock(0, 0, 0, (byte)1);
+        assertEquals(0, feed.size());
+    }
+
+    @Test
+    public void coalescingKeepsFirstOldAndLastNewType() throws Exception {
+        RecordingHandler handler;
+        BlockChangeFeed feed;
+        MinecraftMapBase map;
+
+        map = createMap();
+        feed = new BlockChangeFeed();
+        map.addChangeListener(feed);
+        for(int i = 1;i <= 5;i++)
+            map.setBlock(3, 3, 3, (byte)i);
+        map.setBlock(4, 4, 4, (byte)9);
+
+        handler = new RecordingHandler();
+        assertEquals(2, feed.drain(handler, true));
+        assertEquals(0, handler.blocks.get(0)[3]);
+        assertEquals(5, handler.blocks.get(0)[4]);
+        assertEquals(4, handler.blocks.get(1)[0]);
+
+        // Coalescing state does not leak into the next tick.
+        map.setBlock(3, 3, 3, (byte)6);
+        handler = new RecordingHandler();
+        assertEquals(1, feed.drain(handler, true));
+        assertEquals(5, handler.blocks.get(0)[3]);
+    }
+
+    @Test
+    public void overflowDropsChangesAndTellsTheConsumer() throws Exception {
+        RecordingHandler handler;
+        BlockChangeFeed feed;
+        MinecraftMapBase map;
+
+        map = createMap();
+        feed = new BlockChangeFeed(3);
+        assertEquals(4, feed.getCapacity());
+        map.addChangeListener(feed);
+        for(int i = 0;i < 6;i++)
+            map.setBlock(i, 0, 0, (byte)1);
+        assertEquals(2, feed.getDroppedChanges());
+
+        handler = new RecordingHandler();
+        assertEquals(4, feed.drain(handler));
+        assertTrue(handler.overflowed);
+        assertEquals(0, feed.getDroppedChanges());
+
+        // The ring keeps working after wrapping around.
+        for(int i = 0;i < 3;i++)
+            map.setBlock(i, 1, 0, (byte)2);
+        handler = new RecordingHandler();
+        assertEquals(3, feed.drain(handler));
+        assertFalse(handler.overflowed);
+        assertEquals(2, handler.blocks.get(2)[0]);
+    }
+
+    @Test
+    public void rumFlagsReachTheFeed() throws Exception {
+        RecordingHandler handler;
+        BlockChangeFeed feed;
+        RUMMinecraftMap map;
+
+        map = new RUMMinecraftMap(
+            16, 16, 16,
+            0, 0, 0, 0, 0,
+            new HashMap<String, byte[]>(),
+            new byte[16 * 16 * 16][2], 2
+        );
+        feed = new BlockChangeFeed(8);
+        map.addChangeListener(feed);
+        map.setBlock(2, 3, 4, (byte)6, false, false, false, true, true, false);
+
+        handler = new RecordingHandler();
+        feed.drain(handler);
+        assertEquals(1, handler.blocks.size());
+        assertEquals(RUMMinecraftMap.PORTAL_BIT | RUMMinecraftMap.MESSAGE_BIT, handler.blocks.get(0)[5]);
+    }
+}
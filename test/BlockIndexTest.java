@@ -0,0 +1,235 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class BlockIndexTest {
+    private static final byte DOOR_TREE = 111,
+                              DOOR_OBSIDIAN = 113;
+
+    private interface Matcher {
+        boolean matches(MinecraftMap map, int width, int height, int depth);
+    }
+
+    private static int[] scan(MinecraftMap map, Matcher matcher,
+                              int width, int height, int depth,
+                              int sizeWidth, int sizeHeight, int sizeDepth) {
+        List<Integer> offsets;
+        int[] result;
+
+        offsets = new ArrayList<Integer>();
+        for(int h = height;h < height + sizeHeight;h++) {
+            for(int d = depth;d < depth + sizeDepth;d++) {
+                for(int w = width;w < width + sizeWidth;w++) {
+                    if(matcher.matches(map, w, h, d))
+                        offsets.add((h * map.getDepth() + d) * map.getWidth() + w);
+                }
+            }
+        }
+        result = new int[offsets.size()];
+        for(int i = 0;i < result.length;i++)
+            result[i] = offsets.get(i);
+        return result;
+    }
+
+    private static void assertMatchesScan(BlockIndex index, MinecraftMap map, Matcher matcher) {
+        int[] expected, actual;
+
+        expected = scan(map, matcher, 0, 0, 0, map.getWidth(), map.getHeight(), map.getDepth());
+        actual = index.query();
+        Arrays.sort(actual);
+        assertArrayEquals(expected, actual);
+        assertEquals(expected.length, index.size());
+
+        // A box that crosses index region boundaries.
+        expected = scan(map, matcher, 5, 7, 9, 20, 13, 11);
+        actual = index.query(5, 7, 9, 20, 13, 11);
+        Arrays.sort(actual);
+        assertArrayEquals(expected, actual);
+        assertEquals(expected.length, index.count(5, 7, 9, 20, 13, 11));
+    }
+
+    private static void edit(MinecraftMap map, Random random, byte[] palette) {
+        for(int i = 0;i < 500;i++)
+            map.setBlock(random.nextInt(map.getWidth()), random.nextInt(map.getHeight()),
+                         random.nextInt(map.getDepth()), palette[random.nextInt(palette.length)]);
+        map.fillRegion(3, 3, 3, 10, 4, 20, palette[0]);
+        map.fillRegion(16, 0, 0, 8, 8, 8, palette[1]);
+        map.replaceInRegion(0, 0, 0, 16, 16, 16, palette[0], palette[2]);
+        map.writeRegion(20, 20, 20, 2, 2, 2,
+                        new byte[] {palette[0], palette[1], palette[2], palette[0],
+                                    palette[1], palette[2], palette[0], palette[1]}, 0);
+        map.copyRegion(map, 0, 0, 0, 10, 10, 10, 15, 15, 15);
+    }
+
+    @Test
+    public void typeIndexTracksEveryKindOfEdit() throws Exception {
+        final byte stone, gold;
+        MinecraftMapBase map;
+        BlockIndex index;
+        Matcher matcher;
+        Random random;
+
+        stone = 1;
+        gold = 14;
+        map = new MinecraftMapBase(new byte[40 * 32 * 36], 40, 32, 36, 0, 0, 0, 0, 0);
+        random = new Random(25);
+        map.fillRegion(0, 0, 0, 40, 4, 36, gold);
+        index = BlockIndex.forTypes(map, gold, stone);
+        matcher = new Matcher() {
+            public boolean matches(MinecraftMap map, int width, int height, int depth) {
+                byte type;
+
+                type = map.getBlock(width, height, depth);
+                return type == stone || type == gold;
+            }
+        };
+        assertMatchesScan(index, map, matcher);
+
+        edit(map, random, new byte[] {gold, 0, stone, 3});
+        assertMatchesScan(index, map, matcher);
+        assertTrue(index.contains(3, 3, 3));
+        assertFalse(index.contains(-1, 0, 0));
+
+        index.close();
+        map.setBlock(39, 31, 35, gold);
+        assertFalse(index.contains(39, 31, 35));
+    }
+
+    @Test
+    public void specialBlockIndexSeesRawTypes() throws Exception {
+        MCSharpMinecraftMap map;
+        BlockIndex index;
+        final List<int[]> visited;
+
+        map = (MCSharpMinecraftMap)MCSharpMinecraftMap.FORMAT.convert(
+            new MinecraftMapBase(new byte[32 * 32 * 32], 32, 32, 32, 0, 0, 0, 0, 0)
+        );
+        map.setBlock(1, 2, 3, DOOR_TREE);
+        index = BlockIndex.forSpecialBlocks(
+            map,
+            MCSharpMinecraftMap.SpecialBlock.DOOR_TREE,
+            MCSharpMinecraftMap.SpecialBlock.DOOR_OBSIDIAN
+        );
+        edit(map, new Random(26), new byte[] {DOOR_OBSIDIAN, 17, DOOR_TREE, 0});
+        assertMatchesScan(index, map, new Matcher() {
+            public boolean matches(MinecraftMap map, int width, int height, int depth) {
+                byte type;
+
+                type = ((MCSharpMinecraftMap)map).getBlockSpecial(width, height, depth);
+                return type == DOOR_TREE || type == DOOR_OBSIDIAN;
+            }
+        });
+
+        visited = new ArrayList<int[]>();
+        index.forEach(0, 0, 0, 2, 3, 4, new BlockIndex.Visitor() {
+            public void visit(int width, int height, int depth) {
+                visited.add(new int[] {width, height, depth});
+            }
+        });
+        assertEquals(index.count(0, 0, 0, 2, 3, 4), visited.size());
+        for(int[] block : visited) {
+            byte type;
+
+            type = map.getBlockSpecial(block[0], block[1], block[2]);
+            assertTrue(type == DOOR_TREE || type == DOOR_OBSIDIAN);
+        }
+    }
+
+    @Test
+    public void flagIndexTracksRumFlags() throws Exception {
+        RUMMinecraftMap map;
+        BlockIndex index;
+        Matcher matcher;
+        Random random;
+
+        map = new RUMMinecraftMap(
+            32, 32, 32,
+            0, 0, 0, 0, 0,
+            new HashMap<String, byte[]>(),
+            new byte[32 * 32 * 32][3], 3
+        );
+        map.setBlock(0, 0, 0, (byte)1, false, false, false, false, true, false);
+        index = BlockIndex.forFlags(map, RUMMinecraftMap.PORTAL_BIT | RUMMinecraftMap.SCRIPTED_BIT);
+        matcher = new Matcher() {
+            public boolean matches(MinecraftMap map, int width, int height, int depth) {
+                return ((RUMMinecraftMap)map).isBlockPortal(width, height, depth)
+                    || ((RUMMinecraftMap)map).isBlockScripted(width, height, depth);
+            }
+        };
+        assertMatchesScan(index, map, matcher);
+        assertEquals(1, index.size());
+
+        random = new Random(27);
+        for(int i = 0;i < 2000;i++) {
+            int w, h, d;
+
+            w = random.nextInt(32);
+            h = random.nextInt(32);
+            d = random.nextInt(32);
+            if(random.nextBoolean())
+                map.setBlock(w, h, d, (byte)1, random.nextBoolean(), false,
+                             random.nextBoolean(), false, random.nextBoolean(), random.nextBoolean());
+            else
+                map.setBlockExtendable(w, h, d, (byte)2, false, random.nextBoolean(),
+                                       false, random.nextBoolean(), random.nextBoolean(), false);
+        }
+        // Plain type writes clear the flags.
+        map.fillRegion(0, 0, 0, 8, 8, 8, (byte)3);
+        assertMatchesScan(index, map, matcher);
+    }
+
+    @Test
+    public void indexOnConcurrentMapFollowsConcurrentWriters() throws Exception {
+        final ConcurrentMinecraftMap map;
+        Thread[] writers;
+        BlockIndex index;
+
+        map = new ConcurrentMinecraftMap(
+            new MinecraftMapBase(new byte[32 * 32 * 32], 32, 32, 32, 0, 0, 0, 0, 0)
+        );
+        index = BlockIndex.forTypes(map, (byte)7);
+        writers = new Thread[4];
+        for(int t = 0;t < writers.length;t++) {
+            final int seed;
+
+            seed = t;
+            writers[t] = new Thread(new Runnable() {
+                public void run() {
+                    Random random;
+
+                    random = new Random(seed);
+                    for(int i = 0;i < 5000;i++)
+                        map.setBlock(random.nextInt(32), random.nextInt(32), random.nextInt(32),
+                                     (byte)(random.nextBoolean() ? 7 : 0));
+                }
+            });
+            writers[t].start();
+        }
+        for(Thread writer : writers)
+            writer.join();
+
+        assertMatchesScan(index, map, new Matcher() {
+            public boolean matches(MinecraftMap map, int width, int height, int depth) {
+                return map.getBlock(width, height, depth) == 7;
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void flagIndexNeedsARumMap() throws Exception {
+        BlockIndex.forFlags(
+            new MinecraftMapBase(new byte[16 * 16 * 16], 16, 16, 16, 0, 0, 0, 0, 0),
+            RUMMinecraftMap.PORTAL_BIT
+        );
+    }
+}
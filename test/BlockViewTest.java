@@ -0,0 +1,101 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class BlockViewTest {
+    private static final byte OP_GLASS = 100,
+                              GLASS = 20;
+
+    private static List<MinecraftMap> createMaps() throws Exception {
+        List<MinecraftMap> maps;
+        MinecraftMapBase source;
+        byte[] blocks;
+        Random random;
+
+        random = new Random(9);
+        blocks = new byte[32 * 16 * 48];
+        for(int i = 0;i < blocks.length;i++)
+            blocks[i] = (byte)random.nextInt(50);
+        source = new MinecraftMapBase(blocks, 32, 16, 48, 1, 1, 1, 0, 0);
+
+        maps = new ArrayList<MinecraftMap>();
+        maps.add(source);
+        for(MapFormat format : MapFormats.getFormats())
+            maps.add(format.convert(source));
+        maps.add(new PalettedMinecraftMap(source));
+        maps.add(new ConcurrentMinecraftMap(new MinecraftMapBase(source)));
+        return maps;
+    }
+
+    @Test
+    public void viewMatchesGetBlocks() throws Exception {
+        for(MinecraftMap map : createMaps()) {
+            BlockView view;
+            ByteBuffer buffer;
+            byte[] expected, actual;
+            String name;
+
+            name = map.getClass().getSimpleName();
+            expected = map.getBlocks();
+            view = map.getBlockView();
+            assertEquals(name, expected.length, view.length());
+            assertEquals(name, 32, view.getWidth());
+            assertEquals(name, 16, view.getHeight());
+            assertEquals(name, 48, view.getDepth());
+
+            actual = new byte[expected.length];
+            view.copyTo(0, actual, 0, actual.length);
+            assertArrayEquals(name, expected, actual);
+
+            buffer = ByteBuffer.allocate(expected.length + 4);
+            buffer.position(4);
+            map.copyBlocksTo(buffer);
+            for(int i = 0;i < expected.length;i++)
+                assertEquals(name, expected[i], buffer.get(i + 4));
+
+            for(int i = 0;i < expected.length;i += 97)
+                assertEquals(name, expected[i], view.get(i));
+            assertEquals(name, map.getBlock(31, 15, 47), view.getBlock(31, 15, 47));
+        }
+    }
+
+    @Test
+    public void viewRejectsOutOfBoundsBlocks() throws Exception {
+        for(MinecraftMap map : createMaps()) {
+            try {
+                map.getBlockView().getBlock(32, 0, 0);
+                fail(map.getClass().getSimpleName() + " view allowed an out of bounds read");
+            } catch(IndexOutOfBoundsException e) {
+            }
+        }
+    }
+
+    @Test
+    public void mcSharpViewTranslatesSpecialBlocks() throws Exception {
+        MCSharpMinecraftMap map;
+        byte[] blocks;
+
+        map = (MCSharpMinecraftMap)MCSharpMinecraftMap.FORMAT.convert(
+            new MinecraftMapBase(new byte[16 * 16 * 16], 16, 16, 16, 0, 0, 0, 0, 0)
+        );
+        map.setBlock(1, 1, 1, OP_GLASS);
+
+        assertEquals(GLASS, map.getBlock(1, 1, 1));
+        assertEquals(OP_GLASS, map.getBlockSpecial(1, 1, 1));
+        assertEquals(GLASS, map.getBlockView().getBlock(1, 1, 1));
+        assertEquals(OP_GLASS, map.getBlockViewSpecial().getBlock(1, 1, 1));
+
+        blocks = new byte[16 * 16 * 16];
+        map.copyBlocksTo(blocks, 0);
+        assertEquals(GLASS, blocks[(1 * 16 + 1) * 16 + 1]);
+        assertEquals(OP_GLASS, map.getBlocksSpecial()[(1 * 16 + 1) * 16 + 1]);
+    }
+}
@@ -0,0 +1,111 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BlockVisitorTest {
+    private static final byte OP_GLASS = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static MinecraftMapBase createSource() throws InvalidMapException {
+        byte[] blocks;
+        Random random;
+
+        random = new Random(12);
+        blocks = new byte[48 * 16 * 32];
+        for(int i = 0;i < blocks.length;i++)
+            blocks[i] = (byte)random.nextInt(50);
+        blocks[100] = OP_GLASS;
+        return new MinecraftMapBase(blocks, 48, 16, 32, 32, 32, 32, 0, 0);
+    }
+
+    private static class CollectingVisitor implements BlockVisitor {
+        MapHeader header;
+        byte[] blocks;
+        byte[][] extendedBlocks;
+        long next;
+
+        public void visitHeader(MapHeader header) {
+            if(this.header != null)
+                fail("header visited twice");
+            this.header = header;
+            this.blocks = new byte[(int)header.getTotalBlocks()];
+        }
+
+        public void visitBlocks(long offset,
+                                int width, int height, int depth,
+                                byte[] blocks, byte[][] extendedBlocks,
+                                int count) {
+            assertNotNull(header);
+            assertEquals(next, offset);
+            assertEquals(offset, ((long)height * header.getDepth() + depth) * header.getWidth() + width);
+            System.arraycopy(blocks, 0, this.blocks, (int)offset, count);
+            if(extendedBlocks != null) {
+                if(this.extendedBlocks == null)
+                    this.extendedBlocks = new byte[extendedBlocks.length][this.blocks.length];
+                for(int j = 0;j < extendedBlocks.length;j++)
+                    System.arraycopy(extendedBlocks[j], 0, this.extendedBlocks[j], (int)offset, count);
+            }
+            next += count;
+        }
+    }
+
+    @Test
+    public void visitMatchesFullLoadForEveryFormat() throws Exception {
+        MinecraftMapBase source;
+
+        source = createSource();
+        for(MapFormat format : MapFormats.getFormats()) {
+            CollectingVisitor visitor;
+            MinecraftMap loaded;
+            File file;
+            byte[] data;
+
+            file = folder.newFile("map-" + format.getName());
+            HeaderProbeTest.save(format, source, file);
+            data = Files.readAllBytes(file.toPath());
+            loaded = format.load(file);
+
+            visitor = new CollectingVisitor();
+            format.visit(new ByteArrayInputStream(data), visitor, 1000);
+            assertEquals(format.getName(), loaded.getWidth(), visitor.header.getWidth());
+            assertEquals(format.getName(), visitor.blocks.length, visitor.next);
+            assertArrayEquals(format.getName(), loaded.getBlocks(), visitor.blocks);
+            if(loaded instanceof RUMMinecraftMap) {
+                byte[][] planes;
+
+                planes = ((RUMMinecraftMap)loaded).getExtendedBlockPlanes();
+                assertArrayEquals(Arrays.copyOfRange(planes, 1, planes.length), visitor.extendedBlocks);
+            }
+        }
+    }
+
+    @Test
+    public void visitingAMapInMemoryMatchesGetBlocks() throws Exception {
+        CollectingVisitor visitor;
+        MinecraftMapBase source;
+
+        source = createSource();
+        visitor = new CollectingVisitor();
+        BlockStreams.visit(source, visitor, 777);
+        assertArrayEquals(source.getBlocks(), visitor.blocks);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void chunkSizeMustBePositive() throws Exception {
+        BlockStreams.visit(createSource(), new CollectingVisitor(), 0);
+    }
+}
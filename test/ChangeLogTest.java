@@ -0,0 +1,228 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChangeLogTest {
+    private static final byte OP_GLASS = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path mapFile, logFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mapFile = folder.getRoot().toPath().resolve("world.lvl");
+        logFile = ChangeLog.getLogPath(mapFile);
+        MCSharpMinecraftMap.FORMAT.convert(
+            new MinecraftMapBase(new byte[32 * 32 * 32], 32, 32, 32, 1, 1, 1, 0, 0)
+        ).save(mapFile);
+    }
+
+    private ChangeLog open() throws Exception {
+        return ChangeLog.open(mapFile, MCSharpMinecraftMap.FORMAT, new LoadOptions());
+    }
+
+    @Test
+    public void everyRecordTypeIsRecovered() throws Exception {
+        MCSharpMinecraftMap map, recovered;
+        ChangeLog log;
+
+        log = open();
+        map = (MCSharpMinecraftMap)log.getMap();
+        map.setBlock(1, 2, 3, OP_GLASS);
+        map.writeRegion(4, 4, 4, 2, 2, 2, new byte[] {1, 2, 3, 4, 5, 6, 7, 8}, 0);
+        map.fillRegion(10, 0, 10, 8, 3, 8, (byte)3);
+        map.setSpawn(20, 21, 22, 64, 32);
+        map.setBuildPermission(MCSharpMinecraftMap.LevelPermission.OPERATOR);
+        assertEquals(5, log.getAppendedRecords());
+        log.close();
+        assertEquals(5, log.getCommittedRecords());
+
+        log = open();
+        try {
+            assertEquals(5, log.getRecoveredRecords());
+            recovered = (MCSharpMinecraftMap)log.getMap();
+            // The log keeps raw blocks, unlike the translated base file.
+            assertEquals(OP_GLASS, recovered.getBlockSpecial(1, 2, 3));
+            assertArrayEquals(map.getBlocksSpecial(), recovered.getBlocksSpecial());
+            assertEquals(20, recovered.getSpawnWidth());
+            assertEquals(22, recovered.getSpawnDepth());
+            assertEquals(64, recovered.getSpawnRotation());
+            assertEquals(MCSharpMinecraftMap.LevelPermission.OPERATOR, recovered.getBuildPermission());
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void tornTailIsDroppedOnOpen() throws Exception {
+        RandomAccessFile raf;
+        MinecraftMap map;
+        ChangeLog log;
+        long first;
+
+        log = open();
+        map = log.getMap();
+        map.setBlock(1, 1, 1, (byte)7);
+        log.sync();
+        first = Files.size(logFile);
+        map.fillRegion(0, 10, 0, 16, 1, 16, (byte)8);
+        log.close();
+        assertTrue(Files.size(logFile) > first);
+
+        // A crash part way through the second batch.
+        raf = new RandomAccessFile(logFile.toFile(), "rw");
+        try {
+            raf.setLength(Files.size(logFile) - 3);
+        } finally {
+            raf.close();
+        }
+
+        log = open();
+        map = log.getMap();
+        assertEquals(1, log.getRecoveredRecords());
+        assertEquals(first, Files.size(logFile));
+        assertEquals(7, map.getBlock(1, 1, 1));
+        assertEquals(0, map.getBlock(5, 10, 5));
+        map.setBlock(2, 2, 2, (byte)9);
+        log.close();
+
+        log = open();
+        try {
+            assertEquals(2, log.getRecoveredRecords());
+            assertEquals(7, log.getMap().getBlock(1, 1, 1));
+            assertEquals(9, log.getMap().getBlock(2, 2, 2));
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void committerWritesInTheBackground() throws Exception {
+        MinecraftMap map;
+        ChangeLog log;
+        long deadline;
+
+        map = MCSharpMinecraftMap.FORMAT.load(mapFile, new LoadOptions());
+        log = ChangeLog.open(mapFile, map, 5, TimeUnit.MILLISECONDS);
+        try {
+            for(int i = 0;i < 16;i++)
+                map.setBlock(i, 0, 0, (byte)1);
+            deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while(log.getCommittedRecords() < 16 && System.nanoTime() < deadline)
+                Thread.sleep(1);
+            assertEquals(16, log.getCommittedRecords());
+            assertEquals(0, log.getPendingBytes());
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void checkpointFoldsTheLogIntoTheMap() throws Exception {
+        MinecraftMap map;
+        ChangeLog log;
+        long empty;
+
+        log = open();
+        empty = Files.size(logFile);
+        map = log.getMap();
+        map.fillRegion(0, 0, 0, 32, 1, 32, (byte)2);
+        log.checkpoint();
+        assertEquals(empty, Files.size(logFile));
+        map.setBlock(3, 3, 3, (byte)4);
+        log.close();
+
+        assertEquals(2, MCSharpMinecraftMap.FORMAT.load(mapFile.toFile()).getBlock(31, 0, 31));
+        log = open();
+        try {
+            assertEquals(1, log.getRecoveredRecords());
+            assertEquals(2, log.getMap().getBlock(31, 0, 31));
+            assertEquals(4, log.getMap().getBlock(3, 3, 3));
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void changesAfterASaveSurviveACrash() throws Exception {
+        MinecraftMap map;
+        ChangeLog log, reopened;
+
+        log = open();
+        try {
+            map = log.getMap();
+            map.setBlock(1, 1, 1, (byte)5);
+            log.sync();
+            map.save(mapFile);
+            map.setBlock(2, 2, 2, (byte)6);
+            log.sync();
+
+            // Opened without closing the first log, as after a crash.
+            reopened = open();
+            try {
+                assertEquals(5, reopened.getMap().getBlock(1, 1, 1));
+                assertEquals(6, reopened.getMap().getBlock(2, 2, 2));
+            } finally {
+                reopened.close();
+            }
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void atomicSavesThroughMapIORekeyTheLog() throws Exception {
+        MinecraftMap map;
+        ChangeLog log, reopened;
+        MapIO io;
+
+        io = new MapIO();
+        log = open();
+        try {
+            map = log.getMap();
+            map.setBlock(1, 1, 1, (byte)5);
+            io.save(map, mapFile, new SaveOptions()).get();
+            map.setBlock(2, 2, 2, (byte)6);
+            log.sync();
+
+            reopened = open();
+            try {
+                assertEquals(5, reopened.getMap().getBlock(1, 1, 1));
+                assertEquals(6, reopened.getMap().getBlock(2, 2, 2));
+            } finally {
+                reopened.close();
+            }
+        } finally {
+            log.close();
+        }
+    }
+
+    @Test
+    public void closedLogRejectsSync() throws Exception {
+        ChangeLog log;
+
+        log = open();
+        log.close();
+        log.close();
+        try {
+            log.sync();
+            fail("synced a closed log");
+        } catch(IOException e) {
+        }
+    }
+}
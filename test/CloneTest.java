@@ -0,0 +1,70 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class CloneTest {
+    private static List<MinecraftMap> createMaps() throws Exception {
+        List<MinecraftMap> maps;
+        MinecraftMapBase source;
+        byte[] blocks;
+
+        blocks = new byte[32 * 16 * 32];
+        new Random(8).nextBytes(blocks);
+        source = new MinecraftMapBase(blocks, 32, 16, 32, 1, 1, 1, 0, 0);
+
+        maps = new ArrayList<MinecraftMap>();
+        maps.add(source);
+        for(MapFormat format : MapFormats.getFormats())
+            maps.add(format.convert(source));
+        maps.add(new PalettedMinecraftMap(source));
+        maps.add(new ConcurrentMinecraftMap(new MinecraftMapBase(source)));
+        return maps;
+    }
+
+    @Test
+    public void clonesAreIsolatedInBothDirections() throws Exception {
+        for(MinecraftMap map : createMaps()) {
+            MinecraftMap clone;
+            byte[] before;
+            String name;
+
+            name = map.getClass().getSimpleName();
+            before = map.getBlocks();
+            clone = map.clone();
+            assertArrayEquals(name, before, clone.getBlocks());
+
+            clone.setBlock(0, 0, 0, (byte)(before[0] + 1));
+            map.setBlock(31, 15, 31, (byte)(before[before.length - 1] + 1));
+            assertEquals(name, before[0], map.getBlock(0, 0, 0));
+            assertEquals(name, before[before.length - 1], clone.getBlock(31, 15, 31));
+
+            clone.setSpawn(2, 2, 2, 0, 0);
+            assertEquals(name, 1, map.getSpawnWidth());
+        }
+    }
+
+    @Test
+    public void cloneOfCloneKeepsEachGeneration() throws Exception {
+        for(MinecraftMap map : createMaps()) {
+            MinecraftMap first, second;
+            String name;
+
+            name = map.getClass().getSimpleName();
+            map.setBlock(5, 5, 5, (byte)1);
+            first = map.clone();
+            first.setBlock(5, 5, 5, (byte)2);
+            second = first.clone();
+            second.setBlock(5, 5, 5, (byte)3);
+
+            assertEquals(name, 1, map.getBlock(5, 5, 5));
+            assertEquals(name, 2, first.getBlock(5, 5, 5));
+            assertEquals(name, 3, second.getBlock(5, 5, 5));
+        }
+    }
+}
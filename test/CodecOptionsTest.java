@@ -0,0 +1,143 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import mcmaplib.util.DeflaterPool;
+import mcmaplib.util.InflaterPool;
+import org.junit.Test;
+
+public class CodecOptionsTest {
+    private static MinecraftMapBase createSource() throws InvalidMapException {
+        byte[] blocks;
+        Random random;
+
+        random = new Random(14);
+        blocks = new byte[64 * 16 * 64];
+        for(int i = 0;i < blocks.length;i++)
+            blocks[i] = (byte)(random.nextInt(8) == 0 ? random.nextInt(50) : 1);
+        return new MinecraftMapBase(blocks, 64, 16, 64, 32, 32, 32, 0, 0);
+    }
+
+    private static List<MapFormat> getCompressedFormats() {
+        List<MapFormat> formats;
+
+        formats = new ArrayList<MapFormat>(MapFormats.getFormats());
+        formats.remove(MappedMinecraftMap.FORMAT);
+        return formats;
+    }
+
+    private static byte[] save(MinecraftMap map, SaveOptions options) throws IOException {
+        ByteArrayOutputStream out;
+
+        out = new ByteArrayOutputStream();
+        map.save(out, options);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void everyOptionSetLoadsBack() throws Exception {
+        List<SaveOptions> saveOptions;
+        MinecraftMapBase source;
+
+        source = createSource();
+        saveOptions = new ArrayList<SaveOptions>();
+        saveOptions.add(new SaveOptions());
+        saveOptions.add(SaveOptions.fastest());
+        saveOptions.add(SaveOptions.smallest().setCompressionStrategy(Deflater.FILTERED));
+        saveOptions.add(new SaveOptions().setDeflaterPool(new DeflaterPool()).setBufferSize(1000));
+        saveOptions.add(new SaveOptions().setParallelCompression(true).setCompressionBlockSize(4096));
+        for(MapFormat format : getCompressedFormats()) {
+            MinecraftMap map;
+
+            map = format.convert(source);
+            for(SaveOptions options : saveOptions) {
+                LoadOptions loadOptions;
+                byte[] data;
+
+                data = save(map, options);
+                loadOptions = new LoadOptions().setInflaterPool(new InflaterPool()).setBufferSize(777);
+                assertArrayEquals(format.getName(), map.getBlocks(),
+                                  format.load(new ByteArrayInputStream(data), loadOptions).getBlocks());
+                loadOptions = new LoadOptions().setParallelDecompression(true);
+                assertArrayEquals(format.getName(), map.getBlocks(),
+                                  format.load(new ByteArrayInputStream(data), loadOptions).getBlocks());
+            }
+            assertTrue(format.getName(),
+                       save(map, SaveOptions.smallest()).length <= save(map, SaveOptions.fastest()).length);
+        }
+    }
+
+    @Test
+    public void poolsGetTheirCodecsBack() throws Exception {
+        MinecraftMapBase source;
+        DeflaterPool deflaters;
+        InflaterPool inflaters;
+
+        source = createSource();
+        deflaters = new DeflaterPool();
+        inflaters = new InflaterPool();
+        for(MapFormat format : getCompressedFormats()) {
+            byte[] data;
+
+            data = save(format.convert(source), new SaveOptions().setDeflaterPool(deflaters));
+            assertEquals(format.getName(), 1, deflaters.getIdleCount());
+            format.load(new ByteArrayInputStream(data), new LoadOptions().setInflaterPool(inflaters));
+            assertEquals(format.getName(), 1, inflaters.getIdleCount());
+        }
+    }
+
+    @Test
+    public void failedSaveReturnsThePooledDeflater() throws Exception {
+        MinecraftMapBase source;
+        DeflaterPool deflaters;
+
+        source = createSource();
+        deflaters = new DeflaterPool();
+        for(MapFormat format : getCompressedFormats()) {
+            OutputStream out;
+
+            out = new OutputStream() {
+                private int written;
+
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] {(byte)b}, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    written += len;
+                    if(written > 100)
+                        throw new IOException("disk full");
+                }
+            };
+            try {
+                format.convert(source).save(out, new SaveOptions().setDeflaterPool(deflaters));
+                fail(format.getName() + " saved to a failing stream");
+            } catch(IOException e) {
+            }
+            assertEquals(format.getName(), 1, deflaters.getIdleCount());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLevelIsRejected() {
+        new SaveOptions().setCompressionLevel(10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oversizedCompressionBlockIsRejected() {
+        new SaveOptions().setCompressionBlockSize(Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,215 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrentMinecraftMapTest {
+    private static final int THREADS = 8;
+
+    private ExecutorService executor;
+    private ConcurrentMinecraftMap map;
+
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newFixedThreadPool(THREADS + 2);
+        map = new ConcurrentMinecraftMap(
+            new MinecraftMapBase(new byte[64 * 64 * 64], 64, 64, 64, 0, 0, 0, 0, 0), 16
+        );
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    // Starts every task at once and rethrows the first failure.
+    private void runAll(List<Callable<Void>> tasks) throws Exception {
+        final CountDownLatch start;
+        List<Future<Void>> futures;
+
+        start = new CountDownLatch(1);
+        futures = new ArrayList<Future<Void>>();
+        for(final Callable<Void> task : tasks) {
+            futures.add(executor.submit(new Callable<Void>() {
+                public Void call() throws Exception {
+                    start.await();
+                    return task.call();
+                }
+            }));
+        }
+        start.countDown();
+        for(Future<Void> future : futures)
+            future.get();
+    }
+
+    @Test
+    public void updatesAcrossRegionBoundariesAreAtomic() throws Exception {
+        List<Callable<Void>> tasks;
+
+        tasks = new ArrayList<Callable<Void>>();
+        for(int t = 0;t < THREADS;t++) {
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    for(int i = 0;i < 30;i++) {
+                        // The region spans eight lock regions.
+                        map.update(15, 15, 15, 2, 2, 2, new ConcurrentMinecraftMap.Update() {
+                            public void update(MinecraftMap inner) {
+                                inner.setBlock(15, 15, 15, (byte)(inner.getBlock(15, 15, 15) + 1));
+                                inner.setBlock(16, 16, 16, (byte)(inner.getBlock(16, 16, 16) + 1));
+                            }
+                        });
+                    }
+                    return null;
+                }
+            });
+        }
+        runAll(tasks);
+        assertEquals(THREADS * 30, map.getBlock(15, 15, 15) & 0xFF);
+        assertEquals(THREADS * 30, map.getBlock(16, 16, 16) & 0xFF);
+    }
+
+    @Test
+    public void readersNeverSeeHalfABatch() throws Exception {
+        final AtomicBoolean running;
+        final int[][] positions;
+        List<Callable<Void>> tasks;
+
+        positions = new int[][] {{0, 0, 0}, {63, 0, 0}, {0, 63, 0}, {0, 0, 63}, {40, 20, 10}, {63, 63, 63}};
+        running = new AtomicBoolean(true);
+        tasks = new ArrayList<Callable<Void>>();
+        for(int t = 0;t < 2;t++) {
+            final int writer;
+
+            writer = t;
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    for(int i = 0;i < 2000;i++) {
+                        BlockChangeBatch batch;
+
+                        batch = new BlockChangeBatch();
+                        for(int[] p : positions)
+                            batch.add(p[0], p[1], p[2], (byte)(writer * 100 + i % 100));
+                        map.setBlocks(batch);
+                    }
+                    running.set(false);
+                    return null;
+                }
+            });
+        }
+        for(int t = 0;t < THREADS - 2;t++) {
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    while(running.get()) {
+                        MinecraftMap snapshot;
+
+                        snapshot = map.snapshot();
+                        for(int[] p : positions)
+                            assertEquals(snapshot.getBlock(0, 0, 0), snapshot.getBlock(p[0], p[1], p[2]));
+                    }
+                    return null;
+                }
+            });
+        }
+        runAll(tasks);
+    }
+
+    @Test
+    public void disjointWritersAllLand() throws Exception {
+        List<Callable<Void>> tasks;
+
+        tasks = new ArrayList<Callable<Void>>();
+        for(int t = 0;t < THREADS;t++) {
+            final int slab;
+
+            slab = t;
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    for(int h = slab * 8;h < slab * 8 + 8;h++) {
+                        for(int d = 0;d < 64;d++) {
+                            for(int w = 0;w < 64;w++)
+                                map.setBlock(w, h, d, (byte)(slab + 1));
+                        }
+                    }
+                    return null;
+                }
+            });
+        }
+        // Optimistic readers run alongside and must only see whole values.
+        tasks.add(new Callable<Void>() {
+            public Void call() {
+                for(int i = 0;i < 100000;i++) {
+                    byte value;
+
+                    value = map.getBlock(i % 64, (i / 64) % 64, (i / 4096) % 64);
+                    assertTrue(value >= 0 && value <= THREADS);
+                }
+                return null;
+            }
+        });
+        runAll(tasks);
+
+        for(int h = 0;h < 64;h++)
+            assertEquals(h / 8 + 1, map.getBlock(h % 64, h, 63 - h));
+        assertEquals(64 * 64 * 64, countNonZero(map.getBlocks()));
+    }
+
+    private static int countNonZero(byte[] blocks) {
+        int count;
+
+        count = 0;
+        for(int i = 0;i < blocks.length;i++) {
+            if(blocks[i] != 0)
+                count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void fillsAndReplacesStayConsistent() throws Exception {
+        List<Callable<Void>> tasks;
+
+        tasks = new ArrayList<Callable<Void>>();
+        for(int t = 0;t < THREADS;t++) {
+            final byte type;
+
+            type = (byte)(t + 1);
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    for(int i = 0;i < 50;i++) {
+                        map.fillRegion(8, 8, 8, 40, 40, 40, type);
+                        map.replaceInRegion(8, 8, 8, 40, 40, 40, type, type);
+                    }
+                    return null;
+                }
+            });
+        }
+        runAll(tasks);
+
+        // The last fill wins everywhere, so the region is uniform.
+        for(int h = 8;h < 48;h++) {
+            for(int d = 8;d < 48;d++) {
+                for(int w = 8;w < 48;w++)
+                    assertEquals(map.getBlock(8, 8, 8), map.getBlock(w, h, d));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stripeCountMustBeAPowerOfTwo() throws Exception {
+        new ConcurrentMinecraftMap(
+            new MinecraftMapBase(new byte[16 * 16 * 16], 16, 16, 16, 0, 0, 0, 0, 0), 12
+        );
+    }
+}
@@ -0,0 +1,252 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DeltaJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path mapFile, journal;
+
+    @Before
+    public void setUp() throws Exception {
+        mapFile = folder.getRoot().toPath().resolve("world.fcm");
+        journal = DeltaJournal.getJournalPath(mapFile);
+        FCraftMinecraftMap.FORMAT.convert(
+            new MinecraftMapBase(new byte[64 * 32 * 64], 64, 32, 64, 1, 1, 1, 0, 0)
+        ).save(mapFile);
+    }
+
+    private MinecraftMap load() throws Exception {
+        return DeltaJournal.load(mapFile, FCraftMinecraftMap.FORMAT, new LoadOptions());
+    }
+
+    private static void truncate(Path file, long length) throws Exception {
+        RandomAccessFile raf;
+
+        raf = new RandomAccessFile(file.toFile(), "rw");
+        try {
+            raf.setLength(length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void appendedChangesReplayOnLoad() throws Exception {
+        MinecraftMap map, loaded;
+        long size;
+
+        map = load();
+        assertFalse(map.isDirty());
+        map.setBlock(1, 2, 3, (byte)5);
+        map.setBlock(60, 30, 60, (byte)6);
+        assertTrue(map.isDirty());
+        assertTrue(map.saveDelta(mapFile) > 0);
+        assertFalse(map.isDirty());
+
+        // Nothing changed, so nothing is written.
+        size = Files.size(journal);
+        assertEquals(0, map.saveDelta(mapFile));
+        assertEquals(size, Files.size(journal));
+
+        map.setSpawn(10, 11, 12, 64, 32);
+        assertEquals(0, map.saveDelta(mapFile));
+        assertTrue(Files.size(journal) > size);
+
+        loaded = load();
+        assertFalse(loaded.isDirty());
+        assertArrayEquals(map.getBlocks(), loaded.getBlocks());
+        assertEquals(10, loaded.getSpawnWidth());
+        assertEquals(12, loaded.getSpawnDepth());
+        assertEquals(64, loaded.getSpawnRotation());
+    }
+
+    @Test
+    public void tornTailIsIgnoredAndOverwritten() throws Exception {
+        MinecraftMap map, loaded;
+        long first;
+
+        map = load();
+        map.setBlock(1, 1, 1, (byte)7);
+        map.saveDelta(mapFile);
+        first = Files.size(journal);
+        map.setBlock(2, 2, 2, (byte)8);
+        map.saveDelta(mapFile);
+
+        // A crash part way through the second entry.
+        truncate(journal, first + 10);
+        loaded = load();
+        assertEquals(7, loaded.getBlock(1, 1, 1));
+        assertEquals(0, loaded.getBlock(2, 2, 2));
+
+        // The next append cuts the torn bytes off before writing.
+        loaded.setBlock(3, 3, 3, (byte)9);
+        loaded.saveDelta(mapFile);
+        loaded = load();
+        assertEquals(7, loaded.getBlock(1, 1, 1));
+        assertEquals(0, loaded.getBlock(2, 2, 2));
+        assertEquals(9, loaded.getBlock(3, 3, 3));
+    }
+
+    @Test
+    public void corruptEntryEndsReplay() throws Exception {
+        RandomAccessFile raf;
+        MinecraftMap map;
+        long first;
+
+        map = load();
+        map.setBlock(1, 1, 1, (byte)7);
+        map.saveDelta(mapFile);
+        first = Files.size(journal);
+        map.setBlock(2, 2, 2, (byte)8);
+        map.saveDelta(mapFile);
+
+        raf = new RandomAccessFile(journal.toFile(), "rw");
+        try {
+            int last;
+
+            raf.seek(raf.length() - 1);
+            last = raf.read();
+            raf.seek(raf.length() - 1);
+            raf.write(last ^ 0xFF);
+        } finally {
+            raf.close();
+        }
+        assertEquals(1, DeltaJournal.replay(mapFile, FCraftMinecraftMap.FORMAT.load(mapFile.toFile())));
+        assertEquals(0, load().getBlock(2, 2, 2));
+        assertTrue(first < Files.size(journal));
+    }
+
+    @Test
+    public void journalForAnotherBaseIsIgnored() throws Exception {
+        MinecraftMap map, base;
+
+        map = load();
+        map.setBlock(1, 1, 1, (byte)7);
+        map.saveDelta(mapFile);
+
+        // Same size, different contents.
+        base = FCraftMinecraftMap.FORMAT.load(mapFile.toFile());
+        base.setBlock(5, 5, 5, (byte)1);
+        base.save(mapFile.toFile());
+        assertEquals(0, DeltaJournal.replay(mapFile, FCraftMinecraftMap.FORMAT.load(mapFile.toFile())));
+        assertEquals(0, load().getBlock(1, 1, 1));
+
+        // The stale journal is restarted rather than appended to.
+        map = load();
+        map.setBlock(2, 2, 2, (byte)3);
+        map.saveDelta(mapFile);
+        map = load();
+        assertEquals(0, map.getBlock(1, 1, 1));
+        assertEquals(1, map.getBlock(5, 5, 5));
+        assertEquals(3, map.getBlock(2, 2, 2));
+    }
+
+    @Test
+    public void fullSaveWithinTheTimestampGranularityRestartsTheJournal() throws Exception {
+        MinecraftMap map, base;
+        FileTime modified;
+        long size;
+
+        base = FCraftMinecraftMap.FORMAT.load(mapFile.toFile());
+        base.setBlock(5, 5, 5, (byte)1);
+        base.save(mapFile.toFile());
+        size = Files.size(mapFile);
+
+        map = load();
+        map.setBlock(1, 1, 1, (byte)7);
+        map.saveDelta(mapFile);
+        modified = Files.getLastModifiedTime(mapFile);
+
+        // Same size and timestamp, different contents.
+        base.setBlock(5, 5, 5, (byte)2);
+        base.save(mapFile.toFile());
+        Files.setLastModifiedTime(mapFile, modified);
+        assertEquals(size, Files.size(mapFile));
+
+        map.setBlock(2, 2, 2, (byte)3);
+        map.saveDelta(mapFile);
+        map = load();
+        assertEquals(0, map.getBlock(1, 1, 1));
+        assertEquals(2, map.getBlock(5, 5, 5));
+        assertEquals(3, map.getBlock(2, 2, 2));
+    }
+
+    @Test
+    public void attributeChangesAreJournaled() throws Exception {
+        FCraftMinecraftMap map, loaded;
+        MCSharpMinecraftMap level;
+        Path levelFile;
+
+        map = (FCraftMinecraftMap)load();
+        map.setMetadata("fCraft.kept", "yes");
+        map.setMetadata("fCraft.dropped", "soon");
+        map.saveDelta(mapFile);
+        map.removeMetadata("fCraft.dropped");
+        assertTrue(map.isDirty());
+        map.saveDelta(mapFile);
+        assertFalse(map.isDirty());
+
+        loaded = (FCraftMinecraftMap)load();
+        assertEquals("yes", loaded.getMetadata("fCraft.kept"));
+        assertEquals(null, loaded.getMetadata("fCraft.dropped"));
+
+        levelFile = folder.getRoot().toPath().resolve("world.lvl");
+        MCSharpMinecraftMap.FORMAT.convert(
+            new MinecraftMapBase(new byte[16 * 16 * 16], 16, 16, 16, 1, 1, 1, 0, 0)
+        ).save(levelFile);
+        level = (MCSharpMinecraftMap)DeltaJournal.load(levelFile, MCSharpMinecraftMap.FORMAT, new LoadOptions());
+        level.setBuildPermission(MCSharpMinecraftMap.LevelPermission.OPERATOR);
+        level.saveDelta(levelFile);
+        level = (MCSharpMinecraftMap)DeltaJournal.load(levelFile, MCSharpMinecraftMap.FORMAT, new LoadOptions());
+        assertEquals(MCSharpMinecraftMap.LevelPermission.OPERATOR, level.getBuildPermission());
+    }
+
+    @Test
+    public void compactFoldsTheJournalIntoTheMap() throws Exception {
+        MinecraftMap map;
+
+        map = load();
+        map.setBlock(4, 4, 4, (byte)4);
+        map.saveDelta(mapFile);
+        DeltaJournal.compact(mapFile, FCraftMinecraftMap.FORMAT, new LoadOptions(), new SaveOptions());
+        assertFalse(Files.exists(journal));
+        assertEquals(4, FCraftMinecraftMap.FORMAT.load(mapFile.toFile()).getBlock(4, 4, 4));
+    }
+
+    @Test
+    public void extendedPlanesAreJournaled() throws Exception {
+        RUMMinecraftMap map, loaded;
+        Path rumFile;
+
+        rumFile = folder.getRoot().toPath().resolve("world.rum");
+        map = new RUMMinecraftMap(
+            16, 16, 16,
+            1, 1, 1, 0, 0,
+            new HashMap<String, byte[]>(),
+            new byte[16 * 16 * 16][3], 3
+        );
+        map.save(rumFile);
+        map = (RUMMinecraftMap)DeltaJournal.load(rumFile, RUMMinecraftMap.FORMAT, new LoadOptions());
+        map.setBlock(1, 2, 3, (byte)2, true, false, false, true, false, false);
+        map.saveDelta(rumFile);
+
+        loaded = (RUMMinecraftMap)DeltaJournal.load(rumFile, RUMMinecraftMap.FORMAT, new LoadOptions());
+        assertArrayEquals(map.getExtendedBlockPlanes(), loaded.getExtendedBlockPlanes());
+        assertTrue(loaded.isBlockMessage(1, 2, 3));
+    }
+}
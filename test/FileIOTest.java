@@ -0,0 +1,131 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileIOTest {
+    private static final byte OP_GLASS = 100,
+                              GLASS = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static MinecraftMapBase createSource() throws InvalidMapException {
+        byte[] blocks;
+        Random random;
+
+        random = new Random(13);
+        blocks = new byte[48 * 32 * 40];
+        for(int i = 0;i < blocks.length;i++)
+            blocks[i] = (byte)random.nextInt(50);
+        return new MinecraftMapBase(blocks, 48, 32, 40, 8, 8, 8, 0, 0);
+    }
+
+    @Test
+    public void everyFormatRoundTripsThroughPaths() throws Exception {
+        MinecraftMapBase source;
+
+        source = createSource();
+        for(MapFormat format : MapFormats.getFormats()) {
+            MinecraftMap map, loaded;
+            Path path;
+
+            map = format.convert(source);
+            path = folder.newFile("map-" + format.getName()).toPath();
+            HeaderProbeTest.save(format, map, path.toFile());
+
+            // A buffer smaller than the block array exercises both the
+            // buffered and the direct read paths.
+            loaded = format.load(path, new LoadOptions().setBufferSize(1000));
+            assertEquals(format.getName(), map.getWidth(), loaded.getWidth());
+            assertEquals(format.getName(), map.getHeight(), loaded.getHeight());
+            assertEquals(format.getName(), map.getDepth(), loaded.getDepth());
+            assertArrayEquals(format.getName(), source.getBlocks(), loaded.getBlocks());
+            if(loaded instanceof Closeable)
+                ((Closeable)loaded).close();
+        }
+    }
+
+    @Test
+    public void pathAndStreamSavesMatch() throws Exception {
+        MinecraftMapBase source;
+
+        source = createSource();
+        for(MapFormat format : MapFormats.getFormats()) {
+            MinecraftMap map;
+            ByteArrayOutputStream out;
+            Path path;
+
+            if(format == MappedMinecraftMap.FORMAT)
+                continue;
+            map = format.convert(source);
+            path = folder.newFile("stream-" + format.getName()).toPath();
+            map.save(path);
+            out = new ByteArrayOutputStream();
+            map.save(out);
+            assertArrayEquals(format.getName(),
+                              format.load(new ByteArrayInputStream(out.toByteArray()), new LoadOptions()).getBlocks(),
+                              format.load(path, new LoadOptions()).getBlocks());
+        }
+    }
+
+    @Test
+    public void mcSharpSavesTranslatedBlocks() throws Exception {
+        MCSharpMinecraftMap map, loaded;
+        Path path;
+
+        map = (MCSharpMinecraftMap)MCSharpMinecraftMap.FORMAT.convert(createSource());
+        map.setBlock(1, 2, 3, OP_GLASS);
+        path = folder.newFile("special.lvl").toPath();
+        map.save(path);
+
+        // Like the stream path, files hold the normal form of special blocks.
+        loaded = MCSharpMinecraftMap.load(path, new LoadOptions().setBufferSize(512));
+        assertEquals(GLASS, loaded.getBlock(1, 2, 3));
+        assertEquals(GLASS, loaded.getBlockSpecial(1, 2, 3));
+        assertArrayEquals(map.getBlocks(), loaded.getBlocksSpecial());
+    }
+
+    @Test
+    public void rumKeepsExtendedBlocksAndFlags() throws Exception {
+        RUMMinecraftMap map, loaded;
+        byte[][] blockData;
+        Random random;
+        Path path;
+
+        random = new Random(31);
+        blockData = new byte[32 * 16 * 16][3];
+        for(int i = 0;i < blockData.length;i++)
+            random.nextBytes(blockData[i]);
+        map = new RUMMinecraftMap(
+            32, 16, 16,
+            1, 1, 1, 0, 0,
+            new HashMap<String, byte[]>(),
+            blockData, 3
+        );
+        map.setBlock(4, 5, 6, (byte)9, true, false, true, false, false, true);
+        map.setMetadata("name", new byte[] {4, 5, 6});
+        path = folder.newFile("extended.rum").toPath();
+        map.save(path);
+
+        loaded = (RUMMinecraftMap)RUMMinecraftMap.FORMAT.load(path, new LoadOptions().setBufferSize(512));
+        assertEquals(3, loaded.getExtendedBlockLength());
+        assertArrayEquals(map.getExtendedBlockPlanes(), loaded.getExtendedBlockPlanes());
+        assertArrayEquals(new byte[] {4, 5, 6}, loaded.getMetadata("name"));
+        assertEquals(9, loaded.getBlock(4, 5, 6));
+        assertTrue(loaded.isBlockSpecial(4, 5, 6));
+        assertTrue(loaded.isBlockPhysics(4, 5, 6));
+        assertTrue(loaded.isBlockScripted(4, 5, 6));
+    }
+}
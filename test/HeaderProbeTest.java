@@ -0,0 +1,78 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HeaderProbeTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static MinecraftMapBase createSource() throws InvalidMapException {
+        byte[] blocks;
+
+        blocks = new byte[64 * 32 * 48];
+        new Random(11).nextBytes(blocks);
+        return new MinecraftMapBase(blocks, 64, 32, 48, 320, 640, 960, 40, 50);
+    }
+
+    static void save(MapFormat format, MinecraftMap map, File file) throws Exception {
+        if(format == MappedMinecraftMap.FORMAT)
+            MappedMinecraftMap.create(file, map).close();
+        else
+            format.convert(map).save(file);
+    }
+
+    // Some formats store the spawn with less precision, so the header is
+    // held to what a full load of the same file reports.
+    private static void assertHeader(String name, MapHeader header, MinecraftMap map) {
+        assertEquals(name, 64, header.getWidth());
+        assertEquals(name, 32, header.getHeight());
+        assertEquals(name, 48, header.getDepth());
+        assertEquals(name, 64L * 32 * 48, header.getTotalBlocks());
+        assertEquals(name, map.getSpawnWidth(), header.getSpawnWidth());
+        assertEquals(name, map.getSpawnHeight(), header.getSpawnHeight());
+        assertEquals(name, map.getSpawnDepth(), header.getSpawnDepth());
+        assertEquals(name, map.getSpawnRotation(), header.getSpawnRotation());
+        assertEquals(name, map.getSpawnPitch(), header.getSpawnPitch());
+    }
+
+    @Test
+    public void headerMatchesSavedMap() throws Exception {
+        MinecraftMapBase source;
+
+        source = createSource();
+        for(MapFormat format : MapFormats.getFormats()) {
+            File file;
+
+            file = folder.newFile("map-" + format.getName());
+            save(format, source, file);
+            assertHeader(format.getName(), format.readHeader(file), format.load(file));
+        }
+    }
+
+    @Test
+    public void headerIgnoresMissingBlockData() throws Exception {
+        MinecraftMapBase source;
+
+        source = createSource();
+        for(MapFormat format : MapFormats.getFormats()) {
+            MinecraftMap map;
+            File file;
+            byte[] data;
+
+            file = folder.newFile("truncated-" + format.getName());
+            save(format, source, file);
+            map = format.load(file);
+            data = Files.readAllBytes(file.toPath());
+            Files.write(file.toPath(), Arrays.copyOf(data, data.length / 2));
+            assertHeader(format.getName(), format.readHeader(file), map);
+        }
+    }
+}
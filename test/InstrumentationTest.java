@@ -0,0 +1,219 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.ObjectName;
+import org.junit.After;
+import org.junit.Test;
+
+public class InstrumentationTest {
+    private static class RecordingListener implements MapIOListener {
+        final List<String> started = new ArrayList<String>();
+        final List<IOStatistics> completed = new ArrayList<IOStatistics>();
+
+        public synchronized void operationStarted(IOStatistics.Operation operation, String format) {
+            started.add(operation + " " + format);
+        }
+
+        public synchronized void operationCompleted(IOStatistics statistics) {
+            completed.add(statistics);
+        }
+    }
+
+    private final RecordingListener listener = new RecordingListener();
+
+    @After
+    public void tearDown() throws Exception {
+        MapInstrumentation.removeListener(listener);
+        MapInstrumentation.unregisterMBean();
+        MapInstrumentation.disableFlightRecorder();
+    }
+
+    private static MinecraftMapBase createSource() throws InvalidMapException {
+        byte[] blocks;
+
+        blocks = new byte[32 * 16 * 16];
+        for(int i = 0;i < blocks.length;i++)
+            blocks[i] = (byte)(i % 7);
+        return new MinecraftMapBase(blocks, 32, 16, 16, 1, 1, 1, 0, 0);
+    }
+
+    @Test
+    public void everyFormatReportsLoadAndSave() throws Exception {
+        MinecraftMapBase source;
+        MapFormat[] formats;
+
+        formats = new MapFormat[] {
+            FCraftMinecraftMap.FORMAT,
+            MCSharpMinecraftMap.FORMAT,
+            RUMMinecraftMap.FORMAT,
+            DatMinecraftMap.FORMAT
+        };
+        source = createSource();
+        MapInstrumentation.addListener(listener);
+        for(MapFormat format : formats) {
+            ByteArrayOutputStream out;
+            IOStatistics save, load;
+
+            listener.started.clear();
+            listener.completed.clear();
+            out = new ByteArrayOutputStream();
+            format.convert(source).save(out);
+            format.load(new ByteArrayInputStream(out.toByteArray()), new LoadOptions());
+
+            assertEquals(format.getName(), 2, listener.started.size());
+            assertEquals(format.getName(), 2, listener.completed.size());
+            save = listener.completed.get(0);
+            load = listener.completed.get(1);
+
+            assertSame(IOStatistics.Operation.SAVE, save.getOperation());
+            assertTrue(save.isSuccess());
+            assertEquals(format.getName(), out.size(), save.getBytesWritten());
+            assertTrue(save.getBytesDeflated() >= source.getBlocks().length);
+            assertEquals(source.getBlocks().length, save.getBlocks());
+
+            assertSame(IOStatistics.Operation.LOAD, load.getOperation());
+            assertEquals(format.getName(), load.getFormat());
+            assertTrue(load.isSuccess());
+            assertEquals(format.getName(), out.size(), load.getBytesRead());
+            assertEquals(save.getBytesDeflated(), load.getBytesInflated());
+            assertEquals(source.getBlocks().length, load.getBlocks());
+            assertTrue(load.getTotalNanos() >= load.getPhaseNanos(IOStatistics.Phase.DECOMPRESSION));
+        }
+    }
+
+    @Test
+    public void failedLoadsReportTheirError() throws Exception {
+        IOStatistics statistics;
+
+        MapInstrumentation.addListener(listener);
+        try {
+            FCraftMinecraftMap.FORMAT.load(new ByteArrayInputStream(new byte[] {2, 0, 0, (byte)0xFC, 1}),
+                                           new LoadOptions());
+            fail("loaded a truncated map");
+        } catch(Exception e) {
+        }
+        assertEquals(1, listener.completed.size());
+        statistics = listener.completed.get(0);
+        assertFalse(statistics.isSuccess());
+        assertNotNull(statistics.getError());
+    }
+
+    @Test
+    public void mbeanAggregatesOperations() throws Exception {
+        MapIOStats stats;
+        ByteArrayOutputStream out;
+        MinecraftMap map;
+
+        stats = MapInstrumentation.registerMBean();
+        assertSame(stats, MapInstrumentation.registerMBean());
+        map = MCSharpMinecraftMap.FORMAT.convert(createSource());
+        for(int i = 0;i < 3;i++) {
+            out = new ByteArrayOutputStream();
+            map.save(out);
+            MCSharpMinecraftMap.FORMAT.load(new ByteArrayInputStream(out.toByteArray()), new LoadOptions());
+        }
+
+        assertEquals(3, stats.getSaveCount());
+        assertEquals(3, stats.getLoadCount());
+        assertEquals(3L * map.getBlocks().length, stats.getBlocksDecoded());
+        assertEquals(3L, ManagementFactory.getPlatformMBeanServer().getAttribute(
+            new ObjectName(MapInstrumentation.MBEAN_NAME), "LoadCount"
+        ));
+        stats.reset();
+        assertEquals(0, stats.getLoadCount());
+
+        MapInstrumentation.unregisterMBean();
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(
+            new ObjectName(MapInstrumentation.MBEAN_NAME)
+        ));
+    }
+
+    @Test
+    public void flightRecorderListenerHandlesNestedOperations() throws Exception {
+        final MinecraftMap map;
+        MapIOListener nested;
+
+        assertTrue(MapInstrumentation.enableFlightRecorder());
+        assertTrue(MapInstrumentation.isFlightRecorderEnabled());
+        map = FCraftMinecraftMap.FORMAT.convert(createSource());
+        // A save started from inside another operation nests its event.
+        nested = new MapIOListener() {
+            private boolean inside;
+
+            public void operationStarted(IOStatistics.Operation operation, String format) {
+                if(inside || operation != IOStatistics.Operation.LOAD)
+                    return;
+                inside = true;
+                try {
+                    map.save(new ByteArrayOutputStream());
+                } catch(Exception e) {
+                    throw new IllegalStateException(e);
+                } finally {
+                    inside = false;
+                }
+            }
+
+            public void operationCompleted(IOStatistics statistics) {
+            }
+        };
+        MapInstrumentation.addListener(nested);
+        MapInstrumentation.addListener(listener);
+        try {
+            ByteArrayOutputStream out;
+
+            out = new ByteArrayOutputStream();
+            map.save(out);
+            FCraftMinecraftMap.FORMAT.load(new ByteArrayInputStream(out.toByteArray()), new LoadOptions());
+        } finally {
+            MapInstrumentation.removeListener(nested);
+        }
+        assertEquals(3, listener.completed.size());
+        MapInstrumentation.disableFlightRecorder();
+        assertFalse(MapInstrumentation.isFlightRecorderEnabled());
+    }
+
+    @Test
+    public void listenersChangedMidOperationSeeWholeOperationsOnly() throws Exception {
+        final RecordingListener late;
+        MapIOListener swapping;
+        MinecraftMap map;
+
+        late = new RecordingListener();
+        map = FCraftMinecraftMap.FORMAT.convert(createSource());
+        // Joins the late listener and leaves while the first save runs.
+        swapping = new MapIOListener() {
+            public void operationStarted(IOStatistics.Operation operation, String format) {
+                MapInstrumentation.addListener(late);
+                MapInstrumentation.removeListener(listener);
+            }
+
+            public void operationCompleted(IOStatistics statistics) {
+            }
+        };
+        MapInstrumentation.addListener(listener);
+        MapInstrumentation.addListener(swapping);
+        try {
+            map.save(new ByteArrayOutputStream());
+            MapInstrumentation.removeListener(swapping);
+            map.save(new ByteArrayOutputStream());
+        } finally {
+            MapInstrumentation.removeListener(swapping);
+            MapInstrumentation.removeListener(late);
+        }
+        assertEquals(1, listener.started.size());
+        assertEquals(1, listener.completed.size());
+        assertEquals(1, late.started.size());
+        assertEquals(1, late.completed.size());
+    }
+}
@@ -0,0 +1,118 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MapBatchLoaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static MinecraftMapBase createSource() throws InvalidMapException {
+        byte[] blocks;
+        Random random;
+
+        random = new Random(16);
+        blocks = new byte[32 * 16 * 24];
+        for(int i = 0;i < blocks.length;i++)
+            blocks[i] = (byte)random.nextInt(50);
+        return new MinecraftMapBase(blocks, 32, 16, 24, 4, 4, 4, 0, 0);
+    }
+
+    @Test
+    public void directoryLoadFindsEveryFormat() throws Exception {
+        MinecraftMapBase source;
+        MapBatchLoader.Report report;
+        FileOutputStream out;
+        List<MapFormat> formats;
+
+        source = createSource();
+        for(MapFormat format : MapFormats.getFormats()) {
+            File file;
+
+            file = folder.newFile("map-" + format.getName() + "." + format.getExtensions().iterator().next());
+            HeaderProbeTest.save(format, format.convert(source), file);
+        }
+        // Picked up by signature rather than by name.
+        FCraftMinecraftMap.FORMAT.convert(source).save(folder.newFile("renamed.bin"));
+        out = new FileOutputStream(folder.newFile("notes.txt"));
+        out.write("not a map".getBytes("UTF-8"));
+        out.close();
+
+        // A budget smaller than any map still admits one load at a time.
+        report = new MapBatchLoader().setParallelism(3).setMemoryBudget(1).load(folder.getRoot());
+        assertEquals(MapFormats.getFormats().size() + 1, report.getResults().size());
+        assertEquals(0, report.getFailureCount());
+        formats = new ArrayList<MapFormat>();
+        for(MapBatchLoader.Result result : report.getResults()) {
+            assertTrue(result.isSuccess());
+            assertArrayEquals(result.getFile().toString(), source.getBlocks(), result.getMap().getBlocks());
+            assertTrue(result.getFileSize() > 0);
+            if(result.getFile().getFileName().toString().equals("renamed.bin"))
+                assertSame(FCraftMinecraftMap.FORMAT, result.getFormat());
+            else
+                formats.add(result.getFormat());
+        }
+        assertTrue(formats.containsAll(MapFormats.getFormats()));
+        assertEquals(report.getResults().size() * (long)source.getBlocks().length, report.getTotalBlocks());
+        assertTrue(report.getTotalBytes() > 0);
+    }
+
+    @Test
+    public void badFilesAreReportedNotThrown() throws Exception {
+        MapBatchLoader.Report report;
+        List<Path> files;
+        FileOutputStream out;
+        File good, bad;
+
+        good = folder.newFile("good.lvl");
+        MCSharpMinecraftMap.FORMAT.convert(createSource()).save(good);
+        bad = folder.newFile("bad.lvl");
+        out = new FileOutputStream(bad);
+        out.write(new byte[] {0x1f, (byte)0x8b, 8, 0});
+        out.close();
+
+        files = new ArrayList<Path>();
+        files.add(good.toPath());
+        files.add(bad.toPath());
+        files.add(folder.getRoot().toPath().resolve("missing.fcm"));
+        report = new MapBatchLoader().load(files);
+        assertEquals(3, report.getResults().size());
+        assertEquals(2, report.getFailureCount());
+        assertTrue(report.getResults().get(0).isSuccess());
+        assertFalse(report.getResults().get(1).isSuccess());
+        assertNull(report.getResults().get(1).getMap());
+        assertFalse(report.getResults().get(2).isSuccess());
+        assertEquals(1, report.getMaps().size());
+    }
+
+    @Test
+    public void overheadFactorsDefaultPerFormat() {
+        MapBatchLoader loader;
+
+        loader = new MapBatchLoader();
+        assertEquals(2.0, loader.getOverheadFactor(DatMinecraftMap.FORMAT), 0);
+        assertEquals(0.0, loader.getOverheadFactor(MappedMinecraftMap.FORMAT), 0);
+        assertEquals(1.0, loader.getOverheadFactor(FCraftMinecraftMap.FORMAT), 0);
+        loader.setOverheadFactor(FCraftMinecraftMap.FORMAT, 1.5);
+        assertEquals(1.5, loader.getOverheadFactor(FCraftMinecraftMap.FORMAT), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeOverheadIsRejected() {
+        new MapBatchLoader().setOverheadFactor(FCraftMinecraftMap.FORMAT, -1);
+    }
+}
@@ -0,0 +1,100 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MapConverterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static MinecraftMapBase createSource() throws InvalidMapException {
+        byte[] blocks;
+        Random random;
+
+        random = new Random(13);
+        blocks = new byte[32 * 16 * 64];
+        for(int i = 0;i < blocks.length;i++)
+            blocks[i] = (byte)random.nextInt(50);
+        return new MinecraftMapBase(blocks, 32, 16, 64, 64, 64, 64, 0, 0);
+    }
+
+    private static List<MapFormat> getWritableFormats() {
+        List<MapFormat> formats;
+
+        formats = new ArrayList<MapFormat>();
+        for(MapFormat format : MapFormats.getFormats()) {
+            try {
+                format.createStreamWriter(new ByteArrayOutputStream());
+                formats.add(format);
+            } catch(NotImplementedException e) {
+            }
+        }
+        return formats;
+    }
+
+    @Test
+    public void everyFormatPairConverts() throws Exception {
+        MinecraftMapBase source;
+        List<MapFormat> writable;
+
+        source = createSource();
+        writable = getWritableFormats();
+        assertFalse(writable.isEmpty());
+        for(MapFormat sourceFormat : MapFormats.getFormats()) {
+            MinecraftMap original;
+            File sourceFile;
+
+            sourceFile = folder.newFile("source-" + sourceFormat.getName());
+            HeaderProbeTest.save(sourceFormat, source, sourceFile);
+            original = sourceFormat.load(sourceFile);
+            for(MapFormat destFormat : writable) {
+                MinecraftMap converted;
+                File destFile;
+                String name;
+
+                name = sourceFormat.getName() + " to " + destFormat.getName();
+                destFile = new File(folder.getRoot(), "dest-" + sourceFormat.getName() + "-" + destFormat.getName());
+                MapConverter.convert(sourceFile, sourceFormat, destFile, destFormat);
+                converted = destFormat.load(destFile);
+                assertEquals(name, original.getWidth(), converted.getWidth());
+                assertEquals(name, original.getHeight(), converted.getHeight());
+                assertEquals(name, original.getDepth(), converted.getDepth());
+                assertArrayEquals(name, destFormat.convert(original).getBlocks(), converted.getBlocks());
+            }
+        }
+    }
+
+    @Test
+    public void failedConversionRemovesTheDestination() throws Exception {
+        File sourceFile, destFile;
+        MapFormat format;
+        byte[] data;
+
+        format = MCSharpMinecraftMap.FORMAT;
+        sourceFile = folder.newFile("truncated.lvl");
+        destFile = new File(folder.getRoot(), "dest.lvl");
+        format.convert(createSource()).save(sourceFile);
+        data = Files.readAllBytes(sourceFile.toPath());
+        Files.write(sourceFile.toPath(), Arrays.copyOf(data, data.length / 2));
+
+        try {
+            MapConverter.convert(sourceFile, format, destFile, format);
+            fail("converted a truncated map");
+        } catch(MapFormatException e) {
+        }
+        assertFalse(destFile.exists());
+    }
+}
@@ -0,0 +1,126 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MapFormatsTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static MinecraftMapBase createSource() throws InvalidMapException {
+        byte[] blocks;
+
+        blocks = new byte[16 * 32 * 16];
+        for(int i = 0;i < blocks.length;i++)
+            blocks[i] = (byte)(i % 40);
+        return new MinecraftMapBase(blocks, 16, 32, 16, 2, 2, 2, 0, 0);
+    }
+
+    @Test
+    public void everyFormatIsDetectedFromItsSignature() throws Exception {
+        MinecraftMapBase source;
+
+        source = createSource();
+        for(MapFormat format : MapFormats.getFormats()) {
+            InputStream in;
+            File file;
+
+            // No extension, so only the signature can identify it.
+            file = folder.newFile("detect-" + format.getName());
+            HeaderProbeTest.save(format, format.convert(source), file);
+            assertSame(format, MapFormats.detect(file));
+
+            if(format != MappedMinecraftMap.FORMAT) {
+                in = new BufferedInputStream(new FileInputStream(file));
+                try {
+                    assertSame(format, MapFormats.detect(in));
+                    // Detection leaves the stream where it found it.
+                    assertArrayEquals(format.getName(), source.getBlocks(),
+                                      format.load(in, new LoadOptions()).getBlocks());
+                } finally {
+                    in.close();
+                }
+            }
+            assertArrayEquals(format.getName(), source.getBlocks(), MapFormats.load(file).getBlocks());
+        }
+    }
+
+    @Test
+    public void streamLoadDetectsWithoutMarkSupport() throws Exception {
+        MinecraftMapBase source;
+
+        source = createSource();
+        for(MapFormat format : MapFormats.getFormats()) {
+            InputStream in;
+            File file;
+
+            if(format == MappedMinecraftMap.FORMAT)
+                continue;
+            file = folder.newFile("stream-" + format.getName());
+            format.convert(source).save(file);
+            in = new FileInputStream(file);
+            try {
+                assertArrayEquals(format.getName(), source.getBlocks(), MapFormats.load(in).getBlocks());
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    @Test
+    public void unknownDataIsNotDetected() throws Exception {
+        ByteArrayOutputStream bytes;
+        GZIPOutputStream gzip;
+        FileOutputStream out;
+        File file;
+
+        assertNull(MapFormats.detect(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}, 8));
+        assertNull(MapFormats.detect(new byte[0], 0));
+
+        bytes = new ByteArrayOutputStream();
+        gzip = new GZIPOutputStream(bytes);
+        gzip.write(new byte[] {9, 9, 9, 9, 9, 9, 9, 9});
+        gzip.close();
+        assertNull(MapFormats.detect(bytes.toByteArray(), bytes.size()));
+        // A truncated gzip member must not throw either.
+        assertNull(MapFormats.detect(bytes.toByteArray(), 12));
+
+        file = folder.newFile("garbage.lvl");
+        out = new FileOutputStream(file);
+        out.write(bytes.toByteArray());
+        out.close();
+        try {
+            MapFormats.load(file);
+        } catch(MapFormatException e) {
+            return;
+        }
+        throw new AssertionError("loaded an unrecognized file");
+    }
+
+    @Test
+    public void lookupsByNameAndExtension() {
+        for(MapFormat format : MapFormats.getFormats()) {
+            assertSame(format, MapFormats.forName(format.getName().toUpperCase()));
+            for(String extension : format.getExtensions()) {
+                assertSame(format, MapFormats.forExtension("." + extension.toUpperCase()));
+                assertSame(format, MapFormats.forFile(new File("world." + extension)));
+            }
+        }
+        assertNull(MapFormats.forName("nonexistent"));
+        assertNull(MapFormats.forFile(new File("world")));
+        assertTrue(MapFormats.getFormats().contains(FCraftMinecraftMap.FORMAT));
+    }
+}
@@ -0,0 +1,202 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MapIOTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    // Loads block until released and record how many ran at once.
+    private static class BlockingFormat extends MapFormat {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        public String getName() {
+            return "Blocking";
+        }
+
+        public String getDescription() {
+            return "Test format";
+        }
+
+        public Set<String> getExtensions() {
+            return Collections.emptySet();
+        }
+
+        public MinecraftMap load(File file) throws InterruptedIOException {
+            int now;
+
+            now = running.incrementAndGet();
+            while(true) {
+                int max;
+
+                max = maxRunning.get();
+                if(now <= max || maxRunning.compareAndSet(max, now))
+                    break;
+            }
+            try {
+                release.await();
+                return new MinecraftMapBase(new byte[16 * 16 * 16], 16, 16, 16, 0, 0, 0, 0, 0);
+            } catch(InterruptedException e) {
+                throw new InterruptedIOException();
+            } catch(InvalidMapException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        public MinecraftMap convert(MinecraftMap map) {
+            return map;
+        }
+    }
+
+    // Workers release their slot just after completing the future.
+    private static void awaitIdle(MapIO io) throws InterruptedException {
+        long deadline;
+
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while(io.getActiveJobs() > 0 && System.nanoTime() < deadline)
+            Thread.sleep(1);
+        assertEquals(0, io.getActiveJobs());
+    }
+
+    @Test
+    public void saveThenLoadRoundTrips() throws Exception {
+        MinecraftMap map, loaded;
+        MapIO io;
+        Path path;
+
+        io = new MapIO(executor);
+        map = FCraftMinecraftMap.FORMAT.convert(
+            new MinecraftMapBase(new byte[32 * 16 * 16], 32, 16, 16, 1, 2, 3, 0, 0)
+        );
+        map.setBlock(5, 6, 7, (byte)3);
+        path = folder.getRoot().toPath().resolve("async.fcm");
+
+        io.save(map, path).get(10, TimeUnit.SECONDS);
+        // The save works on a snapshot, so later edits are not written.
+        map.setBlock(5, 6, 7, (byte)4);
+        loaded = io.load(path, FCraftMinecraftMap.FORMAT).get(10, TimeUnit.SECONDS);
+        assertEquals(3, loaded.getBlock(5, 6, 7));
+        assertEquals(32, io.readHeader(path, FCraftMinecraftMap.FORMAT).get(10, TimeUnit.SECONDS).getWidth());
+    }
+
+    @Test
+    public void failuresCompleteExceptionally() throws Exception {
+        MapIO io;
+
+        io = new MapIO(executor);
+        try {
+            io.load(folder.getRoot().toPath().resolve("missing.fcm"), FCraftMinecraftMap.FORMAT)
+              .get(10, TimeUnit.SECONDS);
+            fail("loaded a missing file");
+        } catch(ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        awaitIdle(io);
+    }
+
+    @Test
+    public void concurrentJobsStayWithinTheLimit() throws Exception {
+        List<CompletableFuture<MinecraftMap>> futures;
+        BlockingFormat format;
+        MapIO io;
+        Path path;
+
+        format = new BlockingFormat();
+        io = new MapIO(executor, 2);
+        path = folder.newFile("blocking").toPath();
+        futures = new ArrayList<CompletableFuture<MinecraftMap>>();
+        for(int i = 0;i < 6;i++)
+            futures.add(io.load(path, format));
+
+        while(format.running.get() < 2)
+            Thread.sleep(1);
+        assertEquals(2, io.getActiveJobs());
+        assertEquals(4, io.getQueuedJobs());
+
+        format.release.countDown();
+        for(CompletableFuture<MinecraftMap> future : futures)
+            assertEquals(16, future.get(10, TimeUnit.SECONDS).getWidth());
+        assertEquals(2, format.maxRunning.get());
+        awaitIdle(io);
+        assertEquals(0, io.getQueuedJobs());
+    }
+
+    @Test
+    public void cancelledJobsNeverRunAndRunningJobsAreInterrupted() throws Exception {
+        CompletableFuture<MinecraftMap> running, queued, next;
+        BlockingFormat format;
+        MapIO io;
+        Path path;
+
+        format = new BlockingFormat();
+        io = new MapIO(executor, 1);
+        path = folder.newFile("cancel").toPath();
+        running = io.load(path, format);
+        queued = io.load(path, format);
+        while(format.running.get() < 1)
+            Thread.sleep(1);
+
+        assertTrue(queued.cancel(false));
+        assertTrue(running.cancel(true));
+        try {
+            running.get(10, TimeUnit.SECONDS);
+            fail("cancelled job completed");
+        } catch(CancellationException e) {
+        }
+
+        // The worker moves on once the interrupted load returns.
+        next = io.load(path, FCraftMinecraftMap.FORMAT);
+        try {
+            next.get(10, TimeUnit.SECONDS);
+        } catch(ExecutionException e) {
+        }
+        assertEquals(1, format.maxRunning.get());
+        assertEquals(0, io.getQueuedJobs());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void jobLimitMustBePositive() {
+        new MapIO(executor, 0);
+    }
+}
@@ -0,0 +1,205 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedMinecraftMapTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static MinecraftMapBase createSource(int width, int height, int depth)
+            throws InvalidMapException {
+        byte[] blocks;
+
+        blocks = new byte[width * height * depth];
+        new Random(2).nextBytes(blocks);
+        return new MinecraftMapBase(blocks, width, height, depth, 1, 1, 1, 0, 0);
+    }
+
+    @Test
+    public void openWritesThroughToTheFile() throws Exception {
+        MappedMinecraftMap map;
+        File file;
+
+        file = folder.newFile("map.mcm");
+        map = MappedMinecraftMap.create(file, createSource(16, 16, 16));
+        map.setBlock(1, 2, 3, (byte)9);
+        map.setSpawn(4, 5, 6, 0, 0);
+        map.close();
+
+        map = MappedMinecraftMap.open(file);
+        try {
+            assertTrue(map.isFileBacked());
+            assertEquals(9, map.getBlock(1, 2, 3));
+            assertEquals(4, map.getSpawnWidth());
+            assertEquals(6, map.getSpawnDepth());
+        } finally {
+            map.close();
+        }
+    }
+
+    @Test
+    public void loadCopiesOnlyWrittenPages() throws Exception {
+        MinecraftMapBase source;
+        MappedMinecraftMap map, reloaded;
+        byte[] expected;
+        File file;
+
+        file = folder.newFile("large.mcm");
+        source = createSource(256, 16, 256);
+        MappedMinecraftMap.create(file, source).close();
+
+        map = MappedMinecraftMap.load(file);
+        try {
+            assertTrue(map.isCopyOnWrite());
+            assertFalse(map.isFileBacked());
+            assertEquals(0, map.getCopiedPageCount());
+            assertArrayEquals(source.getBlocks(), map.getBlocks());
+
+            map.setBlock(0, 0, 0, (byte)(source.getBlock(0, 0, 0) + 1));
+            map.setBlock(255, 15, 255, (byte)(source.getBlock(255, 15, 255) + 1));
+            assertEquals(2, map.getCopiedPageCount());
+
+            expected = source.getBlocks();
+            expected[0]++;
+            expected[expected.length - 1]++;
+            assertArrayEquals(expected, map.getBlocks());
+            assertEquals(ByteBuffer.wrap(expected), map.asReadOnlyBuffer());
+        } finally {
+            map.close();
+        }
+
+        reloaded = MappedMinecraftMap.load(file);
+        try {
+            assertArrayEquals(source.getBlocks(), reloaded.getBlocks());
+        } finally {
+            reloaded.close();
+        }
+    }
+
+    @Test
+    public void blockViewSpansCopiedAndMappedPages() throws Exception {
+        MappedMinecraftMap map;
+        BlockView view;
+        ByteBuffer buffer;
+        byte[] expected, actual;
+        File file;
+
+        file = folder.newFile("view.mcm");
+        MappedMinecraftMap.create(file, createSource(256, 16, 256)).close();
+        map = MappedMinecraftMap.load(file);
+        try {
+            map.setBlock(255, 0, 255, (byte)42);
+            expected = map.getBlocks();
+            view = map.getBlockView();
+
+            actual = new byte[100000];
+            view.copyTo(1000, actual, 0, actual.length);
+            for(int i = 0;i < actual.length;i++)
+                assertEquals(expected[1000 + i], actual[i]);
+
+            buffer = ByteBuffer.allocate(expected.length);
+            map.copyBlocksTo(buffer);
+            assertArrayEquals(expected, buffer.array());
+            assertEquals(42, view.getBlock(255, 0, 255));
+        } finally {
+            map.close();
+        }
+    }
+
+    @Test
+    public void closedMapRejectsAccess() throws Exception {
+        MappedMinecraftMap map;
+
+        map = MappedMinecraftMap.create(folder.newFile("closed.mcm"), createSource(16, 16, 16));
+        map.close();
+        map.close();
+        assertTrue(map.isClosed());
+        try {
+            map.getBlock(0, 0, 0);
+            fail("closed map allowed a read");
+        } catch(IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void inMemoryMapMatchesSource() throws Exception {
+        MinecraftMapBase source;
+        MappedMinecraftMap map;
+
+        source = createSource(32, 16, 16);
+        map = new MappedMinecraftMap(source);
+        try {
+            assertFalse(map.isFileBacked());
+            assertArrayEquals(source.getBlocks(), map.getBlocks());
+        } finally {
+            map.close();
+        }
+    }
+
+    @Test
+    public void copyOnWriteMapSavesOverItsOwnFile() throws Exception {
+        MinecraftMapBase source;
+        MappedMinecraftMap map, reloaded;
+        byte[] expected;
+        File file;
+
+        file = folder.newFile("resave.mcm");
+        source = createSource(256, 16, 256);
+        MappedMinecraftMap.create(file, source).close();
+
+        map = MappedMinecraftMap.load(file);
+        try {
+            map.setBlock(3, 3, 3, (byte)(source.getBlock(3, 3, 3) + 1));
+            map.setSpawn(64, 64, 64, 0, 0);
+            expected = map.getBlocks();
+            map.save(file);
+            // The untouched pages still read from the replaced file.
+            assertArrayEquals(expected, map.getBlocks());
+            try {
+                MappedMinecraftMap.create(file, map);
+                fail("created a map over its own backing file");
+            } catch(IllegalArgumentException e) {
+            }
+        } finally {
+            map.close();
+        }
+
+        reloaded = MappedMinecraftMap.load(file);
+        try {
+            assertArrayEquals(expected, reloaded.getBlocks());
+            assertEquals(64, reloaded.getSpawnWidth());
+        } finally {
+            reloaded.close();
+        }
+    }
+
+    @Test
+    public void streamSaveLoadsBack() throws Exception {
+        MinecraftMapBase source;
+        MappedMinecraftMap map, loaded;
+        ByteArrayOutputStream out;
+
+        source = createSource(32, 16, 16);
+        map = new MappedMinecraftMap(source);
+        out = new ByteArrayOutputStream();
+        map.save(out);
+        loaded = MappedMinecraftMap.load(new ByteArrayInputStream(out.toByteArray()));
+        assertArrayEquals(source.getBlocks(), loaded.getBlocks());
+        assertEquals(source.getSpawnWidth(), loaded.getSpawnWidth());
+        // Stream loads stay out of direct memory.
+        assertFalse(loaded.asReadOnlyBuffer().isDirect());
+    }
+}
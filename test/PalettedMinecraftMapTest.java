@@ -0,0 +1,114 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Test;
+
+public class PalettedMinecraftMapTest {
+    private static MinecraftMapBase createSource() throws InvalidMapException {
+        byte[] blocks;
+        Random random;
+
+        random = new Random(3);
+        blocks = new byte[48 * 32 * 40];
+        for(int i = 0;i < blocks.length;i++) {
+            if(i < blocks.length / 4)
+                blocks[i] = (byte)random.nextInt(5);
+            else if(i < blocks.length / 2)
+                blocks[i] = (byte)random.nextInt(256);
+        }
+        return new MinecraftMapBase(blocks, 48, 32, 40, 1, 1, 1, 0, 0);
+    }
+
+    @Test
+    public void convertKeepsEveryBlock() throws Exception {
+        MinecraftMapBase source;
+        PalettedMinecraftMap map;
+
+        source = createSource();
+        map = new PalettedMinecraftMap(source);
+        assertArrayEquals(source.getBlocks(), map.getBlocks());
+        assertTrue(map.getUniformSectionCount() > 0);
+        for(int height = 0;height < 32;height += 7) {
+            for(int depth = 0;depth < 40;depth += 5) {
+                for(int width = 0;width < 48;width += 3)
+                    assertEquals(source.getBlock(width, height, depth), map.getBlock(width, height, depth));
+            }
+        }
+    }
+
+    @Test
+    public void setBlockGrowsPalettes() throws Exception {
+        PalettedMinecraftMap map;
+        MinecraftMapBase expected;
+
+        map = new PalettedMinecraftMap(16, 16, 16, 0, 0, 0, 0, 0);
+        expected = new MinecraftMapBase(new byte[16 * 16 * 16], 16, 16, 16, 0, 0, 0, 0, 0);
+        assertEquals(map.getSectionCount(), map.getUniformSectionCount());
+        for(int i = 0;i < 256;i++) {
+            map.setBlock(i % 16, i / 16, i % 7, (byte)i);
+            expected.setBlock(i % 16, i / 16, i % 7, (byte)i);
+        }
+        assertArrayEquals(expected.getBlocks(), map.getBlocks());
+
+        map.compact();
+        assertArrayEquals(expected.getBlocks(), map.getBlocks());
+    }
+
+    @Test
+    public void viewsAndCopiesMatchGetBlocks() throws Exception {
+        PalettedMinecraftMap map;
+        BlockView view;
+        ByteBuffer buffer;
+        byte[] expected, actual;
+        Random random;
+
+        map = new PalettedMinecraftMap(createSource());
+        expected = map.getBlocks();
+        view = map.getBlockView();
+        assertEquals(expected.length, view.length());
+
+        actual = new byte[expected.length + 10];
+        map.copyBlocksTo(actual, 10);
+        for(int i = 0;i < expected.length;i++)
+            assertEquals(expected[i], actual[i + 10]);
+
+        buffer = ByteBuffer.allocateDirect(expected.length);
+        map.copyBlocksTo(buffer);
+        buffer.flip();
+        assertEquals(ByteBuffer.wrap(expected), buffer);
+
+        random = new Random(4);
+        for(int i = 0;i < 50;i++) {
+            int offset, length;
+
+            offset = random.nextInt(expected.length);
+            length = random.nextInt(expected.length - offset);
+            actual = new byte[length];
+            view.copyTo(offset, actual, 0, length);
+            for(int j = 0;j < length;j++)
+                assertEquals(expected[offset + j], actual[j]);
+            assertEquals(expected[offset], view.get(offset));
+        }
+    }
+
+    @Test
+    public void cloneIsIsolated() throws Exception {
+        PalettedMinecraftMap map, clone;
+        byte[] before;
+
+        map = new PalettedMinecraftMap(createSource());
+        before = map.getBlocks();
+        clone = map.clone();
+
+        clone.setBlock(0, 0, 0, (byte)(before[0] + 1));
+        map.setBlock(47, 31, 39, (byte)(before[before.length - 1] + 1));
+        assertEquals(before[0], map.getBlock(0, 0, 0));
+        assertEquals(before[before.length - 1], clone.getBlock(47, 31, 39));
+        assertEquals((byte)(before[0] + 1), clone.getBlock(0, 0, 0));
+    }
+}
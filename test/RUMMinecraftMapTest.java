@@ -0,0 +1,103 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Random;
+import org.junit.Test;
+
+public class RUMMinecraftMapTest {
+    private static RUMMinecraftMap createMap(int blockLength) throws InvalidMapException {
+        byte[][] blockData;
+        Random random;
+
+        random = new Random(1);
+        blockData = new byte[32 * 16 * 24][blockLength];
+        for(int i = 0;i < blockData.length;i++)
+            random.nextBytes(blockData[i]);
+        return new RUMMinecraftMap(
+            32, 16, 24,
+            1, 1, 1, 0, 0,
+            new HashMap<String, byte[]>(),
+            blockData, blockLength
+        );
+    }
+
+    @Test
+    public void planesMatchBlockData() throws Exception {
+        RUMMinecraftMap map;
+        byte[][] extended, planes;
+
+        map = createMap(4);
+        extended = map.getExtendedBlocks();
+        planes = map.getExtendedBlockPlanes();
+        assertEquals(4, planes.length);
+        for(int i = 0;i < extended.length;i++) {
+            for(int j = 0;j < 4;j++)
+                assertEquals(extended[i][j], planes[j][i]);
+        }
+        assertArrayEquals(planes[0], map.getBlocks());
+    }
+
+    @Test
+    public void setBlockWritesFlagsAndClearsExtraBytes() throws Exception {
+        RUMMinecraftMap map;
+        byte[] block;
+
+        map = createMap(4);
+        map.setBlock(3, 2, 1, (byte)7, true, false, true, false, true, false);
+        assertEquals(7, map.getBlock(3, 2, 1));
+        assertTrue(map.isBlockSpecial(3, 2, 1));
+        assertFalse(map.isBlockSolid(3, 2, 1));
+        assertTrue(map.isBlockPhysics(3, 2, 1));
+        assertFalse(map.isBlockMessage(3, 2, 1));
+        assertTrue(map.isBlockPortal(3, 2, 1));
+        assertFalse(map.isBlockScripted(3, 2, 1));
+
+        block = map.getExtendedBlocks()[(2 * 24 + 1) * 32 + 3];
+        assertEquals(7, block[0]);
+        assertEquals((byte)(RUMMinecraftMap.SPECIAL_BIT | RUMMinecraftMap.PHYSICS_BIT | RUMMinecraftMap.PORTAL_BIT),
+                     block[1]);
+        assertEquals(0, block[2]);
+        assertEquals(0, block[3]);
+    }
+
+    @Test
+    public void saveAndLoadKeepExtendedBlocks() throws Exception {
+        RUMMinecraftMap map, loaded;
+        ByteArrayOutputStream out;
+
+        map = createMap(3);
+        map.setBlock(0, 0, 0, (byte)1, true, true, false, false, false, true);
+        map.setMetadata("author", new byte[] {1, 2, 3});
+        out = new ByteArrayOutputStream();
+        map.save(out);
+
+        loaded = RUMMinecraftMap.load(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, loaded.getExtendedBlockLength());
+        assertArrayEquals(map.getExtendedBlockPlanes(), loaded.getExtendedBlockPlanes());
+        assertArrayEquals(new byte[] {1, 2, 3}, loaded.getMetadata("author"));
+        assertTrue(loaded.isBlockScripted(0, 0, 0));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void deprecatedBlockDataRoundTrips() throws Exception {
+        RUMMinecraftMap map;
+        byte[][] blockData;
+
+        map = createMap(4);
+        blockData = map.getBlockData();
+        assertArrayEquals(map.getExtendedBlocks(), blockData);
+
+        blockData[10][3] = (byte)(blockData[10][3] + 1);
+        assertFalse(blockData[10][3] == map.getExtendedBlocks()[10][3]);
+        map.setBlockData(blockData);
+        assertArrayEquals(blockData, map.getExtendedBlocks());
+    }
+}
@@ -0,0 +1,213 @@
+package mcmaplib;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class RegionTest {
+    private static final int WIDTH = 32,
+                             HEIGHT = 16,
+                             DEPTH = 24;
+    private static final byte OP_GLASS = 100,
+                              GLASS = 20;
+
+    private static byte[] createBlocks() {
+        byte[] blocks;
+        Random random;
+
+        random = new Random(10);
+        blocks = new byte[WIDTH * HEIGHT * DEPTH];
+        for(int i = 0;i < blocks.length;i++)
+            blocks[i] = (byte)random.nextInt(50);
+        return blocks;
+    }
+
+    private static List<MinecraftMap> createMaps(byte[] blocks) throws Exception {
+        List<MinecraftMap> maps;
+        MinecraftMapBase source;
+
+        source = new MinecraftMapBase(blocks.clone(), WIDTH, HEIGHT, DEPTH, 1, 1, 1, 0, 0);
+        maps = new ArrayList<MinecraftMap>();
+        maps.add(source);
+        for(MapFormat format : MapFormats.getFormats())
+            maps.add(format.convert(source));
+        maps.add(new PalettedMinecraftMap(source));
+        maps.add(new ConcurrentMinecraftMap(new MinecraftMapBase(source)));
+        return maps;
+    }
+
+    private static int offset(int width, int height, int depth) {
+        return (height * DEPTH + depth) * WIDTH + width;
+    }
+
+    @Test
+    public void fillAndReplaceMatchSingleBlockWrites() throws Exception {
+        byte[] expected;
+        int replaced;
+
+        expected = createBlocks();
+        replaced = 0;
+        for(int h = 2;h < 12;h++) {
+            for(int d = 3;d < 20;d++) {
+                for(int w = 4;w < 9;w++) {
+                    if(expected[offset(w, h, d)] == 7) {
+                        expected[offset(w, h, d)] = 8;
+                        replaced++;
+                    }
+                }
+            }
+        }
+        for(int h = 1;h < 5;h++)
+            for(int d = 0;d < 24;d++)
+                for(int w = 10;w < 30;w++)
+                    expected[offset(w, h, d)] = 3;
+
+        for(MinecraftMap map : createMaps(createBlocks())) {
+            String name;
+
+            name = map.getClass().getSimpleName();
+            assertEquals(name, replaced, map.replaceInRegion(4, 2, 3, 5, 10, 17, (byte)7, (byte)8));
+            map.fillRegion(10, 1, 0, 20, 4, 24, (byte)3);
+            assertArrayEquals(name, expected, map.getBlocks());
+        }
+    }
+
+    @Test
+    public void readAndWriteRegionRoundTrip() throws Exception {
+        byte[] source, region, expected;
+        int i;
+
+        source = createBlocks();
+        region = new byte[3 + 6 * 5 * 4];
+        i = 3;
+        for(int h = 7;h < 12;h++)
+            for(int d = 2;d < 6;d++)
+                for(int w = 20;w < 26;w++)
+                    region[i++] = source[offset(w, h, d)];
+
+        expected = source.clone();
+        i = 3;
+        for(int h = 0;h < 5;h++)
+            for(int d = 10;d < 14;d++)
+                for(int w = 0;w < 6;w++)
+                    expected[offset(w, h, d)] = region[i++];
+
+        for(MinecraftMap map : createMaps(source)) {
+            byte[] actual;
+            String name;
+
+            name = map.getClass().getSimpleName();
+            actual = new byte[region.length];
+            map.readRegion(20, 7, 2, 6, 5, 4, actual, 3);
+            for(int j = 3;j < actual.length;j++)
+                assertEquals(name, region[j], actual[j]);
+
+            map.writeRegion(0, 0, 10, 6, 5, 4, actual, 3);
+            assertArrayEquals(name, expected, map.getBlocks());
+        }
+    }
+
+    @Test
+    public void overlappingCopiesMatchACopyThroughABuffer() throws Exception {
+        int[][] moves;
+
+        moves = new int[][] {
+            {0, 0, 0, 2, 3, 1},
+            {2, 3, 1, 0, 0, 0},
+            {0, 0, 0, 0, 1, 0},
+            {0, 1, 0, 0, 0, 0},
+            {0, 0, 0, 0, 0, 1},
+            {0, 0, 1, 0, 0, 0}
+        };
+        for(int[] move : moves) {
+            byte[] source, buffer, expected;
+            int i;
+
+            source = createBlocks();
+            buffer = new byte[20 * 10 * 18];
+            i = 0;
+            for(int h = 0;h < 10;h++)
+                for(int d = 0;d < 18;d++)
+                    for(int w = 0;w < 20;w++)
+                        buffer[i++] = source[offset(move[0] + w, move[1] + h, move[2] + d)];
+            expected = source.clone();
+            i = 0;
+            for(int h = 0;h < 10;h++)
+                for(int d = 0;d < 18;d++)
+                    for(int w = 0;w < 20;w++)
+                        expected[offset(move[3] + w, move[4] + h, move[5] + d)] = buffer[i++];
+
+            for(MinecraftMap map : createMaps(source)) {
+                map.copyRegion(map, move[0], move[1], move[2], move[3], move[4], move[5], 20, 10, 18);
+                assertArrayEquals(map.getClass().getSimpleName(), expected, map.getBlocks());
+            }
+        }
+    }
+
+    @Test
+    public void copyWithinMcSharpMapKeepsSpecialBlocks() throws Exception {
+        MCSharpMinecraftMap map, other;
+
+        map = (MCSharpMinecraftMap)MCSharpMinecraftMap.FORMAT.convert(
+            new MinecraftMapBase(new byte[16 * 16 * 16], 16, 16, 16, 0, 0, 0, 0, 0)
+        );
+        map.setBlock(0, 0, 0, OP_GLASS);
+        map.copyRegion(map, 0, 0, 0, 5, 5, 5, 1, 1, 1);
+        assertEquals(OP_GLASS, map.getBlockSpecial(5, 5, 5));
+
+        other = map.clone();
+        other.setBlock(5, 5, 5, (byte)0);
+        other.copyRegion(map, 0, 0, 0, 5, 5, 5, 1, 1, 1);
+        assertEquals(GLASS, other.getBlockSpecial(5, 5, 5));
+    }
+
+    @Test
+    public void regionsOutsideTheMapAreRejected() throws Exception {
+        for(MinecraftMap map : createMaps(createBlocks())) {
+            try {
+                map.fillRegion(WIDTH - 2, 0, 0, 3, 1, 1, (byte)1);
+                fail(map.getClass().getSimpleName() + " filled outside the map");
+            } catch(IndexOutOfBoundsException e) {
+            }
+        }
+    }
+
+    @Test
+    public void fillReportsTheFillToListeners() throws Exception {
+        final byte[] filled;
+        MinecraftMap map;
+
+        filled = new byte[1];
+        map = new MinecraftMapBase(new byte[16 * 16 * 16], 16, 16, 16, 0, 0, 0, 0, 0);
+        map.addChangeListener(new MapChangeListener() {
+            public void blockChanged(MinecraftMap map, int width, int height, int depth,
+                                     byte oldType, byte newType, byte flags) {
+                fail("fill reported single blocks");
+            }
+
+            public void regionChanged(MinecraftMap map, int width, int height, int depth,
+                                      int sizeWidth, int sizeHeight, int sizeDepth) {
+                fail("fill reported a region change instead of a fill");
+            }
+
+            @Override
+            public void regionFilled(MinecraftMap map, int width, int height, int depth,
+                                     int sizeWidth, int sizeHeight, int sizeDepth, byte type) {
+                filled[0] = type;
+            }
+
+            public void spawnChanged(MinecraftMap map) {
+            }
+
+            public void attributeChanged(MinecraftMap map, String name) {
+            }
+        });
+        map.fillRegion(1, 1, 1, 4, 4, 4, (byte)9);
+        assertEquals(9, filled[0]);
+    }
+}
@@ -0,0 +1,145 @@
+package mcmaplib.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+public class ByteCodecTest {
+    @Test
+    public void littleEndianMatchesExtendedStreams() throws Exception {
+        ExtendedDataOutputStream expected;
+        ByteArrayOutputStream bytes;
+        ByteBuffer buffer;
+
+        bytes = new ByteArrayOutputStream();
+        expected = new ExtendedDataOutputStream(bytes);
+        expected.writeLEUnsignedShort(0xFC02);
+        expected.writeLEUnsignedInt(0xFC000002L);
+        expected.writeLEUnsignedBigInteger(BigInteger.valueOf(0x123456789AL), 8);
+        expected.flush();
+
+        // Byte order of the buffer itself must not matter.
+        for(ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            buffer = ByteBuffer.allocate(14).order(order);
+            ByteCodec.putLEUnsignedShort(buffer, 0xFC02);
+            ByteCodec.putLEUnsignedInt(buffer, 0xFC000002L);
+            ByteCodec.putLELong(buffer, 0x123456789AL);
+            assertArrayEquals(order.toString(), bytes.toByteArray(), buffer.array());
+
+            buffer.flip();
+            assertEquals(0xFC02, ByteCodec.getLEUnsignedShort(buffer));
+            assertEquals(0xFC000002L, ByteCodec.getLEUnsignedInt(buffer));
+            assertEquals(0x123456789AL, ByteCodec.getLELong(buffer));
+            assertEquals(0xFC02, ByteCodec.getLEUnsignedShort(buffer, 0));
+            assertEquals(0xFC000002L, ByteCodec.getLEUnsignedInt(buffer, 2));
+            assertEquals(0x123456789AL, ByteCodec.getLELong(buffer, 6));
+        }
+    }
+
+    @Test
+    public void bigEndianMatchesDataStreams() throws Exception {
+        ByteArrayOutputStream bytes;
+        DataOutputStream expected;
+        ByteBuffer buffer;
+
+        bytes = new ByteArrayOutputStream();
+        expected = new DataOutputStream(bytes);
+        expected.writeShort(0x8001);
+        expected.writeInt(0x271BB788);
+        expected.writeLong(-2L);
+        expected.flush();
+
+        buffer = ByteBuffer.allocate(14).order(ByteOrder.LITTLE_ENDIAN);
+        ByteCodec.putBEUnsignedShort(buffer, 0x8001);
+        ByteCodec.putBEUnsignedInt(buffer, 0x271BB788L);
+        ByteCodec.putBELong(buffer, -2L);
+        assertArrayEquals(bytes.toByteArray(), buffer.array());
+
+        buffer.flip();
+        assertEquals(0x8001, ByteCodec.getBEUnsignedShort(buffer));
+        assertEquals(0x271BB788L, ByteCodec.getBEUnsignedInt(buffer));
+        assertEquals(-2L, ByteCodec.getBELong(buffer));
+    }
+
+    @Test
+    public void bulkArraysRoundTrip() {
+        short[] shorts, readShorts;
+        int[] ints, readInts;
+        ByteBuffer buffer;
+
+        shorts = new short[] {0, 1, -1, Short.MIN_VALUE, Short.MAX_VALUE};
+        ints = new int[] {0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE, 0x01020304};
+        buffer = ByteBuffer.allocate(2 * (shorts.length + 2 * ints.length) * 2);
+        ByteCodec.putLEShorts(buffer, shorts, 0, shorts.length);
+        ByteCodec.putBEShorts(buffer, shorts, 0, shorts.length);
+        ByteCodec.putLEInts(buffer, ints, 0, ints.length);
+        ByteCodec.putBEInts(buffer, ints, 0, ints.length);
+        assertEquals(0x04, buffer.get(4 * shorts.length + 4 * 5));
+        assertEquals(0x01, buffer.get(4 * shorts.length + 4 * ints.length + 4 * 5));
+
+        buffer.flip();
+        readShorts = new short[shorts.length + 1];
+        readInts = new int[ints.length + 1];
+        ByteCodec.getLEShorts(buffer, readShorts, 1, shorts.length);
+        assertEquals(shorts[4], readShorts[5]);
+        ByteCodec.getBEShorts(buffer, readShorts, 0, shorts.length);
+        assertEquals(shorts[4], readShorts[4]);
+        ByteCodec.getLEInts(buffer, readInts, 1, ints.length);
+        assertEquals(ints[5], readInts[6]);
+        ByteCodec.getBEInts(buffer, readInts, 0, ints.length);
+        for(int i = 0;i < ints.length;i++)
+            assertEquals(ints[i], readInts[i]);
+    }
+
+    @Test
+    public void codecStreamsRoundTripAcrossBufferEdges() throws Exception {
+        ByteArrayOutputStream bytes;
+        CodecOutputStream out;
+        CodecInputStream in;
+        byte[] block, read;
+
+        block = new byte[100];
+        for(int i = 0;i < block.length;i++)
+            block[i] = (byte)i;
+        bytes = new ByteArrayOutputStream();
+        // Buffers barely larger than a long make fields straddle refills.
+        out = new CodecOutputStream(bytes, 9);
+        for(int i = 0;i < 20;i++) {
+            out.writeLEUnsignedShort(i * 3001);
+            out.writeLEUnsignedInt(0xFFFFFF00L + i);
+            out.writeLELong(Long.MIN_VALUE + i);
+            out.writeInt(-i);
+            out.writeShort(i);
+            out.writeUTF("map " + i);
+            out.write(block);
+        }
+        out.close();
+
+        in = new CodecInputStream(new ByteArrayInputStream(bytes.toByteArray()), 11);
+        read = new byte[block.length];
+        for(int i = 0;i < 20;i++) {
+            assertEquals(i * 3001 & 0xFFFF, in.readLEUnsignedShort());
+            assertEquals(0xFFFFFF00L + i, in.readLEUnsignedInt());
+            assertEquals(Long.MIN_VALUE + i, in.readLELong());
+            assertEquals(-i, in.readInt());
+            assertEquals(i, in.readShort());
+            assertEquals("map " + i, in.readUTF());
+            in.readFully(read);
+            assertArrayEquals(block, read);
+        }
+        assertEquals(-1, in.read());
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedFieldThrows() throws Exception {
+        new CodecInputStream(new ByteArrayInputStream(new byte[] {1, 2, 3})).readLEUnsignedInt();
+    }
+}
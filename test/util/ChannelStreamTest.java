@@ -0,0 +1,107 @@
+package mcmaplib.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChannelStreamTest {
+    // Odd sizes keep these pools separate from the ones other tests use.
+    private static final int BUFFER_SIZE = 1031;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mixedWritesAndReadsRoundTrip() throws Exception {
+        OutputStream out;
+        InputStream in;
+        byte[] data, read;
+        Path path;
+        int n;
+
+        data = ParallelGZIPOutputStreamTest.createData(10000);
+        path = folder.newFile("data").toPath();
+        out = new ChannelOutputStream(path, BUFFER_SIZE);
+        out.write(data[0]);
+        out.write(data, 1, 100);
+        out.write(data, 101, 5000);
+        out.write(data, 5101, data.length - 5101);
+        out.close();
+        assertArrayEquals(data, Files.readAllBytes(path));
+
+        in = new ChannelInputStream(path, BUFFER_SIZE);
+        read = new byte[data.length];
+        read[0] = (byte)in.read();
+        assertEquals(100, in.skip(100));
+        System.arraycopy(data, 1, read, 1, 100);
+        n = 101;
+        while(n < read.length) {
+            int count;
+
+            count = in.read(read, n, Math.min(3000, read.length - n));
+            if(count < 0)
+                break;
+            n += count;
+        }
+        assertEquals(-1, in.read());
+        in.close();
+        assertArrayEquals(data, read);
+    }
+
+    @Test
+    public void closedStreamsReturnTheirBuffers() throws Exception {
+        BufferPool pool;
+        OutputStream out;
+        InputStream in;
+        Path path;
+
+        pool = BufferPool.forChannel(BUFFER_SIZE + 2);
+        pool.clear();
+        path = folder.newFile("pooled").toPath();
+        out = new ChannelOutputStream(path, BUFFER_SIZE + 2);
+        out.write(new byte[] {1, 2, 3});
+        out.close();
+        out.close();
+        assertEquals(1, pool.getIdleCount());
+
+        in = new ChannelInputStream(path, BUFFER_SIZE + 2);
+        assertEquals(0, pool.getIdleCount());
+        in.close();
+        in.close();
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void closedStreamsRejectIO() throws Exception {
+        OutputStream out;
+        InputStream in;
+        Path path;
+
+        path = folder.newFile("closed").toPath();
+        out = new ChannelOutputStream(path, BUFFER_SIZE);
+        out.close();
+        out.flush();
+        try {
+            out.write(1);
+            fail("wrote to a closed stream");
+        } catch(IOException e) {
+        }
+
+        in = new ChannelInputStream(path, BUFFER_SIZE);
+        in.close();
+        try {
+            in.read();
+            fail("read from a closed stream");
+        } catch(IOException e) {
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package mcmaplib.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class PagedByteArrayTest {
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] data;
+
+        data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void bulkAccessCrossesPages() {
+        PagedByteArray array;
+        byte[] data, actual;
+        int start;
+
+        data = randomBytes(3 * PagedByteArray.PAGE_SIZE + 123, 5);
+        array = new PagedByteArray(data);
+        assertEquals(4, array.getPageCount());
+        assertArrayEquals(data, array.toByteArray());
+
+        start = PagedByteArray.PAGE_SIZE - 10;
+        actual = new byte[PagedByteArray.PAGE_SIZE + 20];
+        array.get(start, actual, 0, actual.length);
+        for(int i = 0;i < actual.length;i++)
+            assertEquals(data[start + i], actual[i]);
+    }
+
+    @Test
+    public void snapshotIsIsolatedFromLaterWrites() {
+        PagedByteArray array, snapshot;
+        byte[] data;
+
+        data = randomBytes(2 * PagedByteArray.PAGE_SIZE, 6);
+        array = new PagedByteArray(data);
+        snapshot = array.snapshot();
+
+        array.set(0, (byte)(data[0] + 1));
+        array.fill(PagedByteArray.PAGE_SIZE, PagedByteArray.PAGE_SIZE + 100, (byte)7);
+        assertArrayEquals(data, snapshot.toByteArray());
+        assertEquals((byte)(data[0] + 1), array.get(0));
+        assertEquals(7, array.get(PagedByteArray.PAGE_SIZE + 99));
+    }
+
+    @Test
+    public void writesToSnapshotDoNotReachSource() {
+        PagedByteArray array, snapshot;
+        byte[] data;
+
+        data = randomBytes(PagedByteArray.PAGE_SIZE + 1, 7);
+        array = new PagedByteArray(data);
+        snapshot = array.snapshot();
+
+        snapshot.set(5, (byte)(data[5] + 1));
+        snapshot.set(100, new byte[] {1, 2, 3}, 0, 3);
+        assertArrayEquals(data, array.toByteArray());
+    }
+
+    @Test
+    public void repeatedSnapshotsKeepTheirOwnState() {
+        PagedByteArray array, first, second;
+        byte[] data;
+
+        data = new byte[PagedByteArray.PAGE_SIZE];
+        array = new PagedByteArray(data);
+        first = array.snapshot();
+        array.set(0, (byte)1);
+        second = array.snapshot();
+        array.set(0, (byte)2);
+
+        assertEquals(0, first.get(0));
+        assertEquals(1, second.get(0));
+        assertEquals(2, array.get(0));
+    }
+}
@@ -0,0 +1,136 @@
+package mcmaplib.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ParallelGZIPInputStreamTest {
+    private static final int MEMBER_LENGTH_OFFSET = 16,
+                             UNCOMPRESSED_LENGTH_OFFSET = 20;
+
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void startExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] decompress(byte[] compressed, InflaterPool pool, boolean indexed)
+            throws IOException {
+        ParallelGZIPInputStream in;
+        byte[] data;
+
+        in = new ParallelGZIPInputStream(new ByteArrayInputStream(compressed), executor, pool);
+        try {
+            if(indexed)
+                assertTrue(in.isIndexed());
+            else
+                assertFalse(in.isIndexed());
+            data = ParallelGZIPOutputStreamTest.readAll(in);
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    private static void putInt(byte[] data, int offset, int value) {
+        data[offset] = (byte)value;
+        data[offset + 1] = (byte)(value >>> 8);
+        data[offset + 2] = (byte)(value >>> 16);
+        data[offset + 3] = (byte)(value >>> 24);
+    }
+
+    private static int getInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF)
+            | (data[offset + 1] & 0xFF) << 8
+            | (data[offset + 2] & 0xFF) << 16
+            | (data[offset + 3] & 0xFF) << 24;
+    }
+
+    @Test
+    public void indexedMembersDecodeInParallel() throws Exception {
+        byte[] data, compressed;
+
+        data = ParallelGZIPOutputStreamTest.createData(1000000);
+        compressed = ParallelGZIPOutputStreamTest.compress(data, executor, 65536, null);
+        assertArrayEquals(data, decompress(compressed, null, true));
+        assertArrayEquals(data, decompress(compressed, new InflaterPool(), true));
+    }
+
+    @Test
+    public void plainGzipFallsBackToSequentialInflation() throws Exception {
+        ByteArrayOutputStream out;
+        GZIPOutputStream gos;
+        byte[] data;
+
+        data = ParallelGZIPOutputStreamTest.createData(300000);
+        out = new ByteArrayOutputStream();
+        gos = new GZIPOutputStream(out);
+        gos.write(data);
+        gos.close();
+        assertArrayEquals(data, decompress(out.toByteArray(), null, false));
+    }
+
+    @Test
+    public void implausibleIndexFallsBack() throws Exception {
+        byte[] data, compressed, patched;
+
+        data = ParallelGZIPOutputStreamTest.createData(200000);
+        compressed = ParallelGZIPOutputStreamTest.compress(data, executor, 65536, null);
+
+        patched = compressed.clone();
+        putInt(patched, MEMBER_LENGTH_OFFSET, Integer.MAX_VALUE);
+        assertArrayEquals(data, decompress(patched, null, false));
+
+        patched = compressed.clone();
+        putInt(patched, UNCOMPRESSED_LENGTH_OFFSET, ParallelGZIPOutputStream.MAX_BLOCK_SIZE + 1);
+        assertArrayEquals(data, decompress(patched, null, false));
+    }
+
+    @Test
+    public void implausibleIndexInALaterMemberFallsBack() throws Exception {
+        byte[] data, compressed;
+        int second;
+
+        data = ParallelGZIPOutputStreamTest.createData(200000);
+        compressed = ParallelGZIPOutputStreamTest.compress(data, executor, 65536, null);
+        second = getInt(compressed, MEMBER_LENGTH_OFFSET);
+        putInt(compressed, second + MEMBER_LENGTH_OFFSET, Integer.MAX_VALUE);
+        assertArrayEquals(data, decompress(compressed, null, true));
+    }
+
+    @Test
+    public void truncatedStreamFails() throws Exception {
+        byte[] data, compressed;
+
+        data = ParallelGZIPOutputStreamTest.createData(200000);
+        compressed = ParallelGZIPOutputStreamTest.compress(data, executor, 65536, null);
+        try {
+            decompress(Arrays.copyOf(compressed, compressed.length - 100), null, true);
+            fail("read a truncated stream");
+        } catch(IOException e) {
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void emptyStreamFails() throws Exception {
+        decompress(new byte[0], null, true);
+    }
+}
@@ -0,0 +1,118 @@
+package mcmaplib.util;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ParallelGZIPOutputStreamTest {
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void startExecutor() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    static byte[] createData(int length) {
+        byte[] data;
+        Random random;
+
+        random = new Random(length);
+        data = new byte[length];
+        for(int i = 0;i < length;i++)
+            data[i] = (byte)(random.nextInt(4) == 0 ? random.nextInt(256) : i / 100);
+        return data;
+    }
+
+    static byte[] compress(byte[] data, ExecutorService executor, int blockSize, DeflaterPool pool)
+            throws IOException {
+        ParallelGZIPOutputStream gos;
+        ByteArrayOutputStream out;
+        Random random;
+        int offset;
+
+        out = new ByteArrayOutputStream();
+        gos = new ParallelGZIPOutputStream(
+            out, executor, blockSize,
+            Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, pool
+        );
+        random = new Random(data.length);
+        offset = 0;
+        while(offset < data.length) {
+            int length;
+
+            if(random.nextInt(10) == 0) {
+                gos.write(data[offset++]);
+                continue;
+            }
+            length = Math.min(data.length - offset, random.nextInt(3 * blockSize));
+            gos.write(data, offset, length);
+            offset += length;
+        }
+        gos.finish();
+        gos.close();
+        return out.toByteArray();
+    }
+
+    static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out;
+        byte[] buffer;
+        int n;
+
+        out = new ByteArrayOutputStream();
+        buffer = new byte[7777];
+        while((n = in.read(buffer)) > 0)
+            out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void membersDecodeAsOrdinaryGzip() throws Exception {
+        int[] blockSizes;
+
+        blockSizes = new int[] {1, 1000, 65536, ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE};
+        for(int blockSize : blockSizes) {
+            byte[] data, compressed;
+
+            data = createData(blockSize == 1 ? 5000 : 3 * blockSize + 17);
+            compressed = compress(data, executor, blockSize, null);
+            assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+        }
+    }
+
+    @Test
+    public void pooledDeflatersProduceTheSameStream() throws Exception {
+        DeflaterPool pool;
+        byte[] data;
+
+        pool = new DeflaterPool();
+        data = createData(500000);
+        assertArrayEquals(compress(data, executor, 65536, null), compress(data, executor, 65536, pool));
+        assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(
+            compress(data, executor, 65536, pool)
+        ))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oversizedBlocksAreRejected() {
+        new ParallelGZIPOutputStream(
+            new ByteArrayOutputStream(), executor, ParallelGZIPOutputStream.MAX_BLOCK_SIZE + 1,
+            Deflater.DEFAULT_COMPRESSION
+        );
+    }
+}
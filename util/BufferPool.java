@@ -0,0 +1,84 @@
+package mcmaplib.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BufferPool {
+    public static final int DEFAULT_MAX_IDLE = 16;
+
+    // Shared by ChannelInputStream and ChannelOutputStream, one pool per
+    // buffer size in use.
+    private static final ConcurrentHashMap<Integer, BufferPool> CHANNEL_POOLS =
+        new ConcurrentHashMap<Integer, BufferPool>();
+
+    private final ConcurrentLinkedQueue<ByteBuffer> idle;
+    private final AtomicInteger idleCount;
+    private final int bufferSize, maxIdle;
+
+    public BufferPool(int bufferSize, int maxIdle) {
+        if(bufferSize <= 0)
+            throw new IllegalArgumentException("Buffer size must be positive");
+        if(maxIdle < 0)
+            throw new IllegalArgumentException("Negative pool size");
+
+        this.idle = new ConcurrentLinkedQueue<ByteBuffer>();
+        this.idleCount = new AtomicInteger();
+        this.bufferSize = bufferSize;
+        this.maxIdle = maxIdle;
+    }
+
+    public BufferPool(int bufferSize) {
+        this(bufferSize, DEFAULT_MAX_IDLE);
+    }
+
+    static BufferPool forChannel(int bufferSize) {
+        BufferPool pool, existing;
+
+        pool = CHANNEL_POOLS.get(bufferSize);
+        if(pool != null)
+            return pool;
+        pool = new BufferPool(bufferSize);
+        existing = CHANNEL_POOLS.putIfAbsent(bufferSize, pool);
+        return existing != null ? existing : pool;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer buffer;
+
+        buffer = idle.poll();
+        if(buffer == null)
+            return ByteBuffer.allocateDirect(bufferSize);
+
+        idleCount.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if(!buffer.isDirect() || buffer.capacity() != bufferSize)
+            return;
+        if(idleCount.incrementAndGet() <= maxIdle)
+            idle.offer(buffer);
+        else
+            idleCount.decrementAndGet();
+    }
+
+    public void clear() {
+        while(idle.poll() != null)
+            idleCount.decrementAndGet();
+    }
+}
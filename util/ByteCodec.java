@@ -0,0 +1,158 @@
+package mcmaplib.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public final class ByteCodec {
+    private ByteCodec() {
+    }
+
+    public static int getLEUnsignedShort(ByteBuffer buffer) {
+        return toLittleEndian(buffer, buffer.getShort()) & 0xFFFF;
+    }
+
+    public static int getLEUnsignedShort(ByteBuffer buffer, int index) {
+        return toLittleEndian(buffer, buffer.getShort(index)) & 0xFFFF;
+    }
+
+    public static long getLEUnsignedInt(ByteBuffer buffer) {
+        return toLittleEndian(buffer, buffer.getInt()) & 0xFFFFFFFFL;
+    }
+
+    public static long getLEUnsignedInt(ByteBuffer buffer, int index) {
+        return toLittleEndian(buffer, buffer.getInt(index)) & 0xFFFFFFFFL;
+    }
+
+    public static long getLELong(ByteBuffer buffer) {
+        return toLittleEndian(buffer, buffer.getLong());
+    }
+
+    public static long getLELong(ByteBuffer buffer, int index) {
+        return toLittleEndian(buffer, buffer.getLong(index));
+    }
+
+    public static int getBEUnsignedShort(ByteBuffer buffer) {
+        return toBigEndian(buffer, buffer.getShort()) & 0xFFFF;
+    }
+
+    public static long getBEUnsignedInt(ByteBuffer buffer) {
+        return toBigEndian(buffer, buffer.getInt()) & 0xFFFFFFFFL;
+    }
+
+    public static long getBELong(ByteBuffer buffer) {
+        return toBigEndian(buffer, buffer.getLong());
+    }
+
+    public static void putLEUnsignedShort(ByteBuffer buffer, int value) {
+        buffer.putShort(toLittleEndian(buffer, (short)value));
+    }
+
+    public static void putLEUnsignedShort(ByteBuffer buffer, int index, int value) {
+        buffer.putShort(index, toLittleEndian(buffer, (short)value));
+    }
+
+    public static void putLEUnsignedInt(ByteBuffer buffer, long value) {
+        buffer.putInt(toLittleEndian(buffer, (int)value));
+    }
+
+    public static void putLEUnsignedInt(ByteBuffer buffer, int index, long value) {
+        buffer.putInt(index, toLittleEndian(buffer, (int)value));
+    }
+
+    public static void putLELong(ByteBuffer buffer, long value) {
+        buffer.putLong(toLittleEndian(buffer, value));
+    }
+
+    public static void putLELong(ByteBuffer buffer, int index, long value) {
+        buffer.putLong(index, toLittleEndian(buffer, value));
+    }
+
+    public static void putBEUnsignedShort(ByteBuffer buffer, int value) {
+        buffer.putShort(toBigEndian(buffer, (short)value));
+    }
+
+    public static void putBEUnsignedInt(ByteBuffer buffer, long value) {
+        buffer.putInt(toBigEndian(buffer, (int)value));
+    }
+
+    public static void putBELong(ByteBuffer buffer, long value) {
+        buffer.putLong(toBigEndian(buffer, value));
+    }
+
+    public static void getLEShorts(ByteBuffer buffer, short[] dest, int offset, int count) {
+        checkRange(dest.length, offset, count);
+        for(int i = 0;i < count;i++)
+            dest[offset + i] = toLittleEndian(buffer, buffer.getShort());
+    }
+
+    public static void putLEShorts(ByteBuffer buffer, short[] src, int offset, int count) {
+        checkRange(src.length, offset, count);
+        for(int i = 0;i < count;i++)
+            buffer.putShort(toLittleEndian(buffer, src[offset + i]));
+    }
+
+    public static void getLEInts(ByteBuffer buffer, int[] dest, int offset, int count) {
+        checkRange(dest.length, offset, count);
+        for(int i = 0;i < count;i++)
+            dest[offset + i] = toLittleEndian(buffer, buffer.getInt());
+    }
+
+    public static void putLEInts(ByteBuffer buffer, int[] src, int offset, int count) {
+        checkRange(src.length, offset, count);
+        for(int i = 0;i < count;i++)
+            buffer.putInt(toLittleEndian(buffer, src[offset + i]));
+    }
+
+    public static void getBEShorts(ByteBuffer buffer, short[] dest, int offset, int count) {
+        checkRange(dest.length, offset, count);
+        for(int i = 0;i < count;i++)
+            dest[offset + i] = toBigEndian(buffer, buffer.getShort());
+    }
+
+    public static void putBEShorts(ByteBuffer buffer, short[] src, int offset, int count) {
+        checkRange(src.length, offset, count);
+        for(int i = 0;i < count;i++)
+            buffer.putShort(toBigEndian(buffer, src[offset + i]));
+    }
+
+    public static void getBEInts(ByteBuffer buffer, int[] dest, int offset, int count) {
+        checkRange(dest.length, offset, count);
+        for(int i = 0;i < count;i++)
+            dest[offset + i] = toBigEndian(buffer, buffer.getInt());
+    }
+
+    public static void putBEInts(ByteBuffer buffer, int[] src, int offset, int count) {
+        checkRange(src.length, offset, count);
+        for(int i = 0;i < count;i++)
+            buffer.putInt(toBigEndian(buffer, src[offset + i]));
+    }
+
+    private static short toLittleEndian(ByteBuffer buffer, short value) {
+        return buffer.order() == ByteOrder.LITTLE_ENDIAN ? value : Short.reverseBytes(value);
+    }
+
+    private static int toLittleEndian(ByteBuffer buffer, int value) {
+        return buffer.order() == ByteOrder.LITTLE_ENDIAN ? value : Integer.reverseBytes(value);
+    }
+
+    private static long toLittleEndian(ByteBuffer buffer, long value) {
+        return buffer.order() == ByteOrder.LITTLE_ENDIAN ? value : Long.reverseBytes(value);
+    }
+
+    private static short toBigEndian(ByteBuffer buffer, short value) {
+        return buffer.order() == ByteOrder.BIG_ENDIAN ? value : Short.reverseBytes(value);
+    }
+
+    private static int toBigEndian(ByteBuffer buffer, int value) {
+        return buffer.order() == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value);
+    }
+
+    private static long toBigEndian(ByteBuffer buffer, long value) {
+        return buffer.order() == ByteOrder.BIG_ENDIAN ? value : Long.reverseBytes(value);
+    }
+
+    private static void checkRange(int length, int offset, int count) {
+        if(offset < 0 || count < 0 || offset > length - count)
+            throw new IndexOutOfBoundsException("Range outside array bounds");
+    }
+}
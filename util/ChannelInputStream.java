@@ -0,0 +1,139 @@
+package mcmaplib.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class ChannelInputStream extends InputStream {
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    private final FileChannel channel;
+    // The direct buffer comes from a shared pool and goes back to it on
+    // close, since allocating one costs far more than reading a small map.
+    private ByteBuffer buffer;
+    private boolean closed;
+
+    public ChannelInputStream(FileChannel channel, int bufferSize) {
+        if(bufferSize <= 0)
+            throw new IllegalArgumentException("Buffer size must be positive");
+
+        this.channel = channel;
+        this.buffer = BufferPool.forChannel(bufferSize).acquire();
+        this.buffer.flip();
+    }
+
+    public ChannelInputStream(Path path, int bufferSize) throws IOException {
+        this(FileChannel.open(path, StandardOpenOption.READ), bufferSize);
+    }
+
+    public ChannelInputStream(Path path) throws IOException {
+        this(path, DEFAULT_BUFFER_SIZE);
+    }
+
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkOpen();
+        if(!buffer.hasRemaining() && !fill())
+            return -1;
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count;
+
+        if(off < 0 || len < 0 || off > b.length - len)
+            throw new IndexOutOfBoundsException();
+        checkOpen();
+        if(len == 0)
+            return 0;
+
+        count = 0;
+        if(buffer.hasRemaining()) {
+            count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            off += count;
+            len -= count;
+        }
+
+        if(len >= buffer.capacity()) {
+            int n;
+
+            n = channel.read(ByteBuffer.wrap(b, off, len));
+            if(n > 0)
+                count += n;
+        } else if(len > 0 && count == 0) {
+            if(!fill())
+                return -1;
+            count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+        }
+
+        if(count == 0)
+            return -1;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped, position, size;
+
+        checkOpen();
+        if(n <= 0)
+            return 0;
+
+        skipped = Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + (int)skipped);
+        n -= skipped;
+        if(n > 0) {
+            position = channel.position();
+            size = channel.size();
+            n = Math.min(n, Math.max(0, size - position));
+            channel.position(position + n);
+            skipped += n;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        long remaining;
+
+        checkOpen();
+        remaining = buffer.remaining() + Math.max(0, channel.size() - channel.position());
+        return (int)Math.min(Integer.MAX_VALUE, remaining);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(closed)
+            return;
+        closed = true;
+        BufferPool.forChannel(buffer.capacity()).release(buffer);
+        buffer = null;
+        channel.close();
+    }
+
+    private void checkOpen() throws IOException {
+        if(closed)
+            throw new IOException("Stream closed");
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+
+        buffer.clear();
+        do {
+            n = channel.read(buffer);
+        } while(n == 0);
+        buffer.flip();
+        return n > 0;
+    }
+}
@@ -0,0 +1,107 @@
+package mcmaplib.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class ChannelOutputStream extends OutputStream {
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    private final FileChannel channel;
+    // Pooled like ChannelInputStream's buffer.
+    private ByteBuffer buffer;
+    private boolean closed;
+
+    public ChannelOutputStream(FileChannel channel, int bufferSize) {
+        if(bufferSize <= 0)
+            throw new IllegalArgumentException("Buffer size must be positive");
+
+        this.channel = channel;
+        this.buffer = BufferPool.forChannel(bufferSize).acquire();
+    }
+
+    public ChannelOutputStream(Path path, int bufferSize) throws IOException {
+        this(
+            FileChannel.open(
+                path,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING
+            ),
+            bufferSize
+        );
+    }
+
+    public ChannelOutputStream(Path path) throws IOException {
+        this(path, DEFAULT_BUFFER_SIZE);
+    }
+
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkOpen();
+        if(!buffer.hasRemaining())
+            drain();
+        buffer.put((byte)b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if(off < 0 || len < 0 || off > b.length - len)
+            throw new IndexOutOfBoundsException();
+        checkOpen();
+
+        if(len >= buffer.capacity()) {
+            ByteBuffer src;
+
+            drain();
+            src = ByteBuffer.wrap(b, off, len);
+            while(src.hasRemaining())
+                channel.write(src);
+            return;
+        }
+
+        if(len > buffer.remaining())
+            drain();
+        buffer.put(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if(closed)
+            return;
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(closed)
+            return;
+        try {
+            drain();
+        } finally {
+            closed = true;
+            BufferPool.forChannel(buffer.capacity()).release(buffer);
+            buffer = null;
+            channel.close();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if(closed)
+            throw new IOException("Stream closed");
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+}
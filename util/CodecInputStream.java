@@ -0,0 +1,230 @@
+package mcmaplib.util;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+public class CodecInputStream extends InputStream implements DataInput {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static final int MIN_BUFFER_SIZE = 8;
+
+    private final InputStream in;
+    private final ByteBuffer buffer;
+
+    public CodecInputStream(InputStream in, int bufferSize) {
+        if(bufferSize < MIN_BUFFER_SIZE)
+            throw new IllegalArgumentException("Buffer size must be at least " + MIN_BUFFER_SIZE);
+
+        this.in = in;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.buffer.flip();
+    }
+
+    public CodecInputStream(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(!buffer.hasRemaining() && fill(1) < 1)
+            return -1;
+        return buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int count;
+
+        if(off < 0 || len < 0 || off > b.length - len)
+            throw new IndexOutOfBoundsException();
+        if(len == 0)
+            return 0;
+
+        if(!buffer.hasRemaining()) {
+            if(len >= buffer.capacity())
+                return in.read(b, off, len);
+            if(fill(1) < 1)
+                return -1;
+        }
+        count = Math.min(len, buffer.remaining());
+        buffer.get(b, off, count);
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped;
+
+        if(n <= 0)
+            return 0;
+        skipped = Math.min(n, buffer.remaining());
+        buffer.position(buffer.position() + (int)skipped);
+        if(skipped < n)
+            skipped += in.skip(n - skipped);
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return buffer.remaining() + in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.clear().flip();
+        in.close();
+    }
+
+    public void readFully(byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    public void readFully(byte[] b, int off, int len) throws IOException {
+        while(len > 0) {
+            int n;
+
+            n = read(b, off, len);
+            if(n < 0)
+                throw new EOFException();
+            off += n;
+            len -= n;
+        }
+    }
+
+    public int skipBytes(int n) throws IOException {
+        int skipped;
+
+        skipped = 0;
+        while(skipped < n) {
+            long s;
+
+            s = skip(n - skipped);
+            if(s <= 0) {
+                if(read() < 0)
+                    break;
+                s = 1;
+            }
+            skipped += (int)s;
+        }
+        return skipped;
+    }
+
+    public boolean readBoolean() throws IOException {
+        return readUnsignedByte() != 0;
+    }
+
+    public byte readByte() throws IOException {
+        return (byte)readUnsignedByte();
+    }
+
+    public int readUnsignedByte() throws IOException {
+        require(1);
+        return buffer.get() & 0xFF;
+    }
+
+    public short readShort() throws IOException {
+        return (short)readUnsignedShort();
+    }
+
+    public int readUnsignedShort() throws IOException {
+        require(2);
+        return ByteCodec.getBEUnsignedShort(buffer);
+    }
+
+    public char readChar() throws IOException {
+        return (char)readUnsignedShort();
+    }
+
+    public int readInt() throws IOException {
+        return (int)readUnsignedInt();
+    }
+
+    public long readUnsignedInt() throws IOException {
+        require(4);
+        return ByteCodec.getBEUnsignedInt(buffer);
+    }
+
+    public long readLong() throws IOException {
+        require(8);
+        return ByteCodec.getBELong(buffer);
+    }
+
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    public int readLEUnsignedShort() throws IOException {
+        require(2);
+        return ByteCodec.getLEUnsignedShort(buffer);
+    }
+
+    public long readLEUnsignedInt() throws IOException {
+        require(4);
+        return ByteCodec.getLEUnsignedInt(buffer);
+    }
+
+    public long readLELong() throws IOException {
+        require(8);
+        return ByteCodec.getLELong(buffer);
+    }
+
+    @Deprecated
+    public String readLine() throws IOException {
+        StringBuilder line;
+        int c;
+
+        line = new StringBuilder();
+        c = read();
+        if(c < 0)
+            return null;
+        while(c >= 0 && c != '\n') {
+            if(c == '\r') {
+                if(!buffer.hasRemaining())
+                    fill(1);
+                if(buffer.hasRemaining() && buffer.get(buffer.position()) == '\n')
+                    buffer.get();
+                break;
+            }
+            line.append((char)c);
+            c = read();
+        }
+        return line.toString();
+    }
+
+    public String readUTF() throws IOException {
+        return DataInputStream.readUTF(this);
+    }
+
+    private void require(int count) throws IOException {
+        if(buffer.remaining() < count && fill(count) < count)
+            throw new EOFException();
+    }
+
+    private int fill(int count) throws IOException {
+        byte[] data;
+
+        buffer.compact();
+        data = buffer.array();
+        try {
+            while(buffer.position() < count) {
+                int n;
+
+                n = in.read(data, buffer.position(), buffer.remaining());
+                if(n < 0)
+                    break;
+                buffer.position(buffer.position() + n);
+            }
+        } finally {
+            buffer.flip();
+        }
+        return buffer.remaining();
+    }
+}
@@ -0,0 +1,180 @@
+package mcmaplib.util;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+public class CodecOutputStream extends OutputStream implements DataOutput {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static final int MIN_BUFFER_SIZE = 8;
+
+    private final OutputStream out;
+    private final ByteBuffer buffer;
+
+    public CodecOutputStream(OutputStream out, int bufferSize) {
+        if(bufferSize < MIN_BUFFER_SIZE)
+            throw new IllegalArgumentException("Buffer size must be at least " + MIN_BUFFER_SIZE);
+
+        this.out = out;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+    }
+
+    public CodecOutputStream(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        reserve(1);
+        buffer.put((byte)b);
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if(off < 0 || len < 0 || off > b.length - len)
+            throw new IndexOutOfBoundsException();
+
+        if(len >= buffer.capacity()) {
+            drain();
+            out.write(b, off, len);
+        } else {
+            reserve(len);
+            buffer.put(b, off, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    public void writeBoolean(boolean v) throws IOException {
+        write(v ? 1 : 0);
+    }
+
+    public void writeByte(int v) throws IOException {
+        write(v);
+    }
+
+    public void writeShort(int v) throws IOException {
+        reserve(2);
+        ByteCodec.putBEUnsignedShort(buffer, v);
+    }
+
+    public void writeChar(int v) throws IOException {
+        writeShort(v);
+    }
+
+    public void writeInt(int v) throws IOException {
+        writeUnsignedInt(v);
+    }
+
+    public void writeUnsignedInt(long v) throws IOException {
+        reserve(4);
+        ByteCodec.putBEUnsignedInt(buffer, v);
+    }
+
+    public void writeLong(long v) throws IOException {
+        reserve(8);
+        ByteCodec.putBELong(buffer, v);
+    }
+
+    public void writeFloat(float v) throws IOException {
+        writeInt(Float.floatToIntBits(v));
+    }
+
+    public void writeDouble(double v) throws IOException {
+        writeLong(Double.doubleToLongBits(v));
+    }
+
+    public void writeLEUnsignedShort(int v) throws IOException {
+        reserve(2);
+        ByteCodec.putLEUnsignedShort(buffer, v);
+    }
+
+    public void writeLEUnsignedInt(long v) throws IOException {
+        reserve(4);
+        ByteCodec.putLEUnsignedInt(buffer, v);
+    }
+
+    public void writeLELong(long v) throws IOException {
+        reserve(8);
+        ByteCodec.putLELong(buffer, v);
+    }
+
+    public void writeBytes(String s) throws IOException {
+        for(int i = 0;i < s.length();i++)
+            write(s.charAt(i));
+    }
+
+    public void writeChars(String s) throws IOException {
+        for(int i = 0;i < s.length();i++)
+            writeChar(s.charAt(i));
+    }
+
+    public void writeUTF(String s) throws IOException {
+        int length;
+
+        length = 0;
+        for(int i = 0;i < s.length();i++) {
+            char c;
+
+            c = s.charAt(i);
+            if(c >= 0x0001 && c <= 0x007F)
+                length += 1;
+            else if(c <= 0x07FF)
+                length += 2;
+            else
+                length += 3;
+        }
+        if(length > 65535)
+            throw new UTFDataFormatException("Encoded string too long: " + length + " bytes");
+
+        writeShort(length);
+        for(int i = 0;i < s.length();i++) {
+            char c;
+
+            c = s.charAt(i);
+            if(c >= 0x0001 && c <= 0x007F) {
+                write(c);
+            } else if(c <= 0x07FF) {
+                write(0xC0 | ((c >> 6) & 0x1F));
+                write(0x80 | (c & 0x3F));
+            } else {
+                write(0xE0 | ((c >> 12) & 0x0F));
+                write(0x80 | ((c >> 6) & 0x3F));
+                write(0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void reserve(int count) throws IOException {
+        if(buffer.remaining() < count)
+            drain();
+    }
+
+    private void drain() throws IOException {
+        if(buffer.position() > 0) {
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+    }
+}
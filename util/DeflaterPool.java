@@ -0,0 +1,74 @@
+package mcmaplib.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+public class DeflaterPool {
+    public static final int DEFAULT_MAX_IDLE = 16;
+
+    private final ConcurrentLinkedQueue<Deflater> idle;
+    private final AtomicInteger idleCount;
+    private final int maxIdle;
+
+    public DeflaterPool(int maxIdle) {
+        if(maxIdle < 0)
+            throw new IllegalArgumentException("Negative pool size");
+
+        this.idle = new ConcurrentLinkedQueue<Deflater>();
+        this.idleCount = new AtomicInteger();
+        this.maxIdle = maxIdle;
+    }
+
+    public DeflaterPool() {
+        this(DEFAULT_MAX_IDLE);
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    public Deflater acquire(int level, int strategy) {
+        Deflater deflater;
+
+        deflater = idle.poll();
+        if(deflater == null)
+            return newDeflater(level, strategy);
+
+        idleCount.decrementAndGet();
+        deflater.setLevel(level);
+        deflater.setStrategy(strategy);
+        return deflater;
+    }
+
+    public void release(Deflater deflater) {
+        deflater.reset();
+        if(idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(deflater);
+        } else {
+            idleCount.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    public void clear() {
+        Deflater deflater;
+
+        while((deflater = idle.poll()) != null) {
+            idleCount.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    static Deflater newDeflater(int level, int strategy) {
+        Deflater deflater;
+
+        deflater = new Deflater(level, true);
+        deflater.setStrategy(strategy);
+        return deflater;
+    }
+}
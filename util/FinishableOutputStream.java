@@ -0,0 +1,31 @@
+package mcmaplib.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+
+public abstract class FinishableOutputStream extends FilterOutputStream {
+    protected FinishableOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    public abstract void finish() throws IOException;
+
+    public void release() {
+    }
+
+    public static FinishableOutputStream wrap(final DeflaterOutputStream stream) {
+        return new FinishableOutputStream(stream) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                stream.write(b, off, len);
+            }
+
+            @Override
+            public void finish() throws IOException {
+                stream.finish();
+            }
+        };
+    }
+}
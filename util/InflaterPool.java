@@ -0,0 +1,64 @@
+package mcmaplib.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+public class InflaterPool {
+    public static final int DEFAULT_MAX_IDLE = 16;
+
+    private final ConcurrentLinkedQueue<Inflater> idle;
+    private final AtomicInteger idleCount;
+    private final int maxIdle;
+
+    public InflaterPool(int maxIdle) {
+        if(maxIdle < 0)
+            throw new IllegalArgumentException("Negative pool size");
+
+        this.idle = new ConcurrentLinkedQueue<Inflater>();
+        this.idleCount = new AtomicInteger();
+        this.maxIdle = maxIdle;
+    }
+
+    public InflaterPool() {
+        this(DEFAULT_MAX_IDLE);
+    }
+
+    public int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public int getIdleCount() {
+        return idleCount.get();
+    }
+
+    public Inflater acquire() {
+        Inflater inflater;
+
+        inflater = idle.poll();
+        if(inflater == null)
+            return new Inflater(true);
+
+        idleCount.decrementAndGet();
+        return inflater;
+    }
+
+    public void release(Inflater inflater) {
+        inflater.reset();
+        if(idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(inflater);
+        } else {
+            idleCount.decrementAndGet();
+            inflater.end();
+        }
+    }
+
+    public void clear() {
+        Inflater inflater;
+
+        while((inflater = idle.poll()) != null) {
+            idleCount.decrementAndGet();
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package mcmaplib.util;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class PagedByteArray implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int PAGE_SHIFT = 16,
+                            PAGE_SIZE = 1 << PAGE_SHIFT,
+                            PAGE_MASK = PAGE_SIZE - 1;
+    public static final int DIRTY_SHIFT = 12,
+                            DIRTY_REGION_SIZE = 1 << DIRTY_SHIFT;
+
+    private static final int DIRTY_WORD_SHIFT = DIRTY_SHIFT + 6;
+
+    private final int length;
+    private final byte[][] pages;
+    private final AtomicIntegerArray pageEpochs;
+    private final AtomicLongArray dirty;
+    private volatile int epoch;
+
+    public PagedByteArray(int length) {
+        int pageCount;
+
+        if(length < 0)
+            throw new IllegalArgumentException("Negative length");
+
+        pageCount = (int)(((long)length + PAGE_MASK) >>> PAGE_SHIFT);
+        this.length = length;
+        this.pages = new byte[pageCount][];
+        this.pageEpochs = new AtomicIntegerArray(pageCount);
+        this.dirty = new AtomicLongArray((int)(((long)length + (1L << DIRTY_WORD_SHIFT) - 1) >>> DIRTY_WORD_SHIFT));
+        for(int i = 0;i < pageCount;i++)
+            pages[i] = new byte[getPageLength(i)];
+    }
+
+    public PagedByteArray(byte[] data) {
+        this(data.length);
+        set(0, data, 0, data.length);
+        clearDirty();
+    }
+
+    private PagedByteArray(PagedByteArray source, byte[][] pages) {
+        this.length = source.length;
+        this.pages = pages;
+        this.pageEpochs = new AtomicIntegerArray(pages.length);
+        this.dirty = new AtomicLongArray(source.dirty.length());
+        for(int i = 0;i < source.dirty.length();i++)
+            this.dirty.set(i, source.dirty.get(i));
+        this.epoch = 1;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int getPageCount() {
+        return pages.length;
+    }
+
+    public int getPageLength(int page) {
+        return Math.min(PAGE_SIZE, length - (page << PAGE_SHIFT));
+    }
+
+    public byte get(int index) {
+        return pages[index >>> PAGE_SHIFT][index & PAGE_MASK];
+    }
+
+    public void set(int index, byte value) {
+        int page, currentEpoch;
+        byte[] data;
+
+        page = index >>> PAGE_SHIFT;
+        currentEpoch = epoch;
+        if(pageEpochs.get(page) != currentEpoch)
+            data = copyPage(page, currentEpoch);
+        else
+            data = pages[page];
+        data[index & PAGE_MASK] = value;
+        markRegionDirty(index >>> DIRTY_SHIFT);
+    }
+
+    public void get(int index, byte[] dest, int offset, int count) {
+        checkRange(index, count);
+        while(count > 0) {
+            int page, pageOffset, n;
+
+            page = index >>> PAGE_SHIFT;
+            pageOffset = index & PAGE_MASK;
+            n = Math.min(count, PAGE_SIZE - pageOffset);
+            System.arraycopy(pages[page], pageOffset, dest, offset, n);
+            index += n;
+            offset += n;
+            count -= n;
+        }
+    }
+
+    public void get(int index, ByteBuffer dest, int count) {
+        checkRange(index, count);
+        while(count > 0) {
+            int page, pageOffset, n;
+
+            page = index >>> PAGE_SHIFT;
+            pageOffset = index & PAGE_MASK;
+            n = Math.min(count, PAGE_SIZE - pageOffset);
+            dest.put(pages[page], pageOffset, n);
+            index += n;
+            count -= n;
+        }
+    }
+
+    public void set(int index, byte[] src, int offset, int count) {
+        checkRange(index, count);
+        markDirty(index, count);
+        while(count > 0) {
+            int page, pageOffset, n;
+
+            page = index >>> PAGE_SHIFT;
+            pageOffset = index & PAGE_MASK;
+            n = Math.min(count, PAGE_SIZE - pageOffset);
+            System.arraycopy(src, offset, getWritablePage(page), pageOffset, n);
+            index += n;
+            offset += n;
+            count -= n;
+        }
+    }
+
+    public void fill(int from, int to, byte value) {
+        checkRange(from, to - from);
+        markDirty(from, to - from);
+        while(from < to) {
+            int page, pageOffset, n;
+
+            page = from >>> PAGE_SHIFT;
+            pageOffset = from & PAGE_MASK;
+            n = Math.min(to - from, PAGE_SIZE - pageOffset);
+            Arrays.fill(getWritablePage(page), pageOffset, pageOffset + n, value);
+            from += n;
+        }
+    }
+
+    public byte[] toByteArray() {
+        byte[] data;
+
+        data = new byte[length];
+        get(0, data, 0, length);
+        return data;
+    }
+
+    public void readFully(DataInput in) throws IOException {
+        for(int i = 0;i < pages.length;i++)
+            in.readFully(getWritablePage(i));
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        for(int i = 0;i < pages.length;i++)
+            out.write(pages[i]);
+    }
+
+    public int getRegionCount() {
+        return (int)(((long)length + DIRTY_REGION_SIZE - 1) >>> DIRTY_SHIFT);
+    }
+
+    public int getRegionLength(int region) {
+        return Math.min(DIRTY_REGION_SIZE, length - (region << DIRTY_SHIFT));
+    }
+
+    public boolean isDirty() {
+        for(int i = 0;i < dirty.length();i++) {
+            if(dirty.get(i) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    public boolean isRegionDirty(int region) {
+        return (dirty.get(region >>> 6) & (1L << region)) != 0;
+    }
+
+    public int nextDirtyRegion(int region) {
+        int word;
+        long bits;
+
+        if(region < 0)
+            region = 0;
+        word = region >>> 6;
+        if(word >= dirty.length())
+            return -1;
+
+        bits = dirty.get(word) & (-1L << region);
+        while(bits == 0) {
+            if(++word == dirty.length())
+                return -1;
+            bits = dirty.get(word);
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    public void markDirty(int index, int count) {
+        int first, last;
+
+        if(count <= 0)
+            return;
+        first = index >>> DIRTY_SHIFT;
+        last = (index + count - 1) >>> DIRTY_SHIFT;
+        for(int region = first;region <= last;region++)
+            markRegionDirty(region);
+    }
+
+    public void clearDirty() {
+        for(int i = 0;i < dirty.length();i++)
+            dirty.set(i, 0);
+    }
+
+    private void markRegionDirty(int region) {
+        int word;
+        long bit, bits;
+
+        word = region >>> 6;
+        bit = 1L << region;
+        do {
+            bits = dirty.get(word);
+            if((bits & bit) != 0)
+                return;
+        } while(!dirty.compareAndSet(word, bits, bits | bit));
+    }
+
+    public synchronized PagedByteArray snapshot() {
+        PagedByteArray copy;
+
+        copy = new PagedByteArray(this, pages.clone());
+        epoch = epoch + 1;
+        return copy;
+    }
+
+    private byte[] getWritablePage(int page) {
+        int currentEpoch;
+
+        currentEpoch = epoch;
+        if(pageEpochs.get(page) != currentEpoch)
+            return copyPage(page, currentEpoch);
+        return pages[page];
+    }
+
+    private synchronized byte[] copyPage(int page, int currentEpoch) {
+        byte[] data;
+
+        if(pageEpochs.get(page) == currentEpoch)
+            return pages[page];
+
+        data = pages[page].clone();
+        pages[page] = data;
+        pageEpochs.set(page, currentEpoch);
+        return data;
+    }
+
+    private void checkRange(int index, int count) {
+        if(index < 0 || count < 0 || index > length - count)
+            throw new IndexOutOfBoundsException("Range outside array bounds");
+    }
+}
@@ -0,0 +1,279 @@
+package mcmaplib.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class ParallelGZIPInputStream extends ReleasableInputStream {
+    private static final int GZIP_MAGIC = ParallelGZIPOutputStream.GZIP_MAGIC,
+                             FLAG_EXTRA = ParallelGZIPOutputStream.FLAG_EXTRA,
+                             SUBFIELD_ID = ParallelGZIPOutputStream.SUBFIELD_ID,
+                             SUBFIELD_LENGTH = ParallelGZIPOutputStream.SUBFIELD_LENGTH,
+                             EXTRA_LENGTH = ParallelGZIPOutputStream.EXTRA_LENGTH,
+                             HEADER_LENGTH = ParallelGZIPOutputStream.HEADER_LENGTH,
+                             TRAILER_LENGTH = ParallelGZIPOutputStream.TRAILER_LENGTH,
+                             MAX_BLOCK_SIZE = ParallelGZIPOutputStream.MAX_BLOCK_SIZE,
+                             MAX_MEMBER_LENGTH = ParallelGZIPOutputStream.MAX_MEMBER_LENGTH,
+                             FIXED_HEADER_LENGTH = 10;
+
+    private final InputStream in;
+    private final ExecutorService executor;
+    private final InflaterPool pool;
+    private final int maxPending;
+    private final LinkedList<Future<byte[]>> pending;
+    private PooledGZIPInputStream fallback;
+    private byte[] current;
+    private int position;
+    private long membersRead;
+    private boolean scanned, closed;
+
+    public ParallelGZIPInputStream(InputStream in, ExecutorService executor,
+                                   InflaterPool pool) {
+        this.in = in;
+        this.executor = executor;
+        this.pool = pool;
+        this.maxPending = 2 * Runtime.getRuntime().availableProcessors();
+        this.pending = new LinkedList<Future<byte[]>>();
+    }
+
+    public ParallelGZIPInputStream(InputStream in, ExecutorService executor) {
+        this(in, executor, null);
+    }
+
+    public ParallelGZIPInputStream(InputStream in) {
+        this(in, ParallelGZIPOutputStream.getDefaultExecutor());
+    }
+
+    public boolean isIndexed() throws IOException {
+        fillPending();
+        return fallback == null || membersRead > 0 || !pending.isEmpty();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b;
+
+        b = new byte[1];
+        if(read(b, 0, 1) == -1)
+            return -1;
+        return b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(closed)
+            throw new IOException("Stream closed");
+        if(off < 0 || len < 0 || off > b.length - len)
+            throw new IndexOutOfBoundsException();
+        if(len == 0)
+            return 0;
+
+        while(current == null || position == current.length) {
+            if(!nextMember()) {
+                if(fallback != null)
+                    return fallback.read(b, off, len);
+                return -1;
+            }
+        }
+
+        len = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, len);
+        position += len;
+        return len;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if(current != null)
+            return current.length - position;
+        return 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(closed)
+            return;
+        release();
+        in.close();
+    }
+
+    @Override
+    public void release() {
+        if(closed)
+            return;
+        closed = true;
+        while(!pending.isEmpty())
+            pending.removeFirst().cancel(true);
+        current = null;
+        if(fallback != null)
+            fallback.release();
+    }
+
+    private boolean nextMember() throws IOException {
+        Future<byte[]> future;
+
+        fillPending();
+        if(pending.isEmpty())
+            return false;
+
+        future = pending.removeFirst();
+        try {
+            current = future.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decompressing");
+        } catch(ExecutionException e) {
+            if(e.getCause() instanceof IOException)
+                throw (IOException)e.getCause();
+            throw new IOException("Decompression failed", e.getCause());
+        }
+        position = 0;
+        membersRead++;
+        return true;
+    }
+
+    private void fillPending() throws IOException {
+        while(!scanned && pending.size() < maxPending)
+            scanMember();
+    }
+
+    private void scanMember() throws IOException {
+        final byte[] member;
+        final int uncompressedLength;
+        byte[] header;
+        int first, memberLength;
+
+        first = in.read();
+        if(first == -1) {
+            if(membersRead == 0 && pending.isEmpty())
+                throw new EOFException("Unexpected end of gzip stream");
+            scanned = true;
+            return;
+        }
+
+        header = new byte[HEADER_LENGTH];
+        header[0] = (byte)first;
+        readFully(header, 1, FIXED_HEADER_LENGTH - 1);
+        if(getShort(header, 0) != GZIP_MAGIC || header[2] != 8 || header[3] != FLAG_EXTRA) {
+            useFallback(header, FIXED_HEADER_LENGTH);
+            return;
+        }
+
+        readFully(header, FIXED_HEADER_LENGTH, 2);
+        if(getShort(header, FIXED_HEADER_LENGTH) != EXTRA_LENGTH) {
+            useFallback(header, FIXED_HEADER_LENGTH + 2);
+            return;
+        }
+
+        readFully(header, FIXED_HEADER_LENGTH + 2, EXTRA_LENGTH);
+        if(getShort(header, 12) != SUBFIELD_ID || getShort(header, 14) != SUBFIELD_LENGTH) {
+            useFallback(header, HEADER_LENGTH);
+            return;
+        }
+
+        memberLength = getInt(header, 16);
+        uncompressedLength = getInt(header, 20);
+        if(memberLength < HEADER_LENGTH + TRAILER_LENGTH || uncompressedLength < 0)
+            throw new IOException("Corrupt gzip member index");
+        if(memberLength > MAX_MEMBER_LENGTH || uncompressedLength > MAX_BLOCK_SIZE
+                || memberLength - HEADER_LENGTH - TRAILER_LENGTH
+                   > ParallelGZIPOutputStream.deflateBound(uncompressedLength)) {
+            // Not a member we could have written; inflate it sequentially
+            // rather than trusting the index with an allocation.
+            useFallback(header, HEADER_LENGTH);
+            return;
+        }
+
+        member = new byte[memberLength - HEADER_LENGTH];
+        readFully(member, 0, member.length);
+        pending.add(executor.submit(new Callable<byte[]>() {
+            public byte[] call() throws IOException {
+                return inflateMember(member, uncompressedLength, pool);
+            }
+        }));
+    }
+
+    private void useFallback(byte[] consumed, int length) throws IOException {
+        fallback = new PooledGZIPInputStream(new SequenceInputStream(
+            new ByteArrayInputStream(consumed, 0, length), in
+        ), pool);
+        scanned = true;
+    }
+
+    private void readFully(byte[] b, int off, int len) throws IOException {
+        while(len > 0) {
+            int n;
+
+            n = in.read(b, off, len);
+            if(n == -1)
+                throw new EOFException("Unexpected end of gzip stream");
+            off += n;
+            len -= n;
+        }
+    }
+
+    static byte[] inflateMember(byte[] member, int uncompressedLength,
+                                InflaterPool pool) throws IOException {
+        Inflater inflater;
+        CRC32 crc;
+        byte[] data;
+        int length, trailer;
+
+        data = new byte[uncompressedLength];
+        length = 0;
+        if(pool != null)
+            inflater = pool.acquire();
+        else
+            inflater = new Inflater(true);
+        try {
+            inflater.setInput(member, 0, member.length);
+            while(!inflater.finished()) {
+                int n;
+
+                n = inflater.inflate(data, length, data.length - length);
+                if(n == 0 && (inflater.needsInput() || inflater.needsDictionary() || length == data.length)) {
+                    if(!inflater.finished())
+                        throw new IOException("Corrupt gzip member");
+                }
+                length += n;
+            }
+            if(inflater.getRemaining() != TRAILER_LENGTH)
+                throw new IOException("Corrupt gzip member");
+        } catch(DataFormatException e) {
+            throw new IOException("Corrupt gzip member", e);
+        } finally {
+            if(pool != null)
+                pool.release(inflater);
+            else
+                inflater.end();
+        }
+
+        crc = new CRC32();
+        crc.update(data, 0, length);
+        trailer = member.length - TRAILER_LENGTH;
+        if(length != uncompressedLength
+                || getInt(member, trailer) != (int)crc.getValue()
+                || getInt(member, trailer + 4) != uncompressedLength)
+            throw new IOException("Corrupt gzip member");
+        return data;
+    }
+
+    private static int getShort(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8);
+    }
+
+    private static int getInt(byte[] data, int offset) {
+        return getShort(data, offset) | (getShort(data, offset + 2) << 16);
+    }
+}
@@ -0,0 +1,302 @@
+package mcmaplib.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+public class ParallelGZIPOutputStream extends FinishableOutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 256 * 1024,
+                            MAX_BLOCK_SIZE = 16 * 1024 * 1024;
+
+    static final int GZIP_MAGIC = 0x8B1F,
+                     FLAG_EXTRA = 4,
+                     SUBFIELD_ID = ('P' << 8) | 'M',
+                     SUBFIELD_LENGTH = 8,
+                     EXTRA_LENGTH = 4 + SUBFIELD_LENGTH,
+                     HEADER_LENGTH = 10 + 2 + EXTRA_LENGTH,
+                     TRAILER_LENGTH = 8,
+                     MAX_MEMBER_LENGTH = HEADER_LENGTH + deflateBound(MAX_BLOCK_SIZE) + TRAILER_LENGTH;
+
+    private static volatile ExecutorService defaultExecutor;
+
+    private final ExecutorService executor;
+    private final int blockSize, level, strategy, maxPending;
+    private final DeflaterPool pool;
+    private final LinkedList<Future<Member>> pending;
+    private byte[] buffer;
+    private int count;
+    private long membersWritten;
+    private boolean finished;
+
+    public ParallelGZIPOutputStream(OutputStream out, ExecutorService executor,
+                                    int blockSize, int level, int strategy,
+                                    DeflaterPool pool) {
+        super(out);
+        if(blockSize <= 0 || blockSize > MAX_BLOCK_SIZE)
+            throw new IllegalArgumentException("Block size must be between 1 and " + MAX_BLOCK_SIZE);
+        if(level != Deflater.DEFAULT_COMPRESSION && (level < 0 || level > 9))
+            throw new IllegalArgumentException("Invalid compression level");
+
+        this.executor = executor;
+        this.blockSize = blockSize;
+        this.level = level;
+        this.strategy = strategy;
+        this.pool = pool;
+        this.maxPending = 2 * Runtime.getRuntime().availableProcessors();
+        this.pending = new LinkedList<Future<Member>>();
+        this.buffer = new byte[blockSize];
+    }
+
+    public ParallelGZIPOutputStream(OutputStream out, ExecutorService executor,
+                                    int blockSize, int level) {
+        this(out, executor, blockSize, level, Deflater.DEFAULT_STRATEGY, null);
+    }
+
+    public ParallelGZIPOutputStream(OutputStream out, ExecutorService executor) {
+        this(out, executor, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public ParallelGZIPOutputStream(OutputStream out) {
+        this(out, getDefaultExecutor());
+    }
+
+    public static ExecutorService getDefaultExecutor() {
+        ExecutorService executor;
+
+        executor = defaultExecutor;
+        if(executor == null) {
+            synchronized(ParallelGZIPOutputStream.class) {
+                executor = defaultExecutor;
+                if(executor == null) {
+                    executor = Executors.newFixedThreadPool(
+                        Runtime.getRuntime().availableProcessors(),
+                        new ThreadFactory() {
+                            private final AtomicInteger next = new AtomicInteger();
+
+                            public Thread newThread(Runnable r) {
+                                Thread thread;
+
+                                thread = new Thread(r, "mcmaplib-gzip-" + next.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        }
+                    );
+                    defaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkNotFinished();
+        buffer[count++] = (byte)b;
+        if(count == blockSize)
+            submitBlock();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkNotFinished();
+        if(off < 0 || len < 0 || off > b.length - len)
+            throw new IndexOutOfBoundsException();
+
+        while(len > 0) {
+            int n;
+
+            n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if(count == blockSize)
+                submitBlock();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if(!finished) {
+            if(count > 0)
+                submitBlock();
+            while(!pending.isEmpty())
+                writeMember();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if(finished)
+            return;
+
+        if(count > 0 || (membersWritten == 0 && pending.isEmpty()))
+            submitBlock();
+        while(!pending.isEmpty())
+            writeMember();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    public void release() {
+        finished = true;
+        cancelPending();
+    }
+
+    private void checkNotFinished() throws IOException {
+        if(finished)
+            throw new IOException("Stream already finished");
+    }
+
+    private void submitBlock() throws IOException {
+        final byte[] data;
+        final int length;
+
+        data = buffer;
+        length = count;
+        pending.add(executor.submit(new Callable<Member>() {
+            public Member call() {
+                return compressMember(data, length, level, strategy, pool);
+            }
+        }));
+        buffer = new byte[blockSize];
+        count = 0;
+
+        while(pending.size() >= maxPending)
+            writeMember();
+    }
+
+    private void writeMember() throws IOException {
+        Future<Member> future;
+        Member member;
+
+        future = pending.removeFirst();
+        try {
+            member = future.get();
+        } catch(InterruptedException e) {
+            cancelPending();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch(ExecutionException e) {
+            cancelPending();
+            throw new IOException("Compression failed", e.getCause());
+        }
+        out.write(member.data, 0, member.length);
+        membersWritten++;
+    }
+
+    private void cancelPending() {
+        while(!pending.isEmpty())
+            pending.removeFirst().cancel(true);
+    }
+
+    static Member compressMember(byte[] data, int length,
+                                 int level, int strategy, DeflaterPool pool) {
+        Deflater deflater;
+        CRC32 crc;
+        byte[] member;
+        int memberLength;
+
+        member = new byte[HEADER_LENGTH + length + (length >>> 8) + 64 + TRAILER_LENGTH];
+        memberLength = HEADER_LENGTH;
+        if(pool != null)
+            deflater = pool.acquire(level, strategy);
+        else
+            deflater = DeflaterPool.newDeflater(level, strategy);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            while(!deflater.finished()) {
+                if(memberLength == member.length)
+                    member = grow(member, memberLength);
+                memberLength += deflater.deflate(member, memberLength, member.length - memberLength);
+            }
+        } finally {
+            if(pool != null)
+                pool.release(deflater);
+            else
+                deflater.end();
+        }
+
+        crc = new CRC32();
+        crc.update(data, 0, length);
+        if(member.length - memberLength < TRAILER_LENGTH)
+            member = grow(member, memberLength);
+        memberLength = putInt(member, memberLength, (int)crc.getValue());
+        memberLength = putInt(member, memberLength, length);
+
+        {
+            int i;
+
+            i = putShort(member, 0, GZIP_MAGIC);
+            member[i++] = 8;
+            member[i++] = FLAG_EXTRA;
+            i = putInt(member, i, 0);
+            member[i++] = 0;
+            member[i++] = 0;
+            i = putShort(member, i, EXTRA_LENGTH);
+            i = putShort(member, i, SUBFIELD_ID);
+            i = putShort(member, i, SUBFIELD_LENGTH);
+            i = putInt(member, i, memberLength);
+            putInt(member, i, length);
+        }
+
+        return new Member(member, memberLength);
+    }
+
+    // zlib's compressBound() for raw deflate: stored blocks never cost more
+    // than this, so no member we write can exceed it.
+    static int deflateBound(int length) {
+        return length + (length >>> 12) + (length >>> 14) + (length >>> 25) + 13;
+    }
+
+    private static byte[] grow(byte[] data, int length) {
+        byte[] grown;
+
+        grown = new byte[data.length * 2];
+        System.arraycopy(data, 0, grown, 0, length);
+        return grown;
+    }
+
+    private static int putShort(byte[] data, int offset, int value) {
+        data[offset++] = (byte)value;
+        data[offset++] = (byte)(value >>> 8);
+        return offset;
+    }
+
+    private static int putInt(byte[] data, int offset, int value) {
+        offset = putShort(data, offset, value);
+        return putShort(data, offset, value >>> 16);
+    }
+
+    static final class Member {
+        final byte[] data;
+        final int length;
+
+        Member(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+}
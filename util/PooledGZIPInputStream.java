@@ -0,0 +1,218 @@
+package mcmaplib.util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+public class PooledGZIPInputStream extends ReleasableInputStream {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static final int FLAG_HEADER_CRC = 2,
+                             FLAG_EXTRA = 4,
+                             FLAG_NAME = 8,
+                             FLAG_COMMENT = 16;
+
+    private final InputStream in;
+    private final InflaterPool pool;
+    private final CRC32 crc;
+    private final byte[] buffer;
+    private int position, limit;
+    private Inflater inflater;
+    private boolean eof, closed;
+
+    public PooledGZIPInputStream(InputStream in, int bufferSize, InflaterPool pool)
+            throws IOException {
+        if(bufferSize <= 0)
+            throw new IllegalArgumentException("Buffer size must be positive");
+
+        this.in = in;
+        this.pool = pool;
+        this.crc = new CRC32();
+        this.buffer = new byte[bufferSize];
+        if(pool != null)
+            this.inflater = pool.acquire();
+        else
+            this.inflater = new Inflater(true);
+
+        try {
+            if(!readHeader(true))
+                throw new EOFException();
+        } catch(IOException e) {
+            releaseInflater();
+            throw e;
+        }
+    }
+
+    public PooledGZIPInputStream(InputStream in, InflaterPool pool)
+            throws IOException {
+        this(in, DEFAULT_BUFFER_SIZE, pool);
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b;
+
+        b = new byte[1];
+        if(read(b, 0, 1) == -1)
+            return -1;
+        return b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(closed)
+            throw new IOException("Stream closed");
+        if(off < 0 || len < 0 || off > b.length - len)
+            throw new IndexOutOfBoundsException();
+        if(len == 0)
+            return 0;
+
+        while(!eof) {
+            int n;
+
+            if(inflater.needsInput()) {
+                if(position == limit && !fill())
+                    throw new EOFException("Unexpected end of gzip stream");
+                inflater.setInput(buffer, position, limit - position);
+                position = limit;
+            }
+
+            try {
+                n = inflater.inflate(b, off, len);
+            } catch(DataFormatException e) {
+                throw new ZipException("Corrupt gzip data: " + e.getMessage());
+            }
+
+            if(n > 0) {
+                crc.update(b, off, n);
+                return n;
+            }
+
+            if(inflater.finished()) {
+                position = limit - inflater.getRemaining();
+                readTrailer();
+                if(!readHeader(false)) {
+                    eof = true;
+                    releaseInflater();
+                }
+            } else if(inflater.needsDictionary()) {
+                throw new ZipException("Corrupt gzip data");
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if(closed)
+            throw new IOException("Stream closed");
+        return eof ? 0 : 1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(closed)
+            return;
+        release();
+        in.close();
+    }
+
+    @Override
+    public void release() {
+        closed = true;
+        releaseInflater();
+    }
+
+    private boolean readHeader(boolean first) throws IOException {
+        int magic, flags;
+
+        if(position == limit && !fill()) {
+            if(first)
+                throw new EOFException();
+            return false;
+        }
+
+        magic = readUnsignedShort();
+        if(magic != 0x8B1F) {
+            if(first)
+                throw new ZipException("Not in gzip format");
+            return false;
+        }
+        if(readUnsignedByte() != 8)
+            throw new ZipException("Unsupported compression method");
+
+        flags = readUnsignedByte();
+        skip(6);
+        if((flags & FLAG_EXTRA) != 0)
+            skip(readUnsignedShort());
+        if((flags & FLAG_NAME) != 0)
+            skipString();
+        if((flags & FLAG_COMMENT) != 0)
+            skipString();
+        if((flags & FLAG_HEADER_CRC) != 0)
+            skip(2);
+
+        crc.reset();
+        inflater.reset();
+        return true;
+    }
+
+    private void readTrailer() throws IOException {
+        long expectedCrc, expectedSize;
+
+        expectedCrc = readUnsignedInt();
+        expectedSize = readUnsignedInt();
+        if(expectedCrc != crc.getValue()
+                || expectedSize != (inflater.getBytesWritten() & 0xFFFFFFFFL))
+            throw new ZipException("Corrupt gzip trailer");
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+
+        n = in.read(buffer, 0, buffer.length);
+        if(n == -1)
+            return false;
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    private int readUnsignedByte() throws IOException {
+        if(position == limit && !fill())
+            throw new EOFException("Unexpected end of gzip stream");
+        return buffer[position++] & 0xFF;
+    }
+
+    private int readUnsignedShort() throws IOException {
+        return readUnsignedByte() | (readUnsignedByte() << 8);
+    }
+
+    private long readUnsignedInt() throws IOException {
+        return readUnsignedShort() | ((long)readUnsignedShort() << 16);
+    }
+
+    private void skip(int count) throws IOException {
+        for(int i = 0;i < count;i++)
+            readUnsignedByte();
+    }
+
+    private void skipString() throws IOException {
+        while(readUnsignedByte() != 0);
+    }
+
+    private void releaseInflater() {
+        if(inflater == null)
+            return;
+
+        if(pool != null)
+            pool.release(inflater);
+        else
+            inflater.end();
+        inflater = null;
+    }
+}
@@ -0,0 +1,121 @@
+package mcmaplib.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+public class PooledGZIPOutputStream extends FinishableOutputStream {
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static final byte[] HEADER = new byte[] {
+        (byte)0x1F, (byte)0x8B, 8, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    private final DeflaterPool pool;
+    private final DeflaterOutputStream dos;
+    private final CRC32 crc;
+    private Deflater deflater;
+    private boolean finished;
+
+    public PooledGZIPOutputStream(OutputStream out, int level, int strategy,
+                                  int bufferSize, DeflaterPool pool)
+            throws IOException {
+        super(out);
+        if(bufferSize <= 0)
+            throw new IllegalArgumentException("Buffer size must be positive");
+
+        this.pool = pool;
+        this.crc = new CRC32();
+        if(pool != null)
+            this.deflater = pool.acquire(level, strategy);
+        else
+            this.deflater = DeflaterPool.newDeflater(level, strategy);
+        this.dos = new DeflaterOutputStream(out, deflater, bufferSize);
+
+        out.write(HEADER);
+    }
+
+    public PooledGZIPOutputStream(OutputStream out, DeflaterPool pool)
+            throws IOException {
+        this(
+            out,
+            Deflater.DEFAULT_COMPRESSION,
+            Deflater.DEFAULT_STRATEGY,
+            DEFAULT_BUFFER_SIZE,
+            pool
+        );
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkNotFinished();
+        dos.write(b);
+        crc.update(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkNotFinished();
+        dos.write(b, off, len);
+        crc.update(b, off, len);
+    }
+
+    @Override
+    public void finish() throws IOException {
+        byte[] trailer;
+        int size;
+
+        if(finished)
+            return;
+
+        dos.finish();
+        size = (int)deflater.getBytesRead();
+        trailer = new byte[8];
+        putInt(trailer, 0, (int)crc.getValue());
+        putInt(trailer, 4, size);
+        out.write(trailer);
+        finished = true;
+        releaseDeflater();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            releaseDeflater();
+            out.close();
+        }
+    }
+
+    @Override
+    public void release() {
+        finished = true;
+        releaseDeflater();
+    }
+
+    private void checkNotFinished() throws IOException {
+        if(finished)
+            throw new IOException("Stream already finished");
+    }
+
+    private void releaseDeflater() {
+        if(deflater == null)
+            return;
+
+        if(pool != null)
+            pool.release(deflater);
+        else
+            deflater.end();
+        deflater = null;
+    }
+
+    private static void putInt(byte[] data, int offset, int value) {
+        data[offset] = (byte)value;
+        data[offset + 1] = (byte)(value >>> 8);
+        data[offset + 2] = (byte)(value >>> 16);
+        data[offset + 3] = (byte)(value >>> 24);
+    }
+}
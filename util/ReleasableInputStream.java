@@ -0,0 +1,10 @@
+package mcmaplib.util;
+
+import java.io.InputStream;
+
+public abstract class ReleasableInputStream extends InputStream {
+    protected ReleasableInputStream() {
+    }
+
+    public abstract void release();
+}